@@ -0,0 +1,140 @@
+package be.formatech.filecomparator.benchmark;
+
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.generator.DatasetGenerator;
+import org.apache.commons.collections15.bidimap.TreeBidiMap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Builds the seeded data used by the benchmarks with the DatasetGenerator :
+ * delimited lines with a key, a number, a date and a text column.
+ *
+ * @version $Id$
+ */
+public final class BenchmarkData {
+
+    /**
+     * The field separator of the generated lines.
+     */
+    public static final String SEPARATOR = ";";
+
+    /**
+     * BenchmarkData should not normally be instantiated.
+     */
+    private BenchmarkData() {
+
+    }
+
+    /**
+     * Generates lines, a given ratio of them being copies of previous lines.
+     *
+     * @param count          the number of lines
+     * @param duplicateRatio the ratio of duplicated lines, between 0 and 1
+     * @param seed           the seed of the generator
+     * @return the generated lines
+     */
+    public static List<String> lines(int count, double duplicateRatio, long seed) {
+        return pair(count, duplicateRatio, 0.0, seed).get(0);
+    }
+
+    /**
+     * Generates the lines of two files, a given ratio of the fields of the
+     * second file being changed.
+     *
+     * @param count          the number of lines
+     * @param duplicateRatio the ratio of duplicated lines, between 0 and 1
+     * @param changedRatio   the ratio of changed fields, between 0 and 1
+     * @param seed           the seed of the generator
+     * @return the lines of the first file and the lines of the second file
+     */
+    public static List<List<String>> pair(int count, double duplicateRatio, double changedRatio,
+                                          long seed) {
+        final DatasetGenerator generator = new DatasetGenerator();
+        final StringWriter first = new StringWriter();
+        final StringWriter second = new StringWriter();
+
+        generator.setSeed(seed);
+        generator.setLines(count);
+        generator.setNumberColumns(1);
+        generator.setDateColumns(1);
+        generator.setTextColumns(1);
+        generator.setSeparator(SEPARATOR);
+        generator.setDuplicateRatio(duplicateRatio);
+        generator.setChangedFieldRatio(changedRatio);
+
+        try {
+            generator.generate(first, second);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        final List<List<String>> pair = new ArrayList<List<String>>(2);
+
+        pair.add(Arrays.asList(first.toString().split("\n")));
+        pair.add(Arrays.asList(second.toString().split("\n")));
+
+        return pair;
+    }
+
+    /**
+     * Writes lines in a temporary file, deleted when the JVM exits.
+     *
+     * @param lines the lines to write
+     * @return the written file
+     * @throws IOException if an I/O error occurs
+     */
+    public static File write(List<String> lines) throws IOException {
+        final File file = File.createTempFile("benchmark", ".txt");
+        final PrintWriter writer = new PrintWriter(file);
+
+        file.deleteOnExit();
+
+        try {
+            for (String line : lines) {
+                writer.println(line);
+            }
+        } finally {
+            writer.close();
+        }
+
+        return file;
+    }
+
+    /**
+     * Builds the Lines of a file, numbering the duplicated lines like
+     * ComparatorUtility.parseFile does.
+     *
+     * @param lines        the lines of the file
+     * @param dictionaries the dictionaries of the Lines, shared by both files
+     *                     of a comparison
+     * @return the Lines of the file contained in a Map
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public static Map<Integer, Line> toMap(List<String> lines, ColumnDictionaries dictionaries)
+            throws ParseException {
+        final Map<Integer, Line> result = new TreeBidiMap<Integer, Line>();
+        int lineNumber = 1;
+
+        for (String line : lines) {
+            final Line value = new Line(line, dictionaries, 1);
+
+            while (result.containsValue(value)) {
+                value.setOccurenceNumber(value.getOccurenceNumber() + 1);
+            }
+
+            result.put(lineNumber++, value);
+        }
+
+        return result;
+    }
+}
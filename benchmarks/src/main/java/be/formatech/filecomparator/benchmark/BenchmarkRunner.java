@@ -0,0 +1,147 @@
+package be.formatech.filecomparator.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the benchmarks with the GC profiler, writes their results in a CSV file
+ * and compares them with a baseline :
+ * <p/>
+ * <PRE>
+ * java -jar benchmarks.jar [-result results.csv] [-baseline baseline.csv] [regexp...]
+ * </PRE>
+ * <p/>
+ * A baseline is a result file written by this runner on the commit to
+ * compare with. The scores are only comparable on the same machine, so the
+ * baseline must be run on the machine running the comparison. The published
+ * baseline, <I>baselines/baseline.csv</I>, describes its machine in
+ * <I>baselines/README.txt</I>. The regular expressions select the benchmarks to
+ * run, all of them by default. The other options of JMH are available with
+ * <I>java -cp benchmarks.jar org.openjdk.jmh.Main</I>.
+ *
+ * @version $Id$
+ */
+public final class BenchmarkRunner {
+
+    /**
+     * The default file where the results are written.
+     */
+    private static final String DEFAULT_RESULT = "jmh-result.csv";
+
+    /**
+     * BenchmarkRunner should not normally be instantiated.
+     */
+    private BenchmarkRunner() {
+
+    }
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        final ChainedOptionsBuilder options = new OptionsBuilder().addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV);
+        String result = DEFAULT_RESULT;
+        String baseline = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if ("-result".equals(args[i]) && i + 1 < args.length) {
+                result = args[++i];
+            } else if ("-baseline".equals(args[i]) && i + 1 < args.length) {
+                baseline = args[++i];
+            } else {
+                options.include(args[i]);
+            }
+        }
+
+        new Runner(options.result(result).build()).run();
+
+        if (baseline != null) {
+            compare(readScores(baseline), readScores(result));
+        }
+    }
+
+    /**
+     * Prints the change of the score of each benchmark present in both
+     * results.
+     */
+    private static void compare(Map<String, String[]> baseline, Map<String, String[]> current) {
+        System.out.println();
+        System.out.println(String.format("%-90s %14s %14s %8s", "Benchmark", "Baseline",
+                "Current", "Change"));
+
+        for (Map.Entry<String, String[]> entry : current.entrySet()) {
+            final String[] before = baseline.get(entry.getKey());
+
+            if (before == null) {
+                continue;
+            }
+
+            final double scoreBefore = Double.parseDouble(before[0]);
+            final double scoreAfter = Double.parseDouble(entry.getValue()[0]);
+
+            System.out.println(String.format("%-90s %14.3f %14.3f %+7.1f%% %s", entry.getKey(),
+                    scoreBefore, scoreAfter, (scoreAfter - scoreBefore) * 100 / scoreBefore,
+                    entry.getValue()[1]));
+        }
+    }
+
+    /**
+     * Reads the scores of a CSV file written by JMH.
+     *
+     * @return the score and the unit of each benchmark, identified by its name
+     * and its parameters
+     */
+    private static Map<String, String[]> readScores(String filename) throws IOException {
+        final Map<String, String[]> scores = new LinkedHashMap<String, String[]>();
+        final BufferedReader reader = new BufferedReader(new FileReader(filename));
+
+        try {
+            final List<String> header = split(reader.readLine());
+            final int score = header.indexOf("Score");
+            final int unit = header.indexOf("Unit");
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                final List<String> values = split(line);
+                final StringBuilder key = new StringBuilder(values.get(0));
+
+                for (int i = unit + 1; i < values.size(); i++) {
+                    if (values.get(i).length() == 0) {
+                        continue;
+                    }
+
+                    key.append(' ');
+                    key.append(header.get(i).substring("Param: ".length()));
+                    key.append('=');
+                    key.append(values.get(i));
+                }
+
+                scores.put(key.toString(), new String[]{values.get(score), values.get(unit)});
+            }
+        } finally {
+            reader.close();
+        }
+
+        return scores;
+    }
+
+    private static List<String> split(String line) {
+        final List<String> values = new ArrayList<String>();
+
+        for (String value : line.split(",", -1)) {
+            values.add(value.startsWith("\"") ? value.substring(1, value.length() - 1) : value);
+        }
+
+        return values;
+    }
+}
@@ -0,0 +1,95 @@
+package be.formatech.filecomparator.benchmark;
+
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.DateUtility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the normalization of the lines (Line.formatLine, through the
+ * constructor of Line), ComparatorUtility.tokenize and DateUtility.isDate on
+ * batches of 1000 lines.<br>
+ * When the date columns are not declared, every field is checked with
+ * DateUtility.isDate.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LineBenchmark {
+    private static final int BATCH = 1000;
+
+    @Param({"declared", "detected"})
+    public String dateColumns;
+
+    private List<String> lines;
+
+    private String[] fields;
+
+    private final Set<Integer> dates = new TreeSet<Integer>();
+
+    private final Set<Integer> numbers = new TreeSet<Integer>();
+
+    private ColumnDictionaries dictionaries;
+
+    @Setup
+    public void setUp() {
+        this.lines = BenchmarkData.lines(BATCH, 0.0, 42L);
+
+        if ("declared".equals(this.dateColumns)) {
+            this.dates.add(3);
+        }
+
+        this.numbers.add(2);
+
+        final List<String> tokens = ComparatorUtility.tokenize(this.lines.get(0),
+                BenchmarkData.SEPARATOR);
+        this.fields = tokens.toArray(new String[tokens.size()]);
+
+        // the Lines of a comparison job share its dictionaries
+        this.dictionaries = ColumnDictionaries.forSettings(BenchmarkData.SEPARATOR, this.dates,
+                this.numbers);
+    }
+
+    @Benchmark
+    public void formatLine(Blackhole blackhole) throws Exception {
+        for (String line : this.lines) {
+            blackhole.consume(new Line(line, this.dictionaries, 1));
+        }
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        for (String line : this.lines) {
+            blackhole.consume(ComparatorUtility.tokenize(line, BenchmarkData.SEPARATOR));
+        }
+    }
+
+    @Benchmark
+    public void isDate(Blackhole blackhole) {
+        for (int i = 0; i < BATCH; i++) {
+            blackhole.consume(DateUtility.isDate(this.fields[i % this.fields.length]));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package be.formatech.filecomparator.benchmark;
+
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures ComparatorUtility.parseFile, which reads a file and builds its
+ * Lines, for several sizes of files and ratios of duplicated lines.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParseFileBenchmark {
+
+    @Param({"10000", "100000"})
+    public int lines;
+
+    @Param({"0.0", "0.1"})
+    public double duplicateRatio;
+
+    private String filename;
+
+    private final Set<Integer> dates = new TreeSet<Integer>();
+
+    private final Set<Integer> numbers = new TreeSet<Integer>();
+
+    @Setup
+    public void setUp() throws Exception {
+        this.filename = BenchmarkData.write(BenchmarkData.lines(this.lines, this.duplicateRatio,
+                42L)).getPath();
+        this.dates.add(3);
+        this.numbers.add(2);
+    }
+
+    @Benchmark
+    public Map<Integer, Line> parseFile() throws Exception {
+        return ComparatorUtility.parseFile(this.filename, BenchmarkData.SEPARATOR, this.dates,
+                this.numbers);
+    }
+}
@@ -0,0 +1,89 @@
+package be.formatech.filecomparator.comparator;
+
+import be.formatech.filecomparator.benchmark.BenchmarkData;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.Line;
+import org.apache.commons.collections15.bidimap.TreeBidiMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the matching of the Lines, FileComparator.checkFiles and
+ * OrderedFileComparator.checkFiles, for several sizes of files and rates of
+ * differences.<br>
+ * The benchmark is in the package of the comparators because checkFiles is
+ * package-private. The Lines of the second file are removed while matching,
+ * so they are copied before each invocation.
+ *
+ * @version $Id$
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CheckFilesBenchmark {
+
+    @Param({"1000", "5000"})
+    public int lines;
+
+    @Param({"0.0", "0.01", "0.05"})
+    public double differenceRate;
+
+    @Param({"false", "true"})
+    public boolean ordered;
+
+    private FileComparator comparator;
+
+    private Map<Integer, Line> secondFileLinesAsMap;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws Exception {
+        final Set<Integer> dates = new TreeSet<Integer>();
+        final Set<Integer> numbers = new TreeSet<Integer>();
+
+        dates.add(3);
+        numbers.add(2);
+
+        final List<List<String>> pair = BenchmarkData.pair(this.lines, 0.05, this.differenceRate,
+                42L);
+        final List<String> first = pair.get(0);
+        final List<String> second = pair.get(1);
+
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(
+                BenchmarkData.SEPARATOR, dates, numbers);
+
+        this.comparator = (FileComparator) ComparatorFactory.getInstance().getComparator(
+                BenchmarkData.SEPARATOR, dates, numbers, this.ordered);
+        this.comparator.setFile1LinesAsMap(BenchmarkData.toMap(first, dictionaries));
+        this.secondFileLinesAsMap = BenchmarkData.toMap(second, dictionaries);
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        this.comparator.setFile2LinesAsMap(new TreeBidiMap<Integer, Line>(
+                this.secondFileLinesAsMap));
+    }
+
+    @Benchmark
+    public String checkFiles() {
+        return this.comparator.checkFiles();
+    }
+}
@@ -0,0 +1,479 @@
+package be.formatech.filecomparator.generator;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * Writes reproducible pairs of delimited files to benchmark and stress the
+ * comparators.<br>
+ * The first file contains the generated lines. The second file contains the
+ * same lines with changed fields, deleted lines, inserted lines and lines
+ * moved further in the file. The same seed and the same settings always give
+ * the same files.<br>
+ * The first column is a unique key, followed by the number columns, the date
+ * columns and the text columns. A changed text field is a near match of the
+ * original one : a given number of its characters are replaced.
+ * <p/>
+ * <PRE>
+ * DatasetGenerator -lines 1000000 -text 4 -dates 2 -numbers 3 -duplicates 0.05
+ *     -changes 0.01 -inserts 0.001 -deletes 0.001 -reorders 0.01 first.csv second.csv
+ * </PRE>
+ *
+ * @version $Id$
+ */
+public final class DatasetGenerator {
+    private static final Logger LOGGER = Logger.getLogger(DatasetGenerator.class);
+
+    /**
+     * The type of the values of a column.
+     */
+    public static enum ColumnType {
+        TEXT, DATE, NUMBER
+    }
+
+    /**
+     * The words of the text fields.
+     */
+    private static final String[] WORDS = {"account", "amount", "balance", "branch", "client",
+            "contract", "credit", "debit", "deposit", "fee", "fund", "interest", "invoice",
+            "loan", "order", "payment", "rate", "reference", "saving", "transfer"};
+
+    /**
+     * The number of previous lines among which a duplicated line is chosen.
+     */
+    private static final int DUPLICATE_WINDOW = 10000;
+
+    private long seed = 1L;
+    private int lines = 10000;
+    private int textColumns = 2;
+    private int dateColumns = 1;
+    private int numberColumns = 1;
+    private String separator = ";";
+    private String datePattern = "dd/MM/yyyy";
+    private double duplicateRatio;
+    private double changedFieldRatio;
+    private double insertedLineRatio;
+    private double deletedLineRatio;
+    private double reorderedLineRatio;
+    private int reorderDistance = 1000;
+    private int editDistance = 2;
+
+    /**
+     * Writes a pair of files.
+     *
+     * @param first  the first file to write
+     * @param second the second file to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void generate(File first, File second) throws IOException {
+        final Writer writer1 = new BufferedWriter(new FileWriter(first));
+
+        try {
+            final Writer writer2 = new BufferedWriter(new FileWriter(second));
+
+            try {
+                this.generate(writer1, writer2);
+            } finally {
+                writer2.close();
+            }
+        } finally {
+            writer1.close();
+        }
+
+        LOGGER.info("Files " + first + " and " + second + " generated");
+    }
+
+    /**
+     * Writes the lines of a pair of files.
+     *
+     * @param first  the Writer of the first file
+     * @param second the Writer of the second file
+     * @throws IOException if an I/O error occurs
+     */
+    public void generate(Writer first, Writer second) throws IOException {
+        final Random random = new Random(this.seed);
+        final ColumnType[] columns = this.getColumnTypes();
+        final SimpleDateFormat dateFormat = new SimpleDateFormat(this.datePattern, Locale.ROOT);
+        final List<String[]> previous = new ArrayList<String[]>();
+        final PriorityQueue<PendingLine> pending = new PriorityQueue<PendingLine>();
+        int key = 0;
+
+        for (int i = 0; i < this.lines; i++) {
+            final String[] fields;
+
+            if (!previous.isEmpty() && random.nextDouble() < this.duplicateRatio) {
+                fields = previous.get(random.nextInt(previous.size()));
+            } else {
+                fields = this.newLine(random, columns, dateFormat, key++);
+
+                if (previous.size() < DUPLICATE_WINDOW) {
+                    previous.add(fields);
+                } else {
+                    previous.set(random.nextInt(DUPLICATE_WINDOW), fields);
+                }
+            }
+
+            this.writeLine(first, fields);
+
+            if (random.nextDouble() >= this.deletedLineRatio) {
+                final String[] changed = this.change(random, columns, dateFormat, fields);
+
+                if (random.nextDouble() < this.reorderedLineRatio) {
+                    pending.add(new PendingLine(i + 1 + random.nextInt(this.reorderDistance), i,
+                            changed));
+                } else {
+                    this.writeLine(second, changed);
+                }
+            }
+
+            while (!pending.isEmpty() && pending.peek().position <= i) {
+                this.writeLine(second, pending.poll().fields);
+            }
+
+            if (random.nextDouble() < this.insertedLineRatio) {
+                this.writeLine(second, this.newLine(random, columns, dateFormat, key++));
+            }
+        }
+
+        while (!pending.isEmpty()) {
+            this.writeLine(second, pending.poll().fields);
+        }
+    }
+
+    /**
+     * Returns the types of the columns, the key excluded.
+     */
+    private ColumnType[] getColumnTypes() {
+        final List<ColumnType> columns = new ArrayList<ColumnType>();
+
+        for (int i = 0; i < this.numberColumns; i++) {
+            columns.add(ColumnType.NUMBER);
+        }
+
+        for (int i = 0; i < this.dateColumns; i++) {
+            columns.add(ColumnType.DATE);
+        }
+
+        for (int i = 0; i < this.textColumns; i++) {
+            columns.add(ColumnType.TEXT);
+        }
+
+        return columns.toArray(new ColumnType[columns.size()]);
+    }
+
+    private String[] newLine(Random random, ColumnType[] columns, SimpleDateFormat dateFormat,
+                             int key) {
+        final String[] fields = new String[columns.length + 1];
+
+        fields[0] = "K" + key;
+
+        for (int i = 0; i < columns.length; i++) {
+            fields[i + 1] = this.newValue(random, columns[i], dateFormat);
+        }
+
+        return fields;
+    }
+
+    private String newValue(Random random, ColumnType type, SimpleDateFormat dateFormat) {
+        switch (type) {
+            case DATE:
+                // between 2000 and 2020
+                return dateFormat.format(new Date(946684800000L + (long) (random.nextDouble()
+                        * 631152000000L)));
+            case NUMBER:
+                return Integer.toString(random.nextInt(1000000)) + "."
+                        + Integer.toString(10 + random.nextInt(90));
+            default:
+                final StringBuilder text = new StringBuilder();
+                final int words = 2 + random.nextInt(4);
+
+                for (int i = 0; i < words; i++) {
+                    if (i > 0) {
+                        text.append(' ');
+                    }
+
+                    text.append(WORDS[random.nextInt(WORDS.length)]);
+                }
+
+                return text.toString();
+        }
+    }
+
+    /**
+     * Returns the fields of a line of the second file, each field but the key
+     * being changed with the probability changedFieldRatio.
+     */
+    private String[] change(Random random, ColumnType[] columns, SimpleDateFormat dateFormat,
+                            String[] fields) {
+        String[] changed = fields;
+
+        for (int i = 0; i < columns.length; i++) {
+            if (random.nextDouble() < this.changedFieldRatio) {
+                if (changed == fields) {
+                    changed = fields.clone();
+                }
+
+                if (columns[i] == ColumnType.TEXT) {
+                    changed[i + 1] = this.edit(random, fields[i + 1]);
+                } else {
+                    changed[i + 1] = this.newValue(random, columns[i], dateFormat);
+                }
+            }
+        }
+
+        return changed;
+    }
+
+    /**
+     * Replaces editDistance characters of a text by other letters.
+     */
+    private String edit(Random random, String text) {
+        final char[] chars = text.toCharArray();
+
+        for (int i = 0; i < this.editDistance && chars.length > 0; i++) {
+            final int index = random.nextInt(chars.length);
+            char replacement;
+
+            do {
+                replacement = (char) ('a' + random.nextInt(26));
+            } while (replacement == chars[index]);
+
+            chars[index] = replacement;
+        }
+
+        return new String(chars);
+    }
+
+    private void writeLine(Writer writer, String[] fields) throws IOException {
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                writer.write(this.separator);
+            }
+
+            writer.write(fields[i]);
+        }
+
+        writer.write('\n');
+    }
+
+    /**
+     * Writes a pair of files with the settings given as arguments.
+     *
+     * @param args the settings followed by the paths of both files
+     * @throws IOException if an I/O error occurs
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Usage: DatasetGenerator [-seed n] [-lines n] [-text n]"
+                    + " [-dates n] [-numbers n] [-separator s] [-datePattern p]"
+                    + " [-duplicates ratio] [-changes ratio] [-inserts ratio] [-deletes ratio]"
+                    + " [-reorders ratio] [-reorderDistance n] [-editDistance n] first second");
+            System.exit(1);
+        }
+
+        final DatasetGenerator generator = new DatasetGenerator();
+
+        for (int i = 0; i < args.length - 2; i += 2) {
+            final String value = args[i + 1];
+
+            if ("-seed".equals(args[i])) {
+                generator.setSeed(Long.parseLong(value));
+            } else if ("-lines".equals(args[i])) {
+                generator.setLines(Integer.parseInt(value));
+            } else if ("-text".equals(args[i])) {
+                generator.setTextColumns(Integer.parseInt(value));
+            } else if ("-dates".equals(args[i])) {
+                generator.setDateColumns(Integer.parseInt(value));
+            } else if ("-numbers".equals(args[i])) {
+                generator.setNumberColumns(Integer.parseInt(value));
+            } else if ("-separator".equals(args[i])) {
+                generator.setSeparator(value);
+            } else if ("-datePattern".equals(args[i])) {
+                generator.setDatePattern(value);
+            } else if ("-duplicates".equals(args[i])) {
+                generator.setDuplicateRatio(Double.parseDouble(value));
+            } else if ("-changes".equals(args[i])) {
+                generator.setChangedFieldRatio(Double.parseDouble(value));
+            } else if ("-inserts".equals(args[i])) {
+                generator.setInsertedLineRatio(Double.parseDouble(value));
+            } else if ("-deletes".equals(args[i])) {
+                generator.setDeletedLineRatio(Double.parseDouble(value));
+            } else if ("-reorders".equals(args[i])) {
+                generator.setReorderedLineRatio(Double.parseDouble(value));
+            } else if ("-reorderDistance".equals(args[i])) {
+                generator.setReorderDistance(Integer.parseInt(value));
+            } else if ("-editDistance".equals(args[i])) {
+                generator.setEditDistance(Integer.parseInt(value));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        generator.generate(new File(args[args.length - 2]), new File(args[args.length - 1]));
+    }
+
+    /**
+     * Sets the seed of the generator.
+     *
+     * @param seed the seed of the generator
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of lines of the first file.
+     *
+     * @param lines the number of lines
+     */
+    public void setLines(int lines) {
+        this.lines = lines;
+    }
+
+    /**
+     * Sets the number of text columns, the key excluded.
+     *
+     * @param textColumns the number of text columns
+     */
+    public void setTextColumns(int textColumns) {
+        this.textColumns = textColumns;
+    }
+
+    /**
+     * Sets the number of date columns.
+     *
+     * @param dateColumns the number of date columns
+     */
+    public void setDateColumns(int dateColumns) {
+        this.dateColumns = dateColumns;
+    }
+
+    /**
+     * Sets the number of number columns.
+     *
+     * @param numberColumns the number of number columns
+     */
+    public void setNumberColumns(int numberColumns) {
+        this.numberColumns = numberColumns;
+    }
+
+    /**
+     * Sets the field separator.
+     *
+     * @param separator the field separator
+     */
+    public void setSeparator(String separator) {
+        this.separator = separator;
+    }
+
+    /**
+     * Sets the pattern of the dates, one of the patterns of DateUtility by
+     * default.
+     *
+     * @param datePattern the pattern of the dates
+     */
+    public void setDatePattern(String datePattern) {
+        this.datePattern = datePattern;
+    }
+
+    /**
+     * Sets the ratio of lines that are copies of a previous line.
+     *
+     * @param duplicateRatio the ratio of duplicated lines, between 0 and 1
+     */
+    public void setDuplicateRatio(double duplicateRatio) {
+        this.duplicateRatio = duplicateRatio;
+    }
+
+    /**
+     * Sets the probability of each field, the key excluded, to be changed in
+     * the second file.
+     *
+     * @param changedFieldRatio the ratio of changed fields, between 0 and 1
+     */
+    public void setChangedFieldRatio(double changedFieldRatio) {
+        this.changedFieldRatio = changedFieldRatio;
+    }
+
+    /**
+     * Sets the ratio of lines inserted in the second file.
+     *
+     * @param insertedLineRatio the ratio of inserted lines, between 0 and 1
+     */
+    public void setInsertedLineRatio(double insertedLineRatio) {
+        this.insertedLineRatio = insertedLineRatio;
+    }
+
+    /**
+     * Sets the ratio of lines of the first file deleted in the second file.
+     *
+     * @param deletedLineRatio the ratio of deleted lines, between 0 and 1
+     */
+    public void setDeletedLineRatio(double deletedLineRatio) {
+        this.deletedLineRatio = deletedLineRatio;
+    }
+
+    /**
+     * Sets the ratio of lines moved further in the second file.
+     *
+     * @param reorderedLineRatio the ratio of moved lines, between 0 and 1
+     */
+    public void setReorderedLineRatio(double reorderedLineRatio) {
+        this.reorderedLineRatio = reorderedLineRatio;
+    }
+
+    /**
+     * Sets the maximum number of lines a moved line is moved by.
+     *
+     * @param reorderDistance the maximum distance of a moved line
+     */
+    public void setReorderDistance(int reorderDistance) {
+        this.reorderDistance = reorderDistance;
+    }
+
+    /**
+     * Sets the number of characters replaced in a changed text field.
+     *
+     * @param editDistance the edit distance of the near matches
+     */
+    public void setEditDistance(int editDistance) {
+        this.editDistance = editDistance;
+    }
+
+    /**
+     * A line of the second file written later than its position in the first
+     * file.
+     */
+    private static final class PendingLine implements Comparable<PendingLine> {
+        private final int position;
+        private final String[] fields;
+        private final int order;
+
+        PendingLine(int position, int order, String[] fields) {
+            this.position = position;
+            this.order = order;
+            this.fields = fields;
+        }
+
+        @Override
+        public int compareTo(PendingLine other) {
+            if (this.position != other.position) {
+                return this.position < other.position ? -1 : 1;
+            }
+
+            return this.order < other.order ? -1 : (this.order == other.order ? 0 : 1);
+        }
+    }
+}
@@ -0,0 +1,639 @@
+package be.formatech.filecomparator.batch;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.ComparisonExecutor;
+import be.formatech.filecomparator.comparator.FileComparator;
+import be.formatech.filecomparator.comparator.directory.DirectoryComparator;
+import be.formatech.filecomparator.comparator.directory.DirectoryComparison;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.estimate.DifferenceEstimate;
+import be.formatech.filecomparator.comparator.estimate.DifferenceEstimator;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import be.formatech.filecomparator.comparator.progress.Progress;
+import be.formatech.filecomparator.comparator.progress.ProgressListener;
+import be.formatech.filecomparator.comparator.shard.ShardCoordinator;
+import be.formatech.filecomparator.comparator.shard.ShardedComparison;
+import be.formatech.filecomparator.comparator.snapshot.FingerprintSnapshot;
+import be.formatech.filecomparator.utils.ConfigUtility;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs comparisons without the graphical interface.<br>
+ * Each argument is either the location of a configuration file saved by the
+ * graphical interface, or one of the keys understood by
+ * ConfigUtility.loadConfig followed by its value :
+ * <p/>
+ * <PRE>
+ * BatchRunner daily.config monthly.config
+ * BatchRunner -firstFile a.csv -secondFile b.csv -separator ; -ordered true
+ * BatchRunner -progress daily.config
+ * BatchRunner -firstFile a.csv -secondFile b.csv -separator ; -strategy external_sort
+ * BatchRunner -firstFile a.csv -secondFile b.csv -separator ; -ignoredColumns [7,8]
+ * BatchRunner -estimate -firstFile a.csv -secondFile b.csv -separator ;
+ * BatchRunner -workers 4 -firstFile a.csv -secondFile b.csv -separator ;
+ * BatchRunner -snapshot -firstFile a.csv -secondFile b.csv -separator ;
+ * </PRE>
+ * <p/>
+ * With -progress, the progress of each comparison of files is printed on the
+ * standard error stream. With -estimate, the files of the profiles are not
+ * compared : the differences are estimated by a DifferenceEstimator, in the
+ * time of reading the files. The directories are still compared. With
+ * -workers, the files of the profiles are compared in shards by a
+ * ShardCoordinator, on the given number of worker JVMs. With -snapshot, the
+ * FingerprintSnapshot of each file is saved, unless it is up to date, before
+ * the files are compared in this JVM ; it has no effect on directories, nor
+ * with -estimate or -workers.<br>
+ * The strategy executing the comparisons is chosen for each pair of files,
+ * unless -strategy names one of the Strategy values. The fields of the columns
+ * listed by -ignoredColumns, or not listed by -comparedColumns, are skipped.<br>
+ * A new profile starts each time -firstFile is given again. All the profiles
+ * are compared on the ComparisonExecutor, in one JVM. If both locations of a
+ * profile are directories, all their files are compared with a
+ * DirectoryComparator, whose pairs of files share the same pool.<br>
+ * The exit code is EXIT_IDENTICAL if all the files exactly match,
+ * EXIT_DIFFERENCES if differences were found and EXIT_ERROR if a profile could
+ * not be compared. An estimate finding no difference exits with EXIT_IDENTICAL,
+ * although it doesn't prove that the files exactly match.
+ *
+ * @version $Id$
+ */
+public final class BatchRunner {
+    private static final Logger LOGGER = Logger.getLogger(BatchRunner.class);
+
+    /**
+     * The exit code when all the files exactly match.
+     */
+    public static final int EXIT_IDENTICAL = 0;
+
+    /**
+     * The exit code when differences were found.
+     */
+    public static final int EXIT_DIFFERENCES = 1;
+
+    /**
+     * The exit code when a profile could not be compared.
+     */
+    public static final int EXIT_ERROR = 2;
+
+    /**
+     * The option printing the progress of the comparisons.
+     */
+    public static final String PROGRESS_OPTION = "-progress";
+
+    /**
+     * The option estimating the differences of the files instead of comparing
+     * them.
+     */
+    public static final String ESTIMATE_OPTION = "-estimate";
+
+    /**
+     * The option comparing the files in shards on worker JVMs, followed by the
+     * number of workers.
+     */
+    public static final String WORKERS_OPTION = "-workers";
+
+    /**
+     * The option saving the snapshots of the files that have no up to date
+     * snapshot before comparing them.
+     */
+    public static final String SNAPSHOT_OPTION = "-snapshot";
+
+    /**
+     * The keys understood by ConfigUtility.loadConfig.
+     */
+    public static final List<String> CONFIG_KEYS = Collections.unmodifiableList(Arrays.asList(
+            ConfigUtility.FIRST_FILE_CONFIG_KEY, ConfigUtility.SECOND_FILE_CONFIG_KEY,
+            ConfigUtility.SEPARATOR_CONFIG_KEY, ConfigUtility.ORDERED_CONFIG_KEY,
+            ConfigUtility.DATES_CONFIG_KEY, ConfigUtility.NUMBERS_CONFIG_KEY,
+            ConfigUtility.STRATEGY_CONFIG_KEY, ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY,
+            ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY));
+
+    /**
+     * The stream where the results are printed.
+     */
+    private final PrintStream out;
+
+    /**
+     * The stream where the progress is printed, null if it is not printed.
+     */
+    private PrintStream progress;
+
+    /**
+     * The flag indicating if the differences of the files are estimated
+     * instead of being compared.
+     */
+    private boolean estimate;
+
+    /**
+     * The number of worker JVMs comparing the files in shards, 0 to compare
+     * them in this JVM.
+     */
+    private int workers;
+
+    /**
+     * The flag indicating if the snapshots of the files are refreshed before
+     * they are compared.
+     */
+    private boolean snapshot;
+
+    /**
+     * Initializes a newly created BatchRunner object.
+     *
+     * @param out the stream where the results are printed
+     */
+    public BatchRunner(PrintStream out) {
+        super();
+
+        this.out = out;
+    }
+
+    /**
+     * Compares the profiles given as arguments and exits with a code telling
+     * if differences were found.
+     *
+     * @param args the configuration files and the configuration keys
+     */
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.err.println("Usage: BatchRunner [" + PROGRESS_OPTION + "] ["
+                    + ESTIMATE_OPTION + "] [" + WORKERS_OPTION + " <workers>] ["
+                    + SNAPSHOT_OPTION + "] <configuration file>... | "
+                    + StringUtils.join(CONFIG_KEYS, " <value> ") + " <value>");
+            System.exit(EXIT_ERROR);
+        }
+
+        int exitCode;
+
+        try {
+            final List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+            final BatchRunner runner = new BatchRunner(System.out);
+
+            if (arguments.remove(PROGRESS_OPTION)) {
+                runner.setProgress(System.err);
+            }
+
+            runner.setEstimate(arguments.remove(ESTIMATE_OPTION));
+            runner.setSnapshot(arguments.remove(SNAPSHOT_OPTION));
+
+            final int workersIndex = arguments.indexOf(WORKERS_OPTION);
+
+            if (workersIndex >= 0) {
+                if (workersIndex + 1 == arguments.size()) {
+                    throw new IllegalArgumentException("No value for " + WORKERS_OPTION);
+                }
+
+                try {
+                    runner.setWorkers(Integer.parseInt(arguments.get(workersIndex + 1)));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid number of workers: "
+                            + arguments.get(workersIndex + 1));
+                }
+
+                arguments.subList(workersIndex, workersIndex + 2).clear();
+            }
+
+            exitCode = runner.run(parseArguments(arguments.toArray(new String[arguments.size()])));
+        } catch (IOException e) {
+            LOGGER.error("Problem while loading the configuration", e);
+            System.err.println("Problem while loading the configuration: " + e.getMessage());
+            exitCode = EXIT_ERROR;
+        } catch (IllegalArgumentException e) {
+            System.err.println("Error: " + e.getMessage());
+            exitCode = EXIT_ERROR;
+        }
+
+        System.exit(exitCode);
+    }
+
+    /**
+     * Sets the stream where the progress of the comparisons of files is
+     * printed.
+     *
+     * @param progress the stream or null to print nothing
+     */
+    public void setProgress(PrintStream progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Sets the flag indicating if the differences of the files are estimated
+     * instead of being compared. The directories are always compared.
+     *
+     * @param estimate true to estimate the differences of the files
+     */
+    public void setEstimate(boolean estimate) {
+        this.estimate = estimate;
+    }
+
+    /**
+     * Sets the flag indicating if the snapshots of the files are refreshed
+     * before they are compared in this JVM. A file gets a new snapshot if it
+     * has none or if its snapshot is out of date.
+     *
+     * @param snapshot true to refresh the snapshots of the files
+     */
+    public void setSnapshot(boolean snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the number of worker JVMs comparing the files in shards. The
+     * directories are always compared in this JVM.
+     *
+     * @param workers the number of workers or 0 to compare the files in this
+     *                JVM
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public void setWorkers(int workers) {
+        if (workers < 0) {
+            throw new IllegalArgumentException("Invalid number of workers: " + workers);
+        }
+
+        this.workers = workers;
+    }
+
+    /**
+     * Reads the profiles given as arguments.
+     *
+     * @param args the configuration files and the configuration keys
+     * @return the profiles, as returned by ConfigUtility.loadConfig
+     * @throws IOException              if a configuration file cannot be read
+     * @throws IllegalArgumentException if a key has no value
+     */
+    static List<Map<String, String>> parseArguments(String[] args) throws IOException {
+        final List<Map<String, String>> profiles = new ArrayList<Map<String, String>>();
+        Map<String, String> profile = null;
+
+        for (int i = 0; i < args.length; i++) {
+            final String key = getConfigKey(args[i]);
+
+            if (key == null) {
+                profiles.add(ConfigUtility.loadConfig(args[i]));
+                continue;
+            }
+
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + key);
+            }
+
+            if (profile == null
+                    || (key.equals(ConfigUtility.FIRST_FILE_CONFIG_KEY) && profile
+                    .containsKey(key))) {
+                profile = new HashMap<String, String>();
+                profiles.add(profile);
+            }
+
+            profile.put(key, args[++i]);
+        }
+
+        return profiles;
+    }
+
+    private static String getConfigKey(String argument) {
+        for (String key : CONFIG_KEYS) {
+            if (key.equalsIgnoreCase(argument)) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Compares all the profiles concurrently and prints their results in the
+     * order of the profiles.
+     *
+     * @param profiles the profiles, as returned by ConfigUtility.loadConfig
+     * @return the exit code
+     */
+    public int run(List<Map<String, String>> profiles) {
+        final CancellationToken token = new CancellationToken();
+        final List<Future<ProfileResult>> tasks = new ArrayList<Future<ProfileResult>>();
+
+        for (Map<String, String> profile : profiles) {
+            if (!isDirectoryProfile(profile)) {
+                tasks.add(ComparisonExecutor.getInstance().submit(this.compareProfile(profile,
+                        tasks.size() + 1),
+                        token));
+            } else {
+                tasks.add(null);
+            }
+        }
+
+        // the directories are compared from this thread once the files are
+        // submitted, so that their pairs of files are spread over the pool
+        for (int i = 0; i < tasks.size(); i++) {
+            if (tasks.get(i) == null) {
+                final FutureTask<ProfileResult> task = new FutureTask<ProfileResult>(this
+                        .compareProfile(profiles.get(i), i + 1));
+
+                task.run();
+                tasks.set(i, task);
+            }
+        }
+
+        int exitCode = EXIT_IDENTICAL;
+
+        for (int i = 0; i < tasks.size(); i++) {
+            ProfileResult result;
+
+            try {
+                result = tasks.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                token.cancel();
+                return EXIT_ERROR;
+            } catch (ExecutionException e) {
+                LOGGER.error("Problem while comparing profile " + (i + 1), e.getCause());
+                result = new ProfileResult(EXIT_ERROR, "Problem while comparing the files: "
+                        + e.getCause() + "\n");
+            }
+
+            this.out.println("==== Profile " + (i + 1) + " : "
+                    + profiles.get(i).get(ConfigUtility.FIRST_FILE_CONFIG_KEY) + " - "
+                    + profiles.get(i).get(ConfigUtility.SECOND_FILE_CONFIG_KEY));
+            this.out.println(result.getReport());
+
+            exitCode = Math.max(exitCode, result.getExitCode());
+        }
+
+        this.out.flush();
+
+        return exitCode;
+    }
+
+    private static boolean isDirectoryProfile(Map<String, String> profile) {
+        final String filename1 = profile.get(ConfigUtility.FIRST_FILE_CONFIG_KEY);
+        final String filename2 = profile.get(ConfigUtility.SECOND_FILE_CONFIG_KEY);
+
+        return filename1 != null && filename2 != null && new File(filename1).isDirectory()
+                && new File(filename2).isDirectory();
+    }
+
+    /**
+     * Returns a task comparing the files of a profile.
+     *
+     * @param profile the profile, as returned by ConfigUtility.loadConfig
+     * @param number  the number of the profile
+     * @return the task comparing the files
+     */
+    private Callable<ProfileResult> compareProfile(final Map<String, String> profile,
+                                                   final int number) {
+        return new Callable<ProfileResult>() {
+            @Override
+            public ProfileResult call() {
+                final String filename1 = profile.get(ConfigUtility.FIRST_FILE_CONFIG_KEY);
+                final String filename2 = profile.get(ConfigUtility.SECOND_FILE_CONFIG_KEY);
+                final String separator = profile.get(ConfigUtility.SEPARATOR_CONFIG_KEY);
+                final String error = checkProfile(filename1, filename2, separator);
+
+                if (error != null) {
+                    return new ProfileResult(EXIT_ERROR, "Error: " + error + "\n");
+                }
+
+                final boolean ordered = Boolean.parseBoolean(StringUtils.trim(profile
+                        .get(ConfigUtility.ORDERED_CONFIG_KEY)));
+                final Strategy strategy;
+
+                try {
+                    strategy = Strategy.fromName(profile.get(ConfigUtility.STRATEGY_CONFIG_KEY));
+                } catch (IllegalArgumentException e) {
+                    return new ProfileResult(EXIT_ERROR, "Error: Unknown strategy "
+                            + profile.get(ConfigUtility.STRATEGY_CONFIG_KEY) + "\n");
+                }
+
+                final ColumnProjection projection = ColumnProjection.of(
+                        ConfigUtility.getStringAsSet(profile.get(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY)),
+                        ConfigUtility.getStringAsSet(profile.get(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY)));
+
+                if (new File(filename1).isDirectory()) {
+                    final DirectoryComparator directoryComparator = new DirectoryComparator(
+                            separator,
+                            ConfigUtility.getStringAsSet(profile.get(ConfigUtility.DATES_CONFIG_KEY)),
+                            ConfigUtility.getStringAsSet(profile.get(ConfigUtility.NUMBERS_CONFIG_KEY)),
+                            ordered);
+
+                    directoryComparator.setStrategy(strategy);
+                    directoryComparator.setProjection(projection);
+
+                    final DirectoryComparison comparison = directoryComparator.compare(filename1,
+                            filename2);
+
+                    return new ProfileResult(comparison.isIdentical() ? EXIT_IDENTICAL
+                            : EXIT_DIFFERENCES, comparison.getSummary());
+                }
+
+                if (BatchRunner.this.estimate) {
+                    return estimateProfile(filename1, filename2, separator, projection);
+                }
+
+                if (BatchRunner.this.workers > 0) {
+                    final ShardCoordinator coordinator = new ShardCoordinator(separator,
+                            ConfigUtility.getStringAsSet(profile.get(ConfigUtility.DATES_CONFIG_KEY)),
+                            ConfigUtility.getStringAsSet(profile.get(ConfigUtility.NUMBERS_CONFIG_KEY)),
+                            ordered, BatchRunner.this.workers);
+
+                    coordinator.setProjection(projection);
+
+                    final ShardedComparison comparison = coordinator.compare(filename1,
+                            filename2);
+
+                    if (comparison.isCancelled()) {
+                        return new ProfileResult(EXIT_ERROR, FileComparator.CANCELLED + "\n");
+                    }
+
+                    if (comparison.isError()) {
+                        return new ProfileResult(EXIT_ERROR, comparison.getSummary());
+                    }
+
+                    return new ProfileResult(comparison.isIdentical() ? EXIT_IDENTICAL
+                            : EXIT_DIFFERENCES, comparison.getSummary());
+                }
+
+                final Set<Integer> dates = ConfigUtility.getStringAsSet(profile
+                        .get(ConfigUtility.DATES_CONFIG_KEY));
+                final Set<Integer> numbers = ConfigUtility.getStringAsSet(profile
+                        .get(ConfigUtility.NUMBERS_CONFIG_KEY));
+                final StringBuilder snapshots = new StringBuilder();
+
+                if (BatchRunner.this.snapshot) {
+                    try {
+                        refreshSnapshot(filename1, separator, dates, numbers, snapshots);
+                        refreshSnapshot(filename2, separator, dates, numbers, snapshots);
+                    } catch (IOException e) {
+                        LOGGER.error("Problem while saving the snapshots", e);
+                        return new ProfileResult(EXIT_ERROR, snapshots
+                                + "Problem while saving the snapshots: " + e.getMessage() + "\n");
+                    } catch (ParseException e) {
+                        LOGGER.error("Problem while saving the snapshots", e);
+                        return new ProfileResult(EXIT_ERROR, snapshots
+                                + "Problem while saving the snapshots: " + e.getMessage() + "\n");
+                    }
+                }
+
+                final Comparator comparator = ComparatorFactory.getInstance().getComparator(
+                        separator, dates, numbers, ordered, strategy, projection);
+                comparator.setProgressListener(progressListener(number, "1/2"));
+                final String result1 = comparator.compare(filename1, filename2);
+                final String output1 = snapshots + filename1 + " compared with " + filename2
+                        + " :\n" + result1 + "\n";
+
+                if (FileComparator.isError(result1)) {
+                    return new ProfileResult(EXIT_ERROR, output1);
+                }
+
+                comparator.setProgressListener(progressListener(number, "2/2"));
+                final String result2 = comparator.compare(filename2, filename1);
+                final String output = output1 + filename2 + " compared with " + filename1
+                        + " :\n" + result2;
+
+                if (FileComparator.isError(result2)) {
+                    return new ProfileResult(EXIT_ERROR, output);
+                }
+
+                final boolean identical = FileComparator.isMatch(result1)
+                        && FileComparator.isMatch(result2);
+
+                return new ProfileResult(identical ? EXIT_IDENTICAL : EXIT_DIFFERENCES, output);
+            }
+        };
+    }
+
+    /**
+     * Saves the snapshot of a file unless it is up to date, and tells it.
+     *
+     * @param report the report where the outcome is appended
+     */
+    private static void refreshSnapshot(String filename, String separator, Set<Integer> dates,
+                                        Set<Integer> numbers, StringBuilder report) throws IOException,
+            ParseException {
+        if (FingerprintSnapshot.refresh(filename, separator, dates, numbers)) {
+            report.append("Snapshot of " + filename + " saved\n");
+        } else {
+            report.append("Snapshot of " + filename + " up to date\n");
+        }
+    }
+
+    /**
+     * Estimates the differences of the files of a profile.
+     *
+     * @return the result of the profile
+     */
+    private static ProfileResult estimateProfile(String filename1, String filename2,
+                                                 String separator, ColumnProjection projection) {
+        try {
+            final DifferenceEstimate estimate = new DifferenceEstimator(separator, projection)
+                    .estimate(filename1, filename2);
+
+            if (estimate == null) {
+                return new ProfileResult(EXIT_ERROR, FileComparator.CANCELLED + "\n");
+            }
+
+            return new ProfileResult(estimate.hasDifferences() ? EXIT_DIFFERENCES
+                    : EXIT_IDENTICAL, estimate.getSummary());
+        } catch (IOException e) {
+            LOGGER.error("Problem while estimating the differences", e);
+            return new ProfileResult(EXIT_ERROR, "Problem while reading the files: "
+                    + e.getMessage() + "\n");
+        }
+    }
+
+    /**
+     * Returns a listener printing the progress of a comparison of a profile.
+     *
+     * @param number    the number of the profile
+     * @param direction the direction of the comparison
+     * @return the listener or null if the progress is not printed
+     */
+    private ProgressListener progressListener(final int number, final String direction) {
+        final PrintStream stream = this.progress;
+
+        if (stream == null) {
+            return null;
+        }
+
+        return new ProgressListener() {
+            @Override
+            public void progressChanged(Progress progress) {
+                stream.println("Profile " + number + " (" + direction + ") : "
+                        + progress.getDescription());
+            }
+        };
+    }
+
+    /**
+     * Checks the parameters of a profile, like the graphical interface does.
+     *
+     * @param filename1 the path of the first file or directory
+     * @param filename2 the path of the second file or directory
+     * @param separator the field separator
+     * @return the error message or null if the profile is valid
+     */
+    public static String checkProfile(String filename1, String filename2, String separator) {
+        if (StringUtils.isEmpty(filename1)) {
+            return "First file cannot be empty";
+        }
+
+        if (!new File(filename1).exists()) {
+            return "File " + filename1 + " doesn't seem to exist";
+        }
+
+        if (StringUtils.isEmpty(filename2)) {
+            return "Second file cannot be empty";
+        }
+
+        if (!new File(filename2).exists()) {
+            return "File " + filename2 + " doesn't seem to exist";
+        }
+
+        if (new File(filename1).isDirectory() != new File(filename2).isDirectory()) {
+            return "Two files or two directories must be specified";
+        }
+
+        if (StringUtils.isEmpty(separator)) {
+            return "Separator cannot be empty";
+        }
+
+        return null;
+    }
+
+    /**
+     * The result of the comparison of a profile.
+     */
+    private static final class ProfileResult {
+        private final int exitCode;
+        private final String report;
+
+        ProfileResult(int exitCode, String report) {
+            this.exitCode = exitCode;
+            this.report = report;
+        }
+
+        int getExitCode() {
+            return this.exitCode;
+        }
+
+        String getReport() {
+            return this.report;
+        }
+    }
+}
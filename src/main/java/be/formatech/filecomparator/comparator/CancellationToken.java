@@ -0,0 +1,83 @@
+package be.formatech.filecomparator.comparator;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
+
+/**
+ * The cancellation flag of one comparison job.<br>
+ * The parsers and the matchers check it between two lines, which only costs a
+ * volatile read. The tasks registered on the token are cancelled at once when
+ * the token is cancelled.
+ *
+ * @version $Id$
+ * @see ComparisonExecutor
+ */
+public final class CancellationToken {
+
+    /**
+     * A token that is never cancelled.
+     */
+    public static final CancellationToken NONE = new CancellationToken();
+
+    /**
+     * The flag indicating if the job has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * The tasks running for the job.
+     */
+    private final List<Future<?>> tasks = new CopyOnWriteArrayList<Future<?>>();
+
+    /**
+     * Checks if the job has been cancelled.
+     *
+     * @return true if the job has been cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Cancels the job and the tasks running for it.
+     */
+    public void cancel() {
+        if (this == NONE) {
+            return;
+        }
+
+        this.cancelled = true;
+
+        for (Future<?> task : this.tasks) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Registers a task running for the job, so that it is cancelled with the
+     * job.
+     *
+     * @param task the task running for the job
+     */
+    public void register(Future<?> task) {
+        if (this == NONE) {
+            return;
+        }
+
+        this.tasks.add(task);
+
+        if (this.cancelled) {
+            task.cancel(true);
+        }
+    }
+
+    /**
+     * Unregisters a task that is finished.
+     *
+     * @param task the task that is finished
+     */
+    public void unregister(Future<?> task) {
+        this.tasks.remove(task);
+    }
+}
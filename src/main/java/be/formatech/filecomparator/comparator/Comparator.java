@@ -1,10 +1,13 @@
 package be.formatech.filecomparator.comparator;
 
+import be.formatech.filecomparator.comparator.progress.ProgressListener;
+
 import java.io.Serializable;
 
 /**
  * An object that compare two files.<br>
- * The comparison can be cancelled by the cancel method.
+ * The comparison can be cancelled by the cancel method. Cancelling a
+ * comparison doesn't affect the comparisons run by other Comparators.
  *
  * @author Sebastien Vandamme
  * @version $Id: Comparator.java 163 2010-07-23 08:25:56Z g80195 $
@@ -32,4 +35,11 @@ public interface Comparator extends Serializable {
      * Cancels the comparison.
      */
     public void cancel();
+
+    /**
+     * Sets the listener receiving the progress of the next comparisons.
+     *
+     * @param listener the listener or null to stop reporting the progress
+     */
+    public void setProgressListener(ProgressListener listener);
 }
\ No newline at end of file
@@ -1,5 +1,8 @@
 package be.formatech.filecomparator.comparator;
 
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+
 import java.util.Set;
 
 /**
@@ -48,10 +51,68 @@ public final class ComparatorFactory {
 	 */
 	public Comparator getComparator(String separator, Set<Integer> d, Set<Integer> n,
 			final boolean ordered) {
+		return this.getComparator(separator, d, n, ordered, null);
+	}
+
+	/**
+	 * Returns a Comparator based on the parameters, executing the comparisons
+	 * with a given strategy.
+	 * 
+	 * @param separator
+	 *            the field separator
+	 * @param d
+	 *            the Set identifying the date fields
+	 * @param n
+	 *            the Set identifying the number fields
+	 * @param ordered
+	 *            the flag indicating if the Comparator must take care of the
+	 *            ordering
+	 * @param strategy
+	 *            the strategy executing the comparisons or null to choose it
+	 *            for each comparison
+	 * 
+	 * @return a Comparator
+	 */
+	public Comparator getComparator(String separator, Set<Integer> d, Set<Integer> n,
+			final boolean ordered, final Strategy strategy) {
+		return this.getComparator(separator, d, n, ordered, strategy, ColumnProjection.ALL);
+	}
+
+	/**
+	 * Returns a Comparator based on the parameters, executing the comparisons
+	 * with a given strategy and comparing only some columns.
+	 * 
+	 * @param separator
+	 *            the field separator
+	 * @param d
+	 *            the Set identifying the date fields
+	 * @param n
+	 *            the Set identifying the number fields
+	 * @param ordered
+	 *            the flag indicating if the Comparator must take care of the
+	 *            ordering
+	 * @param strategy
+	 *            the strategy executing the comparisons or null to choose it
+	 *            for each comparison
+	 * @param projection
+	 *            the columns taking part in the comparisons or null to
+	 *            compare all the columns
+	 * 
+	 * @return a Comparator
+	 */
+	public Comparator getComparator(String separator, Set<Integer> d, Set<Integer> n,
+			final boolean ordered, final Strategy strategy, final ColumnProjection projection) {
+		final FileComparator comparator;
+
 		if (ordered) {
-			return new OrderedFileComparator(separator, d, n);
+			comparator = new OrderedFileComparator(separator, d, n);
+		} else {
+			comparator = new FileComparator(separator, d, n);
 		}
 
-		return new FileComparator(separator, d, n);
+		comparator.setStrategy(strategy);
+		comparator.setProjection(projection);
+
+		return comparator;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,160 @@
+package be.formatech.filecomparator.comparator;
+
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.NormalizationCache;
+import be.formatech.filecomparator.comparator.events.ComparisonEvents;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The ExecutorService shared by all the comparisons to parse the files.<br>
+ * By default, it has one thread per available processor, with a minimum of two
+ * threads so that both files of a comparison are parsed in parallel. The
+ * number of threads can be set with the system property
+ * "filecomparator.threads" or another ExecutorService can be used.<br>
+ * A task submitted from a task already running in the executor is run
+ * directly in the thread of that task, so that a comparison running in the
+ * pool never waits for a free thread of the same pool.
+ *
+ * @version $Id$
+ * @see CancellationToken
+ */
+public final class ComparisonExecutor {
+    private static final Logger LOGGER = Logger.getLogger(ComparisonExecutor.class);
+
+    /**
+     * The system property giving the number of threads of the default
+     * ExecutorService.
+     */
+    public static final String THREADS_PROPERTY = "filecomparator.threads";
+
+    private static final ComparisonExecutor INSTANCE = new ComparisonExecutor();
+
+    /**
+     * The flag indicating if the current thread runs a task of the executor.
+     */
+    private static final ThreadLocal<Boolean> RUNNING_TASK = new ThreadLocal<Boolean>();
+
+    /**
+     * The ExecutorService running the tasks.
+     */
+    private ExecutorService executorService;
+
+    /**
+     * ComparisonExecutor should not normally be instantiated outside of the
+     * class.
+     */
+    private ComparisonExecutor() {
+        super();
+    }
+
+    /**
+     * Returns the instance of the executor.
+     *
+     * @return the instance of the executor
+     */
+    public static ComparisonExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the ExecutorService running the tasks, creating the default one
+     * if needed.
+     *
+     * @return the ExecutorService running the tasks
+     */
+    public synchronized ExecutorService getExecutorService() {
+        if (this.executorService == null) {
+            final int threads = Integer.getInteger(THREADS_PROPERTY, Math.max(2, Runtime
+                    .getRuntime().availableProcessors()));
+
+            LOGGER.info("Creating a pool of " + threads + " thread(s) to parse the files");
+            this.executorService = Executors.newFixedThreadPool(Math.max(1, threads),
+                    new ComparisonThreadFactory());
+        }
+
+        return this.executorService;
+    }
+
+    /**
+     * Sets the ExecutorService running the tasks. The previous one is not shut
+     * down.
+     *
+     * @param executorService the ExecutorService running the tasks
+     */
+    public synchronized void setExecutorService(ExecutorService executorService) {
+        this.executorService = executorService;
+    }
+
+    /**
+     * Submits a task for a job. The task is registered on the token of the job
+     * so that it is cancelled with the job, and runs with the job id, the
+     * NormalizationCache and the dictionaries of the submitting thread.
+     *
+     * @param task  the task to run
+     * @param token the cancellation token of the job
+     * @param <T>   the type of the result of the task
+     * @return the Future representing the task
+     */
+    public <T> Future<T> submit(final Callable<T> task, CancellationToken token) {
+        final Future<T> future;
+
+        if (Boolean.TRUE.equals(RUNNING_TASK.get())) {
+            final FutureTask<T> futureTask = new FutureTask<T>(task);
+            futureTask.run();
+            future = futureTask;
+        } else {
+            final long jobId = ComparisonEvents.getJobId();
+            final NormalizationCache normalization = NormalizationCache.getCurrent();
+            final ColumnDictionaries.Scope dictionaries = ColumnDictionaries.Scope.getCurrent();
+
+            future = this.getExecutorService().submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    RUNNING_TASK.set(Boolean.TRUE);
+                    ComparisonEvents.setJobId(jobId);
+                    NormalizationCache.setCurrent(normalization);
+                    ColumnDictionaries.Scope.setCurrent(dictionaries);
+
+                    try {
+                        return task.call();
+                    } finally {
+                        RUNNING_TASK.remove();
+                        ComparisonEvents.setJobId(ComparisonEvents.NO_JOB);
+                        NormalizationCache.setCurrent(NormalizationCache.NONE);
+                        ColumnDictionaries.Scope.setCurrent(ColumnDictionaries.Scope.NONE);
+                    }
+                }
+            });
+        }
+
+        token.register(future);
+
+        return future;
+    }
+
+    /**
+     * Creates the daemon threads of the default ExecutorService.
+     */
+    private static final class ComparisonThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            final Thread thread = new Thread(runnable, "comparator-"
+                    + this.count.incrementAndGet());
+
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+
+            return thread;
+        }
+    }
+}
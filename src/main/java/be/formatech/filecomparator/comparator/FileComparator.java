@@ -1,16 +1,55 @@
 package be.formatech.filecomparator.comparator;
 
+import be.formatech.filecomparator.comparator.arena.LineArena;
+import be.formatech.filecomparator.comparator.block.BlockChecksums;
+import be.formatech.filecomparator.comparator.block.BlockReducer;
+import be.formatech.filecomparator.comparator.block.IdenticalBlocks;
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
 import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import be.formatech.filecomparator.comparator.element.NormalizationCache;
+import be.formatech.filecomparator.comparator.events.ComparisonEvent;
+import be.formatech.filecomparator.comparator.events.ComparisonEvents;
+import be.formatech.filecomparator.comparator.events.ComparisonStartEvent;
+import be.formatech.filecomparator.comparator.events.FuzzyMatchBatchEvent;
+import be.formatech.filecomparator.comparator.events.LimitReachedEvent;
+import be.formatech.filecomparator.comparator.metrics.ComparisonMetrics;
+import be.formatech.filecomparator.comparator.metrics.MetricsRegistry;
+import be.formatech.filecomparator.comparator.metrics.Phase;
+import be.formatech.filecomparator.comparator.metrics.PhaseTimer;
+import be.formatech.filecomparator.comparator.plan.Plan;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import be.formatech.filecomparator.comparator.plan.StrategyPlanner;
+import be.formatech.filecomparator.comparator.progress.ProgressListener;
+import be.formatech.filecomparator.comparator.progress.ProgressTracker;
+import be.formatech.filecomparator.comparator.snapshot.FingerprintReducer;
+import be.formatech.filecomparator.comparator.snapshot.FingerprintSnapshot;
+import be.formatech.filecomparator.comparator.snapshot.Fingerprints;
+import be.formatech.filecomparator.comparator.snapshot.ParsedFingerprints;
+import be.formatech.filecomparator.comparator.sort.ExternalSortReducer;
 import be.formatech.filecomparator.utils.ComparatorUtility;
-import org.apache.commons.collections15.bidimap.TreeBidiMap;
+import be.formatech.filecomparator.utils.MappedFileUtility;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.log4j.Logger;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Compares two files line by line, based on a separator that separates the
@@ -21,6 +60,17 @@ import java.util.Set;
  * For each field, it checks if it is a number or a date and, if it is the case,
  * it compares the field as a number or as a date.<br>
  * If not, it compares the field as a string.<br>
+ * A FileComparator holds the state of the comparison it runs, so it runs one
+ * comparison at a time. Comparisons running concurrently must use their own
+ * FileComparator, they share nothing but the ComparisonExecutor and the
+ * ParsedFileCache.<br>
+ * When the MetricsRegistry is enabled, the phases of each comparison are
+ * measured and their summary is appended to the result.<br>
+ * Each comparison is a job recorded by the JDK Flight Recorder, with events
+ * for its start and end, the parsed batches of lines, the fuzzy-match batches
+ * and the limits reached.<br>
+ * The strategy executing each comparison is chosen by a StrategyPlanner,
+ * unless the user asks for one, and is given at the end of the result.<br>
  * 
  * @version $Id: FileComparator.java 165 2010-07-23 13:49:51Z g80195 $
  * 
@@ -33,11 +83,30 @@ public class FileComparator implements Comparator {
 
 	private static final Logger LOGGER = Logger.getLogger(FileComparator.class);
 
+	/**
+	 * The minimum size of the files for which the identical blocks of lines at
+	 * the same line numbers are skipped before parsing, when the order matters
+	 * : 1 MB. Below, skipping them isn't faster.
+	 */
+	static final long BLOCK_PRE_PASS_THRESHOLD = 1024 * 1024;
+
+	/** The result of a comparison of files that exactly match. */
+	public static final String FILES_MATCH = "Files exactly match\n";
+
+	/** The result of a comparison cancelled by the user. */
+	public static final String CANCELLED = "Comparison cancelled by the user";
+
+	/** The result of a comparison of files that don't exist. */
+	public static final String INVALID_FILES = "Two valid files must be specified";
+
+	/** The beginning of the result of a comparison that failed. */
+	public static final String PROBLEM = "Problem while ";
+
 	/** The Lines of the first file contained in a Map. */
-	private Map<Integer, Line> firstFileLinesAsMap = null;
+	private transient Map<Integer, Line> firstFileLinesAsMap = null;
 
 	/** The Lines of the second file contained in a Map. */
-	private Map<Integer, Line> secondFileLinesAsMap = null;
+	private transient Map<Integer, Line> secondFileLinesAsMap = null;
 
 	/** The field separator. */
 	private final String separator;
@@ -48,8 +117,50 @@ public class FileComparator implements Comparator {
 	/** The Set identifying the number fields of the Lines. */
 	private final Set<Integer> numbers;
 
-	/** The flag indicating if the comparison has been cancelled. */
-	private boolean cancelled;
+	/** The columns taking part in the comparisons. */
+	private volatile ColumnProjection projection = ColumnProjection.ALL;
+
+	/** The cancellation token of the comparisons. */
+	private transient CancellationToken token = new CancellationToken();
+
+	/** The flag indicating if a comparison is running. */
+	private transient AtomicBoolean comparing = new AtomicBoolean();
+
+	/** The metrics of the current comparison. */
+	private transient volatile ComparisonMetrics metrics = ComparisonMetrics.DISABLED;
+
+	/** The listener receiving the progress of the comparisons. */
+	private transient volatile ProgressListener progressListener;
+
+	/** The progress of the current comparison. */
+	private transient volatile ProgressTracker progress = ProgressTracker.NONE;
+
+	/** The strategy requested by the user, null to choose it automatically. */
+	private volatile Strategy strategy;
+
+	/** The strategy executing the current comparison. */
+	private transient Plan plan;
+
+	/**
+	 * The number of lines skipped in identical blocks before parsing the files
+	 * of the current comparison, -1 if the blocks were not compared.
+	 */
+	private transient int blockSkippedLines = -1;
+
+	/**
+	 * The identical blocks of the files of the current comparison, when the
+	 * order doesn't matter.
+	 */
+	private transient IdenticalBlocks identicalBlocks;
+
+	/** The Flight Recorder event of the current comparison. */
+	private transient ComparisonEvent job = new ComparisonEvent();
+
+	/** The number of fuzzy-matched Lines recorded in one FuzzyMatchBatchEvent. */
+	static final int FUZZY_MATCH_BATCH = 64;
+
+	/** The maximum number of differences reported by a comparison. */
+	public static final int MAXIMUM_DIFFERENCES = 1000;
 
 	/**
 	 * Initializes a newly created FileComparator object.
@@ -61,85 +172,1063 @@ public class FileComparator implements Comparator {
 	 * @param n
 	 *            the Set identifying the number fields of the Lines
 	 */
-	public FileComparator(String separator, Set<Integer> d, Set<Integer> n) {
-		super();
-		this.separator = separator;
-		this.dates = d;
-		this.numbers = n;
+	public FileComparator(String separator, Set<Integer> d, Set<Integer> n) {
+		super();
+		this.separator = separator;
+		this.dates = d;
+		this.numbers = n;
+	}
+
+	/**
+	 * Reads the settings of a serialized FileComparator. The state of the
+	 * comparisons is not serialized : the FileComparator is ready for a new
+	 * comparison, without progress listener.
+	 * 
+	 * @param in
+	 *            the stream to read from
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws ClassNotFoundException
+	 *             if the class of a setting cannot be found
+	 */
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+
+		this.token = new CancellationToken();
+		this.comparing = new AtomicBoolean();
+		this.metrics = ComparisonMetrics.DISABLED;
+		this.progress = ProgressTracker.NONE;
+		this.blockSkippedLines = -1;
+		this.job = new ComparisonEvent();
+	}
+
+	/**
+	 * Compares two files line by line, based on a separator that separates the
+	 * different fields of each line.<br>
+	 * It doesn't take care of the order of the lines i.e. if line 5 of the
+	 * first file is the same as line 154 of the second file, it considers that
+	 * it found line 5 in the second file, no matter where in the file it found
+	 * it.<br>
+	 * For each field, it checks if it is a number or a date and, if it is the
+	 * case, it compares the field as a number or as a date.<br>
+	 * If not, it compares the field as a string.<br>
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * 
+	 * @return a String containing all the difference and error messages
+	 * @throws IllegalStateException
+	 *             if the comparator is already comparing files in another
+	 *             thread
+	 */
+	public String compare(final String filename1, final String filename2) {
+		if (!this.comparing.compareAndSet(false, true)) {
+			throw new IllegalStateException(
+					"The comparator is already comparing files, use one comparator per comparison");
+		}
+
+		final long previousJobId = ComparisonEvents.getJobId();
+		final NormalizationCache previousCache = NormalizationCache.getCurrent();
+		final NormalizationCache normalization = new NormalizationCache();
+		final ColumnDictionaries.Scope previousScope = ColumnDictionaries.Scope.getCurrent();
+		final ComparisonEvent event = this.startJob(filename1, filename2);
+		String result = null;
+
+		NormalizationCache.setCurrent(normalization);
+		ColumnDictionaries.Scope.setCurrent(new ColumnDictionaries.Scope());
+
+		try {
+			final long start = System.nanoTime();
+
+			this.metrics = MetricsRegistry.getInstance().newMetrics();
+			this.progress = this.progressListener == null ? ProgressTracker.NONE
+					: new ProgressTracker(this.progressListener);
+			this.plan = null;
+
+			final String compared = this.compareFiles(filename1, filename2);
+
+			this.metrics.addNormalizations(normalization.getHits(), normalization.getMisses());
+			result = this.appendMetrics(this.appendPlan(compared), start);
+
+			return result;
+		} finally {
+			this.endJob(event, result);
+			ComparisonEvents.setJobId(previousJobId);
+			NormalizationCache.setCurrent(previousCache);
+			ColumnDictionaries.Scope.setCurrent(previousScope);
+			this.comparing.set(false);
+		}
+	}
+
+	/**
+	 * Compares Lines already read, with their numbers in the files, the way
+	 * compare compares the Lines of two files once they are parsed.<br>
+	 * The Lines may be only a part of the files, like the shards compared by a
+	 * ShardWorker : no strategy is planned and the metrics are not recorded.
+	 * The Lines of the second Map are not consumed.
+	 * 
+	 * @param lines1
+	 *            the Lines of the first file, by line number
+	 * @param lines2
+	 *            the Lines of the second file, by line number
+	 * 
+	 * @return a String containing all the difference messages, one per line,
+	 *         empty if the Lines exactly match
+	 * @throws IllegalStateException
+	 *             if the comparator is already comparing files in another
+	 *             thread
+	 */
+	public String compareLines(final Map<Integer, Line> lines1, final Map<Integer, Line> lines2) {
+		if (!this.comparing.compareAndSet(false, true)) {
+			throw new IllegalStateException(
+					"The comparator is already comparing files, use one comparator per comparison");
+		}
+
+		try {
+			this.plan = null;
+			this.setFile1LinesAsMap(lines1);
+			this.setFile2LinesAsMap(LineTable.copyOf(lines2));
+
+			final String result = this.checkFiles();
+
+			return this.isCancelled() ? CANCELLED : result;
+		} finally {
+			this.setFile1LinesAsMap(null);
+			this.setFile2LinesAsMap(null);
+			this.comparing.set(false);
+		}
+	}
+
+	/**
+	 * Starts a new comparison job : gives it an id, held by the current
+	 * thread, and records its start.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * 
+	 * @return the event of the job, begun
+	 */
+	private ComparisonEvent startJob(final String filename1, final String filename2) {
+		final ComparisonEvent event = new ComparisonEvent();
+
+		event.jobId = ComparisonEvents.nextJobId();
+		event.firstFile = filename1;
+		event.secondFile = filename2;
+		event.ordered = this.isOrdered();
+		this.job = event;
+		ComparisonEvents.setJobId(event.jobId);
+
+		final ComparisonStartEvent startEvent = new ComparisonStartEvent();
+
+		if (startEvent.isEnabled()) {
+			startEvent.jobId = event.jobId;
+			startEvent.firstFile = filename1;
+			startEvent.secondFile = filename2;
+			startEvent.ordered = event.ordered;
+			startEvent.commit();
+		}
+
+		event.begin();
+
+		return event;
+	}
+
+	/**
+	 * Records the end of a comparison job.
+	 * 
+	 * @param event
+	 *            the event of the job
+	 * @param result
+	 *            the result of the comparison or null if it failed
+	 */
+	private void endJob(final ComparisonEvent event, final String result) {
+		event.end();
+
+		if (event.shouldCommit()) {
+			if (isMatch(result)) {
+				event.outcome = "match";
+			} else if (CANCELLED.equals(result)) {
+				event.outcome = "cancelled";
+			} else if (event.differences > 0) {
+				event.outcome = "differences";
+			} else {
+				event.outcome = "error";
+			}
+
+			event.commit();
+		}
+	}
+
+	/**
+	 * Records that the comparison reached one of its limits.
+	 * 
+	 * @param limit
+	 *            the name of the limit
+	 * @param value
+	 *            the value of the limit
+	 */
+	void reachLimit(final String limit, final long value) {
+		final LimitReachedEvent event = new LimitReachedEvent();
+
+		if (event.isEnabled()) {
+			event.jobId = this.job.jobId;
+			event.firstFile = this.job.firstFile;
+			event.secondFile = this.job.secondFile;
+			event.limit = limit;
+			event.value = value;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Checks if the result of a comparison says that the files exactly match,
+	 * the summary of the metrics being possibly appended to it.
+	 * 
+	 * @param result
+	 *            the result of a comparison
+	 * 
+	 * @return true if the files exactly match, false otherwise
+	 */
+	public static boolean isMatch(String result) {
+		return result != null && result.startsWith(FILES_MATCH);
+	}
+
+	/**
+	 * Checks if the result of a comparison is an error message or the
+	 * cancellation message, i.e. if the files could not be compared.
+	 * 
+	 * @param result
+	 *            the result of a comparison
+	 * 
+	 * @return true if the files were not compared, false otherwise
+	 */
+	public static boolean isError(String result) {
+		return result == null || CANCELLED.equals(result) || result.startsWith(PROBLEM)
+				|| result.startsWith(INVALID_FILES);
+	}
+
+	/**
+	 * Appends the strategy that executed a finished comparison to its result,
+	 * with the number of lines skipped in identical blocks if the blocks of
+	 * the files were compared before parsing them.
+	 * 
+	 * @param result
+	 *            the result of the comparison
+	 * 
+	 * @return the result followed by the strategy, or the result alone if the
+	 *         comparison was cancelled or if the files could not be compared
+	 */
+	private String appendPlan(String result) {
+		if (this.plan == null || isError(result)) {
+			return result;
+		}
+
+		if (this.blockSkippedLines >= 0) {
+			return result + "\n" + this.plan + ", after skipping " + this.blockSkippedLines
+					+ " line(s) in identical blocks\n";
+		}
+
+		return result + "\n" + this.plan + "\n";
+	}
+
+	/**
+	 * Appends the summary of the metrics of a finished comparison to its
+	 * result and adds them to the MetricsRegistry.
+	 * 
+	 * @param result
+	 *            the result of the comparison
+	 * @param start
+	 *            the start time of the comparison, in nanoseconds
+	 * 
+	 * @return the result followed by the summary, or the result alone if the
+	 *         metrics are disabled, the comparison was cancelled or the files
+	 *         could not be compared
+	 */
+	private String appendMetrics(String result, long start) {
+		final ComparisonMetrics comparisonMetrics = this.metrics;
+
+		if (!comparisonMetrics.isEnabled() || isError(result)) {
+			return result;
+		}
+
+		comparisonMetrics.setElapsedTime(System.nanoTime() - start);
+		MetricsRegistry.getInstance().add(comparisonMetrics);
+
+		return result + "\nComparison metrics :\n" + comparisonMetrics.getSummary();
+	}
+
+	/**
+	 * Compares two files.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * 
+	 * @return a String containing all the difference and error messages
+	 */
+	private String compareFiles(final String filename1, final String filename2) {
+		LOGGER.info("Comparing...");
+		final StringBuilder result = new StringBuilder();
+
+		this.blockSkippedLines = -1;
+		this.identicalBlocks = null;
+
+		if (!StringUtils.isEmpty(filename1) && !StringUtils.isEmpty(filename2)
+				&& new File(filename1).exists() && new File(filename2).exists()) {
+			final PhaseTimer timer = this.metrics.startTimer(Phase.READ);
+
+			this.progress.startReading(new File(filename1).length()
+					+ new File(filename2).length());
+
+			final long mismatch = this.findFirstDifference(filename1, filename2);
+
+			timer.stop();
+
+			if (mismatch == MappedFileUtility.IDENTICAL) {
+				this.setPlan(new Plan(Strategy.IDENTICAL, "the files have the same bytes",
+						this.strategy == Strategy.IDENTICAL));
+				this.progress.finish();
+				LOGGER.info("End of comparison");
+				return FILES_MATCH;
+			}
+
+			this.setPlan(new StrategyPlanner(this.separator, this.dates, this.numbers,
+					this.projection).plan(filename1, filename2, this.isOrdered(), mismatch,
+					this.strategy));
+
+			final Strategy chosen = this.plan.getStrategy();
+
+			if (chosen == Strategy.IDENTICAL) {
+				result.append(this.describeMismatch(filename1, filename2, mismatch));
+			} else if (chosen == Strategy.STREAMING_ORDERED) {
+				if (!this.streamFiles(filename1, filename2, mismatch, result)) {
+					return result.toString();
+				}
+			} else if (!this.compareParsed(chosen, filename1, filename2, mismatch, result)) {
+				return result.toString();
+			}
+
+			if (this.isCancelled()) {
+				this.stopCancelled(result);
+				return result.toString();
+			}
+
+			timer.switchTo(Phase.RENDER);
+			final int numberOfDifferences = this.getNumberOfDifferences(result);
+
+			this.job.differences = numberOfDifferences;
+
+			if (numberOfDifferences == 0) {
+				result.append(FILES_MATCH);
+			} else {
+				result.append("\n");
+				result.append(numberOfDifferences);
+				result.append(" difference(s) found\n");
+			}
+
+			timer.stop();
+			this.metrics.addBytes(Phase.RENDER, result.length());
+			this.progress.finish();
+		} else {
+			result.append(INVALID_FILES);
+		}
+
+		LOGGER.info("End of comparison");
+
+		return result.toString();
+	}
+
+	/**
+	 * Sets the strategy executing the current comparison.
+	 * 
+	 * @param comparisonPlan
+	 *            the strategy and the reason of the choice
+	 */
+	private void setPlan(final Plan comparisonPlan) {
+		LOGGER.info(comparisonPlan);
+		this.plan = comparisonPlan;
+		this.job.strategy = comparisonPlan.getStrategy().getLabel();
+	}
+
+	/**
+	 * Describes the first difference found by the comparison of the bytes of
+	 * both files.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param mismatch
+	 *            the position of the first byte that differs
+	 * 
+	 * @return the difference message
+	 */
+	private String describeMismatch(final String filename1, final String filename2,
+			final long mismatch) {
+		final long length1 = new File(filename1).length();
+		final long length2 = new File(filename2).length();
+
+		if (length1 != length2) {
+			return "Files have not the same size : " + length1 + " and " + length2 + " bytes\n";
+		}
+
+		return "Files differ from byte " + mismatch + "\n";
+	}
+
+	/**
+	 * Parses both files, or only their Lines that differ, with the chosen
+	 * strategy and checks their Lines.
+	 * 
+	 * @param chosen
+	 *            the strategy executing the comparison
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param mismatch
+	 *            the position of the first byte that differs or 0 if it is
+	 *            unknown
+	 * @param result
+	 *            the StringBuilder where to put the differences or the
+	 *            possible error message
+	 * 
+	 * @return true if the files were compared, false if the comparison must
+	 *         stop
+	 */
+	private boolean compareParsed(final Strategy chosen, final String filename1,
+			final String filename2, final long mismatch, final StringBuilder result) {
+		if (!this.isOrdered() && !this.skipIdenticalBlocks(filename1, filename2, result)) {
+			return false;
+		}
+
+		if (chosen == Strategy.EXTERNAL_SORT || chosen == Strategy.KEY_JOIN) {
+			final PhaseTimer timer = this.metrics.startTimer(Phase.READ);
+			final boolean reduced = this.reduceWithExternalSort(filename1, filename2, result);
+			timer.stop();
+
+			if (!reduced) {
+				return false;
+			}
+		} else if (chosen == Strategy.OFF_HEAP_ARENA) {
+			if (!this.reduceWithArenas(filename1, filename2, result)) {
+				return false;
+			}
+		} else if (this.isBlockPrePassUseful(filename1, filename2)) {
+			final PhaseTimer timer = this.metrics.startTimer(Phase.READ);
+			final boolean reduced = this.reduceWithBlocks(filename1, filename2, result);
+			timer.stop();
+
+			if (!reduced) {
+				return false;
+			}
+		} else if (this.isOrdered() && mismatch > 0
+				&& !this.areCached(filename1, filename2)) {
+			if (!this.parseFilesFrom(filename1, filename2, mismatch, result)) {
+				return false;
+			}
+		} else if (!this.parseFiles(filename1, filename2, result)) {
+			return false;
+		}
+
+		this.job.firstFileLines = this.getFirstFileLinesAsMap().size();
+		this.job.secondFileLines = this.getSecondFileLinesAsMap().size();
+		this.progress.startMatching(this.job.firstFileLines);
+
+		if (chosen == Strategy.KEY_JOIN) {
+			result.append(this.checkFilesByKey());
+		} else {
+			result.append(this.checkFiles());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares the lines of both files while reading them, without keeping
+	 * them in memory. Only the comparisons taking care of the order can
+	 * stream the files, the other ones are executed IN_MEMORY_HASH instead.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param mismatch
+	 *            the position of the first byte that differs or 0 if it is
+	 *            unknown
+	 * @param result
+	 *            the StringBuilder where to put the differences or the
+	 *            possible error message
+	 * 
+	 * @return true if the files were compared, false if the comparison must
+	 *         stop
+	 */
+	boolean streamFiles(final String filename1, final String filename2, final long mismatch,
+			final StringBuilder result) {
+		this.setPlan(new Plan(Strategy.IN_MEMORY_HASH, Strategy.STREAMING_ORDERED.getLabel()
+				+ " is not available when the order doesn't matter", false));
+
+		return this.compareParsed(Strategy.IN_MEMORY_HASH, filename1, filename2, mismatch, result);
+	}
+
+	/**
+	 * Removes the Lines that exactly match by sorting the fingerprints of the
+	 * lines of both files on disk, and puts only the Lines that differ in the
+	 * Maps, with their original line numbers.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
+	 * 
+	 * @return true if the Lines were reduced, false otherwise
+	 */
+	private boolean reduceWithExternalSort(final String filename1, final String filename2,
+			final StringBuilder result) {
+		LOGGER.info("Sorting the lines of the files to compare");
+		final ExternalSortReducer reducer = new ExternalSortReducer(this, this.separator,
+				this.dates, this.numbers, this.projection);
+
+		try {
+			if (this.identicalBlocks == null) {
+				reducer.reduce(filename1, filename2);
+			} else {
+				reducer.reduce(filename1, this.identicalBlocks.getFirstSkipped(), filename2,
+						this.identicalBlocks.getSecondSkipped());
+			}
+		} catch (Exception e) {
+			LOGGER.error("Problem while sorting the lines of the files", e);
+			result.append("Problem while sorting the lines of the files");
+			return false;
+		}
+
+		if (this.isCancelled()) {
+			return this.stopCancelled(result);
+		}
+
+		this.progress.addBytesRead(new File(filename1).length() + new File(filename2).length());
+		this.setFile1LinesAsMap(reducer.getFirstFileLinesAsMap());
+		this.setFile2LinesAsMap(reducer.getSecondFileLinesAsMap());
+
+		return true;
+	}
+
+	/**
+	 * Writes the lines of both files outside of the heap, in LineArenas, and
+	 * puts only the Lines that differ in the Maps, with their original line
+	 * numbers. The arenas are closed before returning, whatever happens.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
+	 * 
+	 * @return true if the Lines were reduced, false otherwise
+	 */
+	private boolean reduceWithArenas(final String filename1, final String filename2,
+			final StringBuilder result) {
+		LOGGER.info("Parsing the files to compare off-heap");
+		final FingerprintReducer reducer = new FingerprintReducer(this);
+		final PhaseTimer timer = this.metrics.startTimer(Phase.READ);
+		LineArena first = null;
+		LineArena second = null;
+
+		try {
+			first = LineArena.parse(filename1, this.separator, this.dates, this.numbers,
+					this.projection, this.token, this.progress);
+
+			if (first != null) {
+				second = LineArena.parse(filename2, this.separator, this.dates, this.numbers,
+						this.projection, this.token, this.progress);
+			}
+
+			if (first == null || second == null || this.isCancelled()) {
+				return this.stopCancelled(result);
+			}
+
+			this.metrics.addLines(Phase.READ, first.getLineCount() + second.getLineCount());
+			this.metrics.addBytes(Phase.READ, new File(filename1).length()
+					+ new File(filename2).length());
+			timer.switchTo(Phase.EXACT_MATCH);
+			this.reduce(reducer, first, second);
+		} catch (Exception e) {
+			LOGGER.error("Problem while parsing the files off-heap", e);
+			result.append("Problem while parsing the files");
+			return false;
+		} finally {
+			timer.stop();
+
+			if (first != null) {
+				first.close();
+			}
+
+			if (second != null) {
+				second.close();
+			}
+		}
+
+		if (this.isCancelled()) {
+			return this.stopCancelled(result);
+		}
+
+		this.setFile1LinesAsMap(reducer.getFirstFileLinesAsMap());
+		this.setFile2LinesAsMap(reducer.getSecondFileLinesAsMap());
+
+		return true;
+	}
+
+	/**
+	 * Compares the bytes of both files, through memory-mapped windows, to find
+	 * the first byte that differs.<br>
+	 * If the order doesn't matter, the bytes are compared only if both files
+	 * have the same size.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * 
+	 * @return the position of the first byte that differs, IDENTICAL if both
+	 *         files are identical or 0 if it is unknown
+	 */
+	long findFirstDifference(final String filename1, final String filename2) {
+		if (!this.isOrdered() && new File(filename1).length() != new File(filename2).length()) {
+			return 0;
+		}
+
+		try {
+			return MappedFileUtility.mismatch(filename1, filename2);
+		} catch (IOException e) {
+			LOGGER.error("Problem while comparing the bytes of the files", e);
+			return 0;
+		}
+	}
+
+	/**
+	 * Parses both files from the beginning of the line containing the first
+	 * byte that differs, the previous lines being identical in both files.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param mismatch
+	 *            the position of the first byte that differs
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
+	 * 
+	 * @return true if the files were parsed, false otherwise
+	 */
+	private boolean parseFilesFrom(final String filename1, final String filename2,
+			final long mismatch, final StringBuilder result) {
+		try {
+			final MappedFileUtility.LineStart start = MappedFileUtility.findLineStart(filename1,
+					mismatch);
+
+			LOGGER.info("Skipping the " + (start.getLineNumber() - 1)
+					+ " identical line(s) at the beginning of the files");
+
+			final ComparisonExecutor executor = ComparisonExecutor.getInstance();
+			final Future<Map<Integer, Line>> task1 = executor.submit(this.parseFrom(filename1,
+					start), this.token);
+			final Future<Map<Integer, Line>> task2 = executor.submit(this.parseFrom(filename2,
+					start), this.token);
+			final Map<Integer, Line> lines1 = this.await(task1);
+			final Map<Integer, Line> lines2 = this.await(task2);
+
+			if (lines1 == null || lines2 == null || this.isCancelled()) {
+				return this.stopCancelled(result);
+			}
+
+			this.setFile1LinesAsMap(lines1);
+			this.setFile2LinesAsMap(lines2);
+		} catch (Exception e) {
+			LOGGER.error("Problem while parsing the files", e);
+			result.append("Problem while parsing the files");
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns a task parsing a file from the beginning of a line.
+	 * 
+	 * @param filename
+	 *            the path of the file to parse
+	 * @param start
+	 *            the beginning of the first line to parse
+	 * 
+	 * @return the task parsing the file
+	 */
+	private Callable<Map<Integer, Line>> parseFrom(final String filename,
+			final MappedFileUtility.LineStart start) {
+		return new Callable<Map<Integer, Line>>() {
+			@Override
+			public Map<Integer, Line> call() throws Exception {
+				return ComparatorUtility.parseFile(filename, FileComparator.this.separator,
+						FileComparator.this.dates, FileComparator.this.numbers,
+						FileComparator.this.projection, start.getOffset(), start.getLineNumber(),
+						FileComparator.this.token,
+					FileComparator.this.metrics, FileComparator.this.progress);
+			}
+		};
+	}
+
+	/**
+	 * Waits for a task of the comparison submitted to the ComparisonExecutor.
+	 * <br>
+	 * If the thread of the comparison is interrupted, the comparison is
+	 * cancelled.
+	 * 
+	 * @param task
+	 *            the task to wait for
+	 * 
+	 * @return the result of the task or null if the comparison has been
+	 *         cancelled
+	 * @throws ExecutionException
+	 *             if the task threw an exception
+	 */
+	private <T> T await(final Future<T> task) throws ExecutionException {
+		try {
+			return task.get();
+		} catch (CancellationException e) {
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.token.cancel();
+			return null;
+		} finally {
+			this.token.unregister(task);
+		}
+	}
+
+	/**
+	 * Replaces the result by the cancellation message.
+	 * 
+	 * @param result
+	 *            the StringBuilder where to put the message
+	 * 
+	 * @return false, the comparison must stop
+	 */
+	private boolean stopCancelled(final StringBuilder result) {
+		LOGGER.info("Comparison cancelled by the user");
+		result.setLength(0);
+		result.append(CANCELLED);
+
+		return false;
+	}
+
+	/**
+	 * Parses both files in parallel and puts their Lines in the Maps.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
+	 * 
+	 * @return true if the files were parsed, false if the comparison must stop
+	 */
+	private boolean parseFiles(final String filename1, final String filename2,
+			final StringBuilder result) {
+		LOGGER.info("Parsing the files to compare");
+		final ComparisonExecutor executor = ComparisonExecutor.getInstance();
+		this.shareCachedDictionaries(filename1, filename2);
+
+		final FileParser parser1 = new FileParser(filename1, this.token);
+		final FileParser parser2 = new FileParser(filename2, this.token);
+		final Future<FileParser> task1 = executor.submit(Executors.callable(parser1, parser1),
+				this.token);
+		final Future<FileParser> task2 = executor.submit(Executors.callable(parser2, parser2),
+				this.token);
+
+		try {
+			if (this.await(task1) == null || this.await(task2) == null || this.isCancelled()) {
+				parser1.closeSnapshot();
+				parser2.closeSnapshot();
+				return this.stopCancelled(result);
+			}
+		} catch (ExecutionException e) {
+			LOGGER.error("Problem while parsing the files", e.getCause());
+			result.append("Problem while parsing the files");
+			return false;
+		}
+
+		if (parser1.getError().length() > 0 || parser2.getError().length() > 0) {
+			result.append(parser1.getError());
+
+			if (parser1.getError().length() > 0 && parser2.getError().length() > 0) {
+				result.append("\n");
+			}
+
+			result.append(parser2.getError());
+			return false;
+		}
+
+		if (parser1.getSnapshot() == null && parser2.getSnapshot() == null
+				&& (this.identicalBlocks == null || this.identicalBlocks.getSkippedLines() == 0)) {
+			// the Lines of the second file are consumed while matching, the
+			// cached LineTable must not be modified
+			this.setFile1LinesAsMap(parser1.getFileLinesAsMap());
+			this.setFile2LinesAsMap(new LineTable(parser2.getFileLinesAsMap()));
+		} else {
+			return this.reduceWithSnapshots(parser1, parser2, result);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Checks if only the Lines of the blocks that differ should be parsed i.e.
+	 * if none of the files has a snapshot and if they are not both in the
+	 * ParsedFileCache. When the order matters, both files must also be big
+	 * enough.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * 
+	 * @return true if only the blocks that differ should be parsed, false
+	 *         otherwise
+	 */
+	boolean isBlockPrePassUseful(final String filename1, final String filename2) {
+		if (this.isOrdered() && (new File(filename1).length() < BLOCK_PRE_PASS_THRESHOLD
+				|| new File(filename2).length() < BLOCK_PRE_PASS_THRESHOLD)) {
+			return false;
+		}
+
+		if (new File(FingerprintSnapshot.getSnapshotLocation(filename1)).isFile()
+				|| new File(FingerprintSnapshot.getSnapshotLocation(filename2)).isFile()) {
+			return false;
+		}
+
+		return !this.areCached(filename1, filename2);
+	}
+
+	/**
+	 * Checks if both files are in the ParsedFileCache.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * 
+	 * @return true if both files are in the cache, false otherwise
+	 */
+	private boolean areCached(final String filename1, final String filename2) {
+		try {
+			final ParsedFileCache cache = ParsedFileCache.getInstance();
+
+			return cache.isCached(filename1, this.separator, this.dates, this.numbers,
+					this.projection)
+					&& cache.isCached(filename2, this.separator, this.dates, this.numbers,
+							this.projection);
+		} catch (IOException e) {
+			LOGGER.error("Problem while looking for the files in the cache", e);
+			return false;
+		}
+	}
+
+	/**
+	 * Shares the dictionaries of the files in the ParsedFileCache with the
+	 * comparison, so that a file parsed in parallel with a cached file is
+	 * parsed with the dictionaries of the cached file.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 */
+	private void shareCachedDictionaries(final String filename1, final String filename2) {
+		try {
+			final ParsedFileCache cache = ParsedFileCache.getInstance();
+
+			cache.shareDictionaries(filename1, this.separator, this.dates, this.numbers,
+					this.projection);
+			cache.shareDictionaries(filename2, this.separator, this.dates, this.numbers,
+					this.projection);
+		} catch (IOException e) {
+			LOGGER.error("Problem while looking for the files in the cache", e);
+		}
 	}
 
 	/**
-	 * Compares two files line by line, based on a separator that separates the
-	 * different fields of each line.<br>
-	 * It doesn't take care of the order of the lines i.e. if line 5 of the
-	 * first file is the same as line 154 of the second file, it considers that
-	 * it found line 5 in the second file, no matter where in the file it found
-	 * it.<br>
-	 * For each field, it checks if it is a number or a date and, if it is the
-	 * case, it compares the field as a number or as a date.<br>
-	 * If not, it compares the field as a string.<br>
+	 * Pairs the identical blocks of lines of both files, wherever they are,
+	 * when the order doesn't matter. Whatever the strategy, the Lines of these
+	 * blocks are skipped, then the Lines left that exactly match are removed,
+	 * so that the differences don't depend on the strategy nor on the size of
+	 * the files.
 	 * 
 	 * @param filename1
 	 *            the path of the first file to compare
 	 * @param filename2
 	 *            the path of the second file to compare
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
 	 * 
-	 * @return a String containing all the difference and error messages
+	 * @return true if the blocks were compared, false otherwise
 	 */
-	public String compare(final String filename1, final String filename2) {
-		LOGGER.info("Comparing...");
-		this.cancelled = false;
-		final StringBuilder result = new StringBuilder();
+	private boolean skipIdenticalBlocks(final String filename1, final String filename2,
+			final StringBuilder result) {
+		LOGGER.info("Skipping the identical blocks of the files to compare");
+		final PhaseTimer timer = this.metrics.startTimer(Phase.READ);
 
-		if (!StringUtils.isEmpty(filename1) && !StringUtils.isEmpty(filename2)
-				&& new File(filename1).exists() && new File(filename2).exists()) {
-			// TODO review
-			LOGGER.info("Parsing the files to compare");
-			final FileParser parser1 = new FileParser(filename1, result);
-			final Thread thread1 = new Thread(parser1);
-			final FileParser parser2 = new FileParser(filename2, result);
-			final Thread thread2 = new Thread(parser2);
-
-			thread1.setPriority(Thread.MIN_PRIORITY);
-			thread2.setPriority(Thread.MIN_PRIORITY);
-			thread1.start();
-			thread2.start();
-
-			while ((thread1.isAlive() || thread2.isAlive())) {
-				if (this.isCancelled()) {
-					ComparatorUtility.setCancel(true);
-					LOGGER.info("Comparison cancelled by the user while parsing the files");
-					return "Comparison cancelled by the user";
-				}
-			}
+		try {
+			this.identicalBlocks = IdenticalBlocks.match(BlockChecksums.compute(filename1),
+					BlockChecksums.compute(filename2));
+			this.blockSkippedLines = this.identicalBlocks.getSkippedLines();
+		} catch (IOException e) {
+			LOGGER.error("Problem while reading the blocks of the files", e);
+			result.append("Problem while reading the blocks of the files");
+			return false;
+		} finally {
+			timer.stop();
+		}
 
-			this.setFile1LinesAsMap(parser1.getFileLinesAsMap());
-			this.setFile2LinesAsMap(parser2.getFileLinesAsMap());
+		return !this.isCancelled() || this.stopCancelled(result);
+	}
 
-			// if (ordered) {
-			// LOGGER.info("Order matter");
-			// result.append(this.checkFilesOrdered());
-			// } else {
-			// LOGGER.info("Order doesn't matter");
-			result.append(this.checkFiles());
-			// }
+	/**
+	 * Skips the identical blocks of lines of both files and puts only the
+	 * Lines of the blocks that differ in the Maps, with their original line
+	 * numbers.
+	 * 
+	 * @param filename1
+	 *            the path of the first file to compare
+	 * @param filename2
+	 *            the path of the second file to compare
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
+	 * 
+	 * @return true if the Lines were reduced, false otherwise
+	 */
+	private boolean reduceWithBlocks(final String filename1, final String filename2,
+			final StringBuilder result) {
+		LOGGER.info("Reading the blocks that differ of the files to compare");
+		final BlockReducer reducer = new BlockReducer(this, this.separator, this.dates,
+				this.numbers, this.projection);
 
-			final int numberOfDifferences = this.getNumberOfDifferences(result);
+		try {
+			if (this.identicalBlocks == null) {
+				final BlockChecksums first = BlockChecksums.compute(filename1);
 
-			if (numberOfDifferences == 0) {
-				result.append("Files exactly match\n");
+				this.progress.addBytesRead(new File(filename1).length());
+
+				final BlockChecksums second = BlockChecksums.compute(filename2);
+
+				this.progress.addBytesRead(new File(filename2).length());
+				this.reduce(reducer, first, second);
+				this.blockSkippedLines = reducer.getSkippedLines();
 			} else {
-				result.append("\n");
-				result.append(numberOfDifferences);
-				result.append(" difference(s) found\n");
+				this.progress.addBytesRead(new File(filename1).length()
+						+ new File(filename2).length());
+				reducer.reduceUnordered(filename1, filename2, this.identicalBlocks);
 			}
-		} else {
-			result.append("Two valid files must be specified");
+		} catch (Exception e) {
+			LOGGER.error("Problem while reading the blocks that differ", e);
+			result.append("Problem while reading the blocks that differ");
+			return false;
 		}
 
-		LOGGER.info("End of comparison");
+		this.setFile1LinesAsMap(reducer.getFirstFileLinesAsMap());
+		this.setFile2LinesAsMap(reducer.getSecondFileLinesAsMap());
 
-		return result.toString();
+		return true;
+	}
+
+	/**
+	 * Skips the blocks of lines that exactly match, wherever they are, when the
+	 * identical blocks were not paired before.
+	 * 
+	 * @param reducer
+	 *            the reducer that keeps the Lines of the blocks that differ
+	 * @param first
+	 *            the checksums of the blocks of the first file
+	 * @param second
+	 *            the checksums of the blocks of the second file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws ParseException
+	 *             if a Line contains a date that cannot be parsed
+	 */
+	void reduce(BlockReducer reducer, BlockChecksums first, BlockChecksums second)
+			throws IOException, ParseException {
+		reducer.reduceUnordered(first, second);
+	}
+
+	/**
+	 * Keeps only the Lines that differ, using the fingerprints of the files,
+	 * when at least one of the files has an up to date snapshot or when the
+	 * Lines of identical blocks must be skipped.<br>
+	 * The Lines of a file having a snapshot are read from the file only if
+	 * they differ.
+	 * 
+	 * @param parser1
+	 *            the parser of the first file
+	 * @param parser2
+	 *            the parser of the second file
+	 * @param result
+	 *            the StringBuilder where to put the possible error message
+	 * 
+	 * @return true if the Lines were reduced, false otherwise
+	 */
+	private boolean reduceWithSnapshots(FileParser parser1, FileParser parser2,
+			StringBuilder result) {
+		final FingerprintReducer reducer = new FingerprintReducer(this);
+		final PhaseTimer timer = this.metrics.startTimer(Phase.EXACT_MATCH);
+
+		try {
+			this.reduce(reducer, parser1.getFingerprints(), parser2.getFingerprints());
+		} catch (Exception e) {
+			LOGGER.error("Problem while reading the lines that differ", e);
+			result.append("Problem while reading the lines that differ");
+			return false;
+		} finally {
+			timer.stop();
+			parser1.closeSnapshot();
+			parser2.closeSnapshot();
+		}
+
+		this.setFile1LinesAsMap(reducer.getFirstFileLinesAsMap());
+		this.setFile2LinesAsMap(reducer.getSecondFileLinesAsMap());
+
+		return true;
+	}
+
+	/**
+	 * Removes the Lines that exactly match from both files, wherever they are,
+	 * the Lines of the identical blocks being skipped.
+	 * 
+	 * @param reducer
+	 *            the reducer that keeps the Lines that differ
+	 * @param first
+	 *            the fingerprints of the first file
+	 * @param second
+	 *            the fingerprints of the second file
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 * @throws ParseException
+	 *             if a Line contains a date that cannot be parsed
+	 */
+	void reduce(FingerprintReducer reducer, Fingerprints first, Fingerprints second)
+			throws IOException, ParseException {
+		if (this.identicalBlocks == null) {
+			reducer.reduceUnordered(first, second);
+		} else {
+			reducer.reduceUnordered(first, this.identicalBlocks.getFirstSkipped(), second,
+					this.identicalBlocks.getSecondSkipped());
+		}
 	}
 
 	/**
@@ -160,6 +1249,9 @@ public class FileComparator implements Comparator {
 	 * For each field, it checks if it is a number or a date and, if it is the
 	 * case, it compares the field as a number or as a date.<br>
 	 * If not, it compares the field as a string.<br>
+	 * The fields encoded in the ColumnDictionaries are compared through the
+	 * numbers and the dates parsed by the dictionaries, without parsing them
+	 * again.
 	 * 
 	 * @param key
 	 *            the number of the Line
@@ -170,12 +1262,12 @@ public class FileComparator implements Comparator {
 	 * 
 	 * @return a String containing all the difference and error messages
 	 */
-	String compareLineFieldByField(Integer key, List<String> line1, List<String> line2) {
+	String compareLineFieldByField(Integer key, Line line1, Line line2) {
 		final StringBuilder result = new StringBuilder();
 
 		LOGGER.info("Comparing line " + key + " field by field");
 
-		if (line2.size() != line1.size()) {
+		if (line2.getFieldCount() != line1.getFieldCount()) {
 			result.append("Line ");
 			result.append(key);
 			result.append(" has not the same number of fields in both files\n");
@@ -183,22 +1275,10 @@ public class FileComparator implements Comparator {
 			return result.toString();
 		}
 
-		for (int tokenIndex = 0; tokenIndex < line1.size(); ++tokenIndex) {
-			final String token1 = line1.get(tokenIndex);
-			final String token2 = line2.get(tokenIndex);
-
-			if (!token1.equals(token2)) {
-				if (ComparatorUtility.bothTokenNumber(token1, token2)) {
-					if (!ComparatorUtility.numbersAreEqual(token1, token2)) {
-						this.generateDifferenceMessage(key, tokenIndex + 1, result, token1, token2);
-					}
-				} else if (ComparatorUtility.bothTokenDate(token1, token2)) {
-					if (!ComparatorUtility.datesAreEqual(token1, token2)) {
-						this.generateDifferenceMessage(key, tokenIndex + 1, result, token1, token2);
-					}
-				} else {
-					this.generateDifferenceMessage(key, tokenIndex + 1, result, token1, token2);
-				}
+		for (int tokenIndex = 0; tokenIndex < line1.getFieldCount(); ++tokenIndex) {
+			if (!line1.isEquivalentField(line2, tokenIndex)) {
+				this.generateDifferenceMessage(key, tokenIndex + 1, result, line1
+						.getField(tokenIndex), line2.getField(tokenIndex));
 			}
 		}
 
@@ -234,9 +1314,13 @@ public class FileComparator implements Comparator {
 
 	/**
 	 * Checks the Lines one by one.<br>
-	 * If it doesn't find a match for a complete Line, it searches the first
-	 * Line of the second file that has a Levenshtein distance less than 10% and
-	 * compares the Line of the first file with it, field by field.
+	 * The Lines that exactly match a Line of the second file are removed
+	 * first, wherever they are, like the strategies that remove them before
+	 * parsing the files do. For each Line left, it searches the first Line
+	 * left in the second file that has a Levenshtein distance less than 10%
+	 * and compares the Line of the first file with it, field by field. If no
+	 * Line is left in the second file, the Line is not present in file 2.<br>
+	 * The Lines left in the second file at the end are not present in file 1.
 	 * 
 	 * @return a String containing all the difference and error messages
 	 */
@@ -245,35 +1329,72 @@ public class FileComparator implements Comparator {
 
 		LOGGER.info("Comparing files with order deactivated");
 
+		final LineTable lines2 = this.getSecondFileLineTable();
+		final PhaseTimer timer = this.metrics.startTimer(Phase.EXACT_MATCH);
+		final List<Integer> differing = new ArrayList<Integer>();
+		int checkedLines = 0;
+		int fuzzyLines = 0;
+		int comparedLines = 0;
+		long fuzzyAttempts = 0;
+		FuzzyMatchBatchEvent fuzzyBatch = null;
+		int fuzzyBatchLines = 0;
+		long fuzzyBatchAttempts = 0;
+		boolean limitReached = false;
 		int key = -1;
 
-		for (Integer keyFile1 : this.getFirstFileLinesAsMap().keySet()) {
-			if (this.isCancelled()) {
-				LOGGER.info("Comparison cancelled by the user");
-				break;
-			}
+		try {
+			for (Entry<Integer, Line> line1 : this.getFirstFileLinesAsMap().entrySet()) {
+				if (this.isCancelled()) {
+					LOGGER.info("Comparison cancelled by the user");
+					return result.toString();
+				}
 
-			final Line line1 = this.getFirstFileLinesAsMap().get(keyFile1);
-			final String value1 = line1.getFormattedLine();
-			final int numberOfDifferences = this.getNumberOfDifferences(result);
+				if (++checkedLines % ProgressTracker.PROGRESS_LINES == 0) {
+					this.progress.addLinesMatched(ProgressTracker.PROGRESS_LINES);
+				}
 
-			if (numberOfDifferences > 1000) {
-				LOGGER.info("There is more than 1000 differences");
-				result.append("There is more than 1000 differences. Only the first ");
-				result.append(numberOfDifferences);
-				result.append(" are displayed. \n");
-				break;
+				final Integer match = lines2.getKey(line1.getValue());
+
+				if (match != null) {
+					lines2.consume(match);
+				} else {
+					differing.add(line1.getKey());
+				}
 			}
 
-			if (this.getSecondFileLinesAsMap().containsValue(line1)) {
-				for (Entry<Integer, Line> line2 : this.getSecondFileLinesAsMap().entrySet()) {
-					if (line2.getValue().equals(line1)) {
-						key = line2.getKey();
-						break;
-					}
+			for (Integer keyFile1 : differing) {
+				if (this.isCancelled()) {
+					LOGGER.info("Comparison cancelled by the user");
+					break;
 				}
-			} else {
-				for (Entry<Integer, Line> line2 : this.getSecondFileLinesAsMap().entrySet()) {
+
+				final Line line1 = this.getFirstFileLinesAsMap().get(keyFile1);
+				final String value1 = line1.getFormattedLine();
+				final int numberOfDifferences = this.getNumberOfDifferences(result);
+
+				if (numberOfDifferences > MAXIMUM_DIFFERENCES) {
+					LOGGER.info("There is more than 1000 differences");
+					result.append("There is more than 1000 differences. Only the first ");
+					result.append(numberOfDifferences);
+					result.append(" are displayed. \n");
+					this.reachLimit("differences", MAXIMUM_DIFFERENCES);
+					limitReached = true;
+					break;
+				}
+
+				timer.switchTo(Phase.FUZZY_MATCH);
+				this.progress.setPhase(Phase.FUZZY_MATCH);
+				fuzzyLines++;
+				String nearValue = null;
+
+				if (fuzzyBatch == null) {
+					fuzzyBatch = new FuzzyMatchBatchEvent();
+					fuzzyBatch.begin();
+					fuzzyBatchLines = 0;
+					fuzzyBatchAttempts = fuzzyAttempts;
+				}
+
+				for (Entry<Integer, Line> line2 : lines2.entrySet()) {
 					if (this.isCancelled()) {
 						LOGGER.info("Comparison cancelled by the user");
 						break;
@@ -281,55 +1402,315 @@ public class FileComparator implements Comparator {
 
 					final String value2 = line2.getValue().getFormattedLine();
 
-					if (value1.equals(value2)) {
+					fuzzyAttempts++;
+
+					if (StringUtils.getLevenshteinDistance(value1, value2) <= (value1.length() / 10)) {
 						key = line2.getKey();
+						nearValue = value2;
 						break;
-					} else if (StringUtils.getLevenshteinDistance(value1, value2) <= (value1
-							.length() / 10)) {
-						final List<String> tokens1 = ComparatorUtility.tokenize(value1, this
-								.getSeparator());
-						final List<String> tokens2 = ComparatorUtility.tokenize(value2, this
-								.getSeparator());
+					}
+				}
+
+				if (++fuzzyBatchLines == FUZZY_MATCH_BATCH) {
+					this.commitFuzzyMatchBatch(fuzzyBatch, fuzzyBatchLines, fuzzyAttempts
+							- fuzzyBatchAttempts);
+					fuzzyBatch = null;
+				}
+
+				if (nearValue != null) {
+					timer.switchTo(Phase.FIELD_COMPARE);
+					comparedLines++;
+					result.append(this.compareLineFieldByField(key, line1, lines2.get(key)));
+				}
+
+				timer.switchTo(Phase.EXACT_MATCH);
+				this.progress.setPhase(Phase.EXACT_MATCH);
+
+				if (key == -1) {
+					for (Entry<Integer, Line> line2 : lines2.entrySet()) {
+						timer.switchTo(Phase.FIELD_COMPARE);
+						comparedLines++;
 						key = line2.getKey();
-						result.append(this.compareLineFieldByField(key, tokens1, tokens2));
+						result.append(this.compareLineFieldByField(key, line1, line2
+								.getValue()));
+						timer.switchTo(Phase.EXACT_MATCH);
 						break;
 					}
 				}
+
+				if (key == -1) {
+					result.append("Line ");
+					result.append(keyFile1);
+					result.append(" : Not present in file 2\n");
+				} else {
+					lines2.consume(key);
+					key = -1;
+				}
 			}
 
-			if (key == -1) {
-				for (Entry<Integer, Line> line2 : this.getSecondFileLinesAsMap().entrySet()) {
-					final List<String> tokens1 = ComparatorUtility.tokenize(value1, this
-							.getSeparator());
-					final List<String> tokens2 = ComparatorUtility.tokenize(line2.getValue()
-							.getFormattedLine(), this.getSeparator());
-					key = line2.getKey();
-					result.append(this.compareLineFieldByField(key, tokens1, tokens2));
-					break;
+			if (!limitReached && !this.isCancelled()) {
+				int numberOfDifferences = this.getNumberOfDifferences(result);
+
+				for (Integer keyFile2 : lines2.keySet()) {
+					if (numberOfDifferences > MAXIMUM_DIFFERENCES) {
+						LOGGER.info("There is more than 1000 differences");
+						result.append("There is more than 1000 differences. Only the first ");
+						result.append(numberOfDifferences);
+						result.append(" are displayed. \n");
+						this.reachLimit("differences", MAXIMUM_DIFFERENCES);
+						break;
+					}
+
+					result.append("Line ");
+					result.append(keyFile2);
+					result.append(" : Not present in file 1\n");
+					numberOfDifferences++;
 				}
 			}
+		} finally {
+			timer.stop();
+
+			if (fuzzyBatch != null) {
+				this.commitFuzzyMatchBatch(fuzzyBatch, fuzzyBatchLines, fuzzyAttempts
+						- fuzzyBatchAttempts);
+			}
+
+			this.metrics.addLines(Phase.EXACT_MATCH, checkedLines);
+			this.metrics.addLines(Phase.FUZZY_MATCH, fuzzyLines);
+			this.metrics.addLines(Phase.FIELD_COMPARE, comparedLines);
+			this.metrics.addFuzzyMatchAttempts(fuzzyAttempts);
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * Returns the Lines of the second file in a LineTable whose Lines can be
+	 * consumed, copying them if they are in another Map or in a read-only
+	 * LineTable.
+	 * 
+	 * @return the Lines of the second file
+	 */
+	private LineTable getSecondFileLineTable() {
+		final Map<Integer, Line> lines = this.getSecondFileLinesAsMap();
+
+		if (lines instanceof LineTable && !((LineTable) lines).isReadOnly()) {
+			return (LineTable) lines;
+		}
+
+		final LineTable table = LineTable.copyOf(lines);
+
+		this.setFile2LinesAsMap(table);
+
+		return table;
+	}
+
+	/**
+	 * Checks the Lines one by one, pairing the Lines by their first field.<br>
+	 * The Lines that exactly match must have been removed. A Line of the first
+	 * file is compared field by field with the Line of the second file having
+	 * the same first field. If there is none, the Line is not present in the
+	 * second file.
+	 * 
+	 * @return a String containing all the difference and error messages
+	 */
+	String checkFilesByKey() {
+		final StringBuilder result = new StringBuilder();
+
+		LOGGER.info("Comparing files by key");
+
+		final PhaseTimer timer = this.metrics.startTimer(Phase.INDEX);
+		final Map<String, Integer> keys = new HashMap<String, Integer>();
+
+		for (Entry<Integer, Line> line2 : this.getSecondFileLinesAsMap().entrySet()) {
+			final String key = this.getKey(line2.getValue());
+
+			if (!keys.containsKey(key)) {
+				keys.put(key, line2.getKey());
+			}
+		}
+
+		timer.switchTo(Phase.EXACT_MATCH);
+		int checkedLines = 0;
+		int comparedLines = 0;
+		int numberOfDifferences = 0;
+
+		try {
+			for (Entry<Integer, Line> line1 : this.getFirstFileLinesAsMap().entrySet()) {
+				if (this.isCancelled()) {
+					LOGGER.info("Comparison cancelled by the user");
+					break;
+				}
+
+				if (numberOfDifferences > MAXIMUM_DIFFERENCES) {
+					LOGGER.info("There is more than 1000 differences");
+					result.append("There is more than 1000 differences. Only the first ");
+					result.append(numberOfDifferences);
+					result.append(" are displayed. \n");
+					this.reachLimit("differences", MAXIMUM_DIFFERENCES);
+					break;
+				}
+
+				if (++checkedLines % ProgressTracker.PROGRESS_LINES == 0) {
+					this.progress.addLinesMatched(ProgressTracker.PROGRESS_LINES);
+				}
+
+				final Integer key = keys.remove(this.getKey(line1.getValue()));
+
+				if (key == null) {
+					result.append("Line ");
+					result.append(line1.getKey());
+					result.append(" : Not present in file 2\n");
+				} else {
+					timer.switchTo(Phase.FIELD_COMPARE);
+					comparedLines++;
+					result.append(this.compareLineFieldByField(key, line1.getValue(), this
+							.getSecondFileLinesAsMap().get(key)));
+					timer.switchTo(Phase.EXACT_MATCH);
+				}
 
-			this.getSecondFileLinesAsMap().remove(key);
-			key = -1;
+				numberOfDifferences = this.getNumberOfDifferences(result);
+			}
+		} finally {
+			timer.stop();
+			this.metrics.addLines(Phase.EXACT_MATCH, checkedLines);
+			this.metrics.addLines(Phase.FIELD_COMPARE, comparedLines);
 		}
 
 		return result.toString();
 	}
 
+	/**
+	 * Returns the first field of a Line, identifying it in a key join.
+	 * 
+	 * @param line
+	 *            the Line
+	 * 
+	 * @return the first field of the formatted Line
+	 */
+	private String getKey(final Line line) {
+		return line.getFieldCount() == 0 ? "" : line.getField(0);
+	}
+
+	/**
+	 * Records the search of the nearest Lines of a batch of Lines, from the
+	 * first to the last Line of the batch.
+	 * 
+	 * @param event
+	 *            the event of the batch, begun
+	 * @param lines
+	 *            the number of Lines of the batch
+	 * @param attempts
+	 *            the number of Levenshtein distances computed
+	 */
+	private void commitFuzzyMatchBatch(final FuzzyMatchBatchEvent event, final int lines,
+			final long attempts) {
+		event.end();
+
+		if (event.shouldCommit()) {
+			event.jobId = this.job.jobId;
+			event.firstFile = this.job.firstFile;
+			event.secondFile = this.job.secondFile;
+			event.lines = lines;
+			event.attempts = attempts;
+			event.commit();
+		}
+	}
+
+	/**
+	 * Sets the listener receiving the progress of the next comparisons.
+	 * 
+	 * @param listener
+	 *            the listener or null to stop reporting the progress
+	 */
+	public void setProgressListener(ProgressListener listener) {
+		this.progressListener = listener;
+	}
+
+	/**
+	 * Sets the strategy executing the next comparisons.
+	 * 
+	 * @param requested
+	 *            the strategy or null to let the StrategyPlanner choose it
+	 */
+	public void setStrategy(Strategy requested) {
+		this.strategy = requested;
+	}
+
+	/**
+	 * Sets the columns taking part in the next comparisons. The fields of the
+	 * other columns are skipped when the files are parsed.
+	 * 
+	 * @param columns
+	 *            the projection or null to compare all the columns
+	 */
+	public void setProjection(ColumnProjection columns) {
+		this.projection = columns == null ? ColumnProjection.ALL : columns;
+	}
+
+	/**
+	 * Returns the columns taking part in the comparisons.
+	 * 
+	 * @return the projection, ALL if no column is skipped
+	 */
+	public ColumnProjection getProjection() {
+		return this.projection;
+	}
+
+	/**
+	 * Returns the strategy executing the current or last comparison.
+	 * 
+	 * @return the strategy and the reason of the choice, null if the files
+	 *         could not be compared
+	 */
+	public Plan getPlan() {
+		return this.plan;
+	}
+
+	/**
+	 * Returns the progress of the current or last comparison.
+	 * 
+	 * @return the progress of the comparison, NONE if it has no listener
+	 */
+	ProgressTracker getProgress() {
+		return this.progress;
+	}
+
+	/**
+	 * Returns the metrics of the current or last comparison.
+	 * 
+	 * @return the metrics of the comparison, DISABLED if the comparison is not
+	 *         measured
+	 */
+	ComparisonMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Checks if the comparator takes care of the order of the lines.
+	 * 
+	 * @return false, the order of the lines doesn't matter
+	 */
+	boolean isOrdered() {
+		return false;
+	}
+
 	/**
 	 * Checks if the comparison has been cancelled.
 	 * 
 	 * @return true if the comparison has been cancelled, false otherwise
 	 */
 	public boolean isCancelled() {
-		return this.cancelled;
+		return this.token.isCancelled();
 	}
 
 	/**
-	 * Cancels the comparison.
+	 * Cancels the comparison. The parsing of the files stops at once.<br>
+	 * The cancellation also applies to a comparison that has not started yet
+	 * and to the following comparisons of this comparator.
 	 */
 	public void cancel() {
-		this.cancelled = true;
+		this.token.cancel();
 	}
 
 	/**
@@ -377,6 +1758,24 @@ public class FileComparator implements Comparator {
 		return this.separator;
 	}
 
+	/**
+	 * Returns the Set identifying the date fields of the Lines.
+	 * 
+	 * @return the Set identifying the date fields
+	 */
+	Set<Integer> getDates() {
+		return this.dates;
+	}
+
+	/**
+	 * Returns the Set identifying the number fields of the Lines.
+	 * 
+	 * @return the Set identifying the number fields
+	 */
+	Set<Integer> getNumbers() {
+		return this.numbers;
+	}
+
 	/**
 	 * Parses a file and put each line of the file as a Line in a Map.
 	 * 
@@ -388,48 +1787,117 @@ public class FileComparator implements Comparator {
 	 */
 	private final class FileParser implements Runnable {
 		private final String filename;
-		private final StringBuilder result;
-		private Map<Integer, Line> fileLinesAsMap;
+		private final CancellationToken token;
+		private final StringBuilder error = new StringBuilder();
+		private LineTable fileLinesAsMap;
+		private FingerprintSnapshot snapshot;
 
 		/**
 		 * Initializes a newly created FileParser object.
 		 * 
 		 * @param filename
 		 *            the name of the file to parse
-		 * @param result
-		 *            the StringBuilder where to put the possible error message
+		 * @param token
+		 *            the cancellation token of the comparison
 		 */
-		public FileParser(String filename, StringBuilder result) {
-			this.fileLinesAsMap = new TreeBidiMap<Integer, Line>();
+		public FileParser(String filename, CancellationToken token) {
+			this.fileLinesAsMap = new LineTable();
 			this.filename = filename;
-			this.result = result;
+			this.token = token;
 		}
 
 		/**
-		 * Parses the file and put each line of the file as a Line in a map.
+		 * Parses the file and put each line of the file as a Line in a map.<br>
+		 * The file is taken from the ParsedFileCache if it was already parsed.
+		 * <br>
+		 * If the file has an up to date snapshot, the snapshot is opened
+		 * instead, unless columns are skipped : the fingerprints of a snapshot
+		 * are computed from all the columns.
 		 */
 		@Override
 		public void run() {
 			LOGGER.info("Parsing file " + this.filename);
 
+			final ColumnProjection columns = FileComparator.this.projection;
+
 			try {
-				this.fileLinesAsMap = ComparatorUtility.parseFile(this.filename,
+				if (columns.isAll()) {
+					this.snapshot = FingerprintSnapshot.open(this.filename, FileComparator.this
+							.getSeparator(), FileComparator.this.dates, FileComparator.this.numbers);
+
+					if (this.snapshot != null) {
+						return;
+					}
+				}
+
+				this.fileLinesAsMap = ParsedFileCache.getInstance().getOrParse(this.filename,
 						FileComparator.this.getSeparator(), FileComparator.this.dates,
-						FileComparator.this.numbers);
+						FileComparator.this.numbers, columns, this.token,
+						FileComparator.this.metrics, FileComparator.this.progress);
 			} catch (Exception e) {
+				if (this.token.isCancelled()) {
+					LOGGER.info("Parsing of file " + this.filename + " cancelled");
+					return;
+				}
+
 				LOGGER.error("Problem while parsing file " + this.filename, e);
-				this.result.append("Problem while parsing file ");
-				this.result.append(this.filename);
+				this.error.append("Problem while parsing file ");
+				this.error.append(this.filename);
 			}
 		}
 
 		/**
-		 * Returns the Lines of the file contained in a Map.
+		 * Returns the possible error message of the parsing.
+		 * 
+		 * @return the error message or an empty String
+		 */
+		public String getError() {
+			return this.error.toString();
+		}
+
+		/**
+		 * Returns the Lines of the file contained in a LineTable.
 		 * 
-		 * @return the Lines of the file contained in a Map
+		 * @return the Lines of the file contained in a LineTable
 		 */
-		public Map<Integer, Line> getFileLinesAsMap() {
+		public LineTable getFileLinesAsMap() {
 			return this.fileLinesAsMap;
 		}
+
+		/**
+		 * Returns the snapshot of the file, if it has one.
+		 * 
+		 * @return the snapshot of the file or null
+		 */
+		public FingerprintSnapshot getSnapshot() {
+			return this.snapshot;
+		}
+
+		/**
+		 * Returns the fingerprints of the file, from its snapshot if it has
+		 * one.
+		 * 
+		 * @return the fingerprints of the file
+		 */
+		public Fingerprints getFingerprints() {
+			if (this.snapshot != null) {
+				return this.snapshot;
+			}
+
+			return new ParsedFingerprints(this.fileLinesAsMap);
+		}
+
+		/**
+		 * Closes the snapshot of the file, if it has one.
+		 */
+		public void closeSnapshot() {
+			if (this.snapshot != null) {
+				try {
+					this.snapshot.close();
+				} catch (IOException e) {
+					LOGGER.error("Problem while closing the snapshot of " + this.filename, e);
+				}
+			}
+		}
 	}
 }
\ No newline at end of file
@@ -1,10 +1,23 @@
 package be.formatech.filecomparator.comparator;
 
+import be.formatech.filecomparator.comparator.block.BlockChecksums;
+import be.formatech.filecomparator.comparator.block.BlockReducer;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
 import be.formatech.filecomparator.comparator.element.Line;
-import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.comparator.metrics.ComparisonMetrics;
+import be.formatech.filecomparator.comparator.metrics.Phase;
+import be.formatech.filecomparator.comparator.metrics.PhaseTimer;
+import be.formatech.filecomparator.comparator.progress.ProgressTracker;
+import be.formatech.filecomparator.comparator.snapshot.FingerprintReducer;
+import be.formatech.filecomparator.comparator.snapshot.Fingerprints;
+import be.formatech.filecomparator.utils.MappedFileUtility;
 import org.apache.log4j.Logger;
 
-import java.util.List;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.text.ParseException;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -38,6 +51,48 @@ public class OrderedFileComparator extends FileComparator {
         super(separator, d, n);
     }
 
+    /**
+     * Checks if the comparator takes care of the order of the lines.
+     *
+     * @return true, the order of the lines matters
+     */
+    @Override
+    boolean isOrdered() {
+        return true;
+    }
+
+    /**
+     * Removes the Lines that exactly match at the same line number in both
+     * files.
+     *
+     * @param reducer the reducer that keeps the Lines that differ
+     * @param first   the fingerprints of the first file
+     * @param second  the fingerprints of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a Line contains a date that cannot be parsed
+     */
+    @Override
+    void reduce(FingerprintReducer reducer, Fingerprints first, Fingerprints second)
+            throws IOException, ParseException {
+        reducer.reduceOrdered(first, second);
+    }
+
+    /**
+     * Skips the blocks of lines that exactly match at the same line numbers in
+     * both files.
+     *
+     * @param reducer the reducer that keeps the Lines of the blocks that differ
+     * @param first   the checksums of the blocks of the first file
+     * @param second  the checksums of the blocks of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a Line contains a date that cannot be parsed
+     */
+    @Override
+    void reduce(BlockReducer reducer, BlockChecksums first, BlockChecksums second)
+            throws IOException, ParseException {
+        reducer.reduceOrdered(first, second);
+    }
+
     /**
      * Checks the Lines one by one.<br>
      * If the Lines at the same place in the two files doesn't exactly match, it
@@ -51,43 +106,205 @@ public class OrderedFileComparator extends FileComparator {
 
         LOGGER.info("Comparing files with order activated");
 
-        for (Entry<Integer, Line> line1 : this.getFirstFileLinesAsMap().entrySet()) {
-            if (this.isCancelled()) {
-                LOGGER.info("Comparison cancelled by the user");
-                break;
-            }
+        final ComparisonMetrics metrics = this.getMetrics();
+        final PhaseTimer timer = metrics.startTimer(Phase.EXACT_MATCH);
+        int checkedLines = 0;
+        int comparedLines = 0;
+
+        try {
+            for (Entry<Integer, Line> line1 : this.getFirstFileLinesAsMap().entrySet()) {
+                if (this.isCancelled()) {
+                    LOGGER.info("Comparison cancelled by the user");
+                    break;
+                }
+
+                final int numberOfDifferences = this.getNumberOfDifferences(result);
+
+                if (numberOfDifferences > MAXIMUM_DIFFERENCES) {
+                    LOGGER.info("There is more than 1000 differences");
+                    result.append("There is more than 1000 differences. Only the first ");
+                    result.append(numberOfDifferences);
+                    result.append(" are displayed. \n");
+                    this.reachLimit("differences", MAXIMUM_DIFFERENCES);
+                    break;
+                }
 
-            final String value1 = line1.getValue().getFormattedLine();
-            final int numberOfDifferences = this.getNumberOfDifferences(result);
+                if (++checkedLines % ProgressTracker.PROGRESS_LINES == 0) {
+                    this.getProgress().addLinesMatched(ProgressTracker.PROGRESS_LINES);
+                }
 
-            if (numberOfDifferences > 1000) {
-                LOGGER.info("There is more than 1000 differences");
-                result.append("There is more than 1000 differences. Only the first ");
-                result.append(numberOfDifferences);
-                result.append(" are displayed. \n");
-                break;
+                final Line line = this.getSecondFileLinesAsMap().get(line1.getKey());
+
+                if (line == null) {
+                    result.append("Line ");
+                    result.append(line1.getKey());
+                    result.append(" : Not present in file 2\n");
+
+                    continue;
+                }
+
+                if (!line1.getValue().isSameFormattedLine(line)) {
+                    timer.switchTo(Phase.FIELD_COMPARE);
+                    comparedLines++;
+
+                    result.append(this.compareLineFieldByField(line1.getKey(), line1.getValue(),
+                            line));
+                    timer.switchTo(Phase.EXACT_MATCH);
+                }
             }
+        } finally {
+            timer.stop();
+            metrics.addLines(Phase.EXACT_MATCH, checkedLines);
+            metrics.addLines(Phase.FIELD_COMPARE, comparedLines);
+        }
 
-            final Line line = this.getSecondFileLinesAsMap().get(line1.getKey());
+        return result.toString();
+    }
 
-            if (line == null) {
-                result.append("Line ");
-                result.append(line1.getKey());
-                result.append(" : Not present in file 2\n");
+    /**
+     * Compares the lines of both files at the same place while reading them,
+     * from the beginning of the line containing the first byte that differs.
+     *
+     * @param filename1 the path of the first file to compare
+     * @param filename2 the path of the second file to compare
+     * @param mismatch  the position of the first byte that differs or 0 if it
+     *                  is unknown
+     * @param result    the StringBuilder where to put the differences or the
+     *                  possible error message
+     * @return true if the files were compared, false otherwise
+     */
+    @Override
+    boolean streamFiles(String filename1, String filename2, long mismatch,
+                        StringBuilder result) {
+        try {
+            long offset = 0;
+            int firstLineNumber = 1;
 
-                continue;
+            if (mismatch > 0) {
+                final MappedFileUtility.LineStart start = MappedFileUtility.findLineStart(
+                        filename1, mismatch);
+
+                offset = start.getOffset();
+                firstLineNumber = start.getLineNumber();
+                this.getProgress().addBytesRead(2 * offset);
             }
 
-            final String value2 = line.getFormattedLine();
+            result.append(this.checkFiles(filename1, filename2, offset, firstLineNumber));
+        } catch (Exception e) {
+            LOGGER.error("Problem while reading the files", e);
+            result.append("Problem while reading the files");
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads both files together, line by line, and compares the lines at the
+     * same place without keeping them in memory.<br>
+     * The differences are the same as the ones found by checkFiles() : the
+     * lines that doesn't exactly match are compared field by field and the
+     * lines missing at the end of the second file are not present in file 2.
+     *
+     * @param filename1       the path of the first file to compare
+     * @param filename2       the path of the second file to compare
+     * @param offset          the position of the first line to compare in both
+     *                        files
+     * @param firstLineNumber the number of the first line to compare
+     * @return a String containing all the difference and error messages
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    private String checkFiles(String filename1, String filename2, long offset,
+                              int firstLineNumber) throws IOException, ParseException {
+        final StringBuilder result = new StringBuilder();
+
+        LOGGER.info("Streaming files with order activated");
+
+        final ComparisonMetrics metrics = this.getMetrics();
+        final ProgressTracker progress = this.getProgress();
+        final FileInputStream stream1 = new FileInputStream(filename1);
+        final FileInputStream stream2;
+
+        try {
+            stream2 = new FileInputStream(filename2);
+        } catch (IOException e) {
+            stream1.close();
+            throw e;
+        }
+
+        stream1.getChannel().position(offset);
+        stream2.getChannel().position(offset);
+
+        final BufferedReader reader1 = new BufferedReader(new InputStreamReader(stream1));
+        final BufferedReader reader2 = new BufferedReader(new InputStreamReader(stream2));
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(this
+                .getSeparator(), this.getDates(), this.getNumbers(), this.getProjection());
+        final PhaseTimer timer = metrics.startTimer(Phase.EXACT_MATCH);
+        long position = 2 * offset;
+        int lineNumber = firstLineNumber;
+        int checkedLines = 0;
+        int comparedLines = 0;
+        int numberOfDifferences = 0;
+
+        try {
+            String value1;
+
+            while ((value1 = reader1.readLine()) != null) {
+                if (this.isCancelled()) {
+                    LOGGER.info("Comparison cancelled by the user");
+                    break;
+                }
+
+                if (numberOfDifferences > MAXIMUM_DIFFERENCES) {
+                    LOGGER.info("There is more than 1000 differences");
+                    result.append("There is more than 1000 differences. Only the first ");
+                    result.append(numberOfDifferences);
+                    result.append(" are displayed. \n");
+                    this.reachLimit("differences", MAXIMUM_DIFFERENCES);
+                    break;
+                }
+
+                if (++checkedLines % ProgressTracker.PROGRESS_LINES == 0 && progress.isEnabled()) {
+                    final long read = stream1.getChannel().position()
+                            + stream2.getChannel().position();
+
+                    progress.addBytesRead(read - position);
+                    position = read;
+                }
+
+                final String value2 = reader2.readLine();
+
+                if (value2 == null) {
+                    result.append("Line ");
+                    result.append(lineNumber);
+                    result.append(" : Not present in file 2\n");
+                    numberOfDifferences++;
+                } else if (!value1.equals(value2)) {
+                    // identical lines have identical formatted lines, the
+                    // other ones are formatted before being compared
+                    final Line formatted1 = new Line(value1, dictionaries, 1);
+                    final Line formatted2 = new Line(value2, dictionaries, 1);
+
+                    if (!formatted1.isSameFormattedLine(formatted2)) {
+                        timer.switchTo(Phase.FIELD_COMPARE);
+                        comparedLines++;
 
-            if (!value1.equals(value2)) {
-                final List<String> tokens1 = ComparatorUtility
-                        .tokenize(value1, this.getSeparator());
-                final List<String> tokens2 = ComparatorUtility
-                        .tokenize(value2, this.getSeparator());
+                        result.append(this.compareLineFieldByField(lineNumber, formatted1,
+                                formatted2));
+                        numberOfDifferences = this.getNumberOfDifferences(result);
+                        timer.switchTo(Phase.EXACT_MATCH);
+                    }
+                }
 
-                result.append(this.compareLineFieldByField(line1.getKey(), tokens1, tokens2));
+                lineNumber++;
             }
+        } finally {
+            timer.stop();
+            reader1.close();
+            reader2.close();
+            metrics.addLines(Phase.EXACT_MATCH, checkedLines);
+            metrics.addLines(Phase.FIELD_COMPARE, comparedLines);
         }
 
         return result.toString();
@@ -0,0 +1,289 @@
+package be.formatech.filecomparator.comparator.arena;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * The segments of memory, outside of the heap, holding the lines of the
+ * LineArenas.<br>
+ * The segments are direct ByteBuffers as long as the direct memory allocated
+ * stays under the maximum direct size, then regions of temporary files mapped
+ * in memory, that the system can page out. The released segments are kept in
+ * a pool, up to the maximum pooled size, to be reused by the next
+ * comparisons; the other ones are freed at once instead of waiting for the
+ * garbage collector.
+ *
+ * @version $Id$
+ * @see LineArena
+ */
+public final class ArenaSegments {
+    private static final Logger LOGGER = Logger.getLogger(ArenaSegments.class);
+
+    private static final ArenaSegments INSTANCE = new ArenaSegments();
+
+    /**
+     * The size of a segment : 8 MB.
+     */
+    public static final int SEGMENT_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * The method freeing the memory of a direct ByteBuffer or null if the JVM
+     * has none.
+     */
+    private static final Cleaner CLEANER = Cleaner.find();
+
+    /**
+     * The released segments, ready to be reused.
+     */
+    private final Deque<ByteBuffer> pool = new ArrayDeque<ByteBuffer>();
+
+    /**
+     * The mapped segments in use, a direct ByteBuffer being a MappedByteBuffer
+     * too.
+     */
+    private final Set<ByteBuffer> mapped = Collections
+            .newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
+
+    /**
+     * The maximum size of the direct segments allocated, in bytes.
+     */
+    private long maximumDirectSize;
+
+    /**
+     * The maximum size of the released segments kept in the pool, in bytes.
+     */
+    private long maximumPooledSize;
+
+    /**
+     * The size of the direct segments allocated, pooled or not, in bytes.
+     */
+    private long directSize;
+
+    /**
+     * The size of the mapped segments allocated, in bytes.
+     */
+    private long mappedSize;
+
+    /**
+     * ArenaSegments should not normally be instantiated outside of the class.
+     */
+    private ArenaSegments() {
+        super();
+        this.maximumDirectSize = Runtime.getRuntime().maxMemory() / 2;
+        this.maximumPooledSize = 8L * SEGMENT_SIZE;
+    }
+
+    /**
+     * Returns the instance of the segments.
+     *
+     * @return the instance of the segments
+     */
+    public static ArenaSegments getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns a segment of at least a given size, taken from the pool if the
+     * size is SEGMENT_SIZE.
+     *
+     * @param size the minimum size of the segment, in bytes
+     * @return the segment, empty
+     * @throws IOException if the segment must be mapped and an I/O error
+     *                     occurs
+     */
+    synchronized ByteBuffer acquire(int size) throws IOException {
+        final int capacity = Math.max(size, SEGMENT_SIZE);
+
+        if (capacity == SEGMENT_SIZE && !this.pool.isEmpty()) {
+            return this.pool.pop();
+        }
+
+        if (this.directSize + capacity <= this.maximumDirectSize) {
+            final ByteBuffer segment = ByteBuffer.allocateDirect(capacity);
+
+            this.directSize += capacity;
+
+            return segment;
+        }
+
+        final ByteBuffer segment = map(capacity);
+
+        this.mapped.add(segment);
+        this.mappedSize += capacity;
+
+        return segment;
+    }
+
+    /**
+     * Gives back a segment that is not used anymore. The segment is kept in
+     * the pool if it can be reused, freed otherwise.
+     *
+     * @param segment the segment
+     */
+    synchronized void release(ByteBuffer segment) {
+        segment.clear();
+
+        if (this.mapped.remove(segment)) {
+            this.mappedSize -= segment.capacity();
+        } else if (segment.capacity() == SEGMENT_SIZE
+                && (this.pool.size() + 1L) * SEGMENT_SIZE <= this.maximumPooledSize) {
+            this.pool.push(segment);
+            return;
+        } else {
+            this.directSize -= segment.capacity();
+        }
+
+        free(segment);
+    }
+
+    /**
+     * Maps a region of a temporary file in memory. The file is deleted at
+     * once, its region staying mapped until it is freed.
+     */
+    private static ByteBuffer map(int capacity) throws IOException {
+        final File file = File.createTempFile("filecomparator", ".arena");
+        final RandomAccessFile region = new RandomAccessFile(file, "rw");
+
+        try {
+            region.setLength(capacity);
+
+            return region.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        } finally {
+            region.close();
+
+            if (!file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Frees the memory of a segment, if the JVM allows it.
+     */
+    private static void free(ByteBuffer segment) {
+        if (CLEANER != null) {
+            CLEANER.clean(segment);
+        }
+    }
+
+    /**
+     * Frees the segments of the pool.
+     */
+    public synchronized void clear() {
+        while (!this.pool.isEmpty()) {
+            final ByteBuffer segment = this.pool.pop();
+
+            this.directSize -= segment.capacity();
+            free(segment);
+        }
+    }
+
+    /**
+     * Returns the size of the direct segments allocated, pooled or not.
+     *
+     * @return the direct size, in bytes
+     */
+    public synchronized long getDirectSize() {
+        return this.directSize;
+    }
+
+    /**
+     * Returns the size of the mapped segments allocated.
+     *
+     * @return the mapped size, in bytes
+     */
+    public synchronized long getMappedSize() {
+        return this.mappedSize;
+    }
+
+    /**
+     * Returns the maximum size of the direct segments allocated.
+     *
+     * @return the maximum direct size, in bytes
+     */
+    public synchronized long getMaximumDirectSize() {
+        return this.maximumDirectSize;
+    }
+
+    /**
+     * Sets the maximum size of the direct segments allocated, the next
+     * segments being mapped beyond it. It must stay under the limit of the
+     * direct memory of the JVM, -XX:MaxDirectMemorySize.
+     *
+     * @param maximumDirectSize the maximum direct size, in bytes
+     */
+    public synchronized void setMaximumDirectSize(long maximumDirectSize) {
+        this.maximumDirectSize = maximumDirectSize;
+    }
+
+    /**
+     * Sets the maximum size of the released segments kept in the pool and
+     * frees the segments beyond it. A size of 0 disables the pool.
+     *
+     * @param maximumPooledSize the maximum pooled size, in bytes
+     */
+    public synchronized void setMaximumPooledSize(long maximumPooledSize) {
+        this.maximumPooledSize = maximumPooledSize;
+
+        while ((long) this.pool.size() * SEGMENT_SIZE > maximumPooledSize) {
+            final ByteBuffer segment = this.pool.pop();
+
+            this.directSize -= segment.capacity();
+            free(segment);
+        }
+    }
+
+    /**
+     * Frees the memory of the direct ByteBuffers through sun.misc.Unsafe,
+     * which is not part of the API of the JDK.
+     */
+    private static final class Cleaner {
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Cleaner(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        /**
+         * Looks for Unsafe.invokeCleaner, available from Java 9.
+         *
+         * @return the cleaner or null if the JVM has none
+         */
+        static Cleaner find() {
+            try {
+                final Class<?> type = Class.forName("sun.misc.Unsafe");
+                final Field field = type.getDeclaredField("theUnsafe");
+
+                field.setAccessible(true);
+
+                return new Cleaner(field.get(null), type.getMethod("invokeCleaner",
+                        ByteBuffer.class));
+            } catch (Exception e) {
+                LOGGER.info("The off-heap segments are freed by the garbage collector");
+                return null;
+            }
+        }
+
+        void clean(ByteBuffer segment) {
+            try {
+                this.invokeCleaner.invoke(this.unsafe, segment);
+            } catch (Exception e) {
+                LOGGER.warn("Cannot free an off-heap segment", e);
+            }
+        }
+    }
+}
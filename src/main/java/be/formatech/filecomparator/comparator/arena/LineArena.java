@@ -0,0 +1,302 @@
+package be.formatech.filecomparator.comparator.arena;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.progress.ProgressTracker;
+import be.formatech.filecomparator.comparator.snapshot.Fingerprints;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The lines of a file, held outside of the heap.<br>
+ * Each line is written in a segment of the ArenaSegments with the fingerprint
+ * of its formatted content : the fingerprint, the number of bytes of the line,
+ * then its bytes. The heap only holds the position of each line and its
+ * occurence number, in arrays of primitives. A line is parsed as a Line again
+ * only when it is read, i.e. when it differs from the other file.<br>
+ * The segments are given back as soon as the arena is closed.
+ *
+ * @version $Id$
+ * @see ArenaSegments, Fingerprints
+ */
+public final class LineArena implements Fingerprints, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(LineArena.class);
+
+    /**
+     * The number of bytes written before the bytes of each line : its
+     * fingerprint and its length.
+     */
+    private static final int HEADER_SIZE = 8 + 4;
+
+    /**
+     * The dictionaries of the Lines read from the arena, the ones of the
+     * comparison job that parsed the file.
+     */
+    private final ColumnDictionaries dictionaries;
+
+    /**
+     * The segments holding the lines.
+     */
+    private final List<ByteBuffer> segments = new ArrayList<ByteBuffer>();
+
+    /**
+     * The position of each line, its segment in the high 32 bits and its
+     * position in the segment in the low 32 bits, the first line at index 0.
+     */
+    private long[] positions = new long[1024];
+
+    /**
+     * The occurence numbers of the lines, the first line at index 0.
+     */
+    private int[] occurences;
+
+    /**
+     * The number of lines.
+     */
+    private int lineCount;
+
+    /**
+     * The number of bytes written in the segments.
+     */
+    private long size;
+
+    private LineArena(ColumnDictionaries dictionaries) {
+        super();
+
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Reads a file and writes its lines, with the fingerprints of their
+     * formatted contents, in a new arena.
+     *
+     * @param filename   the path of the file
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     * @param token      the cancellation token of the comparison
+     * @param progress   the progress of the comparison
+     * @return the arena, to be closed, or null if the comparison has been
+     * cancelled
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public static LineArena parse(String filename, String separator, Set<Integer> dates,
+                                  Set<Integer> numbers, ColumnProjection projection,
+                                  CancellationToken token, ProgressTracker progress)
+            throws IOException, ParseException {
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(separator, dates,
+                numbers, projection);
+        final LineArena arena = new LineArena(dictionaries);
+        final Charset charset = Charset.defaultCharset();
+        final OffsetLineReader reader = new OffsetLineReader(new FileInputStream(filename), 0);
+        boolean parsed = false;
+
+        try {
+            long position = 0;
+
+            while (reader.readLine()) {
+                if (token.isCancelled()) {
+                    LOGGER.info("Parsing was cancelled");
+                    return null;
+                }
+
+                final Line line = new Line(reader.getLine(charset), dictionaries, 1);
+                final long fingerprint = ComparatorUtility.fingerprint(line.getFormattedLine());
+
+                arena.add(fingerprint, reader.getBytes(), reader.getLength());
+
+                if (arena.lineCount % ProgressTracker.PROGRESS_LINES == 0) {
+                    progress.addBytesRead(reader.getNextOffset() - position);
+                    position = reader.getNextOffset();
+                }
+            }
+
+            progress.addBytesRead(reader.getNextOffset() - position);
+            arena.occurences = arena.countOccurences();
+            parsed = true;
+        } finally {
+            reader.close();
+
+            if (!parsed) {
+                arena.close();
+            }
+        }
+
+        LOGGER.info("File " + filename + " has " + arena.lineCount + " line(s) in "
+                + arena.segments.size() + " off-heap segment(s), " + arena.size + " bytes");
+
+        return arena;
+    }
+
+    /**
+     * Writes a line at the end of the arena.
+     */
+    private void add(long fingerprint, byte[] bytes, int length) throws IOException {
+        ByteBuffer segment = this.segments.isEmpty() ? null : this.segments.get(this.segments
+                .size() - 1);
+
+        if (segment == null || segment.remaining() < HEADER_SIZE + length) {
+            segment = ArenaSegments.getInstance().acquire(HEADER_SIZE + length);
+            this.segments.add(segment);
+        }
+
+        if (this.lineCount == this.positions.length) {
+            this.positions = Arrays.copyOf(this.positions, this.lineCount * 2);
+        }
+
+        this.positions[this.lineCount++] = ((long) (this.segments.size() - 1) << 32)
+                | segment.position();
+        segment.putLong(fingerprint);
+        segment.putInt(length);
+        segment.put(bytes, 0, length);
+        this.size += HEADER_SIZE + length;
+    }
+
+    /**
+     * Numbers the occurences of the lines having the same fingerprint.
+     */
+    private int[] countOccurences() {
+        final OccurenceCounter counter = new OccurenceCounter();
+        final int[] result = new int[this.lineCount];
+
+        for (int i = 0; i < this.lineCount; i++) {
+            result[i] = counter.add(this.getFingerprint(i + 1));
+        }
+
+        return result;
+    }
+
+    @Override
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    @Override
+    public long getFingerprint(int lineNumber) {
+        final long position = this.positions[lineNumber - 1];
+
+        return this.segments.get((int) (position >>> 32)).getLong((int) position);
+    }
+
+    @Override
+    public int getOccurenceNumber(int lineNumber) {
+        return this.occurences[lineNumber - 1];
+    }
+
+    @Override
+    public Line getLine(int lineNumber) throws ParseException {
+        final long position = this.positions[lineNumber - 1];
+        final ByteBuffer segment = this.segments.get((int) (position >>> 32)).duplicate();
+        final int offset = (int) position + 8;
+        final byte[] bytes = new byte[segment.getInt(offset)];
+
+        segment.position(offset + 4);
+        segment.get(bytes);
+
+        return new Line(new String(bytes, Charset.defaultCharset()), this.dictionaries, this
+                .getOccurenceNumber(lineNumber));
+    }
+
+    /**
+     * Returns the number of bytes written outside of the heap.
+     *
+     * @return the size of the lines and their fingerprints, in bytes
+     */
+    public long getSize() {
+        return this.size;
+    }
+
+    /**
+     * Gives the segments back to the ArenaSegments. The arena cannot be read
+     * anymore.
+     */
+    @Override
+    public void close() {
+        for (ByteBuffer segment : this.segments) {
+            ArenaSegments.getInstance().release(segment);
+        }
+
+        this.segments.clear();
+    }
+
+    /**
+     * Counts the fingerprints already seen, in an open addressing table of
+     * primitives.
+     */
+    private static final class OccurenceCounter {
+        private long[] fingerprints = new long[1024];
+        private int[] counts = new int[1024];
+        private int size;
+
+        /**
+         * Counts a fingerprint.
+         *
+         * @return the number of times the fingerprint was counted, this one
+         * included
+         */
+        int add(long fingerprint) {
+            if (2 * (this.size + 1) > this.counts.length) {
+                this.grow();
+            }
+
+            final int mask = this.counts.length - 1;
+            int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+
+            while (this.counts[index] != 0 && this.fingerprints[index] != fingerprint) {
+                index = (index + 1) & mask;
+            }
+
+            if (this.counts[index] == 0) {
+                this.fingerprints[index] = fingerprint;
+                this.size++;
+            }
+
+            return ++this.counts[index];
+        }
+
+        private void grow() {
+            final long[] oldFingerprints = this.fingerprints;
+            final int[] oldCounts = this.counts;
+
+            this.fingerprints = new long[oldCounts.length * 2];
+            this.counts = new int[oldCounts.length * 2];
+            this.size = 0;
+
+            for (int i = 0; i < oldCounts.length; i++) {
+                if (oldCounts[i] != 0) {
+                    final int count = oldCounts[i];
+
+                    this.add(oldFingerprints[i]);
+                    this.counts[this.find(oldFingerprints[i])] = count;
+                }
+            }
+        }
+
+        private int find(long fingerprint) {
+            final int mask = this.counts.length - 1;
+            int index = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+
+            while (this.fingerprints[index] != fingerprint) {
+                index = (index + 1) & mask;
+            }
+
+            return index;
+        }
+    }
+}
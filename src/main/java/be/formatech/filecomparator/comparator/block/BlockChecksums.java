@@ -0,0 +1,204 @@
+package be.formatech.filecomparator.comparator.block;
+
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.log4j.Logger;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The checksums of the blocks of lines of a file.<br>
+ * The boundaries of the blocks are defined by the content of the lines : a
+ * block ends after a line whose hash matches a mask. An inserted or deleted
+ * line therefore only changes the block that contains it and the following
+ * blocks of both files stay aligned, like in rsync.
+ *
+ * @version $Id$
+ * @see BlockReducer
+ */
+public final class BlockChecksums {
+    private static final Logger LOGGER = Logger.getLogger(BlockChecksums.class);
+
+    /**
+     * The mask giving blocks of 64 lines on average.
+     */
+    private static final long BOUNDARY_MASK = 63L;
+
+    /**
+     * The minimum number of lines of a block.
+     */
+    private static final int MINIMUM_LINES = 8;
+
+    /**
+     * The maximum number of lines of a block.
+     */
+    private static final int MAXIMUM_LINES = 1024;
+
+    /**
+     * The path of the file.
+     */
+    private final String filename;
+
+    /**
+     * The blocks of the file, in the order of the file.
+     */
+    private final List<Block> blocks;
+
+    /**
+     * The number of lines of the file.
+     */
+    private final int lineCount;
+
+    private BlockChecksums(String filename, List<Block> blocks, int lineCount) {
+        super();
+
+        this.filename = filename;
+        this.blocks = Collections.unmodifiableList(blocks);
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Reads a file and computes the checksums of its blocks of lines.
+     *
+     * @param filename the path of the file
+     * @return the checksums of the blocks of the file
+     * @throws IOException if an I/O error occurs
+     */
+    public static BlockChecksums compute(String filename) throws IOException {
+        final List<Block> blocks = new ArrayList<Block>();
+        final OffsetLineReader reader = new OffsetLineReader(new FileInputStream(filename), 0);
+        int lineNumber = 0;
+
+        try {
+            int firstLine = 1;
+            long offset = 0;
+            long checksum = 0;
+
+            while (reader.readLine()) {
+                lineNumber++;
+
+                final long hash = reader.hashLine();
+                checksum = (checksum + hash) * 0x100000001b3L;
+
+                final int lines = lineNumber - firstLine + 1;
+
+                if (lines == 1) {
+                    offset = reader.getOffset();
+                }
+
+                if ((lines >= MINIMUM_LINES && (mix(hash) & BOUNDARY_MASK) == 0)
+                        || lines >= MAXIMUM_LINES) {
+                    blocks.add(new Block(firstLine, lines, offset, mix(checksum)));
+                    firstLine = lineNumber + 1;
+                    checksum = 0;
+                }
+            }
+
+            if (firstLine <= lineNumber) {
+                blocks.add(new Block(firstLine, lineNumber - firstLine + 1, offset,
+                        mix(checksum)));
+            }
+        } finally {
+            reader.close();
+        }
+
+        LOGGER.info("File " + filename + " has " + lineNumber + " line(s) in " + blocks.size()
+                + " block(s)");
+
+        return new BlockChecksums(filename, blocks, lineNumber);
+    }
+
+    private static long mix(long value) {
+        long hash = value;
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Returns the path of the file.
+     *
+     * @return the path of the file
+     */
+    public String getFilename() {
+        return this.filename;
+    }
+
+    /**
+     * Returns the blocks of the file, in the order of the file.
+     *
+     * @return the blocks of the file
+     */
+    public List<Block> getBlocks() {
+        return this.blocks;
+    }
+
+    /**
+     * Returns the number of lines of the file.
+     *
+     * @return the number of lines of the file
+     */
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * A block of consecutive lines of a file.
+     */
+    public static final class Block {
+        private final int firstLine;
+        private final int lineCount;
+        private final long offset;
+        private final long checksum;
+
+        Block(int firstLine, int lineCount, long offset, long checksum) {
+            this.firstLine = firstLine;
+            this.lineCount = lineCount;
+            this.offset = offset;
+            this.checksum = checksum;
+        }
+
+        /**
+         * Returns the number of the first line of the block.
+         *
+         * @return the number of the first line of the block
+         */
+        public int getFirstLine() {
+            return this.firstLine;
+        }
+
+        /**
+         * Returns the number of lines of the block.
+         *
+         * @return the number of lines of the block
+         */
+        public int getLineCount() {
+            return this.lineCount;
+        }
+
+        /**
+         * Returns the position of the first line of the block in the file.
+         *
+         * @return the position of the block in the file
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Returns the checksum of the lines of the block.
+         *
+         * @return the checksum of the block
+         */
+        public long getChecksum() {
+            return this.checksum;
+        }
+    }
+}
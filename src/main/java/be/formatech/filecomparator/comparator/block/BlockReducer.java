@@ -0,0 +1,249 @@
+package be.formatech.filecomparator.comparator.block;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.commons.collections15.bidimap.TreeBidiMap;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Skips the identical blocks of lines of two files and reads as Lines only the
+ * lines of the blocks that differ, with their original line numbers, so that
+ * the comparators can compare them as usual.<br>
+ * When the order doesn't matter, the lines of the blocks that differ are
+ * first matched by their fingerprints with a BloomReducer : only the lines
+ * that have no identical line in the other file are read as Lines.
+ *
+ * @version $Id$
+ * @see BlockChecksums, IdenticalBlocks
+ */
+public final class BlockReducer {
+    private static final Logger LOGGER = Logger.getLogger(BlockReducer.class);
+
+    /**
+     * The Lines of the first file that differ, contained in a Map.
+     */
+    private Map<Integer, Line> firstFileLinesAsMap = new TreeBidiMap<Integer, Line>();
+
+    /**
+     * The Lines of the second file that differ, contained in a Map.
+     */
+    private Map<Integer, Line> secondFileLinesAsMap = new TreeBidiMap<Integer, Line>();
+
+    /**
+     * The comparator for which the lines are reduced.
+     */
+    private final Comparator comparator;
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The columns taking part in the comparison.
+     */
+    private final ColumnProjection projection;
+
+    /**
+     * The number of lines that were skipped in the first file, in identical
+     * blocks or matched by their fingerprints.
+     */
+    private int skippedLines;
+
+    /**
+     * Initializes a newly created BlockReducer object.
+     *
+     * @param comparator the comparator for which the lines are reduced, to
+     *                   check if the comparison has been cancelled
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     */
+    public BlockReducer(Comparator comparator, String separator, Set<Integer> dates,
+                        Set<Integer> numbers, ColumnProjection projection) {
+        super();
+
+        this.comparator = comparator;
+        this.separator = separator;
+        this.dates = dates;
+        this.numbers = numbers;
+        this.projection = projection;
+    }
+
+    /**
+     * Keeps the blocks that are not identical at the same line numbers in both
+     * files.
+     *
+     * @param first  the checksums of the first file
+     * @param second the checksums of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduceOrdered(BlockChecksums first, BlockChecksums second) throws IOException,
+            ParseException {
+        final Map<Integer, BlockChecksums.Block> secondBlocks = new HashMap<Integer, BlockChecksums.Block>();
+
+        for (BlockChecksums.Block block : second.getBlocks()) {
+            secondBlocks.put(block.getFirstLine(), block);
+        }
+
+        final List<BlockChecksums.Block> firstDifferent = new ArrayList<BlockChecksums.Block>();
+        final List<BlockChecksums.Block> secondDifferent = new ArrayList<BlockChecksums.Block>();
+
+        for (BlockChecksums.Block block : first.getBlocks()) {
+            final BlockChecksums.Block other = secondBlocks.get(block.getFirstLine());
+
+            if (other != null && other.getLineCount() == block.getLineCount()
+                    && other.getChecksum() == block.getChecksum()) {
+                secondBlocks.remove(block.getFirstLine());
+                this.skippedLines += block.getLineCount();
+            } else {
+                firstDifferent.add(block);
+            }
+        }
+
+        secondDifferent.addAll(secondBlocks.values());
+        Collections.sort(secondDifferent, IdenticalBlocks.BY_FIRST_LINE);
+
+        this.readBlocks(first.getFilename(), firstDifferent, this.firstFileLinesAsMap);
+        this.readBlocks(second.getFilename(), secondDifferent, this.secondFileLinesAsMap);
+
+        LOGGER.info(this.skippedLines + " line(s) skipped in identical blocks");
+    }
+
+    /**
+     * Keeps the lines of the blocks of each file that have no identical block
+     * anywhere in the other file, then the ones that have no identical line in
+     * these blocks of the other file.
+     *
+     * @param first  the checksums of the first file
+     * @param second the checksums of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduceUnordered(BlockChecksums first, BlockChecksums second) throws IOException,
+            ParseException {
+        this.reduceUnordered(first.getFilename(), second.getFilename(), IdenticalBlocks.match(
+                first, second));
+    }
+
+    /**
+     * Keeps the lines of the blocks of each file that have no identical block
+     * anywhere in the other file, then the ones that have no identical line in
+     * these blocks of the other file.
+     *
+     * @param filename1 the path of the first file
+     * @param filename2 the path of the second file
+     * @param identical the identical blocks of both files
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduceUnordered(String filename1, String filename2, IdenticalBlocks identical)
+            throws IOException, ParseException {
+        final BloomReducer reducer = new BloomReducer(this.comparator, ColumnDictionaries
+                .forSettings(this.separator, this.dates, this.numbers, this.projection));
+
+        reducer.reduce(filename1, identical.getFirstDifferent(), filename2, identical
+                .getSecondDifferent());
+        this.firstFileLinesAsMap = reducer.getFirstFileLines();
+        this.secondFileLinesAsMap = reducer.getSecondFileLines();
+        this.skippedLines = identical.getSkippedLines() + reducer.getMatchedLines();
+    }
+
+    /**
+     * Reads the lines of the blocks and puts them as Lines in a Map, with their
+     * original line numbers.
+     */
+    private void readBlocks(String filename, List<BlockChecksums.Block> blocks,
+                            Map<Integer, Line> lines) throws IOException, ParseException {
+        if (blocks.isEmpty()) {
+            return;
+        }
+
+        final Charset charset = Charset.defaultCharset();
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(this.separator,
+                this.dates, this.numbers, this.projection);
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+
+        try {
+            for (BlockChecksums.Block block : blocks) {
+                if (this.comparator.isCancelled()) {
+                    return;
+                }
+
+                file.seek(block.getOffset());
+
+                // the reader is not closed, it would close the file
+                final OffsetLineReader reader = new OffsetLineReader(Channels
+                        .newInputStream(file.getChannel()), block.getOffset());
+
+                for (int i = 0; i < block.getLineCount() && reader.readLine(); i++) {
+                    final Line value = new Line(reader.getLine(charset), dictionaries, 1);
+
+                    while (lines.containsValue(value)) {
+                        value.setOccurenceNumber(value.getOccurenceNumber() + 1);
+                    }
+
+                    lines.put(block.getFirstLine() + i, value);
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Returns the Lines of the first file that differ contained in a Map.
+     *
+     * @return the Lines of the first file that differ
+     */
+    public Map<Integer, Line> getFirstFileLinesAsMap() {
+        return this.firstFileLinesAsMap;
+    }
+
+    /**
+     * Returns the Lines of the second file that differ contained in a Map.
+     *
+     * @return the Lines of the second file that differ
+     */
+    public Map<Integer, Line> getSecondFileLinesAsMap() {
+        return this.secondFileLinesAsMap;
+    }
+
+    /**
+     * Returns the number of lines of the first file that were skipped because
+     * they are in identical blocks or, when the order doesn't matter, because
+     * they were matched by their fingerprints.
+     *
+     * @return the number of lines skipped
+     */
+    public int getSkippedLines() {
+        return this.skippedLines;
+    }
+}
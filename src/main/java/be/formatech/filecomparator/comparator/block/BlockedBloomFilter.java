@@ -0,0 +1,102 @@
+package be.formatech.filecomparator.comparator.block;
+
+/**
+ * A Bloom filter of the fingerprints of the lines of a file, whose bits are
+ * grouped in blocks of 512 bits.<br>
+ * All the bits of a fingerprint are in the same block, the size of a cache
+ * line, so that adding or looking up a fingerprint reads one cache line
+ * instead of one per bit. A fingerprint that was not added is found with a
+ * probability of about 2% : the filter tells which lines are certainly
+ * absent, not which ones are present.
+ *
+ * @version $Id$
+ * @see BloomReducer
+ */
+final class BlockedBloomFilter {
+
+    /**
+     * The number of bits of the filter per fingerprint.
+     */
+    static final int BITS_PER_FINGERPRINT = 10;
+
+    /**
+     * The number of bits set for each fingerprint.
+     */
+    static final int BITS_SET = 6;
+
+    /**
+     * The number of longs of a block : 512 bits.
+     */
+    private static final int BLOCK_LONGS = 8;
+
+    /**
+     * The bits of the filter, block after block.
+     */
+    private final long[] bits;
+
+    /**
+     * The number of blocks.
+     */
+    private final int blockCount;
+
+    /**
+     * Initializes a newly created and empty BlockedBloomFilter object.
+     *
+     * @param fingerprints the number of fingerprints that will be added
+     */
+    BlockedBloomFilter(int fingerprints) {
+        super();
+
+        this.blockCount = (int) Math.max(1, ((long) fingerprints * BITS_PER_FINGERPRINT
+                + BLOCK_LONGS * 64 - 1) / (BLOCK_LONGS * 64));
+        this.bits = new long[this.blockCount * BLOCK_LONGS];
+    }
+
+    /**
+     * Adds a fingerprint to the filter.
+     *
+     * @param fingerprint the fingerprint of a line
+     */
+    void add(long fingerprint) {
+        final int block = this.getBlock(fingerprint);
+        long hash = fingerprint * 0x9e3779b97f4a7c15L;
+
+        for (int i = 0; i < BITS_SET; i++) {
+            final int bit = (int) (hash >>> 55);
+
+            this.bits[block + (bit >>> 6)] |= 1L << bit;
+            hash <<= 9;
+        }
+    }
+
+    /**
+     * Checks if a fingerprint may have been added to the filter.
+     *
+     * @param fingerprint the fingerprint of a line
+     * @return false if the fingerprint was certainly not added, true if it
+     * may have been
+     */
+    boolean mightContain(long fingerprint) {
+        final int block = this.getBlock(fingerprint);
+        long hash = fingerprint * 0x9e3779b97f4a7c15L;
+
+        for (int i = 0; i < BITS_SET; i++) {
+            final int bit = (int) (hash >>> 55);
+
+            if ((this.bits[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+
+            hash <<= 9;
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the index of the first long of the block of a fingerprint.
+     */
+    private int getBlock(long fingerprint) {
+        return (int) (((fingerprint & 0xffffffffL) * this.blockCount) >>> 32) * BLOCK_LONGS;
+    }
+}
@@ -0,0 +1,341 @@
+package be.formatech.filecomparator.comparator.block;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Removes the lines that exactly match from the blocks that differ, without
+ * reading them as Lines.<br>
+ * The lines of the blocks are read a first time to compute the fingerprints
+ * of their formatted content, kept in arrays, and a BlockedBloomFilter of the
+ * fingerprints of each file. A line whose fingerprint is not in the filter of
+ * the other file certainly differs; the other lines are matched by their
+ * fingerprints, the n-th occurence of a line in the first file matching the
+ * n-th occurence of the same line in the second file, like the
+ * FingerprintReducer. The lines are read a second time and only the ones that
+ * differ are kept as Lines, so that the matched lines are only counted.
+ *
+ * @version $Id$
+ * @see BlockedBloomFilter, BlockReducer
+ */
+final class BloomReducer {
+    private static final Logger LOGGER = Logger.getLogger(BloomReducer.class);
+
+    /**
+     * The comparator for which the lines are reduced.
+     */
+    private final Comparator comparator;
+
+    /**
+     * The dictionaries encoding the fields of the Lines.
+     */
+    private final ColumnDictionaries dictionaries;
+
+    /**
+     * The Lines of the first file that differ.
+     */
+    private final LineTable firstFileLines = new LineTable();
+
+    /**
+     * The Lines of the second file that differ.
+     */
+    private final LineTable secondFileLines = new LineTable();
+
+    /**
+     * The number of lines of the first file that were matched.
+     */
+    private int matchedLines;
+
+    /**
+     * The number of lines of both files that are certainly absent from the
+     * other file.
+     */
+    private int absentLines;
+
+    /**
+     * Initializes a newly created BloomReducer object.
+     *
+     * @param comparator   the comparator for which the lines are reduced, to
+     *                     check if the comparison has been cancelled
+     * @param dictionaries the dictionaries encoding the fields of the Lines
+     */
+    BloomReducer(Comparator comparator, ColumnDictionaries dictionaries) {
+        super();
+
+        this.comparator = comparator;
+        this.dictionaries = dictionaries;
+    }
+
+    /**
+     * Keeps the lines of the blocks of each file that have no identical line,
+     * with the same occurence number, in the blocks of the other file.
+     *
+     * @param filename1 the path of the first file
+     * @param blocks1   the blocks of the first file, in the order of the file
+     * @param filename2 the path of the second file
+     * @param blocks2   the blocks of the second file, in the order of the file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    void reduce(String filename1, List<BlockChecksums.Block> blocks1, String filename2,
+                List<BlockChecksums.Block> blocks2) throws IOException, ParseException {
+        final long[] fingerprints1 = this.readFingerprints(filename1, blocks1);
+        final long[] fingerprints2 = fingerprints1 == null ? null : this.readFingerprints(
+                filename2, blocks2);
+
+        if (fingerprints2 == null) {
+            return;
+        }
+
+        final BitSet differing1 = new BitSet(fingerprints1.length);
+        final BitSet differing2 = new BitSet(fingerprints2.length);
+
+        this.absentLines += markAbsent(fingerprints1, filter(fingerprints2), differing1);
+        this.absentLines += markAbsent(fingerprints2, filter(fingerprints1), differing2);
+        this.match(fingerprints1, differing1, fingerprints2, differing2);
+
+        this.readLines(filename1, blocks1, differing1, this.firstFileLines);
+        this.readLines(filename2, blocks2, differing2, this.secondFileLines);
+
+        LOGGER.info(this.matchedLines + " line(s) of the blocks that differ matched, "
+                + this.absentLines + " line(s) certainly absent from the other file");
+    }
+
+    /**
+     * Reads the fingerprints of the lines of the blocks, in the order of the
+     * blocks.
+     *
+     * @return the fingerprints or null if the comparison has been cancelled
+     */
+    private long[] readFingerprints(String filename, List<BlockChecksums.Block> blocks)
+            throws IOException, ParseException {
+        int lineCount = 0;
+
+        for (BlockChecksums.Block block : blocks) {
+            lineCount += block.getLineCount();
+        }
+
+        final long[] fingerprints = new long[lineCount];
+        final Charset charset = Charset.defaultCharset();
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+        int index = 0;
+
+        try {
+            for (BlockChecksums.Block block : blocks) {
+                if (this.comparator.isCancelled()) {
+                    return null;
+                }
+
+                final OffsetLineReader reader = open(file, block);
+
+                for (int i = 0; i < block.getLineCount() && reader.readLine(); i++) {
+                    fingerprints[index++] = ComparatorUtility.fingerprint(new Line(reader
+                            .getLine(charset), this.dictionaries, 1).getFormattedLine());
+                }
+            }
+        } finally {
+            file.close();
+        }
+
+        return index == lineCount ? fingerprints : Arrays.copyOf(fingerprints, index);
+    }
+
+    /**
+     * Returns the BlockedBloomFilter of fingerprints.
+     */
+    private static BlockedBloomFilter filter(long[] fingerprints) {
+        final BlockedBloomFilter filter = new BlockedBloomFilter(fingerprints.length);
+
+        for (long fingerprint : fingerprints) {
+            filter.add(fingerprint);
+        }
+
+        return filter;
+    }
+
+    /**
+     * Marks the lines whose fingerprint is certainly not in a filter.
+     *
+     * @return the number of lines marked
+     */
+    private static int markAbsent(long[] fingerprints, BlockedBloomFilter filter,
+                                  BitSet differing) {
+        int absent = 0;
+
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (!filter.mightContain(fingerprints[i])) {
+                differing.set(i);
+                absent++;
+            }
+        }
+
+        return absent;
+    }
+
+    /**
+     * Matches the lines that may be in both files by their fingerprints and
+     * marks the ones that are not matched. The first occurences of a
+     * fingerprint in each file are matched, in the order of the files.
+     */
+    private void match(long[] fingerprints1, BitSet differing1, long[] fingerprints2,
+                       BitSet differing2) {
+        final long[] sorted = new long[fingerprints2.length - differing2.cardinality()];
+        int count = 0;
+
+        for (int i = differing2.nextClearBit(0); i < fingerprints2.length; i = differing2
+                .nextClearBit(i + 1)) {
+            sorted[count++] = fingerprints2[i];
+        }
+
+        Arrays.sort(sorted);
+
+        // the number of lines matched for each fingerprint, at the position of
+        // its first occurence in the sorted fingerprints of the second file
+        final int[] matched = new int[sorted.length];
+
+        for (int i = differing1.nextClearBit(0); i < fingerprints1.length; i = differing1
+                .nextClearBit(i + 1)) {
+            final int first = firstIndexOf(sorted, fingerprints1[i]);
+
+            if (first >= 0 && first + matched[first] < sorted.length
+                    && sorted[first + matched[first]] == fingerprints1[i]) {
+                matched[first]++;
+                this.matchedLines++;
+            } else {
+                differing1.set(i);
+            }
+        }
+
+        for (int i = differing2.nextClearBit(0); i < fingerprints2.length; i = differing2
+                .nextClearBit(i + 1)) {
+            final int first = firstIndexOf(sorted, fingerprints2[i]);
+
+            if (matched[first] > 0) {
+                matched[first]--;
+            } else {
+                differing2.set(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the first occurence of a fingerprint in sorted
+     * fingerprints or -1 if it is absent.
+     */
+    private static int firstIndexOf(long[] sorted, long fingerprint) {
+        int low = 0;
+        int high = sorted.length;
+
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+
+            if (sorted[middle] < fingerprint) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low < sorted.length && sorted[low] == fingerprint ? low : -1;
+    }
+
+    /**
+     * Reads the lines of the blocks that differ and puts them as Lines in a
+     * LineTable, with their original line numbers.
+     */
+    private void readLines(String filename, List<BlockChecksums.Block> blocks,
+                           BitSet differing, LineTable lines) throws IOException, ParseException {
+        if (differing.isEmpty()) {
+            return;
+        }
+
+        final Charset charset = Charset.defaultCharset();
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+        int index = 0;
+
+        try {
+            for (BlockChecksums.Block block : blocks) {
+                if (this.comparator.isCancelled()) {
+                    return;
+                }
+
+                final int next = differing.nextSetBit(index);
+
+                if (next < 0) {
+                    return;
+                }
+
+                if (next >= index + block.getLineCount()) {
+                    index += block.getLineCount();
+                    continue;
+                }
+
+                final OffsetLineReader reader = open(file, block);
+
+                for (int i = 0; i < block.getLineCount() && reader.readLine(); i++, index++) {
+                    if (differing.get(index)) {
+                        final Line line = new Line(reader.getLine(charset), this.dictionaries, 1);
+
+                        lines.numberOccurence(line);
+                        lines.put(block.getFirstLine() + i, line);
+                    }
+                }
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Returns a reader of the lines of a block.
+     */
+    private static OffsetLineReader open(RandomAccessFile file, BlockChecksums.Block block)
+            throws IOException {
+        file.seek(block.getOffset());
+
+        // the reader is not closed, it would close the file
+        return new OffsetLineReader(Channels.newInputStream(file.getChannel()), block
+                .getOffset());
+    }
+
+    /**
+     * Returns the Lines of the first file that differ.
+     *
+     * @return the Lines of the first file that differ
+     */
+    LineTable getFirstFileLines() {
+        return this.firstFileLines;
+    }
+
+    /**
+     * Returns the Lines of the second file that differ.
+     *
+     * @return the Lines of the second file that differ
+     */
+    LineTable getSecondFileLines() {
+        return this.secondFileLines;
+    }
+
+    /**
+     * Returns the number of lines of the first file that were matched.
+     *
+     * @return the number of lines matched
+     */
+    int getMatchedLines() {
+        return this.matchedLines;
+    }
+}
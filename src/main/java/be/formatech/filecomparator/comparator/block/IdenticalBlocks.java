@@ -0,0 +1,161 @@
+package be.formatech.filecomparator.comparator.block;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The blocks of lines of two files that are identical, wherever they are.<br>
+ * Each block of the first file is paired with the first block of the second
+ * file having the same checksum that is not paired yet. The lines of the
+ * paired blocks are skipped by every comparison that doesn't take care of the
+ * order, whatever the strategy, so that the lines left to match, and thus the
+ * differences, don't depend on the strategy.
+ *
+ * @version $Id$
+ * @see BlockChecksums
+ */
+public final class IdenticalBlocks {
+    private static final Logger LOGGER = Logger.getLogger(IdenticalBlocks.class);
+
+    /**
+     * Sorts the blocks in the order of the file.
+     */
+    static final java.util.Comparator<BlockChecksums.Block> BY_FIRST_LINE = new java.util.Comparator<BlockChecksums.Block>() {
+        @Override
+        public int compare(BlockChecksums.Block block1, BlockChecksums.Block block2) {
+            return block1.getFirstLine() - block2.getFirstLine();
+        }
+    };
+
+    /**
+     * The blocks of the first file that have no identical block in the second
+     * file, in the order of the file.
+     */
+    private final List<BlockChecksums.Block> firstDifferent = new ArrayList<BlockChecksums.Block>();
+
+    /**
+     * The blocks of the second file that have no identical block in the first
+     * file, in the order of the file.
+     */
+    private final List<BlockChecksums.Block> secondDifferent = new ArrayList<BlockChecksums.Block>();
+
+    /**
+     * The numbers of the lines of the first file that are in identical blocks.
+     */
+    private final BitSet firstSkipped = new BitSet();
+
+    /**
+     * The numbers of the lines of the second file that are in identical
+     * blocks.
+     */
+    private final BitSet secondSkipped = new BitSet();
+
+    private IdenticalBlocks() {
+        super();
+    }
+
+    /**
+     * Pairs the identical blocks of two files.
+     *
+     * @param first  the checksums of the first file
+     * @param second the checksums of the second file
+     * @return the identical blocks of both files
+     */
+    public static IdenticalBlocks match(BlockChecksums first, BlockChecksums second) {
+        final IdenticalBlocks identical = new IdenticalBlocks();
+        final Map<Long, LinkedList<BlockChecksums.Block>> secondBlocks = new HashMap<Long, LinkedList<BlockChecksums.Block>>();
+
+        for (BlockChecksums.Block block : second.getBlocks()) {
+            LinkedList<BlockChecksums.Block> blocks = secondBlocks.get(block.getChecksum());
+
+            if (blocks == null) {
+                blocks = new LinkedList<BlockChecksums.Block>();
+                secondBlocks.put(block.getChecksum(), blocks);
+            }
+
+            blocks.add(block);
+        }
+
+        for (BlockChecksums.Block block : first.getBlocks()) {
+            final LinkedList<BlockChecksums.Block> blocks = secondBlocks.get(block.getChecksum());
+
+            if (blocks != null && !blocks.isEmpty()
+                    && blocks.getFirst().getLineCount() == block.getLineCount()) {
+                skip(blocks.removeFirst(), identical.secondSkipped);
+                skip(block, identical.firstSkipped);
+            } else {
+                identical.firstDifferent.add(block);
+            }
+        }
+
+        for (LinkedList<BlockChecksums.Block> blocks : secondBlocks.values()) {
+            identical.secondDifferent.addAll(blocks);
+        }
+
+        Collections.sort(identical.secondDifferent, BY_FIRST_LINE);
+
+        LOGGER.info(identical.getSkippedLines() + " line(s) skipped in identical blocks");
+
+        return identical;
+    }
+
+    private static void skip(BlockChecksums.Block block, BitSet skipped) {
+        skipped.set(block.getFirstLine(), block.getFirstLine() + block.getLineCount());
+    }
+
+    /**
+     * Returns the blocks of the first file that have no identical block in the
+     * second file.
+     *
+     * @return the blocks that differ, in the order of the file
+     */
+    public List<BlockChecksums.Block> getFirstDifferent() {
+        return this.firstDifferent;
+    }
+
+    /**
+     * Returns the blocks of the second file that have no identical block in
+     * the first file.
+     *
+     * @return the blocks that differ, in the order of the file
+     */
+    public List<BlockChecksums.Block> getSecondDifferent() {
+        return this.secondDifferent;
+    }
+
+    /**
+     * Returns the numbers of the lines of the first file that are in identical
+     * blocks.
+     *
+     * @return the numbers of the lines to skip, not to be modified
+     */
+    public BitSet getFirstSkipped() {
+        return this.firstSkipped;
+    }
+
+    /**
+     * Returns the numbers of the lines of the second file that are in
+     * identical blocks.
+     *
+     * @return the numbers of the lines to skip, not to be modified
+     */
+    public BitSet getSecondSkipped() {
+        return this.secondSkipped;
+    }
+
+    /**
+     * Returns the number of lines of each file that are in identical blocks.
+     *
+     * @return the number of lines skipped in each file
+     */
+    public int getSkippedLines() {
+        return this.firstSkipped.cardinality();
+    }
+}
@@ -0,0 +1,627 @@
+package be.formatech.filecomparator.comparator.cache;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import be.formatech.filecomparator.comparator.metrics.ComparisonMetrics;
+import be.formatech.filecomparator.comparator.progress.ProgressTracker;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A bounded cache of parsed files.<br>
+ * A parsed file is identified by its canonical path, its size, its last
+ * modification time, the field separator, the date and number fields and the
+ * ColumnProjection used to parse it. If one of them changes, the file is parsed again.<br>
+ * The least recently used files are evicted as soon as the estimated memory
+ * size of all the cached files exceeds the maximum size of the cache. The
+ * ColumnDictionaries of the cached files are part of this size, counted once
+ * however many files share them. They are shared with the comparisons taking
+ * the files from the cache, and released with the files.<br>
+ * A file asked for by several comparisons at the same time is parsed once :
+ * the other comparisons wait for the parsing and share its Lines once they
+ * are cached.
+ *
+ * @version $Id$
+ * @see ComparatorUtility#parseFile(String, String, Set, Set)
+ */
+public final class ParsedFileCache {
+    private static final Logger LOGGER = Logger.getLogger(ParsedFileCache.class);
+
+    private static final ParsedFileCache INSTANCE = new ParsedFileCache();
+
+    /**
+     * The estimated number of bytes used by a Line and its entries in a
+     * LineTable, without the content of the Line.
+     */
+    public static final long LINE_OVERHEAD = 160L;
+
+    /**
+     * The cached files, from the least recently used to the most recently used.
+     */
+    private final Map<CacheKey, CacheEntry> entries = new LinkedHashMap<CacheKey, CacheEntry>(16,
+            0.75f, true);
+
+    /**
+     * The estimated memory size of the dictionaries of the cached files, each
+     * dictionaries counted once.
+     */
+    private final Map<ColumnDictionaries, Long> dictionarySizes = new IdentityHashMap<ColumnDictionaries, Long>();
+
+    /**
+     * The parsings in progress, by the key of the parsed file.
+     */
+    private final Map<CacheKey, Parsing> parsings = new HashMap<CacheKey, Parsing>();
+
+    /**
+     * The maximum estimated memory size of the cache, in bytes.
+     */
+    private long maximumSize;
+
+    /**
+     * The current estimated memory size of the cache, in bytes.
+     */
+    private long currentSize;
+
+    /**
+     * ParsedFileCache should not normally be instantiated outside of the class.
+     */
+    private ParsedFileCache() {
+        super();
+        this.maximumSize = Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Returns the instance of the cache.
+     *
+     * @return the instance of the cache
+     */
+    public static ParsedFileCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the Lines of a file, parsing it only if it is not already in the
+     * cache.<br>
+     * The returned LineTable is shared and read-only once cached.
+     *
+     * @param filename  the path of the file to parse
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @param token     the cancellation token of the comparison, a cancelled
+     *                  parsing is not cached
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the file contains a date that cannot be parsed
+     */
+    public LineTable getOrParse(final String filename, final String separator,
+                                final Set<Integer> dates, final Set<Integer> numbers, final CancellationToken token)
+            throws IOException, ParseException {
+        return this.getOrParse(filename, separator, dates, numbers, token,
+                ComparisonMetrics.DISABLED, ProgressTracker.NONE);
+    }
+
+    /**
+     * Returns the Lines of a file, parsing it only if it is not already in the
+     * cache, and counts the cache hits and misses in the metrics of the
+     * comparison. A file found in the cache is added to the progress as read.
+     * <br>
+     * The returned LineTable is shared and read-only once cached.
+     *
+     * @param filename  the path of the file to parse
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @param token     the cancellation token of the comparison, a cancelled
+     *                  parsing is not cached
+     * @param metrics   the metrics of the comparison
+     * @param progress  the progress of the comparison
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the file contains a date that cannot be parsed
+     */
+    public LineTable getOrParse(final String filename, final String separator,
+                                final Set<Integer> dates, final Set<Integer> numbers, final CancellationToken token,
+                                final ComparisonMetrics metrics, final ProgressTracker progress)
+            throws IOException, ParseException {
+        return this.getOrParse(filename, separator, dates, numbers, ColumnProjection.ALL, token,
+                metrics, progress);
+    }
+
+    /**
+     * Returns the Lines of a file parsed with a ColumnProjection, parsing it
+     * only if it is not already in the cache with the same projection.<br>
+     * If the file is being parsed for another comparison, the Lines of that
+     * parsing are returned once they are cached. If they are not cached, the
+     * file is parsed again, the Lines of a parsing that is not cached being
+     * consumed by its comparison.
+     *
+     * @param filename   the path of the file to parse
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields of the file
+     * @param numbers    the Set identifying the number fields of the file
+     * @param projection the columns taking part in the comparison
+     * @param token      the cancellation token of the comparison, a cancelled
+     *                   parsing is not cached
+     * @param metrics    the metrics of the comparison
+     * @param progress   the progress of the comparison
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the file contains a date that cannot be parsed
+     */
+    public LineTable getOrParse(final String filename, final String separator,
+                                final Set<Integer> dates, final Set<Integer> numbers,
+                                final ColumnProjection projection, final CancellationToken token,
+                                final ComparisonMetrics metrics, final ProgressTracker progress)
+            throws IOException, ParseException {
+        final CacheKey key = new CacheKey(new File(filename), separator, dates, numbers,
+                projection);
+        LineTable cached = null;
+
+        while (cached == null) {
+            final Parsing parsing;
+            boolean parsed = false;
+
+            synchronized (this) {
+                cached = this.get(key);
+
+                if (cached != null) {
+                    break;
+                }
+
+                Parsing current = this.parsings.get(key);
+
+                if (current == null) {
+                    current = new Parsing();
+                    this.parsings.put(key, current);
+                    parsed = true;
+                }
+
+                parsing = current;
+            }
+
+            if (parsed) {
+                return this.parse(key, parsing, filename, separator, dates, numbers, projection,
+                        token, metrics, progress);
+            }
+
+            LOGGER.info("Waiting for the parsing of file " + filename);
+            cached = parsing.await(token);
+
+            if (token.isCancelled()) {
+                return new LineTable();
+            }
+        }
+
+        LOGGER.info("File " + filename + " found in cache");
+        this.shareDictionaries(cached);
+        metrics.addCacheHit();
+        progress.addBytesRead(new File(filename).length());
+        return cached;
+    }
+
+    /**
+     * Parses a file, caches its Lines unless the parsing is cancelled and
+     * gives them to the comparisons waiting for the parsing.
+     */
+    private LineTable parse(CacheKey key, Parsing parsing, String filename, String separator,
+                            Set<Integer> dates, Set<Integer> numbers, ColumnProjection projection,
+                            CancellationToken token, ComparisonMetrics metrics, ProgressTracker progress)
+            throws IOException, ParseException {
+        LineTable lines = null;
+        boolean cached = false;
+        Exception error = null;
+
+        metrics.addCacheMiss();
+
+        try {
+            lines = ComparatorUtility.parseFile(filename, separator, dates, numbers, projection,
+                    0, 1, token, metrics, progress);
+            cached = !token.isCancelled() && this.put(key, lines);
+
+            return lines;
+        } catch (IOException e) {
+            error = e;
+            throw e;
+        } catch (ParseException e) {
+            error = e;
+            throw e;
+        } finally {
+            synchronized (this) {
+                this.parsings.remove(key);
+            }
+
+            parsing.finish(cached ? lines : null, error);
+        }
+    }
+
+    /**
+     * Checks if a file parsed with the given settings is in the cache.
+     *
+     * @param filename  the path of the file
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @return true if the file is in the cache, false otherwise
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized boolean isCached(final String filename, final String separator,
+                                         final Set<Integer> dates, final Set<Integer> numbers) throws IOException {
+        return this.isCached(filename, separator, dates, numbers, ColumnProjection.ALL);
+    }
+
+    /**
+     * Checks if a file parsed with the given settings and ColumnProjection is
+     * in the cache.
+     *
+     * @param filename   the path of the file
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields of the file
+     * @param numbers    the Set identifying the number fields of the file
+     * @param projection the columns taking part in the comparison
+     * @return true if the file is in the cache, false otherwise
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized boolean isCached(final String filename, final String separator,
+                                         final Set<Integer> dates, final Set<Integer> numbers,
+                                         final ColumnProjection projection) throws IOException {
+        return this.entries.containsKey(new CacheKey(new File(filename), separator, dates,
+                numbers, projection));
+    }
+
+    /**
+     * Shares the dictionaries of a file parsed with the given settings and
+     * ColumnProjection with the job run by the current thread, if the file is
+     * in the cache.
+     *
+     * @param filename   the path of the file
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields of the file
+     * @param numbers    the Set identifying the number fields of the file
+     * @param projection the columns taking part in the comparison
+     * @throws IOException if an I/O error occurs
+     */
+    public synchronized void shareDictionaries(final String filename, final String separator,
+                                               final Set<Integer> dates, final Set<Integer> numbers,
+                                               final ColumnProjection projection) throws IOException {
+        final CacheEntry entry = this.entries.get(new CacheKey(new File(filename), separator,
+                dates, numbers, projection));
+
+        if (entry != null && entry.dictionaries != null) {
+            ColumnDictionaries.Scope.getCurrent().share(entry.dictionaries);
+        }
+    }
+
+    /**
+     * Returns the cached Lines identified by the key, if present.
+     *
+     * @param key the key identifying the parsed file
+     * @return the Lines of the file or null if the file is not in the cache
+     */
+    synchronized LineTable get(CacheKey key) {
+        final CacheEntry entry = this.entries.get(key);
+
+        return entry == null ? null : entry.lines;
+    }
+
+    /**
+     * Puts the Lines of a parsed file in the cache and evicts the least
+     * recently used files if the cache is full. The LineTable is made read-only.
+     * <br>
+     * The dictionaries of the Lines are counted at their current size : they
+     * grow with the files parsed with the same settings.
+     *
+     * @param key   the key identifying the parsed file
+     * @param lines the Lines of the file
+     * @return true if the Lines were cached, false if they are too big
+     */
+    synchronized boolean put(CacheKey key, LineTable lines) {
+        final long size = estimateSize(lines);
+        final ColumnDictionaries dictionaries = getDictionaries(lines);
+        final long dictionarySize = dictionaries == null ? 0 : dictionaries.estimateSize();
+
+        if (size + dictionarySize > this.maximumSize) {
+            LOGGER.info("File " + key.path + " is too big to be cached");
+            return false;
+        }
+
+        lines.setReadOnly();
+
+        final CacheEntry previous = this.entries.put(key, new CacheEntry(lines, size,
+                dictionaries));
+
+        if (previous != null) {
+            this.currentSize -= previous.size;
+            this.release(previous.dictionaries);
+        }
+
+        if (dictionaries != null) {
+            final Long counted = this.dictionarySizes.put(dictionaries, dictionarySize);
+
+            this.currentSize += dictionarySize - (counted == null ? 0 : counted);
+        }
+
+        this.currentSize += size;
+        this.evict();
+
+        return this.entries.containsKey(key);
+    }
+
+    /**
+     * Returns the dictionaries of the Lines of a file.
+     *
+     * @return the dictionaries or null if the file has no Line
+     */
+    private static ColumnDictionaries getDictionaries(LineTable lines) {
+        for (Line line : lines.values()) {
+            return line.getDictionaries();
+        }
+
+        return null;
+    }
+
+    /**
+     * Shares the dictionaries of cached Lines with the job run by the current
+     * thread, so that its other file is parsed with them.
+     */
+    private static void shareDictionaries(LineTable lines) {
+        final ColumnDictionaries dictionaries = getDictionaries(lines);
+
+        if (dictionaries != null) {
+            ColumnDictionaries.Scope.getCurrent().share(dictionaries);
+        }
+    }
+
+    /**
+     * Stops counting dictionaries that no cached file uses anymore.
+     */
+    private void release(ColumnDictionaries dictionaries) {
+        if (dictionaries == null) {
+            return;
+        }
+
+        for (CacheEntry entry : this.entries.values()) {
+            if (entry.dictionaries == dictionaries) {
+                return;
+            }
+        }
+
+        final Long counted = this.dictionarySizes.remove(dictionaries);
+
+        if (counted != null) {
+            this.currentSize -= counted;
+        }
+    }
+
+    /**
+     * Evicts the least recently used files until the estimated memory size of
+     * the cache is under its maximum size.
+     */
+    private void evict() {
+        final Iterator<Map.Entry<CacheKey, CacheEntry>> iterator = this.entries.entrySet()
+                .iterator();
+
+        while (this.currentSize > this.maximumSize && iterator.hasNext()) {
+            final Map.Entry<CacheKey, CacheEntry> eldest = iterator.next();
+
+            LOGGER.info("Evicting file " + eldest.getKey().path + " from cache");
+            this.currentSize -= eldest.getValue().size;
+            iterator.remove();
+            this.release(eldest.getValue().dictionaries);
+        }
+    }
+
+    /**
+     * Estimates the memory size of the Lines of a file, without their
+     * dictionaries.
+     *
+     * @param lines the Lines of the file
+     * @return the estimated memory size, in bytes
+     */
+    static long estimateSize(Map<Integer, Line> lines) {
+        long size = 0;
+
+        for (Line line : lines.values()) {
+            // the formatted fields are codes in the shared ColumnDictionaries,
+            // counted once by put
+            size += LINE_OVERHEAD + 2L * line.getLine().length() + 4L * line.getFieldCount();
+        }
+
+        return size;
+    }
+
+    /**
+     * Removes all the files from the cache.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.dictionarySizes.clear();
+        this.currentSize = 0;
+    }
+
+    /**
+     * Returns the maximum estimated memory size of the cache.
+     *
+     * @return the maximum size, in bytes
+     */
+    public synchronized long getMaximumSize() {
+        return this.maximumSize;
+    }
+
+    /**
+     * Sets the maximum estimated memory size of the cache and evicts files if
+     * needed. A size of 0 disables the cache.
+     *
+     * @param maximumSize the maximum size, in bytes
+     */
+    public synchronized void setMaximumSize(long maximumSize) {
+        this.maximumSize = maximumSize;
+        this.evict();
+    }
+
+    /**
+     * Returns the current estimated memory size of the cache.
+     *
+     * @return the current size, in bytes
+     */
+    public synchronized long getCurrentSize() {
+        return this.currentSize;
+    }
+
+    /**
+     * Returns the number of files in the cache.
+     *
+     * @return the number of files in the cache
+     */
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    /**
+     * The Lines of a parsed file, their estimated memory size without their
+     * dictionaries and their dictionaries.
+     */
+    private static final class CacheEntry {
+        private final LineTable lines;
+        private final long size;
+        private final ColumnDictionaries dictionaries;
+
+        CacheEntry(LineTable lines, long size, ColumnDictionaries dictionaries) {
+            this.lines = lines;
+            this.size = size;
+            this.dictionaries = dictionaries;
+        }
+    }
+
+    /**
+     * A parsing in progress, waited for by the other comparisons of the same
+     * file.
+     */
+    private static final class Parsing {
+        private boolean finished;
+        private LineTable lines;
+        private Exception error;
+
+        /**
+         * Records the end of the parsing and wakes up the comparisons waiting
+         * for it.
+         *
+         * @param cached the cached Lines or null if they were not cached
+         * @param failure the IOException or ParseException that stopped the
+         *                parsing or null
+         */
+        synchronized void finish(LineTable cached, Exception failure) {
+            this.lines = cached;
+            this.error = failure;
+            this.finished = true;
+            this.notifyAll();
+        }
+
+        /**
+         * Waits for the end of the parsing, unless the comparison waiting for
+         * it is cancelled.
+         *
+         * @param token the cancellation token of the waiting comparison
+         * @return the cached Lines or null if they were not cached
+         * @throws IOException    if the parsing failed on an I/O error or if
+         *                        the thread is interrupted
+         * @throws ParseException if the file contains a date that cannot be
+         *                        parsed
+         */
+        synchronized LineTable await(CancellationToken token) throws IOException,
+                ParseException {
+            while (!this.finished && !token.isCancelled()) {
+                try {
+                    // the token doesn't notify its cancellation
+                    this.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while waiting for a parsing");
+                }
+            }
+
+            if (this.error instanceof IOException) {
+                throw (IOException) this.error;
+            }
+
+            if (this.error instanceof ParseException) {
+                throw (ParseException) this.error;
+            }
+
+            return this.lines;
+        }
+    }
+
+    /**
+     * Identifies a parsed file by its canonical path, size, last modification
+     * time and the settings used to parse it.
+     */
+    static final class CacheKey {
+        private final String path;
+        private final long length;
+        private final long lastModified;
+        private final String separator;
+        private final Set<Integer> dates;
+        private final Set<Integer> numbers;
+        private final ColumnProjection projection;
+
+        CacheKey(File file, String separator, Set<Integer> dates, Set<Integer> numbers,
+                 ColumnProjection projection) throws IOException {
+            this.path = file.getCanonicalPath();
+            this.length = file.length();
+            this.lastModified = file.lastModified();
+            this.separator = separator;
+            this.dates = dates == null ? new TreeSet<Integer>() : new TreeSet<Integer>(dates);
+            this.numbers = numbers == null ? new TreeSet<Integer>()
+                    : new TreeSet<Integer>(numbers);
+            this.projection = projection == null ? ColumnProjection.ALL : projection;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+
+            final CacheKey that = (CacheKey) o;
+            return this.length == that.length && this.lastModified == that.lastModified
+                    && this.path.equals(that.path)
+                    && (this.separator == null ? that.separator == null : this.separator
+                    .equals(that.separator)) && this.dates.equals(that.dates)
+                    && this.numbers.equals(that.numbers)
+                    && this.projection.equals(that.projection);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 17;
+            result = 37 * result + this.path.hashCode();
+            result = 37 * result + (int) (this.length ^ (this.length >>> 32));
+            result = 37 * result + (int) (this.lastModified ^ (this.lastModified >>> 32));
+            result = 37 * result + (this.separator == null ? 0 : this.separator.hashCode());
+            result = 37 * result + this.dates.hashCode();
+            result = 37 * result + this.numbers.hashCode();
+
+            return 37 * result + this.projection.hashCode();
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package be.formatech.filecomparator.comparator.directory;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.ComparisonExecutor;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares all the files of two directory trees.<br>
+ * The files are paired by their path relative to their directory. If a
+ * pairing pattern is set, the files whose name matches it are paired by the
+ * directory and the groups of the pattern instead of their name : with the
+ * pattern <I>(.*)_\d{8}(\.csv)</I>, <I>accounts_20140102.csv</I> is compared
+ * with <I>accounts_20140103.csv</I>.<br>
+ * The pairs are compared in both directions on the ComparisonExecutor, the
+ * biggest pairs first, each pair with the Comparator given by the
+ * ComparatorFactory.
+ *
+ * @version $Id$
+ * @see DirectoryComparison
+ */
+public final class DirectoryComparator {
+    private static final Logger LOGGER = Logger.getLogger(DirectoryComparator.class);
+
+    /**
+     * Sorts the pairs from the biggest to the smallest.
+     */
+    private static final java.util.Comparator<FilePair> BIGGEST_FIRST = new java.util.Comparator<FilePair>() {
+        @Override
+        public int compare(FilePair pair1, FilePair pair2) {
+            final long size1 = pair1.getSize();
+            final long size2 = pair2.getSize();
+
+            return size1 > size2 ? -1 : (size1 == size2 ? 0 : 1);
+        }
+    };
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The flag indicating if the order of the lines matters.
+     */
+    private final boolean ordered;
+
+    /**
+     * The pattern pairing files having different names, or null.
+     */
+    private Pattern pairingPattern;
+
+    /**
+     * The strategy executing the comparisons of the files, or null.
+     */
+    private volatile Strategy strategy;
+
+    /**
+     * The columns taking part in the comparisons of the files.
+     */
+    private volatile ColumnProjection projection = ColumnProjection.ALL;
+
+    /**
+     * The cancellation token of the comparison of the directories.
+     */
+    private final CancellationToken token = new CancellationToken();
+
+    /**
+     * The Comparators comparing pairs of files.
+     */
+    private final List<Comparator> comparators = new CopyOnWriteArrayList<Comparator>();
+
+    /**
+     * Initializes a newly created DirectoryComparator object.
+     *
+     * @param separator the field separator
+     * @param d         the Set identifying the date fields
+     * @param n         the Set identifying the number fields
+     * @param ordered   the flag indicating if the order of the lines matters
+     */
+    public DirectoryComparator(String separator, Set<Integer> d, Set<Integer> n, boolean ordered) {
+        super();
+
+        this.separator = separator;
+        this.dates = d;
+        this.numbers = n;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Compares all the files of two directory trees.
+     *
+     * @param directory1 the path of the first directory
+     * @param directory2 the path of the second directory
+     * @return the pairs of files with their status
+     * @throws IllegalArgumentException if one of the paths is not a directory
+     */
+    public DirectoryComparison compare(final String directory1, final String directory2) {
+        final File root1 = new File(directory1);
+        final File root2 = new File(directory2);
+
+        if (!root1.isDirectory() || !root2.isDirectory()) {
+            throw new IllegalArgumentException("Two valid directories must be specified");
+        }
+
+        LOGGER.info("Comparing directories " + directory1 + " and " + directory2);
+
+        final Map<String, File> files1 = this.listFiles(root1);
+        final Map<String, File> files2 = this.listFiles(root2);
+        final Set<String> keys = new TreeSet<String>(files1.keySet());
+
+        keys.addAll(files2.keySet());
+
+        final List<FilePair> pairs = new ArrayList<FilePair>();
+        final List<FilePair> toCompare = new ArrayList<FilePair>();
+
+        for (String key : keys) {
+            final FilePair pair = new FilePair(key, files1.get(key), files2.get(key));
+
+            pairs.add(pair);
+
+            if (pair.getFirstFile() != null && pair.getSecondFile() != null) {
+                toCompare.add(pair);
+            }
+        }
+
+        // the biggest pairs are started first, so that they don't end alone
+        Collections.sort(toCompare, BIGGEST_FIRST);
+
+        final List<Future<FilePair>> tasks = new ArrayList<Future<FilePair>>();
+
+        for (FilePair pair : toCompare) {
+            tasks.add(ComparisonExecutor.getInstance().submit(this.comparePair(pair), this.token));
+        }
+
+        for (Future<FilePair> task : tasks) {
+            this.await(task);
+        }
+
+        LOGGER.info("End of comparison of directories " + directory1 + " and " + directory2);
+
+        return new DirectoryComparison(directory1, directory2, pairs);
+    }
+
+    /**
+     * Returns a task comparing a pair of files in both directions.
+     *
+     * @param pair the pair of files to compare
+     * @return the task comparing the files
+     */
+    private Callable<FilePair> comparePair(final FilePair pair) {
+        return new Callable<FilePair>() {
+            @Override
+            public FilePair call() {
+                if (DirectoryComparator.this.isCancelled()) {
+                    return pair;
+                }
+
+                final String filename1 = pair.getFirstFile().getPath();
+                final String filename2 = pair.getSecondFile().getPath();
+                final Comparator comparator = ComparatorFactory.getInstance().getComparator(
+                        DirectoryComparator.this.separator, DirectoryComparator.this.dates,
+                        DirectoryComparator.this.numbers, DirectoryComparator.this.ordered,
+                        DirectoryComparator.this.strategy, DirectoryComparator.this.projection);
+
+                DirectoryComparator.this.comparators.add(comparator);
+
+                try {
+                    if (DirectoryComparator.this.isCancelled()) {
+                        comparator.cancel();
+                    }
+
+                    final String result1 = comparator.compare(filename1, filename2);
+                    final String result2 = comparator.compare(filename2, filename1);
+
+                    pair.setResults(result1, result2);
+                } finally {
+                    DirectoryComparator.this.comparators.remove(comparator);
+                }
+
+                return pair;
+            }
+        };
+    }
+
+    /**
+     * Waits for the comparison of a pair of files.
+     */
+    private void await(Future<FilePair> task) {
+        try {
+            task.get();
+        } catch (CancellationException e) {
+            LOGGER.debug("Comparison of a pair of files cancelled");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this.cancel();
+        } catch (ExecutionException e) {
+            LOGGER.error("Problem while comparing a pair of files", e.getCause());
+        } finally {
+            this.token.unregister(task);
+        }
+    }
+
+    /**
+     * Lists the files of a directory tree by pairing key.
+     *
+     * @param root the directory
+     * @return the files of the directory tree by pairing key
+     */
+    private Map<String, File> listFiles(File root) {
+        final Map<String, File> files = new TreeMap<String, File>();
+
+        this.listFiles(root, "", files);
+
+        return files;
+    }
+
+    private void listFiles(File directory, String path, Map<String, File> files) {
+        final File[] children = directory.listFiles();
+
+        if (children == null) {
+            LOGGER.error("Problem while listing the files of " + directory);
+            return;
+        }
+
+        // the files are sorted, so that the last one wins when several files
+        // have the same key, e.g. the last date stamp
+        Arrays.sort(children);
+
+        for (File child : children) {
+            if (child.isDirectory()) {
+                this.listFiles(child, path + child.getName() + "/", files);
+            } else {
+                final String key = path + this.getPairingName(child.getName());
+                final File previous = files.put(key, child);
+
+                if (previous != null) {
+                    LOGGER.warn("Files " + previous + " and " + child + " have the same key "
+                            + key + ", only " + child + " is compared");
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the name used to pair a file : the groups of the pairing
+     * pattern, if the name of the file matches it, or the name of the file.
+     *
+     * @param name the name of the file
+     * @return the name used to pair the file
+     */
+    String getPairingName(String name) {
+        if (this.pairingPattern == null) {
+            return name;
+        }
+
+        final Matcher matcher = this.pairingPattern.matcher(name);
+
+        if (!matcher.matches() || matcher.groupCount() == 0) {
+            return name;
+        }
+
+        final StringBuilder result = new StringBuilder();
+
+        for (int i = 1; i <= matcher.groupCount(); i++) {
+            if (matcher.group(i) != null) {
+                result.append(matcher.group(i));
+            }
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Checks if the comparison of the directories has been cancelled.
+     *
+     * @return true if the comparison has been cancelled, false otherwise
+     */
+    public boolean isCancelled() {
+        return this.token.isCancelled();
+    }
+
+    /**
+     * Cancels the comparison of the directories : the pairs being compared
+     * are cancelled and the other pairs are not compared.
+     */
+    public void cancel() {
+        this.token.cancel();
+
+        for (Comparator comparator : this.comparators) {
+            comparator.cancel();
+        }
+    }
+
+    /**
+     * Returns the pattern pairing files having different names.
+     *
+     * @return the pairing pattern or null if the files are paired by name
+     */
+    public Pattern getPairingPattern() {
+        return this.pairingPattern;
+    }
+
+    /**
+     * Sets the pattern pairing files having different names. The files whose
+     * name matches the pattern are paired by the groups of the pattern.
+     *
+     * @param pairingPattern the pairing pattern or null to pair the files by
+     *                       name
+     */
+    public void setPairingPattern(Pattern pairingPattern) {
+        this.pairingPattern = pairingPattern;
+    }
+
+    /**
+     * Sets the strategy executing the comparisons of the files.
+     *
+     * @param strategy the strategy or null to choose it for each pair of
+     *                 files
+     */
+    public void setStrategy(Strategy strategy) {
+        this.strategy = strategy;
+    }
+
+    /**
+     * Sets the columns taking part in the comparisons of the files.
+     *
+     * @param projection the projection or null to compare all the columns
+     */
+    public void setProjection(ColumnProjection projection) {
+        this.projection = projection == null ? ColumnProjection.ALL : projection;
+    }
+}
@@ -0,0 +1,130 @@
+package be.formatech.filecomparator.comparator.directory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of the comparison of two directories : the pairs of files, with
+ * their status, sorted by key.
+ *
+ * @version $Id$
+ * @see DirectoryComparator
+ */
+public final class DirectoryComparison {
+
+    /**
+     * The path of the first directory.
+     */
+    private final String firstDirectory;
+
+    /**
+     * The path of the second directory.
+     */
+    private final String secondDirectory;
+
+    /**
+     * The pairs of files, sorted by key.
+     */
+    private final List<FilePair> pairs;
+
+    /**
+     * Initializes a newly created DirectoryComparison object.
+     *
+     * @param firstDirectory  the path of the first directory
+     * @param secondDirectory the path of the second directory
+     * @param pairs           the pairs of files, sorted by key
+     */
+    DirectoryComparison(String firstDirectory, String secondDirectory, List<FilePair> pairs) {
+        super();
+
+        this.firstDirectory = firstDirectory;
+        this.secondDirectory = secondDirectory;
+        this.pairs = Collections.unmodifiableList(pairs);
+    }
+
+    /**
+     * Returns all the pairs of files, sorted by key.
+     *
+     * @return the pairs of files
+     */
+    public List<FilePair> getPairs() {
+        return this.pairs;
+    }
+
+    /**
+     * Returns the pairs of files having a given status, sorted by key.
+     *
+     * @param status the status of the pairs
+     * @return the pairs of files having the status
+     */
+    public List<FilePair> getPairs(FilePair.Status status) {
+        final List<FilePair> result = new ArrayList<FilePair>();
+
+        for (FilePair pair : this.pairs) {
+            if (pair.getStatus() == status) {
+                result.add(pair);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Checks if all the files of both directories exactly match.
+     *
+     * @return true if all the pairs of files are identical, false otherwise
+     */
+    public boolean isIdentical() {
+        return this.getPairs(FilePair.Status.IDENTICAL).size() == this.pairs.size();
+    }
+
+    /**
+     * Returns a summary listing the identical, different and missing files.
+     *
+     * @return the summary of the comparison
+     */
+    public String getSummary() {
+        final StringBuilder result = new StringBuilder();
+
+        result.append("Comparison of ");
+        result.append(this.firstDirectory);
+        result.append(" and ");
+        result.append(this.secondDirectory);
+        result.append("\n");
+
+        this.appendPairs(result, FilePair.Status.DIFFERENT, " different file(s)");
+        this.appendPairs(result, FilePair.Status.MISSING_IN_SECOND, " file(s) missing in "
+                + this.secondDirectory);
+        this.appendPairs(result, FilePair.Status.MISSING_IN_FIRST, " file(s) missing in "
+                + this.firstDirectory);
+        this.appendPairs(result, FilePair.Status.CANCELLED, " file(s) not compared");
+        this.appendPairs(result, FilePair.Status.IDENTICAL, " identical file(s)");
+
+        return result.toString();
+    }
+
+    private void appendPairs(StringBuilder result, FilePair.Status status, String title) {
+        final List<FilePair> selected = this.getPairs(status);
+
+        result.append("\n");
+        result.append(selected.size());
+        result.append(title);
+        result.append("\n");
+
+        for (FilePair pair : selected) {
+            result.append("  ");
+            result.append(pair.getKey());
+
+            if (pair.getFirstFile() != null && pair.getSecondFile() != null
+                    && !pair.getFirstFile().getName().equals(pair.getSecondFile().getName())) {
+                result.append(" : ");
+                result.append(pair.getFirstFile().getName());
+                result.append(" - ");
+                result.append(pair.getSecondFile().getName());
+            }
+
+            result.append("\n");
+        }
+    }
+}
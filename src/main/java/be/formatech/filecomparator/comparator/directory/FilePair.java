@@ -0,0 +1,185 @@
+package be.formatech.filecomparator.comparator.directory;
+
+import be.formatech.filecomparator.comparator.FileComparator;
+
+import java.io.File;
+
+/**
+ * A file of the first directory and the file of the second directory it is
+ * compared with. One of the files is null if it is missing in its directory.
+ *
+ * @version $Id$
+ * @see DirectoryComparator
+ */
+public final class FilePair {
+
+    /**
+     * The status of a pair of files after the comparison of the directories.
+     */
+    public static enum Status {
+        /**
+         * Both files exactly match.
+         */
+        IDENTICAL,
+
+        /**
+         * The files have differences or could not be compared.
+         */
+        DIFFERENT,
+
+        /**
+         * The file is missing in the first directory.
+         */
+        MISSING_IN_FIRST,
+
+        /**
+         * The file is missing in the second directory.
+         */
+        MISSING_IN_SECOND,
+
+        /**
+         * The comparison has been cancelled before the files were compared.
+         */
+        CANCELLED
+    }
+
+    /**
+     * The key pairing both files.
+     */
+    private final String key;
+
+    /**
+     * The file of the first directory.
+     */
+    private final File firstFile;
+
+    /**
+     * The file of the second directory.
+     */
+    private final File secondFile;
+
+    /**
+     * The result of the comparison of the first file with the second one.
+     */
+    private volatile String firstResult;
+
+    /**
+     * The result of the comparison of the second file with the first one.
+     */
+    private volatile String secondResult;
+
+    /**
+     * Initializes a newly created FilePair object.
+     *
+     * @param key        the key pairing both files
+     * @param firstFile  the file of the first directory or null
+     * @param secondFile the file of the second directory or null
+     */
+    FilePair(String key, File firstFile, File secondFile) {
+        super();
+
+        this.key = key;
+        this.firstFile = firstFile;
+        this.secondFile = secondFile;
+    }
+
+    /**
+     * Returns the status of the pair of files.
+     *
+     * @return the status of the pair of files
+     */
+    public Status getStatus() {
+        if (this.firstFile == null) {
+            return Status.MISSING_IN_FIRST;
+        }
+
+        if (this.secondFile == null) {
+            return Status.MISSING_IN_SECOND;
+        }
+
+        if (this.firstResult == null || this.secondResult == null
+                || FileComparator.CANCELLED.equals(this.firstResult)
+                || FileComparator.CANCELLED.equals(this.secondResult)) {
+            return Status.CANCELLED;
+        }
+
+        if (FileComparator.isMatch(this.firstResult) && FileComparator.isMatch(this.secondResult)) {
+            return Status.IDENTICAL;
+        }
+
+        return Status.DIFFERENT;
+    }
+
+    /**
+     * Returns the sum of the sizes of both files, used to compare the biggest
+     * pairs first.
+     *
+     * @return the sum of the sizes of both files
+     */
+    long getSize() {
+        return (this.firstFile == null ? 0 : this.firstFile.length())
+                + (this.secondFile == null ? 0 : this.secondFile.length());
+    }
+
+    /**
+     * Sets the results of the comparison of the files in both directions.
+     *
+     * @param firstResult  the result of the comparison of the first file with
+     *                     the second one
+     * @param secondResult the result of the comparison of the second file with
+     *                     the first one
+     */
+    void setResults(String firstResult, String secondResult) {
+        this.firstResult = firstResult;
+        this.secondResult = secondResult;
+    }
+
+    /**
+     * Returns the key pairing both files.
+     *
+     * @return the key pairing both files
+     */
+    public String getKey() {
+        return this.key;
+    }
+
+    /**
+     * Returns the file of the first directory.
+     *
+     * @return the file of the first directory or null if it is missing
+     */
+    public File getFirstFile() {
+        return this.firstFile;
+    }
+
+    /**
+     * Returns the file of the second directory.
+     *
+     * @return the file of the second directory or null if it is missing
+     */
+    public File getSecondFile() {
+        return this.secondFile;
+    }
+
+    /**
+     * Returns the result of the comparison of the first file with the second
+     * one.
+     *
+     * @return the result of the comparison or null if the files were not
+     * compared
+     */
+    public String getFirstResult() {
+        return this.firstResult;
+    }
+
+    /**
+     * Returns the result of the comparison of the second file with the first
+     * one.
+     *
+     * @return the result of the comparison or null if the files were not
+     * compared
+     */
+    public String getSecondResult() {
+        return this.secondResult;
+    }
+}
@@ -0,0 +1,597 @@
+package be.formatech.filecomparator.comparator.element;
+
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.DateUtility;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.apache.commons.lang3.time.DateUtils;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The dictionaries of the formatted values of each column, shared by the
+ * Lines parsed with the same separator, date fields and number fields in the
+ * same comparison job.<br>
+ * Each formatted field of a Line is stored as the code of its value in the
+ * dictionary of its column, so that a value repeated on millions of lines is
+ * held once and two fields of the same column are equal if their codes are
+ * equal. The dictionaries are shared by both files of a comparison through
+ * the Scope of the job, and released with it. The Lines of a file taken from
+ * the ParsedFileCache bring their dictionaries to the Scope of the job, so
+ * that the other file is parsed with them : these dictionaries are released
+ * with the file in the cache. The fields of the columns skipped by the
+ * ColumnProjection of the settings are not encoded.<br>
+ * A column only encodes its first MAXIMUM_VALUES values of at most
+ * MAXIMUM_LENGTH characters, the other values being kept by the Lines
+ * themselves, so that the dictionaries stay small for the columns of
+ * identifiers and free text.<br>
+ * Each encoded value is parsed once, when it is added : the dictionary of a
+ * column holds the values that are numbers as doubles and the values that are
+ * dates as days since the epoch, in arrays of primitives, so that two fields
+ * of a column are compared as numbers or as dates without parsing them again.
+ *
+ * @version $Id$
+ * @see Line
+ */
+public final class ColumnDictionaries {
+
+    /**
+     * The maximum number of values encoded in the dictionary of a column.
+     */
+    public static final int MAXIMUM_VALUES = 4096;
+
+    /**
+     * The maximum number of characters of an encoded value.
+     */
+    public static final int MAXIMUM_LENGTH = 64;
+
+    /**
+     * The code of a value that is not in the dictionary of its column.
+     */
+    public static final int NOT_ENCODED = -1;
+
+    /**
+     * The kind of a value that is a number.
+     */
+    private static final byte NUMBER = 1;
+
+    /**
+     * The kind of a value that is a date.
+     */
+    private static final byte DATE = 2;
+
+    /**
+     * The number of milliseconds in a day.
+     */
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    /**
+     * The estimated number of bytes used by an encoded value besides its
+     * characters : the String and its entry in the map of the codes.
+     */
+    public static final long VALUE_OVERHEAD = 100L;
+
+    /**
+     * The number of bytes used by a slot of the arrays of a column : the
+     * reference to the value, its kind, its number and its days.
+     */
+    private static final long SLOT_SIZE = 8 + 1 + 8 + 4;
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The columns taking part in the comparisons.
+     */
+    private final ColumnProjection projection;
+
+    /**
+     * The dictionaries of the columns, the first column at index 0.
+     */
+    private volatile ColumnDictionary[] columns = new ColumnDictionary[0];
+
+    private ColumnDictionaries(String separator, Set<Integer> dates, Set<Integer> numbers,
+                               ColumnProjection projection) {
+        super();
+
+        this.separator = separator;
+        this.dates = dates;
+        this.numbers = numbers;
+        this.projection = projection;
+    }
+
+    /**
+     * Returns the dictionaries of the Lines parsed with the given settings by
+     * the job run by the current thread.
+     *
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields
+     * @param numbers   the Set identifying the number fields
+     * @return the dictionaries, shared by the Lines parsed with the same
+     * settings in the job, new dictionaries outside of a job
+     */
+    public static ColumnDictionaries forSettings(String separator, Set<Integer> dates,
+                                                 Set<Integer> numbers) {
+        return forSettings(separator, dates, numbers, ColumnProjection.ALL);
+    }
+
+    /**
+     * Returns the dictionaries of the Lines parsed with the given settings by
+     * the job run by the current thread, skipping the fields of some columns.
+     *
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparisons
+     * @return the dictionaries, shared by the Lines parsed with the same
+     * settings in the job, new dictionaries outside of a job
+     */
+    public static ColumnDictionaries forSettings(String separator, Set<Integer> dates,
+                                                 Set<Integer> numbers,
+                                                 ColumnProjection projection) {
+        return Scope.getCurrent().get(separator, dates, numbers, projection);
+    }
+
+    /**
+     * Returns the code of a formatted value in the dictionary of its column,
+     * adding it to the dictionary if needed.
+     *
+     * @param column the index of the column, from 0
+     * @param value  the formatted value
+     * @return the code of the value or NOT_ENCODED if the dictionary of the
+     * column is full or if the value is too long
+     */
+    public int encode(int column, String value) {
+        return this.getColumn(column).encode(value);
+    }
+
+    /**
+     * Returns the formatted value of a code.
+     *
+     * @param column the index of the column, from 0
+     * @param code   the code of the value in the dictionary of the column
+     * @return the formatted value
+     */
+    public String decode(int column, int code) {
+        return this.columns[column].decode(code);
+    }
+
+    /**
+     * Checks if two values of a column are equal as numbers if both are
+     * numbers, as dates if both are dates, like
+     * ComparatorUtility.fieldsAreEquivalent.
+     *
+     * @param column the index of the column, from 0
+     * @param code1  the code of the first value in the dictionary of the
+     *               column
+     * @param code2  the code of the second value in the dictionary of the
+     *               column
+     * @return true if both values are equivalent, false otherwise
+     */
+    public boolean areEquivalent(int column, int code1, int code2) {
+        return code1 == code2 || this.columns[column].areEquivalent(code1, code2);
+    }
+
+    /**
+     * Returns the number of values encoded in the dictionary of a column.
+     *
+     * @param column the index of the column, from 0
+     * @return the number of values of the column
+     */
+    public int size(int column) {
+        final ColumnDictionary[] current = this.columns;
+
+        return column < current.length && current[column] != null ? current[column].size : 0;
+    }
+
+    /**
+     * Estimates the memory used by the dictionaries of all the columns. The
+     * estimate grows with the values encoded, up to MAXIMUM_VALUES values of
+     * MAXIMUM_LENGTH characters per column.
+     *
+     * @return the estimated memory size, in bytes
+     */
+    public long estimateSize() {
+        long size = 0;
+
+        for (ColumnDictionary column : this.columns) {
+            if (column != null) {
+                size += column.estimateSize();
+            }
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the field separator.
+     *
+     * @return the field separator
+     */
+    public String getSeparator() {
+        return this.separator;
+    }
+
+    /**
+     * Returns the Set identifying the date fields, a copy of the Set given
+     * when the dictionaries were created.
+     *
+     * @return the Set identifying the date fields
+     */
+    public Set<Integer> getDates() {
+        return this.dates;
+    }
+
+    /**
+     * Returns the Set identifying the number fields, a copy of the Set given
+     * when the dictionaries were created.
+     *
+     * @return the Set identifying the number fields
+     */
+    public Set<Integer> getNumbers() {
+        return this.numbers;
+    }
+
+    /**
+     * Returns the columns taking part in the comparisons.
+     *
+     * @return the projection, ALL if no column is skipped
+     */
+    public ColumnProjection getProjection() {
+        return this.projection;
+    }
+
+    /**
+     * Returns the dictionary of a column, creating it if needed.
+     */
+    private ColumnDictionary getColumn(int column) {
+        final ColumnDictionary[] current = this.columns;
+
+        if (column < current.length && current[column] != null) {
+            return current[column];
+        }
+
+        synchronized (this) {
+            ColumnDictionary[] columnsArray = this.columns;
+
+            if (column >= columnsArray.length) {
+                columnsArray = Arrays.copyOf(columnsArray, column + 1);
+            }
+
+            if (columnsArray[column] == null) {
+                columnsArray[column] = new ColumnDictionary();
+            }
+
+            this.columns = columnsArray;
+
+            return columnsArray[column];
+        }
+    }
+
+    /**
+     * The dictionary of the values of one column, with their kinds, the
+     * values of the numbers and the days of the dates.
+     */
+    private static final class ColumnDictionary {
+        private final Map<String, Integer> codes = new ConcurrentHashMap<String, Integer>();
+        private volatile String[] values = new String[16];
+        private volatile byte[] kinds = new byte[16];
+        private volatile double[] numbers = new double[16];
+        private volatile int[] days = new int[16];
+        private volatile int size;
+
+        int encode(String value) {
+            final Integer code = this.codes.get(value);
+
+            if (code != null) {
+                return code;
+            }
+
+            if (value.length() > MAXIMUM_LENGTH) {
+                return NOT_ENCODED;
+            }
+
+            if (this.size == MAXIMUM_VALUES) {
+                // the value may have been added by another thread meanwhile
+                final Integer full = this.codes.get(value);
+
+                return full == null ? NOT_ENCODED : full;
+            }
+
+            synchronized (this) {
+                final Integer added = this.codes.get(value);
+
+                if (added != null) {
+                    return added;
+                }
+
+                if (this.size == MAXIMUM_VALUES) {
+                    return NOT_ENCODED;
+                }
+
+                if (this.size == this.values.length) {
+                    final int length = Math.min(this.size * 2, MAXIMUM_VALUES);
+
+                    this.values = Arrays.copyOf(this.values, length);
+                    this.kinds = Arrays.copyOf(this.kinds, length);
+                    this.numbers = Arrays.copyOf(this.numbers, length);
+                    this.days = Arrays.copyOf(this.days, length);
+                }
+
+                this.values[this.size] = value;
+                this.parse(this.size, value);
+                this.codes.put(value, this.size);
+
+                return this.size++;
+            }
+        }
+
+        String decode(int code) {
+            return this.values[code];
+        }
+
+        synchronized long estimateSize() {
+            long size = this.values.length * SLOT_SIZE;
+
+            for (int i = 0; i < this.size; i++) {
+                size += VALUE_OVERHEAD + 2L * this.values[i].length();
+            }
+
+            return size;
+        }
+
+        boolean areEquivalent(int code1, int code2) {
+            final int kinds1 = this.kinds[code1];
+            final int kinds2 = this.kinds[code2];
+
+            if ((kinds1 & kinds2 & NUMBER) != 0) {
+                return this.numbers[code1] == this.numbers[code2];
+            }
+
+            return (kinds1 & kinds2 & DATE) != 0 && this.days[code1] == this.days[code2];
+        }
+
+        /**
+         * Parses a value as a number and as a date. A number that Double
+         * cannot parse is NaN, equal to no other number.
+         */
+        private void parse(int code, String value) {
+            byte kind = 0;
+            final String number = ComparatorUtility.deleteAllWhitespace(value);
+
+            if (NumberUtils.isNumber(number)) {
+                kind |= NUMBER;
+
+                try {
+                    this.numbers[code] = Double.parseDouble(number);
+                } catch (NumberFormatException e) {
+                    this.numbers[code] = Double.NaN;
+                }
+            }
+
+            try {
+                final long time = DateUtils.parseDate(value,
+                        DateUtility.getDateFormatsAsPatternArray()).getTime();
+
+                this.days[code] = (int) Math.floorDiv(time + TimeZone.getDefault().getOffset(time),
+                        DAY);
+                kind |= DATE;
+            } catch (ParseException e) {
+                // not a date
+            }
+
+            this.kinds[code] = kind;
+        }
+    }
+
+    /**
+     * The dictionaries of a comparison job, by parsing settings.<br>
+     * Each job has its own Scope, held by the thread running it and by the
+     * threads of the ComparisonExecutor running its tasks, like its
+     * NormalizationCache, so that a column filled by a job doesn't stay full
+     * for the next jobs.
+     */
+    public static final class Scope {
+
+        /**
+         * The Scope used outside of the jobs, which gives new dictionaries
+         * each time.
+         */
+        public static final Scope NONE = new Scope();
+
+        /**
+         * The Scope of the job run by the current thread.
+         */
+        private static final ThreadLocal<Scope> CURRENT = new ThreadLocal<Scope>();
+
+        /**
+         * The dictionaries of each parsing settings.
+         */
+        private final Map<Settings, ColumnDictionaries> dictionaries = new HashMap<Settings, ColumnDictionaries>();
+
+        /**
+         * The dictionaries returned last, found again without building the key
+         * of their settings as long as equal settings are given.
+         */
+        private volatile Lookup last;
+
+        /**
+         * Returns the Scope of the job run by the current thread.
+         *
+         * @return the Scope of the job or NONE
+         */
+        public static Scope getCurrent() {
+            final Scope scope = CURRENT.get();
+
+            return scope == null ? NONE : scope;
+        }
+
+        /**
+         * Sets the Scope of the job run by the current thread.
+         *
+         * @param scope the Scope of the job or NONE
+         */
+        public static void setCurrent(Scope scope) {
+            if (scope == null || scope == NONE) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(scope);
+            }
+        }
+
+        /**
+         * Returns the dictionaries of the Lines parsed with the given
+         * settings, creating them if needed.
+         */
+        ColumnDictionaries get(String separator, Set<Integer> dates, Set<Integer> numbers,
+                               ColumnProjection projection) {
+            final Lookup previous = this.last;
+
+            // the Sets may have been changed since the last call : they are
+            // compared by value with the copies of the settings
+            if (previous != null && previous.settings.matches(separator, dates, numbers,
+                    projection)) {
+                return previous.dictionaries;
+            }
+
+            final Settings settings = new Settings(separator, dates, numbers, projection);
+
+            if (this == NONE) {
+                return new ColumnDictionaries(separator, settings.dates, settings.numbers,
+                        settings.projection);
+            }
+
+            synchronized (this) {
+                ColumnDictionaries found = this.dictionaries.get(settings);
+
+                if (found == null) {
+                    found = new ColumnDictionaries(separator, settings.dates, settings.numbers,
+                            settings.projection);
+                    this.dictionaries.put(settings, found);
+                }
+
+                this.last = new Lookup(settings, found);
+
+                return found;
+            }
+        }
+
+        /**
+         * Shares dictionaries with the job, typically the ones of the Lines of
+         * a file taken from the ParsedFileCache, so that the Lines parsed
+         * afterwards with the same settings use them. The job keeps its own
+         * dictionaries if it already has some for these settings.
+         *
+         * @param shared the dictionaries to share
+         */
+        public void share(ColumnDictionaries shared) {
+            if (this == NONE) {
+                return;
+            }
+
+            final Settings settings = new Settings(shared.separator, shared.dates, shared.numbers,
+                    shared.projection);
+
+            synchronized (this) {
+                if (!this.dictionaries.containsKey(settings)) {
+                    this.dictionaries.put(settings, shared);
+                }
+            }
+        }
+    }
+
+    /**
+     * The dictionaries returned for the given settings.
+     */
+    private static final class Lookup {
+        private final Settings settings;
+        private final ColumnDictionaries dictionaries;
+
+        Lookup(Settings settings, ColumnDictionaries dictionaries) {
+            this.settings = settings;
+            this.dictionaries = dictionaries;
+        }
+    }
+
+    /**
+     * Identifies the settings used to parse the Lines, by copies of the Sets
+     * given.
+     */
+    private static final class Settings {
+        private final String separator;
+        private final Set<Integer> dates;
+        private final Set<Integer> numbers;
+        private final ColumnProjection projection;
+
+        Settings(String separator, Set<Integer> dates, Set<Integer> numbers,
+                 ColumnProjection projection) {
+            this.separator = separator;
+            this.dates = Collections.unmodifiableSet(dates == null ? new TreeSet<Integer>()
+                    : new TreeSet<Integer>(dates));
+            this.numbers = Collections.unmodifiableSet(numbers == null ? new TreeSet<Integer>()
+                    : new TreeSet<Integer>(numbers));
+            this.projection = projection == null || projection.isAll() ? ColumnProjection.ALL
+                    : projection;
+        }
+
+        /**
+         * Checks if the settings are equal to the given ones, without copying
+         * them.
+         */
+        boolean matches(String separator, Set<Integer> dates, Set<Integer> numbers,
+                        ColumnProjection projection) {
+            return (this.separator == null ? separator == null : this.separator
+                    .equals(separator))
+                    && (dates == null ? this.dates.isEmpty() : this.dates.equals(dates))
+                    && (numbers == null ? this.numbers.isEmpty() : this.numbers.equals(numbers))
+                    && this.projection.equals(projection == null || projection.isAll()
+                    ? ColumnProjection.ALL : projection);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+
+            if (!(o instanceof Settings)) {
+                return false;
+            }
+
+            final Settings that = (Settings) o;
+            return (this.separator == null ? that.separator == null : this.separator
+                    .equals(that.separator)) && this.dates.equals(that.dates)
+                    && this.numbers.equals(that.numbers)
+                    && this.projection.equals(that.projection);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = 17;
+            result = 37 * result + (this.separator == null ? 0 : this.separator.hashCode());
+            result = 37 * result + this.dates.hashCode();
+            result = 37 * result + this.numbers.hashCode();
+
+            return 37 * result + this.projection.hashCode();
+        }
+    }
+}
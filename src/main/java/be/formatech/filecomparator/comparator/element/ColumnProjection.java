@@ -0,0 +1,162 @@
+package be.formatech.filecomparator.comparator.element;
+
+import be.formatech.filecomparator.utils.ConfigUtility;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The columns of the files taking part in a comparison.<br>
+ * A column is skipped if it is ignored or if only other columns are compared.
+ * The skipped fields of a Line are neither copied out of its content, nor
+ * normalized, nor encoded : they are empty in its formatted content, so that
+ * two Lines differing only by skipped fields are equal.
+ *
+ * @version $Id$
+ * @see Line, ColumnDictionaries
+ */
+public final class ColumnProjection implements Serializable {
+    private static final long serialVersionUID = 4719270531954207842L;
+
+    /**
+     * The projection comparing all the columns.
+     */
+    public static final ColumnProjection ALL = new ColumnProjection(null, null);
+
+    /**
+     * The Set identifying the ignored columns.
+     */
+    private final Set<Integer> ignored;
+
+    /**
+     * The Set identifying the only compared columns, empty to compare all the
+     * columns that are not ignored.
+     */
+    private final Set<Integer> compared;
+
+    /**
+     * Initializes a newly created ColumnProjection object.
+     *
+     * @param ignored  the Set identifying the ignored columns or null
+     * @param compared the Set identifying the only compared columns, empty or
+     *                 null to compare all the columns that are not ignored
+     */
+    public ColumnProjection(Set<Integer> ignored, Set<Integer> compared) {
+        super();
+
+        this.ignored = ignored == null ? Collections.<Integer>emptySet() : Collections
+                .unmodifiableSet(new TreeSet<Integer>(ignored));
+        this.compared = compared == null ? Collections.<Integer>emptySet() : Collections
+                .unmodifiableSet(new TreeSet<Integer>(compared));
+    }
+
+    /**
+     * Returns a ColumnProjection, ALL if no column is skipped.
+     *
+     * @param ignored  the Set identifying the ignored columns or null
+     * @param compared the Set identifying the only compared columns, empty or
+     *                 null to compare all the columns that are not ignored
+     * @return the projection
+     */
+    public static ColumnProjection of(Set<Integer> ignored, Set<Integer> compared) {
+        final ColumnProjection projection = new ColumnProjection(ignored, compared);
+
+        return projection.equals(ALL) ? ALL : projection;
+    }
+
+    /**
+     * Checks if a column is skipped.
+     *
+     * @param column the number of the column, from 1
+     * @return true if the column is ignored or not compared, false otherwise
+     */
+    public boolean isSkipped(int column) {
+        return this.ignored.contains(column)
+                || (!this.compared.isEmpty() && !this.compared.contains(column));
+    }
+
+    /**
+     * Checks if all the columns are compared.
+     *
+     * @return true if no column is skipped, false otherwise
+     */
+    public boolean isAll() {
+        return this.ignored.isEmpty() && this.compared.isEmpty();
+    }
+
+    /**
+     * Returns the Set identifying the ignored columns.
+     *
+     * @return the ignored columns, read-only
+     */
+    public Set<Integer> getIgnored() {
+        return this.ignored;
+    }
+
+    /**
+     * Returns the Set identifying the only compared columns.
+     *
+     * @return the compared columns, read-only, empty if all the columns that
+     * are not ignored are compared
+     */
+    public Set<Integer> getCompared() {
+        return this.compared;
+    }
+
+    /**
+     * Returns ALL in place of a deserialized projection comparing all the
+     * columns.
+     *
+     * @return the projection to use
+     */
+    private Object readResolve() {
+        return this.isAll() ? ALL : this;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+
+        if (!(o instanceof ColumnProjection)) {
+            return false;
+        }
+
+        final ColumnProjection that = (ColumnProjection) o;
+        return this.ignored.equals(that.ignored) && this.compared.equals(that.compared);
+    }
+
+    @Override
+    public int hashCode() {
+        return 37 * (17 * 37 + this.ignored.hashCode()) + this.compared.hashCode();
+    }
+
+    /**
+     * Returns the projection as displayed in the results, like
+     * "ignored [3,4], compared [1,2,3]".
+     *
+     * @return the description of the projection
+     */
+    @Override
+    public String toString() {
+        if (this.isAll()) {
+            return "all columns";
+        }
+
+        final StringBuilder builder = new StringBuilder();
+
+        if (!this.ignored.isEmpty()) {
+            builder.append("ignored ").append(ConfigUtility.getSetAsString(this.ignored));
+        }
+
+        if (!this.compared.isEmpty()) {
+            builder.append(builder.length() > 0 ? ", " : "").append("compared ").append(
+                    ConfigUtility.getSetAsString(this.compared));
+        }
+
+        return builder.toString();
+    }
+}
@@ -1,16 +1,26 @@
 package be.formatech.filecomparator.comparator.element;
 
 import be.formatech.filecomparator.utils.ComparatorUtility;
-import be.formatech.filecomparator.utils.DateUtility;
 import org.apache.commons.lang3.math.NumberUtils;
-import org.apache.commons.lang3.time.DateUtils;
 
 import java.lang.annotation.Inherited;
 import java.text.ParseException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 
 /**
+ * A line of a file and its formatted fields.<br>
+ * Each formatted field is stored as its code in the dictionary of its column,
+ * the ColumnDictionaries being shared by the Lines parsed with the same
+ * settings in the same comparison job. A field that is not in the dictionary of its column is stored as
+ * its position in the content of the Line if formatting it doesn't change it,
+ * as a String otherwise. The formatted content of the Line is only built when
+ * it is asked.<br>
+ * The fields of the columns skipped by the ColumnProjection of the
+ * dictionaries are not copied out of the content of the Line : they are empty
+ * in the formatted content.
+ * 
  * @version $Id: Line.java 164 2010-07-23 13:31:32Z g80195 $
  * 
  * @author Sebastien Vandamme
@@ -20,8 +30,33 @@ public class Line implements Comparable<Line> {
 	/** The content of the Line. */
 	private final String line;
 
-	/** The content of the Line formatted. */
-	private final String formattedLine;
+	/** The dictionaries of the formatted fields. */
+	private final ColumnDictionaries dictionaries;
+
+	/**
+	 * The code of a field that is not in the dictionary of its column and is
+	 * not changed by the formatting, less its position in the content of the
+	 * Line.
+	 */
+	private static final int RAW_FIELD = -2;
+
+	/** The code of a field of a column skipped by the ColumnProjection. */
+	private static final int SKIPPED_FIELD = Integer.MIN_VALUE;
+
+	/**
+	 * The codes of the formatted fields in the dictionaries of their columns,
+	 * NOT_ENCODED or RAW_FIELD less their positions.
+	 */
+	private final int[] codes;
+
+	/**
+	 * The formatted fields that are not in the dictionaries of their columns
+	 * and are changed by the formatting, null if there is none.
+	 */
+	private String[] values;
+
+	/** The hash code of the formatted content of the Line. */
+	private int formattedHash;
 
 	/**
 	 * The occurence of the Line i.e. if there is more than one occurence of
@@ -29,12 +64,6 @@ public class Line implements Comparable<Line> {
 	 */
 	private int occurenceNumber;
 
-	/** The Set identifying the date fields of the Line. */
-	private final Set<Integer> dates;
-
-	/** The Set identifying the number fields of the Line. */
-	private final Set<Integer> numbers;
-
 	/**
 	 * Initializes a newly created Line object.
 	 * 
@@ -76,49 +105,149 @@ public class Line implements Comparable<Line> {
 	 */
 	public Line(String line, String separator, int occurence, Set<Integer> dates,
 			Set<Integer> numbers) throws ParseException {
+		this(line, ColumnDictionaries.forSettings(separator, dates, numbers), occurence);
+	}
+
+	/**
+	 * Initializes a newly created Line object, with the dictionaries of the
+	 * settings used to parse it.
+	 * 
+	 * @param line
+	 *            the content of the Line
+	 * @param dictionaries
+	 *            the dictionaries of the formatted fields, holding the field
+	 *            separator and the date and number fields
+	 * @param occurence
+	 *            the occurence number
+	 * @throws ParseException
+	 *             If the Line contains a date that cannot be parsed.
+	 */
+	public Line(String line, ColumnDictionaries dictionaries, int occurence)
+			throws ParseException {
 		super();
 
 		this.line = line;
 		this.occurenceNumber = occurence;
-		this.dates = dates;
-		this.numbers = numbers;
-		this.formattedLine = this.formatLine(separator);
+		this.dictionaries = dictionaries;
+		this.codes = this.formatLine();
 	}
 
 	/**
-	 * Formats the Line by parsing the dates and numbers fields.
+	 * Formats the Line by parsing the dates and numbers fields, and encodes
+	 * the formatted fields. The dates already parsed by the job are taken
+	 * from its NormalizationCache. If columns are skipped, the
+	 * fields are found in the content of the Line without tokenizing it.
 	 * 
-	 * @param separator
-	 *            the field separator
-	 * @return the formatted content of the Line
+	 * @return the codes of the formatted fields
 	 * @throws ParseException
 	 *             If the Line contains a date that cannot be parsed.
 	 */
-	private String formatLine(String separator) throws ParseException {
-		final List<String> tokens = ComparatorUtility.tokenize(this.line, separator);
-		final StringBuilder builder = new StringBuilder();
+	private int[] formatLine() throws ParseException {
+		final String separator = this.dictionaries.getSeparator();
+		final Set<Integer> dates = this.dictionaries.getDates();
+		final Set<Integer> numbers = this.dictionaries.getNumbers();
+		final ColumnProjection projection = this.dictionaries.getProjection();
+		final NormalizationCache cache = NormalizationCache.getCurrent();
+		final List<String> tokens = projection.isAll() || separator.length() == 0 ? ComparatorUtility
+				.tokenize(this.line, separator) : null;
+		final int[] result = new int[tokens == null ? this.countFields(separator) : tokens.size()];
+		int hash = 0;
+		int start = 0;
+
+		for (int i = 0; i < result.length; i++) {
+			final int end = tokens == null ? this.getRawFieldEnd(start) : start
+					+ tokens.get(i).length();
+
+			if (projection.isSkipped(i + 1)) {
+				result[i] = SKIPPED_FIELD;
+				start = end + separator.length();
+
+				if (i > 0) {
+					for (int j = 0; j < separator.length(); j++) {
+						hash = 31 * hash + separator.charAt(j);
+					}
+				}
+
+				continue;
+			}
 
-		for (int i = 0; i < tokens.size(); i++) {
-			String token = tokens.get(i);
+			final String raw = tokens == null ? this.line.substring(start, end) : tokens.get(i);
+			String token = raw;
 
-			if ((!this.dates.isEmpty() && this.dates.contains(i + 1))
-					|| (this.dates.isEmpty() && DateUtility.isDate(token))) {
-				token = DateUtils.parseDate(token, DateUtility.getDateFormatsAsPatternArray())
-						.toString();
-			} else if ((!this.numbers.isEmpty() && this.numbers.contains(i + 1))
-					&& (this.numbers.isEmpty() && NumberUtils.isNumber(ComparatorUtility
+			if (!dates.isEmpty() && dates.contains(i + 1)) {
+				token = cache.formatDate(i, token);
+			} else if (dates.isEmpty()) {
+				final String date = cache.formatDateIfAny(i, token);
+
+				if (date != null) {
+					token = date;
+				}
+			} else if ((!numbers.isEmpty() && numbers.contains(i + 1))
+					&& (numbers.isEmpty() && NumberUtils.isNumber(ComparatorUtility
                     .deleteAllWhitespace(token)))) {
 				token = Double.valueOf(ComparatorUtility.deleteAllWhitespace(token)).toString();
 			}
 
-			builder.append(token);
+			result[i] = this.dictionaries.encode(i, token);
 
-			if (i < tokens.size() - 1) {
-				builder.append(separator);
+			if (result[i] == ColumnDictionaries.NOT_ENCODED) {
+				if (token == raw && separator.length() > 0 && this.line.startsWith(raw, start)) {
+					result[i] = RAW_FIELD - start;
+				} else {
+					if (this.values == null) {
+						this.values = new String[result.length];
+					}
+
+					this.values[i] = token;
+				}
+			}
+
+			start = end + separator.length();
+
+			// the hash code of the formatted content, as String.hashCode
+			if (i > 0) {
+				for (int j = 0; j < separator.length(); j++) {
+					hash = 31 * hash + separator.charAt(j);
+				}
+			}
+
+			for (int j = 0; j < token.length(); j++) {
+				hash = 31 * hash + token.charAt(j);
 			}
 		}
 
-		return builder.toString();
+		this.formattedHash = hash;
+
+		return result;
+	}
+
+	/**
+	 * Returns the number of fields of the content of the Line, like
+	 * ComparatorUtility.tokenize with a separator that is not empty.
+	 */
+	private int countFields(String separator) {
+		if (this.line.length() == 0) {
+			return 0;
+		}
+
+		int count = 1;
+
+		for (int i = this.line.indexOf(separator); i >= 0; i = this.line.indexOf(separator, i
+				+ separator.length())) {
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Returns the dictionaries of the formatted fields of the Line.
+	 * 
+	 * @return the dictionaries, shared by the Lines parsed with the same
+	 *         settings in the same comparison job
+	 */
+	public ColumnDictionaries getDictionaries() {
+		return this.dictionaries;
 	}
 
 	/**
@@ -131,12 +260,178 @@ public class Line implements Comparable<Line> {
 	}
 
 	/**
-	 * Returns the formatted content of the Line.
+	 * Returns the formatted content of the Line, built from its formatted
+	 * fields.
 	 * 
 	 * @return the formatted content of the Line
 	 */
 	public String getFormattedLine() {
-		return this.formattedLine;
+		final String separator = this.dictionaries.getSeparator();
+		final StringBuilder builder = new StringBuilder(this.line.length() + 16);
+
+		for (int i = 0; i < this.codes.length; i++) {
+			if (i > 0) {
+				builder.append(separator);
+			}
+
+			builder.append(this.getField(i));
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Returns the formatted fields of the Line, without tokenizing its
+	 * formatted content again. The equal values of a column encoded in the
+	 * dictionaries are the same String.
+	 * 
+	 * @return the formatted fields of the Line
+	 */
+	public List<String> getFields() {
+		final String[] fields = new String[this.codes.length];
+
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = this.getField(i);
+		}
+
+		return Arrays.asList(fields);
+	}
+
+	/**
+	 * Returns a formatted field of the Line.
+	 * 
+	 * @param index
+	 *            the index of the field, from 0
+	 * @return the formatted field
+	 */
+	public String getField(int index) {
+		final int code = this.codes[index];
+
+		if (code >= 0) {
+			return this.dictionaries.decode(index, code);
+		}
+
+		if (code == ColumnDictionaries.NOT_ENCODED) {
+			return this.values[index];
+		}
+
+		if (code == SKIPPED_FIELD) {
+			return "";
+		}
+
+		return this.line.substring(RAW_FIELD - code, this.getRawFieldEnd(RAW_FIELD - code));
+	}
+
+	/**
+	 * Returns the end of a field that is not changed by the formatting, in the
+	 * content of the Line.
+	 */
+	private int getRawFieldEnd(int start) {
+		final int end = this.line.indexOf(this.dictionaries.getSeparator(), start);
+
+		return end < 0 ? this.line.length() : end;
+	}
+
+	/**
+	 * Returns the number of fields of the Line.
+	 * 
+	 * @return the number of fields
+	 */
+	public int getFieldCount() {
+		return this.codes.length;
+	}
+
+	/**
+	 * Checks if a formatted field of the Line is equal to the same field of
+	 * another Line, comparing their codes if both are encoded in the same
+	 * dictionary.
+	 * 
+	 * @param l
+	 *            the other Line
+	 * @param index
+	 *            the index of the field, from 0
+	 * @return true if both fields are equal, false otherwise
+	 */
+	public boolean isSameField(Line l, int index) {
+		final int code1 = this.codes[index];
+		final int code2 = l.codes[index];
+
+		if (code1 == SKIPPED_FIELD || code2 == SKIPPED_FIELD) {
+			return code1 == code2 || this.getField(index).equals(l.getField(index));
+		}
+
+		if (this.dictionaries == l.dictionaries && (code1 >= 0 || code2 >= 0)) {
+			// a value of the dictionary is encoded in all the Lines
+			return code1 == code2;
+		}
+
+		if (code1 <= RAW_FIELD && code2 <= RAW_FIELD) {
+			final int start1 = RAW_FIELD - code1;
+			final int start2 = RAW_FIELD - code2;
+			final int length = this.getRawFieldEnd(start1) - start1;
+
+			return length == l.getRawFieldEnd(start2) - start2
+					&& this.line.regionMatches(start1, l.line, start2, length);
+		}
+
+		return this.getField(index).equals(l.getField(index));
+	}
+
+	/**
+	 * Checks if a formatted field of the Line is equivalent to the same field
+	 * of another Line : equal, equal as numbers if both are numbers or equal
+	 * as dates if both are dates. The fields encoded in the same dictionary
+	 * are compared through the numbers and the dates parsed by the dictionary.
+	 * 
+	 * @param l
+	 *            the other Line
+	 * @param index
+	 *            the index of the field, from 0
+	 * @return true if both fields are equivalent, false otherwise
+	 */
+	public boolean isEquivalentField(Line l, int index) {
+		if (this.isSameField(l, index)) {
+			return true;
+		}
+
+		final int code1 = this.codes[index];
+		final int code2 = l.codes[index];
+
+		if (this.dictionaries == l.dictionaries && code1 >= 0 && code2 >= 0) {
+			return this.dictionaries.areEquivalent(index, code1, code2);
+		}
+
+		return ComparatorUtility.fieldsAreEquivalent(this.getField(index), l.getField(index));
+	}
+
+	/**
+	 * Checks if the formatted content of the Line is equal to the formatted
+	 * content of another Line.
+	 * 
+	 * @param l
+	 *            the other Line
+	 * @return true if both formatted contents are equal, false otherwise
+	 */
+	public boolean isSameFormattedLine(Line l) {
+		if (this.formattedHash != l.formattedHash) {
+			return false;
+		}
+
+		if (this.dictionaries != l.dictionaries) {
+			return this.getFormattedLine().equals(l.getFormattedLine());
+		}
+
+		if (this.codes.length != l.codes.length) {
+			return false;
+		}
+
+		for (int i = 0; i < this.codes.length; i++) {
+			if (!this.isSameField(l, i)) {
+				return false;
+			}
+		}
+
+		return true;
 	}
 
 	/**
@@ -167,8 +462,9 @@ public class Line implements Comparable<Line> {
 			return 0;
 		}
 
-		if (this.formattedLine.equals(l.getFormattedLine())
-				&& (this.occurenceNumber == l.getOccurenceNumber())) {
+		final boolean sameFormattedLine = this.isSameFormattedLine(l);
+
+		if (sameFormattedLine && (this.occurenceNumber == l.getOccurenceNumber())) {
 			return 0;
 		}
 
@@ -177,9 +473,11 @@ public class Line implements Comparable<Line> {
 			return comparison;
 		}
 
-		comparison = this.formattedLine.compareTo(l.getFormattedLine());
-		if (comparison != 0) {
-			return comparison;
+		if (!sameFormattedLine) {
+			comparison = this.getFormattedLine().compareTo(l.getFormattedLine());
+			if (comparison != 0) {
+				return comparison;
+			}
 		}
 
 		if (this.occurenceNumber > l.getOccurenceNumber()) {
@@ -206,8 +504,8 @@ public class Line implements Comparable<Line> {
 		}
 
 		final Line that = (Line) l;
-		return ((this.formattedLine.equals(that.getFormattedLine())) && (this.occurenceNumber == that
-				.getOccurenceNumber()));
+		return ((this.occurenceNumber == that.getOccurenceNumber()) && this
+				.isSameFormattedLine(that));
 	}
 
 	/**
@@ -216,7 +514,7 @@ public class Line implements Comparable<Line> {
 	@Override
 	public int hashCode() {
 		int result = 17;
-		result = 37 * result + this.formattedLine.hashCode();
+		result = 37 * result + this.formattedHash;
 
 		return (37 * result + this.occurenceNumber);
 	}
@@ -229,10 +527,10 @@ public class Line implements Comparable<Line> {
 		final StringBuilder builder = new StringBuilder();
 
 		builder.append(this.line);
-		builder.append(this.formattedLine);
+		builder.append(this.getFormattedLine());
 		builder.append(this.occurenceNumber);
-		builder.append(this.dates);
-		builder.append(this.numbers);
+		builder.append(this.dictionaries.getDates());
+		builder.append(this.dictionaries.getNumbers());
 
 		return builder.toString();
 	}
@@ -0,0 +1,478 @@
+package be.formatech.filecomparator.comparator.element;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The Lines of a file, in an array indexed by their line numbers.<br>
+ * The Lines are put in the increasing order of their numbers. As long as the
+ * numbers follow each other, a Line is found at the position of its number
+ * from the first one; otherwise the numbers are kept in a sorted array and
+ * searched. The Lines are also indexed by their formatted content and their
+ * occurence number in an open addressing table, so that a Line is found
+ * without comparing it with the other Lines.<br>
+ * Removing a Line only marks it as consumed in a BitSet : the Lines matched by
+ * a comparison are consumed instead of being removed from a tree. A LineTable
+ * shared by several comparisons, like the ones of the ParsedFileCache, is made
+ * read-only and copied by the comparisons that consume its Lines.
+ *
+ * @version $Id$
+ * @see Line
+ */
+public final class LineTable extends AbstractMap<Integer, Line> {
+
+    /**
+     * The Lines, in the order of their numbers.
+     */
+    private Line[] lines;
+
+    /**
+     * The numbers of the Lines or null as long as they follow each other from
+     * the first one.
+     */
+    private int[] lineNumbers;
+
+    /**
+     * The number of the first Line.
+     */
+    private int firstLineNumber;
+
+    /**
+     * The number of Lines put in the table, consumed or not.
+     */
+    private int count;
+
+    /**
+     * The number of Lines that are not consumed.
+     */
+    private int size;
+
+    /**
+     * The positions of the consumed Lines.
+     */
+    private final BitSet consumed;
+
+    /**
+     * The positions of the Lines plus one, by their formatted content and
+     * their occurence number, 0 for an empty slot.
+     */
+    private int[] index;
+
+    /**
+     * The flag indicating if the Lines can be neither put nor consumed.
+     */
+    private boolean readOnly;
+
+    /**
+     * Initializes a newly created and empty LineTable object.
+     */
+    public LineTable() {
+        super();
+
+        this.lines = new Line[1024];
+        this.consumed = new BitSet();
+        this.index = new int[2048];
+    }
+
+    /**
+     * Initializes a newly created LineTable object with the Lines of another
+     * LineTable that are not consumed. The copy is not read-only.
+     *
+     * @param table the LineTable to copy
+     */
+    public LineTable(LineTable table) {
+        super();
+
+        this.lines = Arrays.copyOf(table.lines, Math.max(table.count, 1));
+        this.lineNumbers = table.lineNumbers == null ? null : Arrays.copyOf(table.lineNumbers,
+                Math.max(table.count, 1));
+        this.firstLineNumber = table.firstLineNumber;
+        this.count = table.count;
+        this.size = table.size;
+        this.consumed = (BitSet) table.consumed.clone();
+        this.index = table.index.clone();
+    }
+
+    /**
+     * Returns a LineTable containing the Lines of a Map, a copy of it if the
+     * Map is a LineTable.
+     *
+     * @param lines the Lines, by their line numbers
+     * @return a new LineTable, not read-only
+     */
+    public static LineTable copyOf(Map<Integer, Line> lines) {
+        if (lines instanceof LineTable) {
+            return new LineTable((LineTable) lines);
+        }
+
+        final Integer[] keys = lines.keySet().toArray(new Integer[lines.size()]);
+        final LineTable result = new LineTable();
+
+        Arrays.sort(keys);
+
+        for (Integer key : keys) {
+            result.put(key, lines.get(key));
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the occurence number of a Line to follow the Lines of the table
+     * having the same formatted content, so that it can be put in the table.
+     * The occurence numbers of the equal Lines must follow each other from 1.
+     *
+     * @param line the Line to number
+     */
+    public void numberOccurence(Line line) {
+        line.setOccurenceNumber(1);
+
+        if (this.find(line) < 0) {
+            return;
+        }
+
+        // the last occurence present, then the first one absent
+        int present = 1;
+        int absent = 2;
+
+        line.setOccurenceNumber(absent);
+
+        while (this.find(line) >= 0) {
+            present = absent;
+            absent *= 2;
+            line.setOccurenceNumber(absent);
+        }
+
+        while (absent - present > 1) {
+            final int middle = (present + absent) >>> 1;
+
+            line.setOccurenceNumber(middle);
+
+            if (this.find(line) >= 0) {
+                present = middle;
+            } else {
+                absent = middle;
+            }
+        }
+
+        line.setOccurenceNumber(absent);
+    }
+
+    /**
+     * Puts a Line after the other Lines of the table.
+     *
+     * @param key   the number of the Line, greater than the numbers of the
+     *              Lines already put
+     * @param value the Line
+     * @return null, the table having no Line with the same number
+     * @throws IllegalArgumentException      if a Line with a greater or equal
+     *                                       number was already put
+     * @throws UnsupportedOperationException if the table is read-only
+     */
+    @Override
+    public Line put(Integer key, Line value) {
+        this.checkWritable();
+
+        final int lineNumber = key;
+
+        if (this.count == 0) {
+            this.firstLineNumber = lineNumber;
+        } else if (lineNumber <= this.getLineNumber(this.count - 1)) {
+            throw new IllegalArgumentException("Line " + lineNumber
+                    + " cannot be put after line " + this.getLineNumber(this.count - 1));
+        } else if (this.lineNumbers == null && lineNumber != this.firstLineNumber + this.count) {
+            this.lineNumbers = new int[this.lines.length];
+
+            for (int i = 0; i < this.count; i++) {
+                this.lineNumbers[i] = this.firstLineNumber + i;
+            }
+        }
+
+        if (this.count == this.lines.length) {
+            this.lines = Arrays.copyOf(this.lines, this.count * 2);
+
+            if (this.lineNumbers != null) {
+                this.lineNumbers = Arrays.copyOf(this.lineNumbers, this.count * 2);
+            }
+        }
+
+        if (2 * (this.count + 1) > this.index.length) {
+            this.rehash(this.index.length * 2);
+        }
+
+        this.lines[this.count] = value;
+
+        if (this.lineNumbers != null) {
+            this.lineNumbers[this.count] = lineNumber;
+        }
+
+        this.addToIndex(this.count);
+        this.count++;
+        this.size++;
+
+        return null;
+    }
+
+    @Override
+    public Line get(Object key) {
+        final int position = this.getPosition(key);
+
+        return position < 0 ? null : this.lines[position];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return this.getPosition(key) >= 0;
+    }
+
+    @Override
+    public boolean containsValue(Object value) {
+        return value instanceof Line && this.getKey((Line) value) != null;
+    }
+
+    /**
+     * Returns the number of a Line equal to a given Line, with the same
+     * occurence number.
+     *
+     * @param line the Line to look for
+     * @return the number of the Line or null if the table has no equal Line
+     * or if it is consumed
+     */
+    public Integer getKey(Line line) {
+        final int position = this.find(line);
+
+        return position < 0 || this.consumed.get(position) ? null : this
+                .getLineNumber(position);
+    }
+
+    /**
+     * Consumes a Line : the Line is not part of the Map anymore.
+     *
+     * @param lineNumber the number of the Line
+     * @return true if the Line was consumed, false if the table has no Line
+     * with this number or if it was already consumed
+     * @throws UnsupportedOperationException if the table is read-only
+     */
+    public boolean consume(int lineNumber) {
+        return this.remove(lineNumber) != null;
+    }
+
+    /**
+     * Consumes a Line, like consume.
+     *
+     * @param key the number of the Line
+     * @return the Line or null if the table has no Line with this number or if
+     * it was already consumed
+     * @throws UnsupportedOperationException if the table is read-only
+     */
+    @Override
+    public Line remove(Object key) {
+        this.checkWritable();
+
+        final int position = this.getPosition(key);
+
+        if (position < 0) {
+            return null;
+        }
+
+        this.markConsumed(position);
+
+        return this.lines[position];
+    }
+
+    /**
+     * Consumes all the Lines.
+     *
+     * @throws UnsupportedOperationException if the table is read-only
+     */
+    @Override
+    public void clear() {
+        this.checkWritable();
+        this.consumed.set(0, this.count);
+        this.size = 0;
+    }
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public Set<Entry<Integer, Line>> entrySet() {
+        return new AbstractSet<Entry<Integer, Line>>() {
+            @Override
+            public Iterator<Entry<Integer, Line>> iterator() {
+                return new LineIterator();
+            }
+
+            @Override
+            public int size() {
+                return LineTable.this.size;
+            }
+        };
+    }
+
+    /**
+     * Makes the table read-only : its Lines can be neither put nor consumed
+     * anymore.
+     */
+    public void setReadOnly() {
+        this.readOnly = true;
+    }
+
+    /**
+     * Checks if the table is read-only.
+     *
+     * @return true if the Lines can be neither put nor consumed, false
+     * otherwise
+     */
+    public boolean isReadOnly() {
+        return this.readOnly;
+    }
+
+    /**
+     * Returns the position of a Line that is not consumed from its number.
+     */
+    private int getPosition(Object key) {
+        if (!(key instanceof Integer) || this.count == 0) {
+            return -1;
+        }
+
+        final int lineNumber = (Integer) key;
+        final int position;
+
+        if (this.lineNumbers == null) {
+            position = lineNumber - this.firstLineNumber;
+        } else {
+            position = Arrays.binarySearch(this.lineNumbers, 0, this.count, lineNumber);
+        }
+
+        return position < 0 || position >= this.count || this.consumed.get(position) ? -1
+                : position;
+    }
+
+    /**
+     * Returns the number of the Line at a position.
+     */
+    private int getLineNumber(int position) {
+        return this.lineNumbers == null ? this.firstLineNumber + position
+                : this.lineNumbers[position];
+    }
+
+    /**
+     * Returns the position of the Line equal to a given Line, consumed or not.
+     */
+    private int find(Line line) {
+        final int mask = this.index.length - 1;
+        int slot = hash(line) & mask;
+        int entry;
+
+        while ((entry = this.index[slot]) != 0) {
+            if (this.lines[entry - 1].equals(line)) {
+                return entry - 1;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Adds the Line at a position to the index.
+     */
+    private void addToIndex(int position) {
+        final int mask = this.index.length - 1;
+        int slot = hash(this.lines[position]) & mask;
+
+        while (this.index[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+
+        this.index[slot] = position + 1;
+    }
+
+    /**
+     * Rebuilds the index with a new capacity.
+     */
+    private void rehash(int capacity) {
+        this.index = new int[capacity];
+
+        for (int i = 0; i < this.count; i++) {
+            this.addToIndex(i);
+        }
+    }
+
+    /**
+     * Consumes the Line at a position.
+     */
+    private void markConsumed(int position) {
+        this.consumed.set(position);
+        this.size--;
+    }
+
+    /**
+     * Throws an UnsupportedOperationException if the table is read-only.
+     */
+    private void checkWritable() {
+        if (this.readOnly) {
+            throw new UnsupportedOperationException("The LineTable is read-only");
+        }
+    }
+
+    /**
+     * Returns the hash of the formatted content and the occurence number of a
+     * Line.
+     */
+    private static int hash(Line line) {
+        final int hash = 31 * line.hashCode() + line.getOccurenceNumber();
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Iterates over the Lines that are not consumed, in the order of their
+     * numbers.
+     */
+    private final class LineIterator implements Iterator<Entry<Integer, Line>> {
+        private int next = LineTable.this.consumed.nextClearBit(0);
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            // the Line may have been consumed since
+            this.next = LineTable.this.consumed.nextClearBit(this.next);
+
+            return this.next < LineTable.this.count;
+        }
+
+        @Override
+        public Entry<Integer, Line> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            this.last = this.next;
+            this.next = LineTable.this.consumed.nextClearBit(this.next + 1);
+
+            return new SimpleImmutableEntry<Integer, Line>(LineTable.this
+                    .getLineNumber(this.last), LineTable.this.lines[this.last]);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last < 0 || LineTable.this.consumed.get(this.last)) {
+                throw new IllegalStateException();
+            }
+
+            LineTable.this.checkWritable();
+            LineTable.this.markConsumed(this.last);
+        }
+    }
+}
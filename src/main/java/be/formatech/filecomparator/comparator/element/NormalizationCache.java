@@ -0,0 +1,291 @@
+package be.formatech.filecomparator.comparator.element;
+
+import be.formatech.filecomparator.utils.DateUtility;
+import org.apache.commons.lang3.time.DateUtils;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The dates already normalized by a comparison job, by column.<br>
+ * The dates of a file are repeated on many lines : each column
+ * remembers its last CAPACITY tokens and their normalized values, so that a
+ * repeated token is not parsed again through all the date formats. When a
+ * column is full, a token is evicted with the CLOCK algorithm : the tokens
+ * found since the last turn of the clock get a second chance.<br>
+ * Each job has its own cache, held by the thread running it and by the
+ * threads of the ComparisonExecutor running its tasks, like the job id. The
+ * tokens are looked up without locking, only the new tokens lock their
+ * column, so that both files can be parsed in parallel.
+ *
+ * @version $Id$
+ * @see Line
+ */
+public final class NormalizationCache {
+
+    /**
+     * The cache used outside of the jobs, which normalizes each token without
+     * remembering it.
+     */
+    public static final NormalizationCache NONE = new NormalizationCache(0);
+
+    /**
+     * The default number of tokens remembered by each column.
+     */
+    public static final int CAPACITY = 1024;
+
+    /**
+     * The normalized value of a token that is not a date, compared by
+     * identity.
+     */
+    private static final String NOT_A_DATE = new String("not a date");
+
+    /**
+     * The cache of the job run by the current thread.
+     */
+    private static final ThreadLocal<NormalizationCache> CURRENT = new ThreadLocal<NormalizationCache>();
+
+    /**
+     * The number of tokens remembered by each column.
+     */
+    private final int capacity;
+
+    /**
+     * The caches of the dates of each column, the first column at index 0.
+     */
+    private volatile ColumnCache[] dates = new ColumnCache[0];
+
+    /**
+     * The number of tokens found in the cache.
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of tokens normalized because they were not in the cache.
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Initializes a newly created NormalizationCache object remembering
+     * CAPACITY tokens per column.
+     */
+    public NormalizationCache() {
+        this(CAPACITY);
+    }
+
+    /**
+     * Initializes a newly created NormalizationCache object.
+     *
+     * @param capacity the number of tokens remembered by each column, 0 to
+     *                 remember none
+     */
+    public NormalizationCache(int capacity) {
+        super();
+
+        this.capacity = capacity;
+    }
+
+    /**
+     * Returns the cache of the job run by the current thread.
+     *
+     * @return the cache of the job or NONE
+     */
+    public static NormalizationCache getCurrent() {
+        final NormalizationCache cache = CURRENT.get();
+
+        return cache == null ? NONE : cache;
+    }
+
+    /**
+     * Sets the cache of the job run by the current thread.
+     *
+     * @param cache the cache of the job or NONE
+     */
+    public static void setCurrent(NormalizationCache cache) {
+        if (cache == null || cache == NONE) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(cache);
+        }
+    }
+
+    /**
+     * Normalizes a token of a date field.
+     *
+     * @param column the index of the column, from 0
+     * @param token  the token
+     * @return the normalized date
+     * @throws ParseException if the token is not a date
+     */
+    public String formatDate(int column, String token) throws ParseException {
+        final String value = this.getDate(column, token);
+
+        if (value == NOT_A_DATE) {
+            // parsed again for the message of the exception
+            DateUtils.parseDate(token, DateUtility.getDateFormatsAsPatternArray());
+        }
+
+        return value;
+    }
+
+    /**
+     * Normalizes a token if it is a date.
+     *
+     * @param column the index of the column, from 0
+     * @param token  the token
+     * @return the normalized date or null if the token is not a date
+     */
+    public String formatDateIfAny(int column, String token) {
+        final String value = this.getDate(column, token);
+
+        return value == NOT_A_DATE ? null : value;
+    }
+
+    /**
+     * Returns the normalized date of a token or NOT_A_DATE.
+     */
+    private String getDate(int column, String token) {
+        final ColumnCache cache = this.getColumn(column);
+        String value = cache == null ? null : cache.get(token);
+
+        if (value != null) {
+            this.hits.incrementAndGet();
+            return value;
+        }
+
+        try {
+            value = DateUtils.parseDate(token, DateUtility.getDateFormatsAsPatternArray())
+                    .toString();
+        } catch (ParseException e) {
+            value = NOT_A_DATE;
+        }
+
+        if (cache != null) {
+            this.misses.incrementAndGet();
+            cache.put(token, value);
+        }
+
+        return value;
+    }
+
+    /**
+     * Returns the cache of the dates of a column, creating it if needed, or
+     * null if the tokens are not remembered.
+     */
+    private ColumnCache getColumn(int column) {
+        if (this.capacity == 0) {
+            return null;
+        }
+
+        final ColumnCache[] current = this.dates;
+
+        if (column < current.length && current[column] != null) {
+            return current[column];
+        }
+
+        synchronized (this) {
+            ColumnCache[] columns = this.dates;
+
+            if (column >= columns.length) {
+                columns = Arrays.copyOf(columns, column + 1);
+            }
+
+            if (columns[column] == null) {
+                columns[column] = new ColumnCache(this.capacity);
+            }
+
+            this.dates = columns;
+
+            return columns[column];
+        }
+    }
+
+    /**
+     * Returns the number of tokens found in the cache.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the number of tokens normalized because they were not in the
+     * cache.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * The tokens of one column and their normalized values, evicted with the
+     * CLOCK algorithm.
+     */
+    private static final class ColumnCache {
+        private final Map<String, Entry> entries;
+        private final Entry[] clock;
+        private int hand;
+        private int size;
+
+        ColumnCache(int capacity) {
+            this.entries = new ConcurrentHashMap<String, Entry>(capacity * 2);
+            this.clock = new Entry[capacity];
+        }
+
+        String get(String token) {
+            final Entry entry = this.entries.get(token);
+
+            if (entry == null) {
+                return null;
+            }
+
+            entry.referenced = true;
+
+            return entry.value;
+        }
+
+        synchronized void put(String token, String value) {
+            if (this.entries.containsKey(token)) {
+                return;
+            }
+
+            if (this.size < this.clock.length) {
+                this.hand = this.size++;
+            } else {
+                // the tokens found since the last turn get a second chance
+                while (this.clock[this.hand].referenced) {
+                    this.clock[this.hand].referenced = false;
+                    this.hand = (this.hand + 1) % this.clock.length;
+                }
+
+                this.entries.remove(this.clock[this.hand].token);
+            }
+
+            final Entry entry = new Entry(token, value);
+
+            this.clock[this.hand] = entry;
+            this.entries.put(token, entry);
+            this.hand = (this.hand + 1) % this.clock.length;
+        }
+    }
+
+    /**
+     * A token, its normalized value and the flag indicating if it was found
+     * since the last turn of the clock.
+     */
+    private static final class Entry {
+        private final String token;
+        private final String value;
+        private volatile boolean referenced;
+
+        Entry(String token, String value) {
+            this.token = token;
+            this.value = value;
+        }
+    }
+}
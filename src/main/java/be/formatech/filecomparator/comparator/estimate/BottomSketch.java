@@ -0,0 +1,227 @@
+package be.formatech.filecomparator.comparator.estimate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * The smallest distinct hashes of the lines of a file, a MinHash sketch with a
+ * single hash function.<br>
+ * The hashes being uniformly distributed, the lines kept are a random sample
+ * of the distinct lines of the file, the same lines being kept by the sketches
+ * of both files : the overlap of two files is measured on the hashes of their
+ * sketches under the smallest of their thresholds, whose presence in both
+ * files is known. A sketch that is not full holds all the hashes of its file.
+ *
+ * @param <T> the type of the samples kept with the hashes
+ * @version $Id$
+ * @see FileSketch
+ */
+final class BottomSketch<T> {
+
+    /**
+     * The maximum number of hashes kept.
+     */
+    private final int size;
+
+    /**
+     * The hashes kept, with their samples or null.
+     */
+    private final TreeMap<Long, T> hashes = new TreeMap<Long, T>();
+
+    /**
+     * The greatest hash kept once the sketch is full.
+     */
+    private long threshold = Long.MAX_VALUE;
+
+    /**
+     * Initializes a newly created BottomSketch object.
+     *
+     * @param size the maximum number of hashes kept
+     */
+    BottomSketch(int size) {
+        super();
+
+        this.size = size;
+    }
+
+    /**
+     * Checks if a hash would be kept by the sketch, so that its sample is
+     * only built if it is needed.
+     *
+     * @param hash the hash of a line
+     * @return true if the hash is small enough and not in the sketch yet
+     */
+    boolean accepts(long hash) {
+        return (this.hashes.size() < this.size || hash < this.threshold)
+                && !this.hashes.containsKey(hash);
+    }
+
+    /**
+     * Adds a hash accepted by the sketch, evicting its greatest hash if the
+     * sketch is full.
+     *
+     * @param hash   the hash of a line
+     * @param sample the sample kept with the hash or null
+     */
+    void add(long hash, T sample) {
+        this.hashes.put(hash, sample);
+
+        if (this.hashes.size() > this.size) {
+            this.hashes.pollLastEntry();
+        }
+
+        if (this.hashes.size() == this.size) {
+            this.threshold = this.hashes.lastKey();
+        }
+    }
+
+    /**
+     * Checks if the sketch is full, in which case it may only hold a sample of
+     * the hashes of its file.
+     *
+     * @return true if the sketch is full, false if it holds all the hashes
+     */
+    boolean isFull() {
+        return this.hashes.size() == this.size;
+    }
+
+    /**
+     * Measures the overlap of the hashes of two sketches.
+     *
+     * @param sketch1 the sketch of the first file
+     * @param sketch2 the sketch of the second file
+     * @param <T>     the type of the samples kept with the hashes
+     * @return the overlap, exact if neither sketch is full
+     */
+    static <T> Overlap<T> overlap(BottomSketch<T> sketch1, BottomSketch<T> sketch2) {
+        final long limit = Math.min(sketch1.isFull() ? sketch1.threshold : Long.MAX_VALUE,
+                sketch2.isFull() ? sketch2.threshold : Long.MAX_VALUE);
+
+        return new Overlap<T>(sketch1.hashes.headMap(limit, true), sketch2.hashes.headMap(
+                limit, true), !sketch1.isFull() && !sketch2.isFull());
+    }
+
+    /**
+     * The hashes of two sketches under the smallest of their thresholds.
+     *
+     * @param <T> the type of the samples kept with the hashes
+     */
+    static final class Overlap<T> {
+        private final NavigableMap<Long, T> hashes1;
+        private final NavigableMap<Long, T> hashes2;
+        private final int common;
+        private final boolean exact;
+
+        Overlap(NavigableMap<Long, T> hashes1, NavigableMap<Long, T> hashes2, boolean exact) {
+            int common = 0;
+
+            for (Long hash : hashes1.keySet()) {
+                if (hashes2.containsKey(hash)) {
+                    common++;
+                }
+            }
+
+            this.hashes1 = hashes1;
+            this.hashes2 = hashes2;
+            this.common = common;
+            this.exact = exact;
+        }
+
+        /**
+         * Returns the number of hashes of the first file.
+         */
+        int getSize1() {
+            return this.hashes1.size();
+        }
+
+        /**
+         * Returns the number of hashes of the second file.
+         */
+        int getSize2() {
+            return this.hashes2.size();
+        }
+
+        /**
+         * Returns the number of hashes present in both files.
+         */
+        int getCommon() {
+            return this.common;
+        }
+
+        /**
+         * Checks if the hashes are all the hashes of both files.
+         */
+        boolean isExact() {
+            return this.exact;
+        }
+
+        /**
+         * Returns the part of the hashes of the first file that are not in the
+         * second file.
+         */
+        double getMissingRate1() {
+            return this.hashes1.isEmpty() ? 0 : 1 - (double) this.common / this.hashes1.size();
+        }
+
+        /**
+         * Returns the part of the hashes of the second file that are not in the
+         * first file.
+         */
+        double getMissingRate2() {
+            return this.hashes2.isEmpty() ? 0 : 1 - (double) this.common / this.hashes2.size();
+        }
+
+        /**
+         * Returns the number of hashes of the first or of the second file.
+         */
+        int getUnion() {
+            return this.hashes1.size() + this.hashes2.size() - this.common;
+        }
+
+        /**
+         * Returns the part of the hashes of both files that are not in one of
+         * them, the Jaccard distance of the files.
+         */
+        double getDistance() {
+            final int union = this.getUnion();
+
+            return union == 0 ? 0 : 1 - (double) this.common / union;
+        }
+
+        /**
+         * Returns the samples of the first file whose hash is not in the
+         * second file.
+         */
+        List<T> getMissing1(int maximum) {
+            return getMissing(this.hashes1, this.hashes2, maximum);
+        }
+
+        /**
+         * Returns the samples of the second file whose hash is not in the
+         * first file.
+         */
+        List<T> getMissing2(int maximum) {
+            return getMissing(this.hashes2, this.hashes1, maximum);
+        }
+
+        private static <T> List<T> getMissing(Map<Long, T> hashes, Map<Long, T> other,
+                                              int maximum) {
+            final List<T> result = new ArrayList<T>();
+
+            for (Map.Entry<Long, T> entry : hashes.entrySet()) {
+                if (result.size() == maximum) {
+                    break;
+                }
+
+                if (entry.getValue() != null && !other.containsKey(entry.getKey())) {
+                    result.add(entry.getValue());
+                }
+            }
+
+            return result;
+        }
+    }
+}
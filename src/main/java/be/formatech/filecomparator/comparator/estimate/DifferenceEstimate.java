@@ -0,0 +1,385 @@
+package be.formatech.filecomparator.comparator.estimate;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The estimated differences of two files, measured on the sketches of their
+ * lines.<br>
+ * The rates are parts of the distinct lines of a file : a line repeated in a
+ * file counts once, and a file whose lines are all in the other file may still
+ * have another number of lines. Unless the estimate is exact, the rates are
+ * given with their 95% confidence interval, so that a rare difference may go
+ * unnoticed : only a comparison proves that two files exactly match.<br>
+ * The share of a column is the part of the differing lines that would match if
+ * the column were ignored, in other words the lines that only differ in this
+ * column. The shares are only measured when the sketches of the columns hold
+ * enough differing lines, which is not the case of files differing by a few
+ * lines.
+ *
+ * @version $Id$
+ * @see DifferenceEstimator
+ */
+public final class DifferenceEstimate {
+
+    /**
+     * The quantile of the normal distribution giving the 95% confidence
+     * intervals.
+     */
+    static final double CONFIDENCE_QUANTILE = 1.96;
+
+    /**
+     * The maximum number of columns in the report.
+     */
+    static final int MAXIMUM_REPORTED_COLUMNS = 5;
+
+    /**
+     * The maximum number of sampled lines of each file in the report.
+     */
+    static final int MAXIMUM_SAMPLES = 5;
+
+    /**
+     * The number of differing lines that the sketch of a column must be
+     * expected to hold for its share to be measured.
+     */
+    static final int MINIMUM_COLUMN_DIFFERENCES = 20;
+
+    private final String filename1;
+    private final String filename2;
+    private final long lineCount1;
+    private final long lineCount2;
+    private final int sampleSize1;
+    private final int sampleSize2;
+    private final boolean exact;
+    private final double missingRate1;
+    private final double missingRate2;
+    private final double[] interval1;
+    private final double[] interval2;
+    private final Map<Integer, Double> columnShares;
+    private final List<String> samples1;
+    private final List<String> samples2;
+    private final long duration;
+
+    /**
+     * Initializes a newly created DifferenceEstimate object.
+     *
+     * @param sketch1  the sketches of the first file
+     * @param sketch2  the sketches of the second file
+     * @param duration the duration of the estimation, in milliseconds
+     */
+    DifferenceEstimate(FileSketch sketch1, FileSketch sketch2, long duration) {
+        super();
+
+        final BottomSketch.Overlap<FileSketch.SampledLine> overlap = BottomSketch.overlap(
+                sketch1.getLines(), sketch2.getLines());
+
+        this.filename1 = sketch1.getFilename();
+        this.filename2 = sketch2.getFilename();
+        this.lineCount1 = sketch1.getLineCount();
+        this.lineCount2 = sketch2.getLineCount();
+        this.sampleSize1 = overlap.getSize1();
+        this.sampleSize2 = overlap.getSize2();
+        this.exact = overlap.isExact();
+        this.missingRate1 = overlap.getMissingRate1();
+        this.missingRate2 = overlap.getMissingRate2();
+        this.interval1 = this.getInterval(overlap.getSize1() - overlap.getCommon(), overlap
+                .getSize1());
+        this.interval2 = this.getInterval(overlap.getSize2() - overlap.getCommon(), overlap
+                .getSize2());
+        final Map<Integer, Double> shares = getColumnShares(sketch1, sketch2, overlap
+                .getDistance());
+
+        this.columnShares = shares == null ? null : Collections.unmodifiableMap(shares);
+        this.samples1 = format(overlap.getMissing1(MAXIMUM_SAMPLES));
+        this.samples2 = format(overlap.getMissing2(MAXIMUM_SAMPLES));
+        this.duration = duration;
+    }
+
+    /**
+     * Returns the Wilson score interval of a rate, or the rate itself if the
+     * estimate is exact.
+     */
+    private double[] getInterval(int missing, int size) {
+        if (size == 0) {
+            return new double[]{0, 0};
+        }
+
+        final double rate = (double) missing / size;
+
+        if (this.exact) {
+            return new double[]{rate, rate};
+        }
+
+        final double z2 = CONFIDENCE_QUANTILE * CONFIDENCE_QUANTILE;
+        final double center = (rate + z2 / (2 * size)) / (1 + z2 / size);
+        final double margin = CONFIDENCE_QUANTILE / (1 + z2 / size)
+                * Math.sqrt(rate * (1 - rate) / size + z2 / (4.0 * size * size));
+
+        return new double[]{Math.max(0, center - margin), Math.min(1, center + margin)};
+    }
+
+    /**
+     * Returns the shares of the columns in the differences, the greatest
+     * first, only the columns having a share, or null if the sketches of the
+     * columns hold too few differing lines.
+     */
+    private static Map<Integer, Double> getColumnShares(FileSketch sketch1, FileSketch sketch2,
+                                                        double distance) {
+        final List<Map.Entry<Integer, Double>> shares = new ArrayList<Map.Entry<Integer, Double>>();
+        final int columnCount = Math.min(sketch1.getColumnCount(), sketch2.getColumnCount());
+
+        for (int i = 0; i < columnCount && distance > 0; i++) {
+            if (sketch1.getColumn(i) != null && sketch2.getColumn(i) != null) {
+                final BottomSketch.Overlap<FileSketch.SampledLine> overlap = BottomSketch.overlap(
+                        sketch1.getColumn(i), sketch2.getColumn(i));
+
+                if (!overlap.isExact()
+                        && distance * overlap.getUnion() < MINIMUM_COLUMN_DIFFERENCES) {
+                    return null;
+                }
+
+                final double columnDistance = overlap.getDistance();
+                final double share = Math.min(1, (distance - columnDistance) / distance);
+
+                if (share > 0) {
+                    shares.add(new AbstractMap.SimpleImmutableEntry<Integer, Double>(
+                            i + 1, share));
+                }
+            }
+        }
+
+        Collections.sort(shares, new Comparator<Map.Entry<Integer, Double>>() {
+            @Override
+            public int compare(Map.Entry<Integer, Double> o1, Map.Entry<Integer, Double> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+
+        final Map<Integer, Double> result = new LinkedHashMap<Integer, Double>();
+
+        for (Map.Entry<Integer, Double> share : shares) {
+            result.put(share.getKey(), share.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Formats the sampled lines in the order of their numbers.
+     */
+    private static List<String> format(List<FileSketch.SampledLine> lines) {
+        final List<FileSketch.SampledLine> sorted = new ArrayList<FileSketch.SampledLine>(lines);
+        final List<String> result = new ArrayList<String>();
+
+        Collections.sort(sorted, new Comparator<FileSketch.SampledLine>() {
+            @Override
+            public int compare(FileSketch.SampledLine o1, FileSketch.SampledLine o2) {
+                return Long.valueOf(o1.getLineNumber()).compareTo(o2.getLineNumber());
+            }
+        });
+
+        for (FileSketch.SampledLine line : sorted) {
+            result.add("line " + line.getLineNumber() + " : " + line.getContent());
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Checks if differences were found. Finding none doesn't prove that the
+     * files exactly match, unless the estimate is exact.
+     *
+     * @return true if a sampled line is missing in the other file or if the
+     * files have different numbers of lines
+     */
+    public boolean hasDifferences() {
+        return this.missingRate1 > 0 || this.missingRate2 > 0
+                || this.lineCount1 != this.lineCount2;
+    }
+
+    /**
+     * Checks if the rates are exact, the sketches holding all the distinct
+     * lines of both files.
+     *
+     * @return true if the rates are exact, false if they are estimated
+     */
+    public boolean isExact() {
+        return this.exact;
+    }
+
+    /**
+     * Returns the number of lines of the first file.
+     *
+     * @return the number of lines
+     */
+    public long getLineCount1() {
+        return this.lineCount1;
+    }
+
+    /**
+     * Returns the number of lines of the second file.
+     *
+     * @return the number of lines
+     */
+    public long getLineCount2() {
+        return this.lineCount2;
+    }
+
+    /**
+     * Returns the estimated part of the distinct lines of the first file that
+     * are not in the second file.
+     *
+     * @return the rate, from 0 to 1
+     */
+    public double getMissingRate1() {
+        return this.missingRate1;
+    }
+
+    /**
+     * Returns the estimated part of the distinct lines of the second file that
+     * are not in the first file.
+     *
+     * @return the rate, from 0 to 1
+     */
+    public double getMissingRate2() {
+        return this.missingRate2;
+    }
+
+    /**
+     * Returns the 95% confidence interval of getMissingRate1.
+     *
+     * @return the lower and upper bounds, from 0 to 1
+     */
+    public double[] getMissingInterval1() {
+        return this.interval1.clone();
+    }
+
+    /**
+     * Returns the 95% confidence interval of getMissingRate2.
+     *
+     * @return the lower and upper bounds, from 0 to 1
+     */
+    public double[] getMissingInterval2() {
+        return this.interval2.clone();
+    }
+
+    /**
+     * Returns the shares of the columns in the differences.
+     *
+     * @return the shares from 0 to 1 by column number from 1, the greatest
+     * first, read-only, or null if too few differing lines were sampled to
+     * measure them
+     */
+    public Map<Integer, Double> getColumnShares() {
+        return this.columnShares;
+    }
+
+    /**
+     * Returns sampled lines of the first file that are not in the second file.
+     *
+     * @return the lines, with their numbers, read-only
+     */
+    public List<String> getSamples1() {
+        return this.samples1;
+    }
+
+    /**
+     * Returns sampled lines of the second file that are not in the first file.
+     *
+     * @return the lines, with their numbers, read-only
+     */
+    public List<String> getSamples2() {
+        return this.samples2;
+    }
+
+    /**
+     * Returns the duration of the estimation.
+     *
+     * @return the duration, in milliseconds
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Returns the estimate as displayed in the results.
+     *
+     * @return the report of the estimate
+     */
+    public String getSummary() {
+        final StringBuilder result = new StringBuilder();
+
+        result.append("Estimate of the differences of ").append(this.filename1).append(" and ")
+                .append(this.filename2).append(this.exact ? " (exact, all the distinct lines"
+                + " were sampled)" : String.format(Locale.ROOT, " (from %d and %d sampled"
+                + " distinct lines)", this.sampleSize1, this.sampleSize2)).append("\n");
+        this.appendRate(result, this.filename1, this.lineCount1, this.missingRate1,
+                this.interval1, this.filename2);
+        this.appendRate(result, this.filename2, this.lineCount2, this.missingRate2,
+                this.interval2, this.filename1);
+
+        if (this.columnShares == null) {
+            result.append("\nToo few differing lines were sampled to find the columns of"
+                    + " the differences\n");
+        } else if (!this.columnShares.isEmpty()) {
+            result.append("\nLines differing only in one column\n");
+
+            int count = 0;
+
+            for (Map.Entry<Integer, Double> share : this.columnShares.entrySet()) {
+                if (count++ == MAXIMUM_REPORTED_COLUMNS) {
+                    break;
+                }
+
+                result.append(String.format(Locale.ROOT, "  column %d : about %.1f%% of the"
+                        + " differing lines\n", share.getKey(), share.getValue() * 100));
+            }
+        }
+
+        appendSamples(result, this.samples1, this.filename1, this.filename2);
+        appendSamples(result, this.samples2, this.filename2, this.filename1);
+
+        result.append("\nEstimated in ").append(this.duration).append(" ms\n");
+
+        return result.toString();
+    }
+
+    private void appendRate(StringBuilder result, String filename, long lineCount, double rate,
+                            double[] interval, String other) {
+        result.append(filename).append(" : ").append(lineCount).append(" lines, ");
+
+        if (this.exact) {
+            result.append(String.format(Locale.ROOT, "%.2f%%", rate * 100));
+        } else {
+            result.append(String.format(Locale.ROOT, "about %.2f%% (%.2f%% to %.2f%%)",
+                    rate * 100, interval[0] * 100, interval[1] * 100));
+        }
+
+        result.append(" of the distinct lines missing in ").append(other).append("\n");
+    }
+
+    private static void appendSamples(StringBuilder result, List<String> samples,
+                                      String filename, String other) {
+        if (samples.isEmpty()) {
+            return;
+        }
+
+        result.append("\nSampled lines of ").append(filename).append(" missing in ")
+                .append(other).append("\n");
+
+        for (String sample : samples) {
+            result.append("  ").append(sample).append("\n");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getSummary();
+    }
+}
@@ -0,0 +1,138 @@
+package be.formatech.filecomparator.comparator.estimate;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.ComparisonExecutor;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Estimates how much two files differ without comparing them.<br>
+ * Both files are read once, in parallel on the ComparisonExecutor, and only
+ * the sketches of their lines are kept in memory : the estimation takes the
+ * time of reading the files, whatever their number of differences. The lines
+ * are hashed as they are written, the dates and numbers being compared as
+ * text, and only the skipped columns of the ColumnProjection are left out.
+ *
+ * @version $Id$
+ * @see DifferenceEstimate, FileSketch
+ */
+public final class DifferenceEstimator {
+    private static final Logger LOGGER = Logger.getLogger(DifferenceEstimator.class);
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The columns taking part in the estimation.
+     */
+    private final ColumnProjection projection;
+
+    /**
+     * The cancellation token of the running estimation.
+     */
+    private volatile CancellationToken token = CancellationToken.NONE;
+
+    /**
+     * Initializes a newly created DifferenceEstimator object comparing all the
+     * columns.
+     *
+     * @param separator the field separator
+     */
+    public DifferenceEstimator(String separator) {
+        this(separator, ColumnProjection.ALL);
+    }
+
+    /**
+     * Initializes a newly created DifferenceEstimator object.
+     *
+     * @param separator  the field separator
+     * @param projection the columns taking part in the estimation
+     */
+    public DifferenceEstimator(String separator, ColumnProjection projection) {
+        super();
+
+        this.separator = separator;
+        this.projection = projection;
+    }
+
+    /**
+     * Estimates the differences of two files.
+     *
+     * @param filename1 the path of the first file
+     * @param filename2 the path of the second file
+     * @return the estimate or null if the estimation has been cancelled
+     * @throws IOException if a file cannot be read
+     */
+    public DifferenceEstimate estimate(String filename1, String filename2) throws IOException {
+        final long start = System.currentTimeMillis();
+        final CancellationToken current = new CancellationToken();
+        final ComparisonExecutor executor = ComparisonExecutor.getInstance();
+
+        this.token = current;
+
+        try {
+            final Future<FileSketch> task1 = executor.submit(new FileSketch(filename1,
+                    this.separator, this.projection, current), current);
+            final Future<FileSketch> task2 = executor.submit(new FileSketch(filename2,
+                    this.separator, this.projection, current), current);
+            final FileSketch sketch1 = this.await(task1, current);
+            final FileSketch sketch2 = this.await(task2, current);
+
+            if (sketch1 == null || sketch2 == null || current.isCancelled()) {
+                LOGGER.info("Estimation cancelled by the user");
+                return null;
+            }
+
+            final DifferenceEstimate estimate = new DifferenceEstimate(sketch1, sketch2, System
+                    .currentTimeMillis() - start);
+
+            LOGGER.info("Estimated the differences of " + filename1 + " and " + filename2
+                    + " in " + estimate.getDuration() + " ms");
+
+            return estimate;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+
+            throw new IllegalStateException("Problem while sketching the files", e.getCause());
+        } finally {
+            this.token = CancellationToken.NONE;
+        }
+    }
+
+    /**
+     * Cancels the running estimation, which then returns null.
+     */
+    public void cancel() {
+        this.token.cancel();
+    }
+
+    /**
+     * Waits for a task of the estimation. If the thread is interrupted, the
+     * estimation is cancelled.
+     *
+     * @return the result of the task or null if the estimation has been
+     * cancelled
+     */
+    private <T> T await(Future<T> task, CancellationToken current) throws ExecutionException {
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.cancel();
+            return null;
+        } finally {
+            current.unregister(task);
+        }
+    }
+}
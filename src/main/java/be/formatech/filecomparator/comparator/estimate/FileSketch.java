@@ -0,0 +1,339 @@
+package be.formatech.filecomparator.comparator.estimate;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * The sketches of the lines of a file, built in one streaming pass.<br>
+ * Each field is hashed from its bytes and its column, the hash of a line being
+ * the sum of the hashes of its compared fields : the lines are neither
+ * decoded nor tokenized, and the hash of a line without one of its fields is
+ * its hash minus the hash of the field. Besides the sketch of the lines, the
+ * file has one sketch of its lines without each of the columns of its first
+ * line, so that the differences that are only in one column are found.<br>
+ * The fields are hashed as they are written : the dates and numbers are not
+ * normalized.
+ *
+ * @version $Id$
+ * @see BottomSketch, DifferenceEstimator
+ */
+final class FileSketch implements Callable<FileSketch> {
+
+    /**
+     * The number of hashes kept by the sketch of the lines.
+     */
+    static final int LINE_SKETCH_SIZE = 4096;
+
+    /**
+     * The number of hashes kept by the sketch of each column.
+     */
+    static final int COLUMN_SKETCH_SIZE = 1024;
+
+    /**
+     * The maximum number of columns having a sketch.
+     */
+    static final int MAXIMUM_COLUMNS = 64;
+
+    /**
+     * The maximum number of characters of a sampled line.
+     */
+    static final int MAXIMUM_SAMPLE_LENGTH = 200;
+
+    /**
+     * The number of lines read between two checks of the cancellation token.
+     */
+    private static final int CANCELLATION_CHECK_LINES = 4096;
+
+    /**
+     * The path of the file.
+     */
+    private final String filename;
+
+    /**
+     * The bytes of the field separator, empty if the lines have one field.
+     */
+    private final byte[] separator;
+
+    /**
+     * The columns taking part in the comparison.
+     */
+    private final ColumnProjection projection;
+
+    /**
+     * The flags indicating if the first MAXIMUM_COLUMNS columns are skipped,
+     * so that the projection is not looked up for each field.
+     */
+    private final boolean[] skipped = new boolean[MAXIMUM_COLUMNS];
+
+    /**
+     * The cancellation token of the estimation.
+     */
+    private final CancellationToken token;
+
+    /**
+     * The sketch of the lines, with their samples.
+     */
+    private final BottomSketch<SampledLine> lines = new BottomSketch<SampledLine>(
+            LINE_SKETCH_SIZE);
+
+    /**
+     * The sketches of the lines without each column, the first column at
+     * index 0, null for the skipped columns.
+     */
+    private List<BottomSketch<SampledLine>> columns;
+
+    /**
+     * The number of lines read.
+     */
+    private long lineCount;
+
+    /**
+     * Initializes a newly created FileSketch object.
+     *
+     * @param filename   the path of the file
+     * @param separator  the field separator
+     * @param projection the columns taking part in the comparison
+     * @param token      the cancellation token of the estimation
+     */
+    FileSketch(String filename, String separator, ColumnProjection projection,
+               CancellationToken token) {
+        super();
+
+        this.filename = filename;
+        this.separator = separator == null ? new byte[0] : separator.getBytes(Charset
+                .defaultCharset());
+        this.projection = projection;
+        this.token = token;
+
+        for (int i = 0; i < MAXIMUM_COLUMNS; i++) {
+            this.skipped[i] = projection.isSkipped(i + 1);
+        }
+    }
+
+    /**
+     * Reads the file and builds its sketches. The reading stops at once if the
+     * estimation is cancelled.
+     *
+     * @return this FileSketch
+     * @throws IOException if the file cannot be read
+     */
+    @Override
+    public FileSketch call() throws IOException {
+        final Charset charset = Charset.defaultCharset();
+        final OffsetLineReader reader = new OffsetLineReader(new FileInputStream(this.filename),
+                0);
+        long[] fieldHashes = new long[MAXIMUM_COLUMNS];
+
+        try {
+            while (reader.readLine()) {
+                if (++this.lineCount % CANCELLATION_CHECK_LINES == 0 && this.token.isCancelled()) {
+                    return this;
+                }
+
+                final byte[] bytes = reader.getBytes();
+                final int length = reader.getLength();
+                long hash = 0;
+                int column = 0;
+                int start = 0;
+
+                while (start <= length) {
+                    final int end = this.findSeparator(bytes, start, length);
+
+                    if (!this.isSkipped(column)) {
+                        final long fieldHash = hashField(bytes, start, end, column);
+
+                        hash += fieldHash;
+
+                        if (column < MAXIMUM_COLUMNS) {
+                            fieldHashes[column] = fieldHash;
+                        }
+                    } else if (column < MAXIMUM_COLUMNS) {
+                        fieldHashes[column] = 0;
+                    }
+
+                    column++;
+                    start = end + this.separator.length;
+
+                    if (this.separator.length == 0) {
+                        break;
+                    }
+                }
+
+                if (this.columns == null) {
+                    this.createColumnSketches(column);
+                }
+
+                if (this.lines.accepts(hash)) {
+                    this.lines.add(hash, new SampledLine(this.lineCount, reader, charset));
+                }
+
+                for (int i = 0; i < this.columns.size(); i++) {
+                    final BottomSketch<SampledLine> sketch = this.columns.get(i);
+
+                    if (sketch != null) {
+                        // the lines without the column have the hash of the
+                        // lines missing it
+                        final long columnHash = i < column ? hash - fieldHashes[i] : hash;
+
+                        if (sketch.accepts(columnHash)) {
+                            sketch.add(columnHash, null);
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.close();
+        }
+
+        return this;
+    }
+
+    /**
+     * Creates the sketches of the columns of the first line.
+     */
+    private void createColumnSketches(int columnCount) {
+        final int count = this.separator.length == 0 ? 0 : Math.min(columnCount,
+                MAXIMUM_COLUMNS);
+
+        this.columns = new ArrayList<BottomSketch<SampledLine>>(count);
+
+        for (int i = 0; i < count; i++) {
+            this.columns.add(this.skipped[i] ? null : new BottomSketch<SampledLine>(
+                    COLUMN_SKETCH_SIZE));
+        }
+    }
+
+    /**
+     * Checks if a column is skipped.
+     */
+    private boolean isSkipped(int column) {
+        return column < MAXIMUM_COLUMNS ? this.skipped[column] : this.projection
+                .isSkipped(column + 1);
+    }
+
+    /**
+     * Returns the position of the next separator of a line or its length.
+     */
+    private int findSeparator(byte[] bytes, int start, int length) {
+        if (this.separator.length == 0) {
+            return length;
+        }
+
+        for (int i = start; i <= length - this.separator.length; i++) {
+            int j = 0;
+
+            while (j < this.separator.length && bytes[i + j] == this.separator[j]) {
+                j++;
+            }
+
+            if (j == this.separator.length) {
+                return i;
+            }
+        }
+
+        return length;
+    }
+
+    /**
+     * Hashes the bytes of a field with FNV-1a, then mixes the hash with the
+     * column so that the same field in two columns has unrelated hashes.
+     */
+    private static long hashField(byte[] bytes, int start, int end, int column) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = start; i < end; i++) {
+            hash ^= bytes[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return mix(hash + (column + 1) * 0x9e3779b97f4a7c15L);
+    }
+
+    /**
+     * The finalizer of MurmurHash3, spreading every bit of a hash on all the
+     * bits.
+     */
+    private static long mix(long hash) {
+        long h = hash;
+
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+
+        return h;
+    }
+
+    /**
+     * Returns the path of the file.
+     */
+    String getFilename() {
+        return this.filename;
+    }
+
+    /**
+     * Returns the number of lines read.
+     */
+    long getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * Returns the sketch of the lines.
+     */
+    BottomSketch<SampledLine> getLines() {
+        return this.lines;
+    }
+
+    /**
+     * Returns the number of columns having a sketch, skipped or not.
+     */
+    int getColumnCount() {
+        return this.columns == null ? 0 : this.columns.size();
+    }
+
+    /**
+     * Returns the sketch of the lines without a column.
+     *
+     * @param column the index of the column, from 0
+     * @return the sketch or null if the column is skipped or has no sketch
+     */
+    BottomSketch<SampledLine> getColumn(int column) {
+        return this.columns == null || column >= this.columns.size() ? null : this.columns
+                .get(column);
+    }
+
+    /**
+     * A line kept by the sketch of the lines, its content being cut after
+     * MAXIMUM_SAMPLE_LENGTH characters.
+     */
+    static final class SampledLine {
+        private final long lineNumber;
+        private final String content;
+
+        SampledLine(long lineNumber, OffsetLineReader reader, Charset charset) {
+            final String line = reader.getLine(charset);
+
+            this.lineNumber = lineNumber;
+            this.content = line.length() > MAXIMUM_SAMPLE_LENGTH ? line.substring(0,
+                    MAXIMUM_SAMPLE_LENGTH) + "..." : line;
+        }
+
+        long getLineNumber() {
+            return this.lineNumber;
+        }
+
+        String getContent() {
+            return this.content;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package be.formatech.filecomparator.comparator.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A comparison job, from its start to its end.<br>
+ * The compared lines are the lines left to match once the identical lines
+ * have been skipped.
+ *
+ * @version $Id$
+ * @see ComparisonEvents
+ */
+@Name("be.formatech.filecomparator.Comparison")
+@Label("Comparison")
+@Category("File Comparator")
+@Description("A comparison of two files")
+@StackTrace(false)
+public final class ComparisonEvent extends Event {
+
+    @Label("Job Id")
+    public long jobId;
+
+    @Label("First File")
+    public String firstFile;
+
+    @Label("Second File")
+    public String secondFile;
+
+    @Label("Ordered")
+    public boolean ordered;
+
+    @Label("Compared Lines Of The First File")
+    public int firstFileLines;
+
+    @Label("Compared Lines Of The Second File")
+    public int secondFileLines;
+
+    @Label("Strategy")
+    public String strategy;
+
+    @Label("Differences")
+    public int differences;
+
+    @Label("Outcome")
+    @Description("match, differences, cancelled or error")
+    public String outcome;
+}
@@ -0,0 +1,71 @@
+package be.formatech.filecomparator.comparator.events;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Identifies the comparison jobs in the JDK Flight Recorder events.<br>
+ * Each call of FileComparator.compare is a job with its own id. The id of the
+ * job is held by the thread running it and by the threads of the
+ * ComparisonExecutor running its tasks, so that the events of the parsers are
+ * tied to their job.
+ *
+ * @version $Id$
+ * @see ComparisonEvent
+ */
+public final class ComparisonEvents {
+
+    /**
+     * The id given to the events that don't belong to a job.
+     */
+    public static final long NO_JOB = 0L;
+
+    /**
+     * The last given job id.
+     */
+    private static final AtomicLong LAST_JOB_ID = new AtomicLong();
+
+    /**
+     * The id of the job run by the current thread.
+     */
+    private static final ThreadLocal<Long> JOB_ID = new ThreadLocal<Long>();
+
+    /**
+     * ComparisonEvents should not normally be instantiated.
+     */
+    private ComparisonEvents() {
+
+    }
+
+    /**
+     * Returns the id of a new job.
+     *
+     * @return the id of the new job
+     */
+    public static long nextJobId() {
+        return LAST_JOB_ID.incrementAndGet();
+    }
+
+    /**
+     * Returns the id of the job run by the current thread.
+     *
+     * @return the id of the job or NO_JOB
+     */
+    public static long getJobId() {
+        final Long jobId = JOB_ID.get();
+
+        return jobId == null ? NO_JOB : jobId;
+    }
+
+    /**
+     * Sets the id of the job run by the current thread.
+     *
+     * @param jobId the id of the job or NO_JOB
+     */
+    public static void setJobId(long jobId) {
+        if (jobId == NO_JOB) {
+            JOB_ID.remove();
+        } else {
+            JOB_ID.set(jobId);
+        }
+    }
+}
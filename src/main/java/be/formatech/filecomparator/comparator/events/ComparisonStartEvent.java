@@ -0,0 +1,34 @@
+package be.formatech.filecomparator.comparator.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The start of a comparison job.
+ *
+ * @version $Id$
+ * @see ComparisonEvent
+ */
+@Name("be.formatech.filecomparator.ComparisonStart")
+@Label("Comparison Start")
+@Category("File Comparator")
+@Description("A comparison of two files starts")
+@StackTrace(false)
+public final class ComparisonStartEvent extends Event {
+
+    @Label("Job Id")
+    public long jobId;
+
+    @Label("First File")
+    public String firstFile;
+
+    @Label("Second File")
+    public String secondFile;
+
+    @Label("Ordered")
+    public boolean ordered;
+}
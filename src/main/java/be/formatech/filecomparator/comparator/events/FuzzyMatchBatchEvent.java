@@ -0,0 +1,39 @@
+package be.formatech.filecomparator.comparator.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The search of the nearest Lines of a batch of Lines that have no exact
+ * match.
+ *
+ * @version $Id$
+ * @see be.formatech.filecomparator.comparator.FileComparator
+ */
+@Name("be.formatech.filecomparator.FuzzyMatchBatch")
+@Label("Fuzzy Match Batch")
+@Category("File Comparator")
+@Description("Lines without exact match compared with the Levenshtein distance")
+@StackTrace(false)
+public final class FuzzyMatchBatchEvent extends Event {
+
+    @Label("Job Id")
+    public long jobId;
+
+    @Label("First File")
+    public String firstFile;
+
+    @Label("Second File")
+    public String secondFile;
+
+    @Label("Lines")
+    public int lines;
+
+    @Label("Attempts")
+    @Description("Levenshtein distances computed")
+    public long attempts;
+}
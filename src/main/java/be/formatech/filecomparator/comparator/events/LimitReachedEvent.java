@@ -0,0 +1,35 @@
+package be.formatech.filecomparator.comparator.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A comparison stopped because it reached a limit, like the maximum number of
+ * reported differences.
+ *
+ * @version $Id$
+ */
+@Name("be.formatech.filecomparator.LimitReached")
+@Label("Limit Reached")
+@Category("File Comparator")
+@Description("A comparison reached one of its limits")
+public final class LimitReachedEvent extends Event {
+
+    @Label("Job Id")
+    public long jobId;
+
+    @Label("First File")
+    public String firstFile;
+
+    @Label("Second File")
+    public String secondFile;
+
+    @Label("Limit")
+    public String limit;
+
+    @Label("Value")
+    public long value;
+}
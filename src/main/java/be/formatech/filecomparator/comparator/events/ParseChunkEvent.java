@@ -0,0 +1,35 @@
+package be.formatech.filecomparator.comparator.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The parsing of a batch of lines of a file : reading, normalizing and
+ * indexing them.
+ *
+ * @version $Id$
+ * @see be.formatech.filecomparator.utils.ComparatorUtility
+ */
+@Name("be.formatech.filecomparator.ParseChunk")
+@Label("Parse Chunk")
+@Category("File Comparator")
+@Description("A batch of lines of a file parsed")
+@StackTrace(false)
+public final class ParseChunkEvent extends Event {
+
+    @Label("Job Id")
+    public long jobId;
+
+    @Label("File")
+    public String file;
+
+    @Label("First Line")
+    public int firstLine;
+
+    @Label("Lines")
+    public int lines;
+}
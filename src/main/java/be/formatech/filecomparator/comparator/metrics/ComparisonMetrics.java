@@ -0,0 +1,328 @@
+package be.formatech.filecomparator.comparator.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The measures of the phases of one comparison job : wall time, allocated
+ * bytes, lines and bytes processed, plus the fuzzy-match attempts and the hits
+ * of the ParsedFileCache.<br>
+ * The measures are added once per batch of lines or once per differing line,
+ * never once per matching line, so that measuring costs far less than
+ * comparing. Both files being parsed in parallel, the measures are thread-safe.
+ *
+ * @version $Id$
+ * @see MetricsRegistry, PhaseTimer
+ */
+public final class ComparisonMetrics {
+
+    /**
+     * Metrics that measure nothing, used when the metrics are disabled.
+     */
+    public static final ComparisonMetrics DISABLED = new ComparisonMetrics(false);
+
+    private static final int PHASES = Phase.values().length;
+
+    private final boolean enabled;
+    private final AtomicLongArray wallTimes = new AtomicLongArray(PHASES);
+    private final AtomicLongArray allocatedBytes = new AtomicLongArray(PHASES);
+    private final AtomicLongArray lines = new AtomicLongArray(PHASES);
+    private final AtomicLongArray bytes = new AtomicLongArray(PHASES);
+    private final AtomicLong fuzzyMatchAttempts = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong normalizationHits = new AtomicLong();
+    private final AtomicLong normalizationMisses = new AtomicLong();
+    private final AtomicLong elapsedTime = new AtomicLong();
+
+    /**
+     * Initializes newly created, enabled, ComparisonMetrics.
+     */
+    public ComparisonMetrics() {
+        this(true);
+    }
+
+    private ComparisonMetrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks if the metrics measure something.
+     *
+     * @return false for the DISABLED metrics, true otherwise
+     */
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    /**
+     * Starts measuring the phases run by the current thread.
+     *
+     * @param phase the first phase
+     * @return the timer measuring the phases
+     */
+    public PhaseTimer startTimer(Phase phase) {
+        return this.enabled ? new PhaseTimer(this, phase) : PhaseTimer.NONE;
+    }
+
+    /**
+     * Adds a measure of a phase.
+     *
+     * @param phase     the measured phase
+     * @param wallTime  the wall time of the phase, in nanoseconds
+     * @param allocated the bytes allocated during the phase
+     */
+    void record(Phase phase, long wallTime, long allocated) {
+        this.wallTimes.addAndGet(phase.ordinal(), wallTime);
+        this.allocatedBytes.addAndGet(phase.ordinal(), allocated);
+    }
+
+    /**
+     * Adds lines processed by a phase.
+     *
+     * @param phase the phase
+     * @param count the number of lines
+     */
+    public void addLines(Phase phase, long count) {
+        if (this.enabled) {
+            this.lines.addAndGet(phase.ordinal(), count);
+        }
+    }
+
+    /**
+     * Adds bytes processed by a phase.
+     *
+     * @param phase the phase
+     * @param count the number of bytes
+     */
+    public void addBytes(Phase phase, long count) {
+        if (this.enabled) {
+            this.bytes.addAndGet(phase.ordinal(), count);
+        }
+    }
+
+    /**
+     * Adds Levenshtein distances computed to find the nearest Lines.
+     *
+     * @param count the number of computed distances
+     */
+    public void addFuzzyMatchAttempts(long count) {
+        if (this.enabled) {
+            this.fuzzyMatchAttempts.addAndGet(count);
+        }
+    }
+
+    /**
+     * Adds a file found in the ParsedFileCache.
+     */
+    public void addCacheHit() {
+        if (this.enabled) {
+            this.cacheHits.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds a file parsed because it was not in the ParsedFileCache.
+     */
+    public void addCacheMiss() {
+        if (this.enabled) {
+            this.cacheMisses.incrementAndGet();
+        }
+    }
+
+    /**
+     * Adds the dates found in the NormalizationCache of the job and the ones
+     * normalized because they were not in it.
+     *
+     * @param hits   the number of tokens found in the cache
+     * @param misses the number of tokens normalized
+     */
+    public void addNormalizations(long hits, long misses) {
+        if (this.enabled) {
+            this.normalizationHits.addAndGet(hits);
+            this.normalizationMisses.addAndGet(misses);
+        }
+    }
+
+    /**
+     * Sets the wall time of the whole comparison.
+     *
+     * @param nanos the wall time, in nanoseconds
+     */
+    public void setElapsedTime(long nanos) {
+        if (this.enabled) {
+            this.elapsedTime.set(nanos);
+        }
+    }
+
+    /**
+     * Adds the measures of another comparison to these ones.
+     *
+     * @param other the metrics of the other comparison
+     */
+    void add(ComparisonMetrics other) {
+        for (int i = 0; i < PHASES; i++) {
+            this.wallTimes.addAndGet(i, other.wallTimes.get(i));
+            this.allocatedBytes.addAndGet(i, other.allocatedBytes.get(i));
+            this.lines.addAndGet(i, other.lines.get(i));
+            this.bytes.addAndGet(i, other.bytes.get(i));
+        }
+
+        this.fuzzyMatchAttempts.addAndGet(other.fuzzyMatchAttempts.get());
+        this.cacheHits.addAndGet(other.cacheHits.get());
+        this.cacheMisses.addAndGet(other.cacheMisses.get());
+        this.normalizationHits.addAndGet(other.normalizationHits.get());
+        this.normalizationMisses.addAndGet(other.normalizationMisses.get());
+        this.elapsedTime.addAndGet(other.elapsedTime.get());
+    }
+
+    /**
+     * Returns the wall time of a phase, summed over the threads running it.
+     *
+     * @param phase the phase
+     * @return the wall time, in nanoseconds
+     */
+    public long getWallTime(Phase phase) {
+        return this.wallTimes.get(phase.ordinal());
+    }
+
+    /**
+     * Returns the bytes allocated during a phase.
+     *
+     * @param phase the phase
+     * @return the allocated bytes, 0 if the JVM doesn't measure them
+     */
+    public long getAllocatedBytes(Phase phase) {
+        return this.allocatedBytes.get(phase.ordinal());
+    }
+
+    /**
+     * Returns the lines processed by a phase.
+     *
+     * @param phase the phase
+     * @return the number of lines
+     */
+    public long getLines(Phase phase) {
+        return this.lines.get(phase.ordinal());
+    }
+
+    /**
+     * Returns the bytes processed by a phase.
+     *
+     * @param phase the phase
+     * @return the number of bytes
+     */
+    public long getBytes(Phase phase) {
+        return this.bytes.get(phase.ordinal());
+    }
+
+    /**
+     * Returns the lines processed by a phase per second of its wall time.
+     *
+     * @param phase the phase
+     * @return the number of lines per second
+     */
+    public double getLinesPerSecond(Phase phase) {
+        return perSecond(this.getLines(phase), this.getWallTime(phase));
+    }
+
+    /**
+     * Returns the bytes processed by a phase per second of its wall time.
+     *
+     * @param phase the phase
+     * @return the number of bytes per second
+     */
+    public double getBytesPerSecond(Phase phase) {
+        return perSecond(this.getBytes(phase), this.getWallTime(phase));
+    }
+
+    /**
+     * Returns the Levenshtein distances computed to find the nearest Lines.
+     *
+     * @return the number of fuzzy-match attempts
+     */
+    public long getFuzzyMatchAttempts() {
+        return this.fuzzyMatchAttempts.get();
+    }
+
+    /**
+     * Returns the files found in the ParsedFileCache.
+     *
+     * @return the number of cache hits
+     */
+    public long getCacheHits() {
+        return this.cacheHits.get();
+    }
+
+    /**
+     * Returns the files parsed because they were not in the ParsedFileCache.
+     *
+     * @return the number of cache misses
+     */
+    public long getCacheMisses() {
+        return this.cacheMisses.get();
+    }
+
+    /**
+     * Returns the dates found in the NormalizationCache.
+     *
+     * @return the number of normalization cache hits
+     */
+    public long getNormalizationHits() {
+        return this.normalizationHits.get();
+    }
+
+    /**
+     * Returns the dates normalized because they were not in the
+     * NormalizationCache.
+     *
+     * @return the number of normalization cache misses
+     */
+    public long getNormalizationMisses() {
+        return this.normalizationMisses.get();
+    }
+
+    /**
+     * Returns the wall time of the whole comparison.
+     *
+     * @return the wall time, in nanoseconds
+     */
+    public long getElapsedTime() {
+        return this.elapsedTime.get();
+    }
+
+    /**
+     * Returns a table of the measures of each phase.
+     *
+     * @return the summary of the metrics
+     */
+    public String getSummary() {
+        final StringBuilder summary = new StringBuilder();
+
+        summary.append(String.format(Locale.ROOT, "%-14s %12s %12s %12s %14s %14s %14s%n",
+                "Phase", "Time (ms)", "Lines", "Lines/s", "Bytes", "Bytes/s", "Allocated"));
+
+        for (Phase phase : Phase.values()) {
+            summary.append(String.format(Locale.ROOT,
+                    "%-14s %12.1f %12d %12.0f %14d %14.0f %14d%n", phase.getLabel(), this
+                            .getWallTime(phase) / 1e6, this.getLines(phase), this
+                            .getLinesPerSecond(phase), this.getBytes(phase), this
+                            .getBytesPerSecond(phase), this.getAllocatedBytes(phase)));
+        }
+
+        summary.append(String.format(Locale.ROOT,
+                "Total time : %.1f ms, fuzzy-match attempts : %d, cache hits : %d, cache misses : %d%n",
+                this.getElapsedTime() / 1e6, this.getFuzzyMatchAttempts(), this.getCacheHits(),
+                this.getCacheMisses()));
+        summary.append(String.format(Locale.ROOT,
+                "Normalization cache hits : %d, normalization cache misses : %d%n", this
+                        .getNormalizationHits(), this.getNormalizationMisses()));
+
+        return summary.toString();
+    }
+
+    private static double perSecond(long count, long nanos) {
+        return nanos == 0 ? 0 : count * 1e9 / nanos;
+    }
+}
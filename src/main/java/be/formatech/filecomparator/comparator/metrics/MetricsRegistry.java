@@ -0,0 +1,191 @@
+package be.formatech.filecomparator.comparator.metrics;
+
+import org.apache.log4j.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Creates the ComparisonMetrics of the comparisons and sums the measures of
+ * the finished ones.<br>
+ * The metrics are disabled by default. They are enabled with the system
+ * property "filecomparator.metrics" or through JMX, the registry being
+ * registered in the platform MBeanServer as
+ * "be.formatech.filecomparator:type=ComparisonMetrics". When they are enabled,
+ * the summary of each comparison is appended to its result.
+ *
+ * @version $Id$
+ * @see ComparisonMetrics
+ */
+public final class MetricsRegistry implements MetricsRegistryMBean {
+    private static final Logger LOGGER = Logger.getLogger(MetricsRegistry.class);
+
+    /**
+     * The system property enabling the metrics.
+     */
+    public static final String METRICS_PROPERTY = "filecomparator.metrics";
+
+    /**
+     * The name of the registry in the MBeanServer.
+     */
+    public static final String OBJECT_NAME = "be.formatech.filecomparator:type=ComparisonMetrics";
+
+    private static final MetricsRegistry INSTANCE = new MetricsRegistry();
+
+    static {
+        INSTANCE.register();
+    }
+
+    private volatile boolean enabled = Boolean.getBoolean(METRICS_PROPERTY);
+
+    /**
+     * The sums of the measures of the finished comparisons.
+     */
+    private ComparisonMetrics total = new ComparisonMetrics();
+
+    private long comparisonCount;
+
+    private String lastComparisonSummary = "";
+
+    /**
+     * MetricsRegistry should not normally be instantiated outside of the
+     * class.
+     */
+    private MetricsRegistry() {
+        super();
+    }
+
+    /**
+     * Returns the instance of the registry.
+     *
+     * @return the instance of the registry
+     */
+    public static MetricsRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the registry in the platform MBeanServer.
+     */
+    private void register() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(OBJECT_NAME);
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (JMException e) {
+            LOGGER.error("Problem while registering the comparison metrics", e);
+        }
+    }
+
+    /**
+     * Returns the metrics of a new comparison.
+     *
+     * @return new ComparisonMetrics or the DISABLED metrics if the metrics are
+     * disabled
+     */
+    public ComparisonMetrics newMetrics() {
+        return this.enabled ? new ComparisonMetrics() : ComparisonMetrics.DISABLED;
+    }
+
+    /**
+     * Adds the measures of a finished comparison.
+     *
+     * @param metrics the metrics of the comparison
+     */
+    public synchronized void add(ComparisonMetrics metrics) {
+        if (!metrics.isEnabled()) {
+            return;
+        }
+
+        this.total.add(metrics);
+        this.comparisonCount++;
+        this.lastComparisonSummary = metrics.getSummary();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public synchronized long getComparisonCount() {
+        return this.comparisonCount;
+    }
+
+    @Override
+    public synchronized double getTotalTimeMillis() {
+        return this.total.getElapsedTime() / 1e6;
+    }
+
+    @Override
+    public synchronized long getFuzzyMatchAttempts() {
+        return this.total.getFuzzyMatchAttempts();
+    }
+
+    @Override
+    public synchronized long getCacheHits() {
+        return this.total.getCacheHits();
+    }
+
+    @Override
+    public synchronized long getCacheMisses() {
+        return this.total.getCacheMisses();
+    }
+
+    @Override
+    public synchronized long getNormalizationHits() {
+        return this.total.getNormalizationHits();
+    }
+
+    @Override
+    public synchronized long getNormalizationMisses() {
+        return this.total.getNormalizationMisses();
+    }
+
+    @Override
+    public synchronized String getSummary() {
+        return this.total.getSummary();
+    }
+
+    @Override
+    public synchronized String getLastComparisonSummary() {
+        return this.lastComparisonSummary;
+    }
+
+    @Override
+    public synchronized double getWallTimeMillis(String phase) {
+        return this.total.getWallTime(Phase.valueOf(phase)) / 1e6;
+    }
+
+    @Override
+    public synchronized double getLinesPerSecond(String phase) {
+        return this.total.getLinesPerSecond(Phase.valueOf(phase));
+    }
+
+    @Override
+    public synchronized double getBytesPerSecond(String phase) {
+        return this.total.getBytesPerSecond(Phase.valueOf(phase));
+    }
+
+    @Override
+    public synchronized long getAllocatedBytes(String phase) {
+        return this.total.getAllocatedBytes(Phase.valueOf(phase));
+    }
+
+    @Override
+    public synchronized void reset() {
+        this.total = new ComparisonMetrics();
+        this.comparisonCount = 0;
+        this.lastComparisonSummary = "";
+    }
+}
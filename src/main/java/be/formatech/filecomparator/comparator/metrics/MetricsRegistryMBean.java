@@ -0,0 +1,129 @@
+package be.formatech.filecomparator.comparator.metrics;
+
+/**
+ * The management interface of the MetricsRegistry, registered as
+ * "be.formatech.filecomparator:type=ComparisonMetrics".<br>
+ * The measures are the sums of the measures of all the finished comparisons
+ * since the registry was created or reset.
+ *
+ * @version $Id$
+ * @see MetricsRegistry
+ */
+public interface MetricsRegistryMBean {
+
+    /**
+     * Checks if the comparisons are measured.
+     *
+     * @return true if the comparisons are measured, false otherwise
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables the measure of the next comparisons.
+     *
+     * @param enabled true to measure the comparisons
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the number of measured comparisons.
+     *
+     * @return the number of measured comparisons
+     */
+    long getComparisonCount();
+
+    /**
+     * Returns the wall time of the measured comparisons.
+     *
+     * @return the wall time, in milliseconds
+     */
+    double getTotalTimeMillis();
+
+    /**
+     * Returns the Levenshtein distances computed to find the nearest Lines.
+     *
+     * @return the number of fuzzy-match attempts
+     */
+    long getFuzzyMatchAttempts();
+
+    /**
+     * Returns the files found in the ParsedFileCache.
+     *
+     * @return the number of cache hits
+     */
+    long getCacheHits();
+
+    /**
+     * Returns the files parsed because they were not in the ParsedFileCache.
+     *
+     * @return the number of cache misses
+     */
+    long getCacheMisses();
+
+    /**
+     * Returns the dates found in the NormalizationCache of their job.
+     *
+     * @return the number of normalization cache hits
+     */
+    long getNormalizationHits();
+
+    /**
+     * Returns the dates normalized because they were not in the
+     * NormalizationCache of their job.
+     *
+     * @return the number of normalization cache misses
+     */
+    long getNormalizationMisses();
+
+    /**
+     * Returns the table of the measures of each phase.
+     *
+     * @return the summary of the measured comparisons
+     */
+    String getSummary();
+
+    /**
+     * Returns the table of the measures of the last measured comparison.
+     *
+     * @return the summary of the last comparison or an empty String
+     */
+    String getLastComparisonSummary();
+
+    /**
+     * Returns the wall time of a phase.
+     *
+     * @param phase the name of the phase, READ, NORMALIZE, INDEX, EXACT_MATCH,
+     *              FUZZY_MATCH, FIELD_COMPARE or RENDER
+     * @return the wall time, in milliseconds
+     */
+    double getWallTimeMillis(String phase);
+
+    /**
+     * Returns the lines processed by a phase per second of its wall time.
+     *
+     * @param phase the name of the phase
+     * @return the number of lines per second
+     */
+    double getLinesPerSecond(String phase);
+
+    /**
+     * Returns the bytes processed by a phase per second of its wall time.
+     *
+     * @param phase the name of the phase
+     * @return the number of bytes per second
+     */
+    double getBytesPerSecond(String phase);
+
+    /**
+     * Returns the bytes allocated during a phase.
+     *
+     * @param phase the name of the phase
+     * @return the allocated bytes
+     */
+    long getAllocatedBytes(String phase);
+
+    /**
+     * Forgets the measures of the previous comparisons.
+     */
+    void reset();
+}
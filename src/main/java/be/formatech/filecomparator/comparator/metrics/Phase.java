@@ -0,0 +1,62 @@
+package be.formatech.filecomparator.comparator.metrics;
+
+/**
+ * The phases of a comparison measured by the ComparisonMetrics.
+ *
+ * @version $Id$
+ * @see ComparisonMetrics
+ */
+public enum Phase {
+    /**
+     * Reading the lines of the files, including the byte comparison and the
+     * identical blocks skipped before parsing.
+     */
+    READ("read"),
+
+    /**
+     * Building the Lines, i.e. normalizing their date and number fields.
+     */
+    NORMALIZE("normalize"),
+
+    /**
+     * Numbering the duplicated Lines and putting them in the Maps.
+     */
+    INDEX("index"),
+
+    /**
+     * Looking for the Lines of the first file that exactly match a Line of the
+     * second file, including the lines removed with the snapshots.
+     */
+    EXACT_MATCH("exact match"),
+
+    /**
+     * Looking for the nearest Line of the second file with the Levenshtein
+     * distance.
+     */
+    FUZZY_MATCH("fuzzy match"),
+
+    /**
+     * Comparing two Lines field by field.
+     */
+    FIELD_COMPARE("field compare"),
+
+    /**
+     * Building the result of the comparison.
+     */
+    RENDER("render");
+
+    private final String label;
+
+    Phase(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the name of the phase displayed in the summaries.
+     *
+     * @return the name of the phase
+     */
+    public String getLabel() {
+        return this.label;
+    }
+}
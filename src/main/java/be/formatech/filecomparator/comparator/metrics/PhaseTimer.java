@@ -0,0 +1,106 @@
+package be.formatech.filecomparator.comparator.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Measures the wall time and the bytes allocated by one thread in successive
+ * phases of a comparison.<br>
+ * The time spent between two calls is added to the current phase only, so a
+ * phase nested in another one is not counted twice. A timer must only be used
+ * by the thread that started it.
+ *
+ * @version $Id$
+ * @see ComparisonMetrics#startTimer(Phase)
+ */
+public final class PhaseTimer {
+
+    /**
+     * A timer that measures nothing, used when the metrics are disabled.
+     */
+    static final PhaseTimer NONE = new PhaseTimer(null, null);
+
+    /**
+     * The ThreadMXBean giving the bytes allocated by the threads, or null if
+     * the JVM doesn't support it.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = getThreads();
+
+    private final ComparisonMetrics metrics;
+    private Phase phase;
+    private long start;
+    private long allocated;
+
+    /**
+     * Initializes a newly created PhaseTimer object.
+     *
+     * @param metrics the metrics where to add the measures
+     * @param phase   the first phase
+     */
+    PhaseTimer(ComparisonMetrics metrics, Phase phase) {
+        this.metrics = metrics;
+        this.phase = phase;
+
+        if (metrics != null) {
+            this.start = System.nanoTime();
+            this.allocated = allocatedBytes();
+        }
+    }
+
+    /**
+     * Ends the current phase and starts another one.
+     *
+     * @param next the phase that starts
+     * @return the phase that ended
+     */
+    public Phase switchTo(Phase next) {
+        final Phase previous = this.phase;
+
+        if (this.metrics != null) {
+            final long now = System.nanoTime();
+            final long allocatedNow = allocatedBytes();
+
+            if (previous != null) {
+                this.metrics.record(previous, now - this.start, allocatedNow - this.allocated);
+            }
+
+            this.start = now;
+            this.allocated = allocatedNow;
+            this.phase = next;
+        }
+
+        return previous;
+    }
+
+    /**
+     * Ends the current phase.
+     */
+    public void stop() {
+        this.switchTo(null);
+    }
+
+    /**
+     * Returns the bytes allocated by the current thread since it started.
+     *
+     * @return the allocated bytes or 0 if the JVM doesn't measure them
+     */
+    private static long allocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(Thread.currentThread()
+                .getId());
+    }
+
+    private static com.sun.management.ThreadMXBean getThreads() {
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+
+            if (sunThreads.isThreadAllocatedMemorySupported()
+                    && sunThreads.isThreadAllocatedMemoryEnabled()) {
+                return sunThreads;
+            }
+        }
+
+        return null;
+    }
+}
@@ -0,0 +1,68 @@
+package be.formatech.filecomparator.comparator.plan;
+
+/**
+ * The strategy chosen to execute a comparison and the reason of the choice.
+ *
+ * @version $Id$
+ * @see StrategyPlanner
+ */
+public final class Plan {
+
+    private final Strategy strategy;
+    private final String reason;
+    private final boolean requested;
+
+    /**
+     * Initializes a newly created Plan object.
+     *
+     * @param strategy  the chosen strategy
+     * @param reason    the reason of the choice
+     * @param requested the flag indicating if the user asked for the strategy
+     */
+    public Plan(Strategy strategy, String reason, boolean requested) {
+        super();
+
+        this.strategy = strategy;
+        this.reason = reason;
+        this.requested = requested;
+    }
+
+    /**
+     * Returns the chosen strategy.
+     *
+     * @return the chosen strategy
+     */
+    public Strategy getStrategy() {
+        return this.strategy;
+    }
+
+    /**
+     * Returns the reason of the choice.
+     *
+     * @return the reason of the choice
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
+    /**
+     * Checks if the user asked for the strategy.
+     *
+     * @return true if the strategy was requested, false if it was chosen by
+     * the StrategyPlanner
+     */
+    public boolean isRequested() {
+        return this.requested;
+    }
+
+    /**
+     * Returns the plan as displayed in the results, like
+     * "Strategy : external sort (reason)".
+     *
+     * @return the description of the plan
+     */
+    @Override
+    public String toString() {
+        return "Strategy : " + this.strategy.getLabel() + " (" + this.reason + ")";
+    }
+}
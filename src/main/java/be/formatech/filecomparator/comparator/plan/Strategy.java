@@ -0,0 +1,111 @@
+package be.formatech.filecomparator.comparator.plan;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * The ways a comparison can be executed.<br>
+ * Apart from IDENTICAL and KEY_JOIN, the strategies give the same differences
+ * and only differ by the memory they need : when the order doesn't matter,
+ * the identical blocks of lines are skipped first, then the n-th occurence of
+ * a line left matches the n-th occurence of the same line in the other file
+ * and the lines left are paired with the nearest line of the other file.
+ *
+ * @version $Id$
+ * @see StrategyPlanner
+ */
+public enum Strategy {
+
+    /**
+     * The bytes of both files are compared, without parsing the lines. When
+     * the files differ, only the position of the first difference is given.
+     */
+    IDENTICAL("identical fast path", true, true),
+
+    /**
+     * Both files are read together, line by line, without keeping the lines
+     * in memory. Only for the comparisons where the order matters.
+     */
+    STREAMING_ORDERED("streaming ordered", true, false),
+
+    /**
+     * The lines of both files are parsed in memory and the lines that don't
+     * exactly match are paired with the nearest line of the other file.
+     */
+    IN_MEMORY_HASH("in-memory hash", true, true),
+
+    /**
+     * The lines that exactly match are removed by an external sort, then the
+     * lines left are paired by their first field. Only for the comparisons
+     * where the order doesn't matter, and only when the user asks for it.
+     */
+    KEY_JOIN("key join", false, true),
+
+    /**
+     * The lines that exactly match are removed by sorting the fingerprints of
+     * the lines on disk, then the lines left are paired with the nearest line
+     * of the other file. Only for the comparisons where the order doesn't
+     * matter.
+     */
+    EXTERNAL_SORT("external sort", false, true),
+
+    /**
+     * The lines of both files are written outside of the heap, in a
+     * LineArena, with the fingerprints of their formatted contents. Only the
+     * lines that don't exactly match are parsed as Lines, then compared like
+     * in memory.
+     */
+    OFF_HEAP_ARENA("off-heap arena", true, true);
+
+    /**
+     * The name of the automatic choice of the strategy : auto.
+     */
+    public static final String AUTOMATIC = "auto";
+
+    private final String label;
+    private final boolean ordered;
+    private final boolean unordered;
+
+    private Strategy(String label, boolean ordered, boolean unordered) {
+        this.label = label;
+        this.ordered = ordered;
+        this.unordered = unordered;
+    }
+
+    /**
+     * Returns the name of the strategy, as displayed in the results.
+     *
+     * @return the label of the strategy
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * Checks if the strategy can execute a comparison.
+     *
+     * @param orderMatters the flag indicating if the order of the lines matters
+     * @return true if the strategy can execute the comparison, false otherwise
+     */
+    public boolean isApplicable(boolean orderMatters) {
+        return orderMatters ? this.ordered : this.unordered;
+    }
+
+    /**
+     * Returns the strategy named in a configuration, like "external_sort",
+     * "external-sort" or "EXTERNAL_SORT".
+     *
+     * @param name the name of the strategy, AUTOMATIC or an empty String
+     * @return the strategy or null to choose it automatically
+     * @throws IllegalArgumentException if the name is not the name of a
+     *                                  strategy
+     */
+    public static Strategy fromName(String name) {
+        if (StringUtils.isBlank(name) || AUTOMATIC.equalsIgnoreCase(name.trim())) {
+            return null;
+        }
+
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_').replace(' ', '_'));
+    }
+}
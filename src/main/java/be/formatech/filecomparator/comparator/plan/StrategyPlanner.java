@@ -0,0 +1,386 @@
+package be.formatech.filecomparator.comparator.plan;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Chooses the strategy executing a comparison, from the size of the files, a
+ * sample of their first lines and the free memory of the JVM :
+ * <ul>
+ * <li>the files whose lines fit in half of the free memory, or that are both
+ * in the ParsedFileCache, are compared IN_MEMORY_HASH</li>
+ * <li>the ordered files that don't fit are compared STREAMING_ORDERED</li>
+ * <li>the unordered files that don't fit are compared with an EXTERNAL_SORT</li>
+ * <li>the big unordered files with many duplicated lines are compared with an
+ * EXTERNAL_SORT, numbering the duplicated lines in memory being quadratic</li>
+ * </ul>
+ * The IDENTICAL strategy is never chosen here, the comparators use it on their
+ * own when both files have the same bytes. The OFF_HEAP_ARENA strategy is only
+ * used when the user asks for it, like the KEY_JOIN strategy that doesn't give
+ * the same differences as the others : the strategies chosen here always give
+ * the same result for the same files. A strategy requested by the user is used as
+ * is if it can execute the comparison.<br>
+ * The free memory is only given in the reason of the strategies chosen
+ * because the lines don't fit, so that comparing the same files gives the
+ * same result as long as they fit.
+ *
+ * @version $Id$
+ * @see Strategy, Plan
+ */
+public class StrategyPlanner {
+    private static final Logger LOGGER = Logger.getLogger(StrategyPlanner.class);
+
+    /**
+     * The number of lines sampled at the beginning of each file.
+     */
+    static final int SAMPLE_LINES = 1000;
+
+    /**
+     * The part of the free memory that the lines of the files may use.
+     */
+    static final double MEMORY_RATIO = 0.5;
+
+    /**
+     * The rate of duplicated lines from which the big unordered files are
+     * sorted.
+     */
+    static final double HIGH_DUPLICATE_RATE = 0.25;
+
+    /**
+     * The number of lines from which an unordered file is big.
+     */
+    static final long BIG_FILE_LINES = 100000;
+
+    /**
+     * The estimated number of bytes used by a Line in the copy of the
+     * LineTable of the second file : its reference and its slots in the index.
+     */
+    static final long LINE_COPY_SIZE = 24L;
+
+    /**
+     * The estimated heap used by the strategies that spill the lines on disk
+     * or outside of the heap : the runs of fingerprints being sorted and the
+     * Lines that don't exactly match.
+     */
+    static final long SPILLING_MEMORY = 64L * 1024 * 1024;
+
+    /**
+     * The estimated heap used by a STREAMING_ORDERED comparison : the buffers
+     * of the files and the Lines being compared.
+     */
+    static final long STREAMING_MEMORY = 16L * 1024 * 1024;
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The columns taking part in the comparison.
+     */
+    private final ColumnProjection projection;
+
+    /**
+     * Initializes a newly created StrategyPlanner object.
+     *
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields
+     * @param numbers   the Set identifying the number fields
+     */
+    public StrategyPlanner(String separator, Set<Integer> dates, Set<Integer> numbers) {
+        this(separator, dates, numbers, ColumnProjection.ALL);
+    }
+
+    /**
+     * Initializes a newly created StrategyPlanner object for a comparison
+     * skipping some columns.
+     *
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     */
+    public StrategyPlanner(String separator, Set<Integer> dates, Set<Integer> numbers,
+                           ColumnProjection projection) {
+        super();
+
+        this.separator = separator;
+        this.dates = dates;
+        this.numbers = numbers;
+        this.projection = projection;
+    }
+
+    /**
+     * Chooses the strategy executing the comparison of two files that don't
+     * have the same bytes.
+     *
+     * @param filename1    the path of the first file to compare
+     * @param filename2    the path of the second file to compare
+     * @param orderMatters the flag indicating if the order of the lines
+     *                     matters
+     * @param mismatch     the position of the first byte that differs in both
+     *                     files or 0 if it is unknown, the lines before it are
+     *                     not compared if the order matters
+     * @param requested    the strategy requested by the user or null
+     * @return the chosen strategy and the reason of the choice
+     */
+    public Plan plan(String filename1, String filename2, boolean orderMatters, long mismatch,
+                     Strategy requested) {
+        String prefix = "";
+
+        if (requested != null) {
+            if (requested.isApplicable(orderMatters)) {
+                return new Plan(requested, "requested", true);
+            }
+
+            prefix = requested.getLabel() + " is not available when the order "
+                    + (orderMatters ? "matters" : "doesn't matter") + ", ";
+        }
+
+        final long skipped = orderMatters ? Math.max(mismatch, 0) : 0;
+        final Sample sample1 = Sample.read(filename1, skipped);
+        final Sample sample2 = Sample.read(filename2, skipped);
+        final long lines1 = sample1.estimateLines(new File(filename1).length() - skipped);
+        final long lines2 = sample2.estimateLines(new File(filename2).length() - skipped);
+
+        // the LineTable of the second file is copied to consume its Lines
+        final long needed = sample1.estimateMemory(lines1) + sample2.estimateMemory(lines2)
+                + (orderMatters ? 0 : lines2 * LINE_COPY_SIZE);
+        final long available = this.getAvailableMemory();
+        final boolean fits = needed <= available * MEMORY_RATIO;
+        final String memory = String.format(Locale.ROOT, "about %d lines need about %s, ",
+                lines1 + lines2, format(needed))
+                + (fits ? "less than half of the free heap" : "more than half of the "
+                + format(available) + " of free heap");
+
+        LOGGER.info("Planning " + filename1 + " - " + filename2 + " : " + memory
+                + ", duplicate rates " + sample1.getDuplicateRate() + " and "
+                + sample2.getDuplicateRate());
+
+        if (!fits && this.areCached(filename1, filename2)) {
+            return new Plan(Strategy.IN_MEMORY_HASH, prefix
+                    + "both files are in the parsed file cache", false);
+        }
+
+        if (orderMatters) {
+            return new Plan(fits ? Strategy.IN_MEMORY_HASH : Strategy.STREAMING_ORDERED, prefix
+                    + memory, false);
+        }
+
+        if (!fits) {
+            return new Plan(Strategy.EXTERNAL_SORT, prefix + memory, false);
+        }
+
+        final double duplicateRate = Math.max(sample1.getDuplicateRate(), sample2
+                .getDuplicateRate());
+
+        if (duplicateRate >= HIGH_DUPLICATE_RATE && lines1 + lines2 >= BIG_FILE_LINES) {
+            return new Plan(Strategy.EXTERNAL_SORT, prefix
+                    + String.format(Locale.ROOT, "%.0f%% of the sampled lines are duplicated, ",
+                    duplicateRate * 100) + memory, false);
+        }
+
+        return new Plan(Strategy.IN_MEMORY_HASH, prefix + memory, false);
+    }
+
+    /**
+     * Estimates the heap used by the comparison of two files, before it
+     * starts.<br>
+     * Without a requested strategy, the lines of the files are expected to be
+     * compared in memory if they fit in half of the maximum heap, like plan
+     * does with the free heap once the comparison starts. The strategies that
+     * spill the lines use at most SPILLING_MEMORY, and the files that are
+     * both in the ParsedFileCache only need the copy of the second file.
+     *
+     * @param filename1    the path of the first file to compare
+     * @param filename2    the path of the second file to compare
+     * @param orderMatters the flag indicating if the order of the lines
+     *                     matters
+     * @param requested    the strategy requested by the user or null
+     * @return the estimated heap, in bytes
+     */
+    public long estimateMemory(String filename1, String filename2, boolean orderMatters,
+                               Strategy requested) {
+        final Sample sample1 = Sample.read(filename1, 0);
+        final Sample sample2 = Sample.read(filename2, 0);
+        final long lines1 = sample1.estimateLines(new File(filename1).length());
+        final long lines2 = sample2.estimateLines(new File(filename2).length());
+        final long copy = orderMatters ? 0 : lines2 * LINE_COPY_SIZE;
+        final long needed = sample1.estimateMemory(lines1) + sample2.estimateMemory(lines2)
+                + copy;
+        Strategy strategy = requested != null && requested.isApplicable(orderMatters)
+                ? requested : null;
+
+        if (strategy == null) {
+            if (needed <= Runtime.getRuntime().maxMemory() * MEMORY_RATIO) {
+                strategy = Strategy.IN_MEMORY_HASH;
+            } else {
+                strategy = orderMatters ? Strategy.STREAMING_ORDERED : Strategy.EXTERNAL_SORT;
+            }
+        }
+
+        switch (strategy) {
+            case IDENTICAL:
+            case STREAMING_ORDERED:
+                return Math.min(needed, STREAMING_MEMORY);
+            case IN_MEMORY_HASH:
+                return this.areCached(filename1, filename2) ? copy : needed;
+            default:
+                return Math.min(needed, SPILLING_MEMORY);
+        }
+    }
+
+    /**
+     * Returns the memory that the JVM can still allocate.
+     *
+     * @return the free memory, in bytes
+     */
+    long getAvailableMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+
+        return runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Checks if both files are in the ParsedFileCache.
+     */
+    private boolean areCached(String filename1, String filename2) {
+        try {
+            final ParsedFileCache cache = ParsedFileCache.getInstance();
+
+            return cache.isCached(filename1, this.separator, this.dates, this.numbers,
+                    this.projection)
+                    && cache.isCached(filename2, this.separator, this.dates, this.numbers,
+                    this.projection);
+        } catch (IOException e) {
+            LOGGER.error("Problem while looking for the files in the cache", e);
+            return false;
+        }
+    }
+
+    /**
+     * Formats a number of bytes in KB or MB.
+     */
+    private static String format(long bytes) {
+        if (bytes < 1024 * 1024) {
+            return String.format(Locale.ROOT, "%d KB", bytes / 1024);
+        }
+
+        return String.format(Locale.ROOT, "%d MB", bytes / (1024 * 1024));
+    }
+
+    /**
+     * The first lines of a file.
+     */
+    static final class Sample {
+        private final int lines;
+        private final long bytes;
+        private final long characters;
+        private final int distinctLines;
+
+        Sample(int lines, long bytes, long characters, int distinctLines) {
+            this.lines = lines;
+            this.bytes = bytes;
+            this.characters = characters;
+            this.distinctLines = distinctLines;
+        }
+
+        /**
+         * Reads the first SAMPLE_LINES lines of a file from a position. If the
+         * file cannot be read, the sample is empty.
+         *
+         * @param filename the path of the file
+         * @param offset   the position of the first line to sample
+         * @return the sample of the file
+         */
+        static Sample read(String filename, long offset) {
+            final Set<Long> hashes = new HashSet<Long>();
+            final Charset charset = Charset.defaultCharset();
+            int lines = 0;
+            long bytes = 0;
+            long characters = 0;
+
+            try {
+                final FileInputStream stream = new FileInputStream(filename);
+
+                stream.getChannel().position(offset);
+
+                final OffsetLineReader reader = new OffsetLineReader(stream, offset);
+
+                try {
+                    while (lines < SAMPLE_LINES && reader.readLine()) {
+                        lines++;
+                        bytes += reader.getNextOffset() - reader.getOffset();
+                        hashes.add(reader.hashLine());
+
+                        characters += reader.getLine(charset).length();
+                    }
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                LOGGER.error("Problem while sampling file " + filename, e);
+            }
+
+            return new Sample(lines, bytes, characters, hashes.size());
+        }
+
+        /**
+         * Estimates the number of lines of the file from its size.
+         *
+         * @param size the size of the file, in bytes
+         * @return the estimated number of lines
+         */
+        long estimateLines(long size) {
+            if (this.lines == 0 || this.bytes == 0) {
+                return 0;
+            }
+
+            return Math.max(this.lines, size * this.lines / this.bytes);
+        }
+
+        /**
+         * Estimates the memory used by the Lines of the file, formatted or not.
+         *
+         * @param lineCount the number of lines
+         * @return the estimated memory, in bytes
+         */
+        long estimateMemory(long lineCount) {
+            if (this.lines == 0) {
+                return 0;
+            }
+
+            return lineCount * (ParsedFileCache.LINE_OVERHEAD + 4 * this.characters / this.lines);
+        }
+
+        /**
+         * Returns the part of the sampled lines that are a copy of a previous
+         * sampled line.
+         *
+         * @return the duplicate rate, from 0 to 1
+         */
+        double getDuplicateRate() {
+            return this.lines == 0 ? 0 : 1 - (double) this.distinctLines / this.lines;
+        }
+    }
+}
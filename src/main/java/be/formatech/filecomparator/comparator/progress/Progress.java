@@ -0,0 +1,198 @@
+package be.formatech.filecomparator.comparator.progress;
+
+import be.formatech.filecomparator.comparator.metrics.Phase;
+
+import java.util.Locale;
+
+/**
+ * The progress of a comparison at a given time.<br>
+ * A comparison first reads both files, then matches the Lines of the first
+ * file : each stage counts for half of the progress. The estimated remaining
+ * time is the one of the current stage, based on its throughput so far.
+ *
+ * @version $Id$
+ * @see ProgressListener
+ */
+public final class Progress {
+    private final Phase phase;
+    private final long bytesRead;
+    private final long totalBytes;
+    private final long linesMatched;
+    private final long totalLines;
+    private final long elapsedMillis;
+    private final double throughput;
+    private final long remainingMillis;
+
+    /**
+     * Initializes a newly created Progress object.
+     *
+     * @param phase           the current phase
+     * @param bytesRead       the bytes read from both files
+     * @param totalBytes      the size of both files
+     * @param linesMatched    the Lines of the first file already matched
+     * @param totalLines      the Lines of the first file to match, 0 while
+     *                        reading
+     * @param elapsedMillis   the time since the comparison started
+     * @param throughput      the bytes or Lines processed per second in the
+     *                        current stage
+     * @param remainingMillis the estimated remaining time of the current
+     *                        stage, -1 if unknown
+     */
+    public Progress(Phase phase, long bytesRead, long totalBytes, long linesMatched,
+                    long totalLines, long elapsedMillis, double throughput, long remainingMillis) {
+        this.phase = phase;
+        this.bytesRead = bytesRead;
+        this.totalBytes = totalBytes;
+        this.linesMatched = linesMatched;
+        this.totalLines = totalLines;
+        this.elapsedMillis = elapsedMillis;
+        this.throughput = throughput;
+        this.remainingMillis = remainingMillis;
+    }
+
+    /**
+     * Checks if the files are still being read.
+     *
+     * @return true while reading, false while matching
+     */
+    public boolean isReading() {
+        return this.phase == Phase.READ || this.phase == Phase.NORMALIZE
+                || this.phase == Phase.INDEX;
+    }
+
+    /**
+     * Returns the part of the comparison already done.
+     *
+     * @return a number between 0 and 1
+     */
+    public double getFraction() {
+        if (this.isReading()) {
+            return this.totalBytes == 0 ? 0 : Math.min(1.0, (double) this.bytesRead
+                    / this.totalBytes) / 2;
+        }
+
+        if (this.phase == Phase.RENDER) {
+            return 1.0;
+        }
+
+        return 0.5 + (this.totalLines == 0 ? 0 : Math.min(1.0, (double) this.linesMatched
+                / this.totalLines) / 2);
+    }
+
+    /**
+     * Returns the percentage of the comparison already done.
+     *
+     * @return a number between 0 and 100
+     */
+    public int getPercent() {
+        return (int) (this.getFraction() * 100);
+    }
+
+    /**
+     * Returns a short description of the progress, like
+     * <I>read 45% - 12.3 MB/s - 40 s left</I>.
+     *
+     * @return the description of the progress
+     */
+    public String getDescription() {
+        final StringBuilder description = new StringBuilder(this.phase.getLabel());
+
+        description.append(' ');
+        description.append(this.getPercent());
+        description.append('%');
+
+        if (this.isReading()) {
+            description.append(String.format(Locale.ROOT, " - %.1f MB/s", this.throughput
+                    / (1024 * 1024)));
+        } else if (this.phase != Phase.RENDER) {
+            description.append(String.format(Locale.ROOT, " - %d/%d lines - %.0f lines/s",
+                    this.linesMatched, this.totalLines, this.throughput));
+        }
+
+        if (this.remainingMillis >= 0 && this.phase != Phase.RENDER) {
+            description.append(" - ");
+            description.append((this.remainingMillis + 999) / 1000);
+            description.append(" s left");
+        }
+
+        return description.toString();
+    }
+
+    /**
+     * Returns the current phase of the comparison.
+     *
+     * @return the current phase
+     */
+    public Phase getPhase() {
+        return this.phase;
+    }
+
+    /**
+     * Returns the bytes read from both files.
+     *
+     * @return the number of bytes read
+     */
+    public long getBytesRead() {
+        return this.bytesRead;
+    }
+
+    /**
+     * Returns the size of both files.
+     *
+     * @return the number of bytes to read
+     */
+    public long getTotalBytes() {
+        return this.totalBytes;
+    }
+
+    /**
+     * Returns the Lines of the first file already matched.
+     *
+     * @return the number of matched Lines
+     */
+    public long getLinesMatched() {
+        return this.linesMatched;
+    }
+
+    /**
+     * Returns the Lines of the first file to match, once the files are read.
+     *
+     * @return the number of Lines to match or 0 while reading
+     */
+    public long getTotalLines() {
+        return this.totalLines;
+    }
+
+    /**
+     * Returns the time since the comparison started.
+     *
+     * @return the elapsed time, in milliseconds
+     */
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    /**
+     * Returns the bytes read per second while reading, or the Lines matched
+     * per second while matching.
+     *
+     * @return the throughput of the current stage
+     */
+    public double getThroughput() {
+        return this.throughput;
+    }
+
+    /**
+     * Returns the estimated remaining time of the current stage.
+     *
+     * @return the remaining time in milliseconds, -1 if unknown
+     */
+    public long getRemainingMillis() {
+        return this.remainingMillis;
+    }
+
+    @Override
+    public String toString() {
+        return this.getDescription();
+    }
+}
@@ -0,0 +1,21 @@
+package be.formatech.filecomparator.comparator.progress;
+
+/**
+ * Receives the progress of a comparison.<br>
+ * The progress is reported from the threads of the comparison, at most once
+ * per reporting interval of the ProgressTracker, plus once at the end of the
+ * comparison. A listener must return quickly and hand the progress over to
+ * its own thread if it needs to, like the event dispatch thread of Swing.
+ *
+ * @version $Id$
+ * @see ProgressTracker
+ */
+public interface ProgressListener {
+
+    /**
+     * Called when the comparison progressed.
+     *
+     * @param progress the current progress of the comparison
+     */
+    void progressChanged(Progress progress);
+}
@@ -0,0 +1,191 @@
+package be.formatech.filecomparator.comparator.progress;
+
+import be.formatech.filecomparator.comparator.metrics.Phase;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the progress of one comparison and reports it to a
+ * ProgressListener.<br>
+ * The parsers add the bytes they read once per batch of lines and the matchers
+ * add the Lines they matched once per PROGRESS_LINES Lines. The progress is
+ * reported at most once per interval, by the first thread that notices the
+ * interval has elapsed, so counting costs a few atomic additions.
+ *
+ * @version $Id$
+ * @see ProgressListener
+ */
+public final class ProgressTracker {
+    private static final Logger LOGGER = Logger.getLogger(ProgressTracker.class);
+
+    /**
+     * A tracker that reports nothing, used when there is no listener.
+     */
+    public static final ProgressTracker NONE = new ProgressTracker(null, 0);
+
+    /**
+     * The number of Lines the matchers match before adding them.
+     */
+    public static final int PROGRESS_LINES = 256;
+
+    /**
+     * The default minimum time between two reports, in milliseconds.
+     */
+    public static final long DEFAULT_INTERVAL = 250L;
+
+    private final ProgressListener listener;
+    private final long interval;
+    private final long start = System.nanoTime();
+    private final AtomicLong bytesRead = new AtomicLong();
+    private final AtomicLong linesMatched = new AtomicLong();
+    private final AtomicLong lastReport = new AtomicLong(this.start);
+    private volatile Phase phase = Phase.READ;
+    private volatile long totalBytes;
+    private volatile long totalLines;
+    private volatile long stageStart = this.start;
+
+    /**
+     * Initializes a newly created ProgressTracker object reporting at most
+     * once per DEFAULT_INTERVAL.
+     *
+     * @param listener the listener receiving the progress
+     */
+    public ProgressTracker(ProgressListener listener) {
+        this(listener, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * Initializes a newly created ProgressTracker object.
+     *
+     * @param listener the listener receiving the progress
+     * @param interval the minimum time between two reports, in milliseconds
+     */
+    public ProgressTracker(ProgressListener listener, long interval) {
+        this.listener = listener;
+        this.interval = interval * 1000000L;
+    }
+
+    /**
+     * Checks if the progress is reported to a listener.
+     *
+     * @return false for the NONE tracker, true otherwise
+     */
+    public boolean isEnabled() {
+        return this.listener != null;
+    }
+
+    /**
+     * Starts reading the files.
+     *
+     * @param totalBytes the size of both files
+     */
+    public void startReading(long totalBytes) {
+        this.totalBytes = totalBytes;
+        this.phase = Phase.READ;
+    }
+
+    /**
+     * Adds bytes read from the files.
+     *
+     * @param count the number of bytes read
+     */
+    public void addBytesRead(long count) {
+        if (this.listener != null) {
+            this.bytesRead.addAndGet(count);
+            this.report(false);
+        }
+    }
+
+    /**
+     * Ends reading the files, whatever the bytes counted so far, and starts
+     * matching the Lines.
+     *
+     * @param totalLines the Lines of the first file to match
+     */
+    public void startMatching(long totalLines) {
+        this.bytesRead.set(this.totalBytes);
+        this.totalLines = totalLines;
+        this.stageStart = System.nanoTime();
+        this.phase = Phase.EXACT_MATCH;
+        this.report(true);
+    }
+
+    /**
+     * Adds matched Lines of the first file.
+     *
+     * @param count the number of matched Lines
+     */
+    public void addLinesMatched(long count) {
+        if (this.listener != null) {
+            this.linesMatched.addAndGet(count);
+            this.report(false);
+        }
+    }
+
+    /**
+     * Sets the current phase, within the current stage.
+     *
+     * @param phase the current phase
+     */
+    public void setPhase(Phase phase) {
+        this.phase = phase;
+    }
+
+    /**
+     * Ends the comparison and reports it.
+     */
+    public void finish() {
+        this.phase = Phase.RENDER;
+        this.report(true);
+    }
+
+    /**
+     * Returns the current progress.
+     *
+     * @return the current progress
+     */
+    public Progress getProgress() {
+        final long now = System.nanoTime();
+        final Phase current = this.phase;
+        final boolean reading = current == Phase.READ || current == Phase.NORMALIZE
+                || current == Phase.INDEX;
+        final long done = reading ? this.bytesRead.get() : this.linesMatched.get();
+        final long total = reading ? this.totalBytes : this.totalLines;
+        final long stageTime = now - this.stageStart;
+        final double throughput = stageTime <= 0 ? 0 : done * 1e9 / stageTime;
+        final long remaining = throughput <= 0 ? -1 : (long) (Math.max(0, total - done) * 1000
+                / throughput);
+
+        return new Progress(current, this.bytesRead.get(), this.totalBytes, this.linesMatched
+                .get(), this.totalLines, (now - this.start) / 1000000L, throughput, remaining);
+    }
+
+    /**
+     * Reports the progress if the interval has elapsed since the last report.
+     *
+     * @param force true to report even if the interval has not elapsed
+     */
+    private void report(boolean force) {
+        if (this.listener == null) {
+            return;
+        }
+
+        final long now = System.nanoTime();
+        final long last = this.lastReport.get();
+
+        if (!force && (now - last < this.interval || !this.lastReport.compareAndSet(last, now))) {
+            return;
+        }
+
+        if (force) {
+            this.lastReport.set(now);
+        }
+
+        try {
+            this.listener.progressChanged(this.getProgress());
+        } catch (RuntimeException e) {
+            LOGGER.error("Problem while reporting the progress", e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.Locale;
+
+/**
+ * The ways the lines of the files are spread over the shards of a sharded
+ * comparison.<br>
+ * The lines that exactly match are always in the same shard, so that the
+ * shards give the same exact matches as one comparison. The lines that don't
+ * exactly match are only paired with the lines of their own shard.
+ *
+ * @version $Id$
+ * @see ShardCoordinator
+ */
+public enum Partitioning {
+
+    /**
+     * The lines are spread by their line numbers, so that the lines at the
+     * same place in both files are in the same shard. Used when the order of
+     * the lines matters.
+     */
+    LINE_NUMBER("line number"),
+
+    /**
+     * The lines are spread by their first field, so that the lines having the
+     * same key are paired in the same shard.
+     */
+    KEY("key"),
+
+    /**
+     * The lines are spread by the fingerprint of their formatted content. The
+     * lines that don't exactly match are scattered over all the shards.
+     */
+    FINGERPRINT("fingerprint");
+
+    private final String label;
+
+    private Partitioning(String label) {
+        this.label = label;
+    }
+
+    /**
+     * Returns the name of the partitioning, as displayed in the results.
+     *
+     * @return the label of the partitioning
+     */
+    public String getLabel() {
+        return this.label;
+    }
+
+    /**
+     * Returns the partitioning named in a configuration, like "fingerprint" or
+     * "KEY".
+     *
+     * @param name the name of the partitioning or an empty String
+     * @return the partitioning or null to choose it from the comparison
+     * @throws IllegalArgumentException if the name is not the name of a
+     *                                  partitioning
+     */
+    public static Partitioning fromName(String name) {
+        if (StringUtils.isBlank(name)) {
+            return null;
+        }
+
+        return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_').replace(' ', '_'));
+    }
+}
@@ -0,0 +1,723 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.ComparisonExecutor;
+import be.formatech.filecomparator.comparator.FileComparator;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.utils.MappedFileUtility;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares two files in shards, on worker JVMs started on the local
+ * machine.<br>
+ * Both files are spread over shard files by ShardFiles, in a temporary
+ * directory, so that the lines that exactly match are in the same shard. The
+ * workers are started with the java command and the class path of the current
+ * JVM, and connect to the coordinator on the loopback interface : each worker
+ * compares the shards it is given with the FileComparator, one shard at a
+ * time, and sends back their difference messages. The messages of all the
+ * shards are merged by line number, limited to the first
+ * FileComparator.MAXIMUM_DIFFERENCES, and summarized like the result of a
+ * FileComparator.<br>
+ * A worker only keeps the Lines of one shard in memory : files too big for
+ * one JVM are compared by giving more shards than workers. The lines that
+ * don't exactly match are only paired with the lines of their own shard, so
+ * that the lines changed in several fields may be paired differently than by
+ * one comparison. When the order of the lines matters, the lines are always
+ * spread by line number and the result is the same. The shards of a worker
+ * that stops are given to the other workers, once.
+ *
+ * @version $Id$
+ * @see ShardWorker, Partitioning
+ */
+public final class ShardCoordinator {
+    private static final Logger LOGGER = Logger.getLogger(ShardCoordinator.class);
+
+    /**
+     * The number of shards per worker when the number of shards is not given,
+     * so that a slow shard doesn't keep the other workers waiting.
+     */
+    public static final int DEFAULT_SHARDS_PER_WORKER = 4;
+
+    /**
+     * The time given to the workers to connect, in milliseconds.
+     */
+    private static final int CONNECTION_TIMEOUT = 60000;
+
+    /**
+     * The time between two checks of the cancellation token while waiting, in
+     * milliseconds.
+     */
+    private static final int POLL_INTERVAL = 200;
+
+    /**
+     * The number of times a shard is given to a worker.
+     */
+    private static final int MAXIMUM_ATTEMPTS = 2;
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The flag indicating if the order of the lines matters.
+     */
+    private final boolean ordered;
+
+    /**
+     * The number of worker JVMs.
+     */
+    private final int workers;
+
+    /**
+     * The number of shards, 0 to have DEFAULT_SHARDS_PER_WORKER per worker.
+     */
+    private int shards;
+
+    /**
+     * The way the lines are spread, null to choose it from the comparison.
+     */
+    private Partitioning partitioning;
+
+    /**
+     * The columns taking part in the comparison.
+     */
+    private ColumnProjection projection = ColumnProjection.ALL;
+
+    /**
+     * The options of the worker JVMs, like -Xmx.
+     */
+    private List<String> jvmOptions = Collections.emptyList();
+
+    /**
+     * The cancellation token of the running comparison.
+     */
+    private volatile CancellationToken token = CancellationToken.NONE;
+
+    /**
+     * Initializes a newly created ShardCoordinator object.
+     *
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields
+     * @param numbers   the Set identifying the number fields
+     * @param ordered   the flag indicating if the order of the lines matters
+     * @param workers   the number of worker JVMs
+     * @throws IllegalArgumentException if there is no worker
+     */
+    public ShardCoordinator(String separator, Set<Integer> dates, Set<Integer> numbers,
+                            boolean ordered, int workers) {
+        super();
+
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed: " + workers);
+        }
+
+        this.separator = separator;
+        this.dates = dates;
+        this.numbers = numbers;
+        this.ordered = ordered;
+        this.workers = workers;
+    }
+
+    /**
+     * Sets the number of shards of the files.
+     *
+     * @param shards the number of shards or 0 to have DEFAULT_SHARDS_PER_WORKER
+     *               shards per worker
+     * @throws IllegalArgumentException if the number is negative
+     */
+    public void setShards(int shards) {
+        if (shards < 0) {
+            throw new IllegalArgumentException("The number of shards cannot be negative: "
+                    + shards);
+        }
+
+        this.shards = shards;
+    }
+
+    /**
+     * Sets the way the lines are spread over the shards. It is ignored when
+     * the order of the lines matters : the lines are then spread by line
+     * number.
+     *
+     * @param partitioning the partitioning or null to spread the lines by key
+     *                     if their first field is compared, by fingerprint
+     *                     otherwise
+     */
+    public void setPartitioning(Partitioning partitioning) {
+        this.partitioning = partitioning;
+    }
+
+    /**
+     * Sets the columns taking part in the comparison.
+     *
+     * @param projection the columns or null to compare all the columns
+     */
+    public void setProjection(ColumnProjection projection) {
+        this.projection = projection == null ? ColumnProjection.ALL : projection;
+    }
+
+    /**
+     * Sets the options of the worker JVMs.
+     *
+     * @param jvmOptions the options, like -Xmx2g, or null for none
+     */
+    public void setJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions = jvmOptions == null ? Collections.<String>emptyList()
+                : new ArrayList<String>(jvmOptions);
+    }
+
+    /**
+     * Cancels the running comparison : the workers are stopped and the
+     * comparison returns FileComparator.CANCELLED.
+     */
+    public void cancel() {
+        this.token.cancel();
+    }
+
+    /**
+     * Compares two files in shards, in both directions.
+     *
+     * @param filename1 the path of the first file
+     * @param filename2 the path of the second file
+     * @return the results of the comparison
+     */
+    public ShardedComparison compare(String filename1, String filename2) {
+        final long start = System.currentTimeMillis();
+        final CancellationToken current = new CancellationToken();
+        final int shardCount = this.shards > 0 ? this.shards : this.workers
+                * DEFAULT_SHARDS_PER_WORKER;
+        final Partitioning chosen = this.choosePartitioning();
+        final String description = shardCount + " shard(s) by " + chosen.getLabel() + " on "
+                + this.workers + " worker(s)";
+
+        this.token = current;
+
+        try {
+            if (MappedFileUtility.mismatch(filename1, filename2) == MappedFileUtility.IDENTICAL) {
+                LOGGER.info(filename1 + " and " + filename2 + " have the same bytes");
+                return new ShardedComparison(filename1, filename2, FileComparator.FILES_MATCH,
+                        FileComparator.FILES_MATCH, description, System.currentTimeMillis()
+                        - start);
+            }
+        } catch (IOException e) {
+            LOGGER.error("Problem while comparing the bytes of the files", e);
+        }
+
+        File directory = null;
+
+        try {
+            directory = Files.createTempDirectory("shards").toFile();
+
+            final File[] shards1 = shardFiles(directory, "1-", shardCount);
+            final File[] shards2 = shardFiles(directory, "2-", shardCount);
+            final String error = this.partition(filename1, shards1, filename2, shards2, chosen,
+                    current);
+
+            if (error != null) {
+                return new ShardedComparison(filename1, filename2, error, error, description,
+                        System.currentTimeMillis() - start);
+            }
+
+            final ShardResult[] results = new ShardResult[shardCount];
+
+            this.compareShards(directory, shards1, shards2, results, current);
+
+            if (current.isCancelled()) {
+                LOGGER.info("Comparison cancelled by the user");
+                return new ShardedComparison(filename1, filename2, FileComparator.CANCELLED,
+                        FileComparator.CANCELLED, description, System.currentTimeMillis()
+                        - start);
+            }
+
+            final List<String> differences1 = new ArrayList<String>();
+            final List<String> differences2 = new ArrayList<String>();
+
+            for (ShardResult result : results) {
+                if (result == null) {
+                    final String message = "Problem while comparing the shards: no worker left";
+
+                    return new ShardedComparison(filename1, filename2, message, message,
+                            description, System.currentTimeMillis() - start);
+                }
+
+                if (result.getError() != null) {
+                    return new ShardedComparison(filename1, filename2, result.getError(), result
+                            .getError(), description, System.currentTimeMillis() - start);
+                }
+
+                differences1.addAll(result.getDifferences1());
+                differences2.addAll(result.getDifferences2());
+            }
+
+            LOGGER.info("Compared " + filename1 + " and " + filename2 + " in " + description);
+
+            return new ShardedComparison(filename1, filename2, merge(differences1),
+                    merge(differences2), description, System.currentTimeMillis() - start);
+        } catch (IOException e) {
+            LOGGER.error("Problem while comparing the shards", e);
+
+            final String message = "Problem while comparing the shards: " + e.getMessage();
+
+            return new ShardedComparison(filename1, filename2, message, message, description,
+                    System.currentTimeMillis() - start);
+        } finally {
+            this.token = CancellationToken.NONE;
+            delete(directory);
+        }
+    }
+
+    /**
+     * Returns the way the lines are spread over the shards.
+     */
+    private Partitioning choosePartitioning() {
+        if (this.ordered) {
+            return Partitioning.LINE_NUMBER;
+        }
+
+        final boolean keyCompared = StringUtils.isNotEmpty(this.separator)
+                && !this.projection.isSkipped(1);
+
+        if (this.partitioning == null || this.partitioning == Partitioning.KEY) {
+            return keyCompared ? Partitioning.KEY : Partitioning.FINGERPRINT;
+        }
+
+        return this.partitioning;
+    }
+
+    /**
+     * Returns the shard files of a file.
+     */
+    private static File[] shardFiles(File directory, String prefix, int shardCount) {
+        final File[] files = new File[shardCount];
+
+        for (int i = 0; i < shardCount; i++) {
+            files[i] = new File(directory, prefix + i + ".shard");
+        }
+
+        return files;
+    }
+
+    /**
+     * Spreads both files over their shards, in parallel on the
+     * ComparisonExecutor.
+     *
+     * @return the error message or null if the files were spread
+     */
+    private String partition(final String filename1, final File[] shards1,
+                             final String filename2, final File[] shards2,
+                             final Partitioning chosen, final CancellationToken current) {
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(this.separator,
+                this.dates, this.numbers, this.projection);
+        final ComparisonExecutor executor = ComparisonExecutor.getInstance();
+        final Future<Integer> task1 = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return ShardFiles.partition(filename1, shards1, chosen, dictionaries, current);
+            }
+        }, current);
+        final Future<Integer> task2 = executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return ShardFiles.partition(filename2, shards2, chosen, dictionaries, current);
+            }
+        }, current);
+
+        try {
+            final Integer lines1 = await(task1, current);
+            final Integer lines2 = await(task2, current);
+
+            if (lines1 == null || lines2 == null || lines1 < 0 || lines2 < 0) {
+                return FileComparator.CANCELLED;
+            }
+
+            LOGGER.info("Spread " + lines1 + " and " + lines2 + " line(s) over "
+                    + shards1.length + " shard(s) by " + chosen.getLabel());
+
+            return null;
+        } catch (ExecutionException e) {
+            LOGGER.error("Problem while partitioning the files", e.getCause());
+            return "Problem while partitioning the files";
+        }
+    }
+
+    /**
+     * Waits for a task of the comparison. If the thread is interrupted, the
+     * comparison is cancelled.
+     *
+     * @return the result of the task or null if the comparison has been
+     * cancelled
+     */
+    private static <T> T await(Future<T> task, CancellationToken current)
+            throws ExecutionException {
+        try {
+            return task.get();
+        } catch (CancellationException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            current.cancel();
+            return null;
+        } finally {
+            current.unregister(task);
+        }
+    }
+
+    /**
+     * Starts the workers and gives them the shards until all the shards are
+     * compared, every worker stopped or the comparison is cancelled.
+     */
+    private void compareShards(File directory, File[] shards1, File[] shards2,
+                               ShardResult[] results, CancellationToken current)
+            throws IOException {
+        final BlockingQueue<Integer> pending = new LinkedBlockingQueue<Integer>();
+        final AtomicInteger remaining = new AtomicInteger(results.length);
+        final int[] attempts = new int[results.length];
+        final List<Process> processes = new ArrayList<Process>();
+        final List<Thread> handlers = new ArrayList<Thread>();
+        final ServerSocket server = new ServerSocket(0, this.workers, InetAddress
+                .getLoopbackAddress());
+
+        for (int i = 0; i < results.length; i++) {
+            pending.add(i);
+        }
+
+        try {
+            server.setSoTimeout(POLL_INTERVAL);
+
+            for (int i = 0; i < this.workers; i++) {
+                processes.add(this.startWorker(directory, i, server.getLocalPort()));
+            }
+
+            final long deadline = System.currentTimeMillis() + CONNECTION_TIMEOUT;
+
+            while (handlers.size() < this.workers && remaining.get() > 0
+                    && !current.isCancelled() && System.currentTimeMillis() < deadline
+                    && isAnyAlive(processes)) {
+                final Socket socket;
+
+                try {
+                    socket = server.accept();
+                } catch (SocketTimeoutException e) {
+                    continue;
+                }
+
+                final Thread handler = new Thread(new WorkerHandler(socket, shards1, shards2,
+                        results, pending, remaining, attempts, current), "shard-worker-"
+                        + handlers.size());
+
+                handler.setDaemon(true);
+                handler.start();
+                handlers.add(handler);
+            }
+
+            if (handlers.size() < this.workers) {
+                LOGGER.warn(handlers.size() + " of " + this.workers + " worker(s) connected");
+            }
+
+            for (Thread handler : handlers) {
+                while (handler.isAlive()) {
+                    try {
+                        handler.join(POLL_INTERVAL);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        current.cancel();
+                    }
+
+                    if (current.isCancelled()) {
+                        // the handlers waiting for a shard stop with their
+                        // connection
+                        for (Process process : processes) {
+                            process.destroyForcibly();
+                        }
+                    }
+                }
+            }
+        } finally {
+            server.close();
+            stopWorkers(processes);
+        }
+    }
+
+    /**
+     * Starts a worker JVM, its output being written in the directory of the
+     * shards.
+     */
+    private Process startWorker(File directory, int number, int port) throws IOException {
+        final List<String> command = new ArrayList<String>();
+
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java")
+                .getPath());
+        command.addAll(this.jvmOptions);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardWorker.class.getName());
+        command.add(String.valueOf(port));
+
+        final ProcessBuilder builder = new ProcessBuilder(command);
+
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(directory, "worker-" + number + ".log"));
+
+        return builder.start();
+    }
+
+    private static boolean isAnyAlive(List<Process> processes) {
+        for (Process process : processes) {
+            if (process.isAlive()) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Waits a moment for the workers to exit, then stops the ones still
+     * running.
+     */
+    private static void stopWorkers(List<Process> processes) {
+        for (Process process : processes) {
+            try {
+                if (!process.waitFor(POLL_INTERVAL * 10, TimeUnit.MILLISECONDS)) {
+                    process.destroyForcibly();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                process.destroyForcibly();
+            }
+        }
+    }
+
+    /**
+     * Merges the difference messages of the shards by line number, the way a
+     * FileComparator writes them, and summarizes them.
+     */
+    static String merge(List<String> differences) {
+        if (differences.isEmpty()) {
+            return FileComparator.FILES_MATCH;
+        }
+
+        final List<String> sorted = new ArrayList<String>(differences);
+
+        Collections.sort(sorted, new java.util.Comparator<String>() {
+            @Override
+            public int compare(String message1, String message2) {
+                return Long.compare(lineNumber(message1), lineNumber(message2));
+            }
+        });
+
+        final StringBuilder result = new StringBuilder();
+        long previous = -1;
+        int count = 0;
+
+        for (String message : sorted) {
+            final long line = lineNumber(message);
+
+            // like a FileComparator, the limit is checked before each line
+            if (count > FileComparator.MAXIMUM_DIFFERENCES && line != previous) {
+                result.append("There is more than 1000 differences. Only the first ");
+                result.append(count);
+                result.append(" are displayed. \n");
+                count++;
+                break;
+            }
+
+            result.append(message);
+            result.append('\n');
+            previous = line;
+            count++;
+        }
+
+        result.append("\n");
+        result.append(count);
+        result.append(" difference(s) found\n");
+
+        return result.toString();
+    }
+
+    /**
+     * Returns the line number of a difference message, "Line 12 : ...".
+     */
+    private static long lineNumber(String message) {
+        long number = 0;
+
+        for (int i = "Line ".length(); i < message.length(); i++) {
+            final char c = message.charAt(i);
+
+            if (c < '0' || c > '9') {
+                break;
+            }
+
+            number = number * 10 + (c - '0');
+        }
+
+        return number;
+    }
+
+    /**
+     * Deletes the directory of the shards and its files.
+     */
+    private static void delete(File directory) {
+        if (directory == null) {
+            return;
+        }
+
+        final File[] files = directory.listFiles();
+
+        if (files != null) {
+            for (File file : files) {
+                if (!file.delete()) {
+                    LOGGER.warn("Cannot delete " + file);
+                }
+            }
+        }
+
+        if (!directory.delete()) {
+            LOGGER.warn("Cannot delete " + directory);
+        }
+    }
+
+    /**
+     * Gives the shards to one worker, one at a time, until no shard is left.
+     * The shard being compared when the worker stops is given back to the
+     * other workers.
+     */
+    private final class WorkerHandler implements Runnable {
+        private final Socket socket;
+        private final File[] shards1;
+        private final File[] shards2;
+        private final ShardResult[] results;
+        private final BlockingQueue<Integer> pending;
+        private final AtomicInteger remaining;
+        private final int[] attempts;
+        private final CancellationToken current;
+
+        WorkerHandler(Socket socket, File[] shards1, File[] shards2, ShardResult[] results,
+                      BlockingQueue<Integer> pending, AtomicInteger remaining, int[] attempts,
+                      CancellationToken current) {
+            this.socket = socket;
+            this.shards1 = shards1;
+            this.shards2 = shards2;
+            this.results = results;
+            this.pending = pending;
+            this.remaining = remaining;
+            this.attempts = attempts;
+            this.current = current;
+        }
+
+        @Override
+        public void run() {
+            Integer shard = null;
+
+            try {
+                final ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(
+                        this.socket.getOutputStream()));
+
+                output.flush();
+
+                final ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(
+                        this.socket.getInputStream()));
+
+                while (this.remaining.get() > 0 && !this.current.isCancelled()) {
+                    shard = this.pending.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+
+                    if (shard == null) {
+                        continue;
+                    }
+
+                    synchronized (this.attempts) {
+                        this.attempts[shard]++;
+                    }
+
+                    output.writeObject(new ShardTask(shard, this.shards1[shard],
+                            this.shards2[shard], ShardCoordinator.this.separator,
+                            ShardCoordinator.this.dates, ShardCoordinator.this.numbers,
+                            ShardCoordinator.this.projection, ShardCoordinator.this.ordered));
+                    output.flush();
+                    output.reset();
+
+                    this.results[shard] = (ShardResult) input.readObject();
+                    this.remaining.decrementAndGet();
+                    shard = null;
+                }
+
+                output.writeObject(null);
+                output.flush();
+            } catch (InterruptedException e) {
+                this.current.cancel();
+            } catch (Exception e) {
+                if (!this.current.isCancelled()) {
+                    LOGGER.error("A worker stopped while comparing shard " + shard, e);
+                }
+            } finally {
+                if (shard != null) {
+                    this.giveBack(shard);
+                }
+
+                try {
+                    this.socket.close();
+                } catch (IOException e) {
+                    LOGGER.warn("Cannot close the connection of a worker", e);
+                }
+            }
+        }
+
+        /**
+         * Gives back a shard whose worker stopped, unless it already stopped
+         * MAXIMUM_ATTEMPTS workers.
+         */
+        private void giveBack(int shard) {
+            final int attempt;
+
+            synchronized (this.attempts) {
+                attempt = this.attempts[shard];
+            }
+
+            if (attempt < MAXIMUM_ATTEMPTS) {
+                this.pending.add(shard);
+            } else {
+                this.results[shard] = new ShardResult(shard, "Problem while comparing the "
+                        + "shards: the workers comparing shard " + shard + " stopped");
+                this.remaining.decrementAndGet();
+            }
+        }
+    }
+}
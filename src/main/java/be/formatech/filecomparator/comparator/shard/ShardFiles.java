@@ -0,0 +1,154 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+
+/**
+ * Writes and reads the shards of a file.<br>
+ * A shard holds some lines of a file, in the order of the file, each line
+ * being written as its number in the file, its length and its bytes : the
+ * Lines read from a shard have their original line numbers, so that the
+ * differences found in the shards are the ones of the files.
+ *
+ * @version $Id$
+ * @see ShardCoordinator, ShardWorker
+ */
+final class ShardFiles {
+
+    /**
+     * The size of the buffers of the shards.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private ShardFiles() {
+        super();
+    }
+
+    /**
+     * Spreads the lines of a file over shards.
+     *
+     * @param filename     the path of the file
+     * @param shards       the shard files to write, one per shard
+     * @param partitioning the way the lines are spread
+     * @param dictionaries the dictionaries formatting the lines, used to find
+     *                     their keys and fingerprints
+     * @param token        the cancellation token of the comparison
+     * @return the number of lines of the file or -1 if the comparison has been
+     * cancelled
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    static int partition(String filename, File[] shards, Partitioning partitioning,
+                         ColumnDictionaries dictionaries, CancellationToken token)
+            throws IOException, ParseException {
+        final Charset charset = Charset.defaultCharset();
+        final DataOutputStream[] outputs = new DataOutputStream[shards.length];
+        final OffsetLineReader reader = new OffsetLineReader(new FileInputStream(filename), 0);
+        int lineNumber = 0;
+
+        try {
+            for (int i = 0; i < shards.length; i++) {
+                outputs[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                        shards[i]), BUFFER_SIZE));
+            }
+
+            while (reader.readLine()) {
+                if (token.isCancelled()) {
+                    return -1;
+                }
+
+                final long hash;
+
+                if (partitioning == Partitioning.LINE_NUMBER) {
+                    hash = ++lineNumber;
+                } else {
+                    final Line line = new Line(reader.getLine(charset), dictionaries, 1);
+
+                    lineNumber++;
+                    hash = ComparatorUtility.fingerprint(partitioning == Partitioning.KEY
+                            ? line.getField(0) : line.getFormattedLine());
+                }
+
+                final DataOutputStream output = outputs[(int) ((hash >>> 1) % shards.length)];
+
+                output.writeInt(lineNumber);
+                output.writeInt(reader.getLength());
+                output.write(reader.getBytes(), 0, reader.getLength());
+            }
+        } finally {
+            reader.close();
+
+            for (DataOutputStream output : outputs) {
+                if (output != null) {
+                    output.close();
+                }
+            }
+        }
+
+        return lineNumber;
+    }
+
+    /**
+     * Reads the Lines of a shard.
+     *
+     * @param shard        the shard file
+     * @param dictionaries the dictionaries encoding the fields of the Lines
+     * @return the Lines, by their numbers in the file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    static LineTable read(File shard, ColumnDictionaries dictionaries) throws IOException,
+            ParseException {
+        final Charset charset = Charset.defaultCharset();
+        final LineTable lines = new LineTable();
+        final DataInputStream input = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(shard), BUFFER_SIZE));
+        byte[] bytes = new byte[256];
+
+        try {
+            while (true) {
+                final int lineNumber;
+
+                try {
+                    lineNumber = input.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+
+                final int length = input.readInt();
+
+                if (length > bytes.length) {
+                    bytes = new byte[Math.max(length, bytes.length * 2)];
+                }
+
+                input.readFully(bytes, 0, length);
+
+                final Line line = new Line(new String(bytes, 0, length, charset), dictionaries,
+                        1);
+
+                lines.numberOccurence(line);
+                lines.put(lineNumber, line);
+            }
+        } finally {
+            input.close();
+        }
+
+        return lines;
+    }
+}
@@ -0,0 +1,93 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The result of the comparison of one shard, sent back by a ShardWorker.<br>
+ * It holds the difference messages found in both directions, each message
+ * starting with the number of its line in the files, or the error that
+ * stopped the comparison of the shard.
+ *
+ * @version $Id$
+ * @see ShardTask
+ */
+final class ShardResult implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int shard;
+    private final int lines1;
+    private final int lines2;
+    private final List<String> differences1;
+    private final List<String> differences2;
+    private final String error;
+
+    /**
+     * Initializes a newly created ShardResult object for a compared shard.
+     *
+     * @param shard        the index of the shard
+     * @param lines1       the number of lines of the shard of the first file
+     * @param lines2       the number of lines of the shard of the second file
+     * @param differences1 the differences of the first file with the second
+     * @param differences2 the differences of the second file with the first
+     */
+    ShardResult(int shard, int lines1, int lines2, List<String> differences1,
+                List<String> differences2) {
+        super();
+
+        this.shard = shard;
+        this.lines1 = lines1;
+        this.lines2 = lines2;
+        this.differences1 = differences1;
+        this.differences2 = differences2;
+        this.error = null;
+    }
+
+    /**
+     * Initializes a newly created ShardResult object for a shard that could
+     * not be compared.
+     *
+     * @param shard the index of the shard
+     * @param error the error message
+     */
+    ShardResult(int shard, String error) {
+        super();
+
+        this.shard = shard;
+        this.lines1 = 0;
+        this.lines2 = 0;
+        this.differences1 = Collections.emptyList();
+        this.differences2 = Collections.emptyList();
+        this.error = error;
+    }
+
+    int getShard() {
+        return this.shard;
+    }
+
+    int getLines1() {
+        return this.lines1;
+    }
+
+    int getLines2() {
+        return this.lines2;
+    }
+
+    List<String> getDifferences1() {
+        return this.differences1;
+    }
+
+    List<String> getDifferences2() {
+        return this.differences2;
+    }
+
+    /**
+     * Returns the error that stopped the comparison of the shard.
+     *
+     * @return the error message or null if the shard was compared
+     */
+    String getError() {
+        return this.error;
+    }
+}
@@ -0,0 +1,93 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The comparison of one shard, sent by the ShardCoordinator to a ShardWorker.
+ * It holds the paths of the shards of both files and the settings of the
+ * comparison.
+ *
+ * @version $Id$
+ * @see ShardResult
+ */
+final class ShardTask implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final int shard;
+    private final String shard1;
+    private final String shard2;
+    private final String separator;
+    private final HashSet<Integer> dates;
+    private final HashSet<Integer> numbers;
+    private final HashSet<Integer> ignored;
+    private final HashSet<Integer> compared;
+    private final boolean ordered;
+
+    /**
+     * Initializes a newly created ShardTask object.
+     *
+     * @param shard      the index of the shard
+     * @param shard1     the shard of the first file
+     * @param shard2     the shard of the second file
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     * @param ordered    the flag indicating if the order of the lines matters
+     */
+    ShardTask(int shard, File shard1, File shard2, String separator, Set<Integer> dates,
+              Set<Integer> numbers, ColumnProjection projection, boolean ordered) {
+        super();
+
+        this.shard = shard;
+        this.shard1 = shard1.getPath();
+        this.shard2 = shard2.getPath();
+        this.separator = separator;
+        this.dates = copy(dates);
+        this.numbers = copy(numbers);
+        this.ignored = copy(projection.getIgnored());
+        this.compared = copy(projection.getCompared());
+        this.ordered = ordered;
+    }
+
+    private static HashSet<Integer> copy(Set<Integer> set) {
+        return set == null ? null : new HashSet<Integer>(set);
+    }
+
+    int getShard() {
+        return this.shard;
+    }
+
+    File getShard1() {
+        return new File(this.shard1);
+    }
+
+    File getShard2() {
+        return new File(this.shard2);
+    }
+
+    String getSeparator() {
+        return this.separator;
+    }
+
+    Set<Integer> getDates() {
+        return this.dates;
+    }
+
+    Set<Integer> getNumbers() {
+        return this.numbers;
+    }
+
+    ColumnProjection getProjection() {
+        return ColumnProjection.of(this.ignored, this.compared);
+    }
+
+    boolean isOrdered() {
+        return this.ordered;
+    }
+}
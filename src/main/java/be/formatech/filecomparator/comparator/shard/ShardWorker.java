@@ -0,0 +1,185 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.FileComparator;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares shards in a JVM started by a ShardCoordinator.<br>
+ * The worker connects to the coordinator on the loopback interface, then
+ * compares the shards it receives one after the other, until the coordinator
+ * sends no more shard. The Lines of a shard are compared with the
+ * FileComparator given by the ComparatorFactory, in both directions, and only
+ * the difference messages are sent back : the summaries are written by the
+ * coordinator for the whole files.<br>
+ * When the order of the lines doesn't matter, the Lines that exactly match,
+ * with the same occurence number, are removed first, like the reducers of a
+ * FileComparator do, so that only the Lines that differ are paired.
+ *
+ * @version $Id$
+ * @see ShardCoordinator
+ */
+public final class ShardWorker {
+    private static final Logger LOGGER = Logger.getLogger(ShardWorker.class);
+
+    private ShardWorker() {
+        super();
+    }
+
+    /**
+     * Compares the shards sent by a coordinator.
+     *
+     * @param args the port of the coordinator on the loopback interface
+     */
+    public static void main(String[] args) {
+        if (args.length != 1) {
+            System.err.println("Usage: ShardWorker <port>");
+            System.exit(2);
+        }
+
+        try {
+            run(Integer.parseInt(args[0]));
+        } catch (IOException e) {
+            LOGGER.error("Problem while talking to the coordinator", e);
+            System.exit(1);
+        } catch (ClassNotFoundException e) {
+            LOGGER.error("Unknown message from the coordinator", e);
+            System.exit(1);
+        }
+
+        System.exit(0);
+    }
+
+    /**
+     * Compares the shards sent by the coordinator listening on a port.
+     */
+    private static void run(int port) throws IOException, ClassNotFoundException {
+        final Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+
+        try {
+            final ObjectOutputStream output = new ObjectOutputStream(new BufferedOutputStream(
+                    socket.getOutputStream()));
+
+            output.flush();
+
+            final ObjectInputStream input = new ObjectInputStream(new BufferedInputStream(socket
+                    .getInputStream()));
+
+            while (true) {
+                final ShardTask task = (ShardTask) input.readObject();
+
+                if (task == null) {
+                    break;
+                }
+
+                output.writeObject(compare(task));
+                output.flush();
+                output.reset();
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Compares the shards of a task.
+     *
+     * @param task the shards and the settings of the comparison
+     * @return the differences of the shards or the error that stopped their
+     * comparison
+     */
+    static ShardResult compare(ShardTask task) {
+        final long start = System.currentTimeMillis();
+        final ColumnProjection projection = task.getProjection();
+
+        try {
+            final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(task
+                    .getSeparator(), task.getDates(), task.getNumbers(), projection);
+            final LineTable lines1 = ShardFiles.read(task.getShard1(), dictionaries);
+            final LineTable lines2 = ShardFiles.read(task.getShard2(), dictionaries);
+            final LineTable differing1 = task.isOrdered() ? lines1 : differing(lines1, lines2);
+            final LineTable differing2 = task.isOrdered() ? lines2 : differing(lines2, lines1);
+            final FileComparator comparator = (FileComparator) ComparatorFactory.getInstance()
+                    .getComparator(task.getSeparator(), task.getDates(), task.getNumbers(),
+                            task.isOrdered(), null, projection);
+            final List<String> differences1 = messages(comparator.compareLines(differing1,
+                    differing2));
+            final List<String> differences2 = messages(comparator.compareLines(differing2,
+                    differing1));
+
+            LOGGER.info("Shard " + task.getShard() + " compared in "
+                    + (System.currentTimeMillis() - start) + " ms");
+
+            return new ShardResult(task.getShard(), lines1.size(), lines2.size(), differences1,
+                    differences2);
+        } catch (IOException e) {
+            LOGGER.error("Problem while reading shard " + task.getShard(), e);
+            return new ShardResult(task.getShard(), "Problem while reading the shards: "
+                    + e.getMessage());
+        } catch (ParseException e) {
+            LOGGER.error("Problem while parsing shard " + task.getShard(), e);
+            return new ShardResult(task.getShard(), "Problem while parsing the files: "
+                    + e.getMessage());
+        } catch (RuntimeException e) {
+            LOGGER.error("Problem while comparing shard " + task.getShard(), e);
+            return new ShardResult(task.getShard(), "Problem while comparing the shards: " + e);
+        }
+    }
+
+    /**
+     * Returns the Lines having no identical Line, with the same occurence
+     * number, in other Lines.
+     */
+    private static LineTable differing(LineTable lines, LineTable others) {
+        final LineTable result = new LineTable();
+
+        for (Map.Entry<Integer, Line> entry : lines.entrySet()) {
+            if (others.getKey(entry.getValue()) == null) {
+                result.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the difference messages of a comparison, leaving out the
+     * message telling that the number of differences was limited.
+     */
+    private static List<String> messages(String result) {
+        final List<String> messages = new ArrayList<String>();
+        int start = 0;
+
+        while (start < result.length()) {
+            int end = result.indexOf('\n', start);
+
+            if (end < 0) {
+                end = result.length();
+            }
+
+            if (result.startsWith("Line ", start)) {
+                messages.add(result.substring(start, end));
+            }
+
+            start = end + 1;
+        }
+
+        return messages;
+    }
+}
@@ -0,0 +1,140 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import be.formatech.filecomparator.comparator.FileComparator;
+
+/**
+ * The result of a sharded comparison of two files : the results of both
+ * directions, written like the results of a FileComparator.
+ *
+ * @version $Id$
+ * @see ShardCoordinator
+ */
+public final class ShardedComparison {
+
+    /**
+     * The path of the first file.
+     */
+    private final String firstFile;
+
+    /**
+     * The path of the second file.
+     */
+    private final String secondFile;
+
+    /**
+     * The result of the comparison of the first file with the second.
+     */
+    private final String result1;
+
+    /**
+     * The result of the comparison of the second file with the first.
+     */
+    private final String result2;
+
+    /**
+     * The description of the shards and the workers.
+     */
+    private final String description;
+
+    /**
+     * The duration of the comparison, in milliseconds.
+     */
+    private final long duration;
+
+    /**
+     * Initializes a newly created ShardedComparison object.
+     *
+     * @param firstFile   the path of the first file
+     * @param secondFile  the path of the second file
+     * @param result1     the result of the comparison of the first file with
+     *                    the second
+     * @param result2     the result of the comparison of the second file with
+     *                    the first
+     * @param description the description of the shards and the workers
+     * @param duration    the duration of the comparison, in milliseconds
+     */
+    ShardedComparison(String firstFile, String secondFile, String result1, String result2,
+                      String description, long duration) {
+        super();
+
+        this.firstFile = firstFile;
+        this.secondFile = secondFile;
+        this.result1 = result1;
+        this.result2 = result2;
+        this.description = description;
+        this.duration = duration;
+    }
+
+    /**
+     * Returns the result of the comparison of the first file with the second.
+     *
+     * @return the difference and error messages
+     */
+    public String getResult1() {
+        return this.result1;
+    }
+
+    /**
+     * Returns the result of the comparison of the second file with the first.
+     *
+     * @return the difference and error messages
+     */
+    public String getResult2() {
+        return this.result2;
+    }
+
+    /**
+     * Checks if both files exactly match.
+     *
+     * @return true if no difference was found in both directions
+     */
+    public boolean isIdentical() {
+        return FileComparator.isMatch(this.result1) && FileComparator.isMatch(this.result2);
+    }
+
+    /**
+     * Checks if the comparison has been cancelled.
+     *
+     * @return true if the comparison has been cancelled
+     */
+    public boolean isCancelled() {
+        return FileComparator.CANCELLED.equals(this.result1);
+    }
+
+    /**
+     * Checks if the files could not be compared, because of an error or
+     * because the comparison has been cancelled.
+     *
+     * @return true if one of the results is an error message
+     */
+    public boolean isError() {
+        return FileComparator.isError(this.result1) || FileComparator.isError(this.result2);
+    }
+
+    /**
+     * Returns the duration of the comparison.
+     *
+     * @return the duration, in milliseconds
+     */
+    public long getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Returns the results of both directions, followed by the shards and the
+     * workers that compared the files.
+     *
+     * @return the summary of the comparison
+     */
+    public String getSummary() {
+        return this.firstFile + " compared with " + this.secondFile + " :\n" + this.result1
+                + "\n" + this.secondFile + " compared with " + this.firstFile + " :\n"
+                + this.result2 + "\nCompared in " + this.description + " in " + this.duration
+                + " ms\n";
+    }
+
+    @Override
+    public String toString() {
+        return this.getSummary();
+    }
+}
@@ -0,0 +1,182 @@
+package be.formatech.filecomparator.comparator.snapshot;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.element.Line;
+import org.apache.commons.collections15.bidimap.TreeBidiMap;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Removes the lines that exactly match from two files, using only their
+ * fingerprints.<br>
+ * Only the lines that differ are read as Lines, with their original line
+ * numbers, so that the comparators can compare them as usual.
+ *
+ * @version $Id$
+ * @see Fingerprints
+ */
+public final class FingerprintReducer {
+    private static final Logger LOGGER = Logger.getLogger(FingerprintReducer.class);
+
+    /**
+     * The Lines of the first file that differ, contained in a Map.
+     */
+    private final Map<Integer, Line> firstFileLinesAsMap = new TreeBidiMap<Integer, Line>();
+
+    /**
+     * The Lines of the second file that differ, contained in a Map.
+     */
+    private final Map<Integer, Line> secondFileLinesAsMap = new TreeBidiMap<Integer, Line>();
+
+    /**
+     * The comparator for which the lines are reduced.
+     */
+    private final Comparator comparator;
+
+    /**
+     * Initializes a newly created FingerprintReducer object.
+     *
+     * @param comparator the comparator for which the lines are reduced, to
+     *                   check if the comparison has been cancelled
+     */
+    public FingerprintReducer(Comparator comparator) {
+        super();
+        this.comparator = comparator;
+    }
+
+    /**
+     * Keeps the lines that are not identical at the same line number in both
+     * files.
+     *
+     * @param first  the fingerprints of the first file
+     * @param second the fingerprints of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduceOrdered(Fingerprints first, Fingerprints second) throws IOException,
+            ParseException {
+        for (int lineNumber = 1; lineNumber <= first.getLineCount(); lineNumber++) {
+            if (this.comparator.isCancelled()) {
+                return;
+            }
+
+            if (lineNumber > second.getLineCount()) {
+                this.firstFileLinesAsMap.put(lineNumber, first.getLine(lineNumber));
+            } else if (first.getFingerprint(lineNumber) != second.getFingerprint(lineNumber)) {
+                this.firstFileLinesAsMap.put(lineNumber, first.getLine(lineNumber));
+                this.secondFileLinesAsMap.put(lineNumber, second.getLine(lineNumber));
+            }
+        }
+
+        LOGGER.info(this.firstFileLinesAsMap.size() + " line(s) differ at the same position");
+    }
+
+    /**
+     * Keeps the lines of each file that have no identical line, with the same
+     * occurence number, anywhere in the other file.
+     *
+     * @param first  the fingerprints of the first file
+     * @param second the fingerprints of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduceUnordered(Fingerprints first, Fingerprints second) throws IOException,
+            ParseException {
+        this.reduceUnordered(first, new BitSet(), second, new BitSet());
+    }
+
+    /**
+     * Keeps the lines of each file that have no identical line, with the same
+     * occurence number, anywhere in the other file, the skipped lines being
+     * ignored.<br>
+     * When lines are skipped, the occurences of a line are numbered among the
+     * lines that are not skipped.
+     *
+     * @param first    the fingerprints of the first file
+     * @param skipped1 the numbers of the lines of the first file to ignore
+     * @param second   the fingerprints of the second file
+     * @param skipped2 the numbers of the lines of the second file to ignore
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduceUnordered(Fingerprints first, BitSet skipped1, Fingerprints second,
+                                BitSet skipped2) throws IOException, ParseException {
+        final Map<Long, Integer> secondLines = new HashMap<Long, Integer>(
+                (second.getLineCount() - skipped2.cardinality()) * 2);
+        Map<Long, Integer> occurences = skipped2.isEmpty() ? null : new HashMap<Long, Integer>();
+
+        for (int lineNumber = 1; lineNumber <= second.getLineCount(); lineNumber++) {
+            if (!skipped2.get(lineNumber)) {
+                secondLines.put(key(second, lineNumber, occurences), lineNumber);
+            }
+        }
+
+        occurences = skipped1.isEmpty() ? null : new HashMap<Long, Integer>();
+
+        for (int lineNumber = 1; lineNumber <= first.getLineCount(); lineNumber++) {
+            if (this.comparator.isCancelled()) {
+                return;
+            }
+
+            if (!skipped1.get(lineNumber)
+                    && secondLines.remove(key(first, lineNumber, occurences)) == null) {
+                this.firstFileLinesAsMap.put(lineNumber, first.getLine(lineNumber));
+            }
+        }
+
+        for (Integer lineNumber : secondLines.values()) {
+            if (this.comparator.isCancelled()) {
+                return;
+            }
+
+            this.secondFileLinesAsMap.put(lineNumber, second.getLine(lineNumber));
+        }
+
+        LOGGER.info(this.firstFileLinesAsMap.size() + " line(s) of the first file and "
+                + this.secondFileLinesAsMap.size() + " line(s) of the second file differ");
+    }
+
+    /**
+     * Returns a key identifying the content and the occurence number of a
+     * line, the occurences being counted in a Map if some lines are skipped.
+     */
+    private static long key(Fingerprints fingerprints, int lineNumber,
+                            Map<Long, Integer> occurences) {
+        final long fingerprint = fingerprints.getFingerprint(lineNumber);
+        final int occurence;
+
+        if (occurences == null) {
+            occurence = fingerprints.getOccurenceNumber(lineNumber);
+        } else {
+            final Integer count = occurences.get(fingerprint);
+
+            occurence = count == null ? 1 : count + 1;
+            occurences.put(fingerprint, occurence);
+        }
+
+        return fingerprint + 0x9e3779b97f4a7c15L * occurence;
+    }
+
+    /**
+     * Returns the Lines of the first file that differ contained in a Map.
+     *
+     * @return the Lines of the first file that differ
+     */
+    public Map<Integer, Line> getFirstFileLinesAsMap() {
+        return this.firstFileLinesAsMap;
+    }
+
+    /**
+     * Returns the Lines of the second file that differ contained in a Map.
+     *
+     * @return the Lines of the second file that differ
+     */
+    public Map<Integer, Line> getSecondFileLinesAsMap() {
+        return this.secondFileLinesAsMap;
+    }
+}
@@ -0,0 +1,480 @@
+package be.formatech.filecomparator.comparator.snapshot;
+
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A compact on-disk snapshot of a parsed file.<br>
+ * For each line, the snapshot contains the fingerprint of the formatted line,
+ * its occurence number and its position in the source file. The snapshot is
+ * memory-mapped when it is opened and the content of a line is read from the
+ * source file only when it is asked for.<br>
+ * <br>
+ * Format (version 1, big-endian) :
+ * <ul>
+ * <li>the magic number 0x46435350 ("FCSP")</li>
+ * <li>the version of the format</li>
+ * <li>the size and the last modification time of the source file</li>
+ * <li>the number of lines</li>
+ * <li>the separator, the date fields and the number fields</li>
+ * <li>for each line : fingerprint, offset, length and occurence number</li>
+ * </ul>
+ *
+ * @version $Id$
+ * @see Fingerprints
+ */
+public final class FingerprintSnapshot implements Fingerprints, Closeable {
+    private static final Logger LOGGER = Logger.getLogger(FingerprintSnapshot.class);
+
+    /**
+     * The extension added to the name of the source file to name its snapshot.
+     */
+    public static final String SNAPSHOT_EXTENSION = ".fcsnap";
+
+    /**
+     * The magic number identifying a snapshot file : "FCSP".
+     */
+    static final int MAGIC = 0x46435350;
+
+    /**
+     * The current version of the format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The position of the number of lines in the snapshot file.
+     */
+    private static final int LINE_COUNT_POSITION = 24;
+
+    /**
+     * The size of the description of a line in the snapshot file.
+     */
+    private static final int ENTRY_SIZE = 24;
+
+    /**
+     * The path of the source file.
+     */
+    private final String filename;
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The memory-mapped snapshot file.
+     */
+    private final MappedByteBuffer buffer;
+
+    /**
+     * The position of the first line description in the snapshot file.
+     */
+    private final int entriesPosition;
+
+    /**
+     * The number of lines of the source file.
+     */
+    private final int lineCount;
+
+    /**
+     * The source file, opened the first time a line is read.
+     */
+    private RandomAccessFile source;
+
+    /**
+     * The dictionaries of the Lines read, the ones of the job reading the
+     * first line.
+     */
+    private ColumnDictionaries dictionaries;
+
+    private FingerprintSnapshot(String filename, String separator, Set<Integer> dates,
+                                Set<Integer> numbers, MappedByteBuffer buffer, int entriesPosition, int lineCount) {
+        super();
+
+        this.filename = filename;
+        this.separator = separator;
+        this.dates = dates;
+        this.numbers = numbers;
+        this.buffer = buffer;
+        this.entriesPosition = entriesPosition;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Returns the default location of the snapshot of a file.
+     *
+     * @param filename the path of the source file
+     * @return the default location of the snapshot
+     */
+    public static String getSnapshotLocation(String filename) {
+        return filename + SNAPSHOT_EXTENSION;
+    }
+
+    /**
+     * Parses a file and saves its snapshot at the default location.
+     *
+     * @param filename  the path of the file to parse
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @return the number of lines saved in the snapshot
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the file contains a date that cannot be parsed
+     */
+    public static int save(String filename, String separator, Set<Integer> dates,
+                           Set<Integer> numbers) throws IOException, ParseException {
+        return save(filename, separator, dates, numbers, getSnapshotLocation(filename));
+    }
+
+    /**
+     * Parses a file and saves its snapshot at the location passed in parameter.
+     * If the snapshot file exists, it is overwritten.
+     *
+     * @param filename         the path of the file to parse
+     * @param separator        the field separator
+     * @param dates            the Set identifying the date fields of the file
+     * @param numbers          the Set identifying the number fields of the file
+     * @param snapshotLocation the location where to save the snapshot
+     * @return the number of lines saved in the snapshot
+     * @throws IOException              if an I/O error occurs
+     * @throws ParseException           if the file contains a date that cannot be
+     *                                  parsed
+     * @throws IllegalArgumentException if filename, separator or snapshotLocation
+     *                                  is null or empty
+     */
+    public static int save(String filename, String separator, Set<Integer> dates,
+                           Set<Integer> numbers, String snapshotLocation) throws IOException, ParseException {
+        if (StringUtils.isEmpty(filename) || StringUtils.isEmpty(separator)
+                || StringUtils.isEmpty(snapshotLocation)) {
+            throw new IllegalArgumentException(
+                    "filename, separator and snapshotLocation must not be null, nor empty");
+        }
+
+        LOGGER.info("Saving snapshot of file " + filename + " to " + snapshotLocation);
+
+        final File file = new File(filename);
+        final long length = file.length();
+        final long lastModified = file.lastModified();
+        final Charset charset = Charset.defaultCharset();
+        final Map<Long, Integer> counts = new HashMap<Long, Integer>();
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(separator, dates,
+                numbers);
+        int lineCount = 0;
+
+        OffsetLineReader in = null;
+        DataOutputStream out = null;
+
+        try {
+            in = new OffsetLineReader(new FileInputStream(file), 0);
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+                    snapshotLocation)));
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(length);
+            out.writeLong(lastModified);
+            out.writeInt(0); // number of lines, written at the end
+            writeString(out, separator);
+            writeSet(out, dates);
+            writeSet(out, numbers);
+
+            while (in.readLine()) {
+                final Line line = new Line(in.getLine(charset), dictionaries, 1);
+                final long fingerprint = ComparatorUtility.fingerprint(line.getFormattedLine());
+                final Integer count = counts.get(fingerprint);
+                final int occurence = count == null ? 1 : count + 1;
+
+                counts.put(fingerprint, occurence);
+                lineCount++;
+
+                out.writeLong(fingerprint);
+                out.writeLong(in.getOffset());
+                out.writeInt(in.getLength());
+                out.writeInt(occurence);
+            }
+        } finally {
+            if (in != null) {
+                in.close();
+            }
+
+            if (out != null) {
+                out.close();
+            }
+        }
+
+        final RandomAccessFile snapshot = new RandomAccessFile(snapshotLocation, "rw");
+
+        try {
+            snapshot.seek(LINE_COUNT_POSITION);
+            snapshot.writeInt(lineCount);
+        } finally {
+            snapshot.close();
+        }
+
+        return lineCount;
+    }
+
+    /**
+     * Saves the snapshot of a file at the default location, unless it already
+     * has an up to date snapshot.
+     *
+     * @param filename  the path of the file to parse
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @return true if the snapshot was saved, false if it was up to date
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the file contains a date that cannot be parsed
+     */
+    public static boolean refresh(String filename, String separator, Set<Integer> dates,
+                                  Set<Integer> numbers) throws IOException, ParseException {
+        final FingerprintSnapshot snapshot = open(filename, separator, dates, numbers);
+
+        if (snapshot != null) {
+            snapshot.close();
+            return false;
+        }
+
+        save(filename, separator, dates, numbers);
+        return true;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        final byte[] bytes = value.getBytes("UTF-8");
+
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeSet(DataOutputStream out, Set<Integer> set) throws IOException {
+        final Set<Integer> sorted = set == null ? new TreeSet<Integer>() : new TreeSet<Integer>(
+                set);
+
+        out.writeInt(sorted.size());
+
+        for (Integer value : sorted) {
+            out.writeInt(value);
+        }
+    }
+
+    /**
+     * Opens the snapshot of a file saved at the default location, if it
+     * exists and is up to date.
+     *
+     * @param filename  the path of the source file
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @return the snapshot or null if there is no up to date snapshot
+     * @throws IOException if an I/O error occurs
+     */
+    public static FingerprintSnapshot open(String filename, String separator,
+                                           Set<Integer> dates, Set<Integer> numbers) throws IOException {
+        return open(filename, separator, dates, numbers, getSnapshotLocation(filename));
+    }
+
+    /**
+     * Opens the snapshot of a file saved at the location passed in parameter,
+     * if it exists and is up to date.<br>
+     * A snapshot is up to date if the source file has the same size and last
+     * modification time as when the snapshot was saved, and if it was saved
+     * with the same separator, date fields and number fields.
+     *
+     * @param filename         the path of the source file
+     * @param separator        the field separator
+     * @param dates            the Set identifying the date fields of the file
+     * @param numbers          the Set identifying the number fields of the file
+     * @param snapshotLocation the location of the snapshot
+     * @return the snapshot or null if there is no up to date snapshot
+     * @throws IOException if an I/O error occurs
+     */
+    public static FingerprintSnapshot open(String filename, String separator,
+                                           Set<Integer> dates, Set<Integer> numbers, String snapshotLocation)
+            throws IOException {
+        final File snapshotFile = new File(snapshotLocation);
+
+        if (StringUtils.isEmpty(separator) || !snapshotFile.isFile()) {
+            return null;
+        }
+
+        if (snapshotFile.length() > Integer.MAX_VALUE) {
+            LOGGER.info("Snapshot " + snapshotLocation + " is too big to be mapped");
+            return null;
+        }
+
+        final File file = new File(filename);
+        final RandomAccessFile snapshot = new RandomAccessFile(snapshotFile, "r");
+        final MappedByteBuffer buffer;
+
+        try {
+            final FileChannel channel = snapshot.getChannel();
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            snapshot.close();
+        }
+
+        if (buffer.capacity() < LINE_COUNT_POSITION + 4 || buffer.getInt() != MAGIC) {
+            LOGGER.info(snapshotLocation + " is not a snapshot");
+            return null;
+        }
+
+        if (buffer.getInt() != VERSION) {
+            LOGGER.info("Snapshot " + snapshotLocation + " has an unsupported version");
+            return null;
+        }
+
+        if (buffer.getLong() != file.length() || buffer.getLong() != file.lastModified()) {
+            LOGGER.info("Snapshot " + snapshotLocation + " is out of date");
+            return null;
+        }
+
+        final int lineCount = buffer.getInt();
+
+        if (!separator.equals(readString(buffer)) || !readSet(buffer).equals(toSet(dates))
+                || !readSet(buffer).equals(toSet(numbers))) {
+            LOGGER.info("Snapshot " + snapshotLocation + " was saved with other settings");
+            return null;
+        }
+
+        if (buffer.remaining() != (long) lineCount * ENTRY_SIZE) {
+            LOGGER.info("Snapshot " + snapshotLocation + " is truncated");
+            return null;
+        }
+
+        LOGGER.info("Using snapshot " + snapshotLocation + " for file " + filename);
+
+        return new FingerprintSnapshot(filename, separator, dates, numbers, buffer, buffer
+                .position(), lineCount);
+    }
+
+    private static String readString(MappedByteBuffer buffer) throws IOException {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+
+        return new String(bytes, "UTF-8");
+    }
+
+    private static Set<Integer> readSet(MappedByteBuffer buffer) {
+        final Set<Integer> set = new TreeSet<Integer>();
+        final int size = buffer.getInt();
+
+        for (int i = 0; i < size; i++) {
+            set.add(buffer.getInt());
+        }
+
+        return set;
+    }
+
+    private static Set<Integer> toSet(Set<Integer> set) {
+        return set == null ? new TreeSet<Integer>() : new TreeSet<Integer>(set);
+    }
+
+    @Override
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    @Override
+    public long getFingerprint(int lineNumber) {
+        return this.buffer.getLong(this.getEntryPosition(lineNumber));
+    }
+
+    @Override
+    public int getOccurenceNumber(int lineNumber) {
+        return this.buffer.getInt(this.getEntryPosition(lineNumber) + 20);
+    }
+
+    /**
+     * Returns the position of the first byte of a line in the source file.
+     *
+     * @param lineNumber the number of the line
+     * @return the position of the line in the source file
+     */
+    public long getOffset(int lineNumber) {
+        return this.buffer.getLong(this.getEntryPosition(lineNumber) + 8);
+    }
+
+    /**
+     * Returns the number of bytes of a line in the source file, without the
+     * line terminator.
+     *
+     * @param lineNumber the number of the line
+     * @return the number of bytes of the line
+     */
+    public int getLength(int lineNumber) {
+        return this.buffer.getInt(this.getEntryPosition(lineNumber) + 16);
+    }
+
+    private int getEntryPosition(int lineNumber) {
+        return this.entriesPosition + (lineNumber - 1) * ENTRY_SIZE;
+    }
+
+    /**
+     * Reads a line from the source file.
+     *
+     * @param lineNumber the number of the line
+     * @return the line as a Line
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the line contains a date that cannot be parsed
+     */
+    @Override
+    public synchronized Line getLine(int lineNumber) throws IOException, ParseException {
+        if (this.source == null) {
+            this.source = new RandomAccessFile(this.filename, "r");
+            this.dictionaries = ColumnDictionaries.forSettings(this.separator, this.dates,
+                    this.numbers);
+        }
+
+        final byte[] bytes = new byte[this.getLength(lineNumber)];
+
+        this.source.seek(this.getOffset(lineNumber));
+        this.source.readFully(bytes);
+
+        return new Line(new String(bytes, Charset.defaultCharset()), this.dictionaries, this
+                .getOccurenceNumber(lineNumber));
+    }
+
+    /**
+     * Closes the source file if it was opened.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.source != null) {
+            this.source.close();
+            this.source = null;
+        }
+    }
+}
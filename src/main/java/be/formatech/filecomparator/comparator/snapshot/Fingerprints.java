@@ -0,0 +1,51 @@
+package be.formatech.filecomparator.comparator.snapshot;
+
+import be.formatech.filecomparator.comparator.element.Line;
+
+import java.io.IOException;
+import java.text.ParseException;
+
+/**
+ * The fingerprints of the lines of a file.<br>
+ * The lines are numbered from 1 to the number of lines, like in the Maps
+ * returned by ComparatorUtility.parseFile.
+ *
+ * @version $Id$
+ * @see FingerprintSnapshot, ParsedFingerprints
+ */
+public interface Fingerprints {
+
+    /**
+     * Returns the number of lines of the file.
+     *
+     * @return the number of lines of the file
+     */
+    public int getLineCount();
+
+    /**
+     * Returns the fingerprint of the formatted content of a line.
+     *
+     * @param lineNumber the number of the line
+     * @return the fingerprint of the line
+     */
+    public long getFingerprint(int lineNumber);
+
+    /**
+     * Returns the occurence number of a line i.e. the number of lines having
+     * the same fingerprint up to and including this one.
+     *
+     * @param lineNumber the number of the line
+     * @return the occurence number of the line
+     */
+    public int getOccurenceNumber(int lineNumber);
+
+    /**
+     * Returns a line as a Line.
+     *
+     * @param lineNumber the number of the line
+     * @return the line as a Line
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if the line contains a date that cannot be parsed
+     */
+    public Line getLine(int lineNumber) throws IOException, ParseException;
+}
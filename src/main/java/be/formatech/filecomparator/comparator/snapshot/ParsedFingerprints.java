@@ -0,0 +1,77 @@
+package be.formatech.filecomparator.comparator.snapshot;
+
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The fingerprints of the Lines of a parsed file.
+ *
+ * @version $Id$
+ * @see Fingerprints
+ */
+public class ParsedFingerprints implements Fingerprints {
+
+    /**
+     * The Lines of the file contained in a Map.
+     */
+    private final Map<Integer, Line> lines;
+
+    /**
+     * The fingerprints of the Lines, the first Line at index 0.
+     */
+    private final long[] fingerprints;
+
+    /**
+     * The occurence numbers of the Lines, the first Line at index 0.
+     */
+    private final int[] occurences;
+
+    /**
+     * Initializes a newly created ParsedFingerprints object.
+     *
+     * @param lines the Lines of the file contained in a Map, numbered from 1
+     */
+    public ParsedFingerprints(Map<Integer, Line> lines) {
+        super();
+
+        this.lines = lines;
+        this.fingerprints = new long[lines.size()];
+        this.occurences = new int[lines.size()];
+
+        final Map<Long, Integer> counts = new HashMap<Long, Integer>();
+
+        for (int i = 0; i < this.fingerprints.length; i++) {
+            final long fingerprint = ComparatorUtility.fingerprint(lines.get(i + 1)
+                    .getFormattedLine());
+            final Integer count = counts.get(fingerprint);
+            final int occurence = count == null ? 1 : count + 1;
+
+            counts.put(fingerprint, occurence);
+            this.fingerprints[i] = fingerprint;
+            this.occurences[i] = occurence;
+        }
+    }
+
+    @Override
+    public int getLineCount() {
+        return this.fingerprints.length;
+    }
+
+    @Override
+    public long getFingerprint(int lineNumber) {
+        return this.fingerprints[lineNumber - 1];
+    }
+
+    @Override
+    public int getOccurenceNumber(int lineNumber) {
+        return this.occurences[lineNumber - 1];
+    }
+
+    @Override
+    public Line getLine(int lineNumber) {
+        return this.lines.get(lineNumber);
+    }
+}
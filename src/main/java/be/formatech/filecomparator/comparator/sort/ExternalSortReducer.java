@@ -0,0 +1,287 @@
+package be.formatech.filecomparator.comparator.sort;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import org.apache.commons.collections15.bidimap.TreeBidiMap;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Removes the lines that exactly match from two files, wherever they are, by
+ * sorting the fingerprints of their lines on disk and merging them.<br>
+ * Like the FingerprintReducer, the n-th occurence of a line in the first file
+ * matches the n-th occurence of the same line in the second file. Only the
+ * lines that differ are read as Lines, with their original line numbers, so
+ * that the comparators can compare them as usual.
+ *
+ * @version $Id$
+ * @see SortedFingerprints
+ */
+public final class ExternalSortReducer {
+    private static final Logger LOGGER = Logger.getLogger(ExternalSortReducer.class);
+
+    /**
+     * Sorts the lines in the order of the file.
+     */
+    private static final java.util.Comparator<Difference> BY_LINE_NUMBER = new java.util.Comparator<Difference>() {
+        @Override
+        public int compare(Difference difference1, Difference difference2) {
+            return difference1.entry.getLineNumber() - difference2.entry.getLineNumber();
+        }
+    };
+
+    /**
+     * The Lines of the first file that differ, contained in a Map.
+     */
+    private final Map<Integer, Line> firstFileLinesAsMap = new TreeBidiMap<Integer, Line>();
+
+    /**
+     * The Lines of the second file that differ, contained in a Map.
+     */
+    private final Map<Integer, Line> secondFileLinesAsMap = new TreeBidiMap<Integer, Line>();
+
+    /**
+     * The comparator for which the lines are reduced.
+     */
+    private final Comparator comparator;
+
+    /**
+     * The field separator.
+     */
+    private final String separator;
+
+    /**
+     * The Set identifying the date fields.
+     */
+    private final Set<Integer> dates;
+
+    /**
+     * The Set identifying the number fields.
+     */
+    private final Set<Integer> numbers;
+
+    /**
+     * The columns taking part in the comparison.
+     */
+    private final ColumnProjection projection;
+
+    /**
+     * Initializes a newly created ExternalSortReducer object.
+     *
+     * @param comparator the comparator for which the lines are reduced, to
+     *                   check if the comparison has been cancelled
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     */
+    public ExternalSortReducer(Comparator comparator, String separator, Set<Integer> dates,
+                               Set<Integer> numbers, ColumnProjection projection) {
+        super();
+
+        this.comparator = comparator;
+        this.separator = separator;
+        this.dates = dates;
+        this.numbers = numbers;
+        this.projection = projection;
+    }
+
+    /**
+     * Keeps the lines of each file that have no identical line, with the same
+     * occurence number, anywhere in the other file.
+     *
+     * @param filename1 the path of the first file
+     * @param filename2 the path of the second file
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduce(String filename1, String filename2) throws IOException, ParseException {
+        this.reduce(filename1, new BitSet(), filename2, new BitSet());
+    }
+
+    /**
+     * Keeps the lines of each file that have no identical line, with the same
+     * occurence number, anywhere in the other file, the skipped lines being
+     * ignored.
+     *
+     * @param filename1 the path of the first file
+     * @param skipped1  the numbers of the lines of the first file to ignore
+     * @param filename2 the path of the second file
+     * @param skipped2  the numbers of the lines of the second file to ignore
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public void reduce(String filename1, BitSet skipped1, String filename2, BitSet skipped2)
+            throws IOException, ParseException {
+        final SortedFingerprints first = SortedFingerprints.sort(filename1, this.separator,
+                this.dates, this.numbers, this.projection, skipped1, this.comparator);
+
+        if (first == null) {
+            return;
+        }
+
+        try {
+            final SortedFingerprints second = SortedFingerprints.sort(filename2, this.separator,
+                    this.dates, this.numbers, this.projection, skipped2, this.comparator);
+
+            if (second == null) {
+                return;
+            }
+
+            try {
+                this.reduce(first, second);
+            } finally {
+                second.close();
+            }
+        } finally {
+            first.close();
+        }
+
+        LOGGER.info(this.firstFileLinesAsMap.size() + " line(s) of the first file and "
+                + this.secondFileLinesAsMap.size() + " line(s) of the second file differ");
+    }
+
+    /**
+     * Merges the sorted fingerprints of both files and reads the lines that
+     * have no match.
+     */
+    private void reduce(SortedFingerprints first, SortedFingerprints second)
+            throws IOException, ParseException {
+        final List<Difference> firstDifferences = new ArrayList<Difference>();
+        final List<Difference> secondDifferences = new ArrayList<Difference>();
+        final List<SortedFingerprints.Entry> firstGroup = new ArrayList<SortedFingerprints.Entry>();
+        final List<SortedFingerprints.Entry> secondGroup = new ArrayList<SortedFingerprints.Entry>();
+        final SortedFingerprints.Cursor cursor1 = first.open();
+
+        try {
+            final SortedFingerprints.Cursor cursor2 = second.open();
+
+            try {
+                SortedFingerprints.Entry entry1 = cursor1.next();
+                SortedFingerprints.Entry entry2 = cursor2.next();
+
+                while (entry1 != null || entry2 != null) {
+                    if (this.comparator.isCancelled()) {
+                        return;
+                    }
+
+                    final long fingerprint;
+
+                    if (entry2 == null || (entry1 != null
+                            && entry1.getFingerprint() < entry2.getFingerprint())) {
+                        fingerprint = entry1.getFingerprint();
+                    } else {
+                        fingerprint = entry2.getFingerprint();
+                    }
+
+                    // the occurences of a line, in the order of the file
+                    firstGroup.clear();
+                    secondGroup.clear();
+
+                    while (entry1 != null && entry1.getFingerprint() == fingerprint) {
+                        firstGroup.add(entry1);
+                        entry1 = cursor1.next();
+                    }
+
+                    while (entry2 != null && entry2.getFingerprint() == fingerprint) {
+                        secondGroup.add(entry2);
+                        entry2 = cursor2.next();
+                    }
+
+                    for (int i = secondGroup.size(); i < firstGroup.size(); i++) {
+                        firstDifferences.add(new Difference(firstGroup.get(i), i + 1));
+                    }
+
+                    for (int i = firstGroup.size(); i < secondGroup.size(); i++) {
+                        secondDifferences.add(new Difference(secondGroup.get(i), i + 1));
+                    }
+                }
+            } finally {
+                cursor2.close();
+            }
+        } finally {
+            cursor1.close();
+        }
+
+        this.readLines(first.getFilename(), firstDifferences, this.firstFileLinesAsMap);
+        this.readLines(second.getFilename(), secondDifferences, this.secondFileLinesAsMap);
+    }
+
+    /**
+     * Reads the lines that differ and puts them as Lines in a Map, with their
+     * original line numbers and occurence numbers.
+     */
+    private void readLines(String filename, List<Difference> differences,
+                           Map<Integer, Line> lines) throws IOException, ParseException {
+        if (differences.isEmpty()) {
+            return;
+        }
+
+        Collections.sort(differences, BY_LINE_NUMBER);
+
+        final Charset charset = Charset.defaultCharset();
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(this.separator,
+                this.dates, this.numbers, this.projection);
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+
+        try {
+            for (Difference difference : differences) {
+                if (this.comparator.isCancelled()) {
+                    return;
+                }
+
+                final byte[] bytes = new byte[difference.entry.getLength()];
+
+                file.seek(difference.entry.getOffset());
+                file.readFully(bytes);
+                lines.put(difference.entry.getLineNumber(), new Line(new String(bytes, charset),
+                        dictionaries, difference.occurence));
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Returns the Lines of the first file that differ contained in a Map.
+     *
+     * @return the Lines of the first file that differ
+     */
+    public Map<Integer, Line> getFirstFileLinesAsMap() {
+        return this.firstFileLinesAsMap;
+    }
+
+    /**
+     * Returns the Lines of the second file that differ contained in a Map.
+     *
+     * @return the Lines of the second file that differ
+     */
+    public Map<Integer, Line> getSecondFileLinesAsMap() {
+        return this.secondFileLinesAsMap;
+    }
+
+    /**
+     * A line without match and its occurence number.
+     */
+    private static final class Difference {
+        private final SortedFingerprints.Entry entry;
+        private final int occurence;
+
+        Difference(SortedFingerprints.Entry entry, int occurence) {
+            this.entry = entry;
+            this.occurence = occurence;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package be.formatech.filecomparator.comparator.sort;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import be.formatech.filecomparator.utils.OffsetLineReader;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * The fingerprints of the lines of a file, sorted on disk.<br>
+ * The lines are read once and the fingerprint, number, position and length
+ * of each line are sorted by runs of RUN_SIZE lines, each run being written
+ * to a temporary file. The runs are merged when the entries are read, so that
+ * the memory used doesn't depend on the size of the file.
+ *
+ * @version $Id$
+ * @see ExternalSortReducer
+ */
+public final class SortedFingerprints implements Closeable {
+    private static final Logger LOGGER = Logger.getLogger(SortedFingerprints.class);
+
+    /**
+     * The number of lines sorted in memory before being written to a run.
+     */
+    static final int RUN_SIZE = 1 << 18;
+
+    /**
+     * The size of the buffers of the run files.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The path of the file.
+     */
+    private final String filename;
+
+    /**
+     * The temporary files containing the sorted runs.
+     */
+    private final List<File> runs;
+
+    /**
+     * The number of lines of the file.
+     */
+    private final int lineCount;
+
+    private SortedFingerprints(String filename, List<File> runs, int lineCount) {
+        super();
+
+        this.filename = filename;
+        this.runs = runs;
+        this.lineCount = lineCount;
+    }
+
+    /**
+     * Reads a file and sorts the fingerprints of its formatted lines.
+     *
+     * @param filename   the path of the file
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     * @param comparator the comparator for which the lines are sorted, to
+     *                   check if the comparison has been cancelled
+     * @return the sorted fingerprints or null if the comparison has been
+     * cancelled
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public static SortedFingerprints sort(String filename, String separator, Set<Integer> dates,
+                                          Set<Integer> numbers, ColumnProjection projection,
+                                          Comparator comparator) throws IOException, ParseException {
+        return sort(filename, separator, dates, numbers, projection, new BitSet(), comparator);
+    }
+
+    /**
+     * Reads a file and sorts the fingerprints of its formatted lines, except
+     * the ones of the skipped lines.
+     *
+     * @param filename   the path of the file
+     * @param separator  the field separator
+     * @param dates      the Set identifying the date fields
+     * @param numbers    the Set identifying the number fields
+     * @param projection the columns taking part in the comparison
+     * @param skipped    the numbers of the lines that are not sorted
+     * @param comparator the comparator for which the lines are sorted, to
+     *                   check if the comparison has been cancelled
+     * @return the sorted fingerprints or null if the comparison has been
+     * cancelled
+     * @throws IOException    if an I/O error occurs
+     * @throws ParseException if a line contains a date that cannot be parsed
+     */
+    public static SortedFingerprints sort(String filename, String separator, Set<Integer> dates,
+                                          Set<Integer> numbers, ColumnProjection projection,
+                                          BitSet skipped, Comparator comparator)
+            throws IOException, ParseException {
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(separator, dates,
+                numbers, projection);
+        final List<File> runs = new ArrayList<File>();
+        final Charset charset = Charset.defaultCharset();
+        final Entry[] entries = new Entry[RUN_SIZE];
+        final OffsetLineReader reader = new OffsetLineReader(new FileInputStream(filename), 0);
+        int lineNumber = 0;
+        int count = 0;
+        boolean sorted = false;
+
+        try {
+            while (reader.readLine()) {
+                if (comparator.isCancelled()) {
+                    return null;
+                }
+
+                if (skipped.get(++lineNumber)) {
+                    continue;
+                }
+
+                final Line line = new Line(reader.getLine(charset), dictionaries, 1);
+
+                entries[count++] = new Entry(ComparatorUtility.fingerprint(line
+                        .getFormattedLine()), lineNumber, reader.getOffset(), reader.getLength());
+
+                if (count == RUN_SIZE) {
+                    runs.add(writeRun(entries, count));
+                    count = 0;
+                }
+            }
+
+            if (count > 0 || runs.isEmpty()) {
+                runs.add(writeRun(entries, count));
+            }
+
+            sorted = true;
+        } finally {
+            reader.close();
+
+            if (!sorted) {
+                delete(runs);
+            }
+        }
+
+        LOGGER.info("File " + filename + " has " + lineNumber + " line(s) sorted in "
+                + runs.size() + " run(s)");
+
+        return new SortedFingerprints(filename, runs, lineNumber);
+    }
+
+    /**
+     * Sorts the first entries of an array and writes them to a temporary file.
+     */
+    private static File writeRun(Entry[] entries, int count) throws IOException {
+        Arrays.sort(entries, 0, count);
+
+        final File run = File.createTempFile("filecomparator", ".run");
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new FileOutputStream(run), BUFFER_SIZE));
+
+        run.deleteOnExit();
+
+        try {
+            for (int i = 0; i < count; i++) {
+                out.writeLong(entries[i].fingerprint);
+                out.writeInt(entries[i].lineNumber);
+                out.writeLong(entries[i].offset);
+                out.writeInt(entries[i].length);
+                entries[i] = null;
+            }
+        } finally {
+            out.close();
+        }
+
+        return run;
+    }
+
+    private static void delete(List<File> runs) {
+        for (File run : runs) {
+            if (!run.delete()) {
+                LOGGER.warn("Cannot delete the temporary file " + run);
+            }
+        }
+
+        runs.clear();
+    }
+
+    /**
+     * Opens a cursor reading the entries of the lines, sorted by fingerprint
+     * then by line number.
+     *
+     * @return the cursor, to be closed
+     * @throws IOException if an I/O error occurs
+     */
+    public Cursor open() throws IOException {
+        return new Cursor(this.runs);
+    }
+
+    /**
+     * Returns the path of the file.
+     *
+     * @return the path of the file
+     */
+    public String getFilename() {
+        return this.filename;
+    }
+
+    /**
+     * Returns the number of lines of the file.
+     *
+     * @return the number of lines of the file
+     */
+    public int getLineCount() {
+        return this.lineCount;
+    }
+
+    /**
+     * Deletes the temporary files of the runs.
+     */
+    @Override
+    public void close() {
+        delete(this.runs);
+    }
+
+    /**
+     * A line of a file : the fingerprint of its formatted content, its number,
+     * its position and its length in the file.
+     */
+    public static final class Entry implements Comparable<Entry> {
+        private final long fingerprint;
+        private final int lineNumber;
+        private final long offset;
+        private final int length;
+
+        Entry(long fingerprint, int lineNumber, long offset, int length) {
+            this.fingerprint = fingerprint;
+            this.lineNumber = lineNumber;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (this.fingerprint != other.fingerprint) {
+                return this.fingerprint < other.fingerprint ? -1 : 1;
+            }
+
+            return this.lineNumber - other.lineNumber;
+        }
+
+        /**
+         * Returns the fingerprint of the formatted content of the line.
+         *
+         * @return the fingerprint of the line
+         */
+        public long getFingerprint() {
+            return this.fingerprint;
+        }
+
+        /**
+         * Returns the number of the line.
+         *
+         * @return the number of the line
+         */
+        public int getLineNumber() {
+            return this.lineNumber;
+        }
+
+        /**
+         * Returns the position of the line in the file.
+         *
+         * @return the position of the line
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Returns the number of bytes of the line, without the line
+         * terminator.
+         *
+         * @return the length of the line
+         */
+        public int getLength() {
+            return this.length;
+        }
+    }
+
+    /**
+     * Merges the sorted runs of a file.
+     */
+    public static final class Cursor implements Closeable {
+        private final PriorityQueue<Run> queue = new PriorityQueue<Run>();
+        private final List<Run> opened = new ArrayList<Run>();
+
+        Cursor(List<File> runs) throws IOException {
+            try {
+                for (File file : runs) {
+                    final Run run = new Run(file);
+
+                    this.opened.add(run);
+
+                    if (run.next()) {
+                        this.queue.add(run);
+                    }
+                }
+            } catch (IOException e) {
+                this.close();
+                throw e;
+            }
+        }
+
+        /**
+         * Returns the next entry, in the order of the fingerprints then of the
+         * line numbers.
+         *
+         * @return the next entry or null if all the entries were read
+         * @throws IOException if an I/O error occurs
+         */
+        public Entry next() throws IOException {
+            final Run run = this.queue.poll();
+
+            if (run == null) {
+                return null;
+            }
+
+            final Entry entry = run.current;
+
+            if (run.next()) {
+                this.queue.add(run);
+            }
+
+            return entry;
+        }
+
+        /**
+         * Closes the run files.
+         */
+        @Override
+        public void close() {
+            for (Run run : this.opened) {
+                try {
+                    run.in.close();
+                } catch (IOException e) {
+                    LOGGER.error("Problem while closing a run", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A sorted run, read entry by entry.
+     */
+    private static final class Run implements Comparable<Run> {
+        private final DataInputStream in;
+        private Entry current;
+
+        Run(File file) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file),
+                    BUFFER_SIZE));
+        }
+
+        boolean next() throws IOException {
+            try {
+                this.current = new Entry(this.in.readLong(), this.in.readInt(), this.in
+                        .readLong(), this.in.readInt());
+
+                return true;
+            } catch (EOFException e) {
+                this.current = null;
+
+                return false;
+            }
+        }
+
+        @Override
+        public int compareTo(Run other) {
+            return this.current.compareTo(other.current);
+        }
+    }
+}
@@ -22,15 +22,27 @@ public class ColumnDialog extends JDialog {
 
     private final Set<Integer> numbersCopy;
 
+    private final Set<Integer> ignored;
+
+    private final Set<Integer> ignoredCopy;
+
+    private final Set<Integer> compared;
+
+    private final Set<Integer> comparedCopy;
+
     public ColumnDialog(JFrame parent, Set<Integer> dates, Set<Integer> numbers,
-                        List<String> columns) {
+                        Set<Integer> ignored, Set<Integer> compared, List<String> columns) {
         super(parent, "Column type", true);
 
         this.dates = dates;
         this.numbers = numbers;
+        this.ignored = ignored;
+        this.compared = compared;
 
         this.datesCopy = new TreeSet<Integer>(dates);
         this.numbersCopy = new TreeSet<Integer>(numbers);
+        this.ignoredCopy = new TreeSet<Integer>(ignored);
+        this.comparedCopy = new TreeSet<Integer>(compared);
 
         this.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         this.setLayout(new BorderLayout());
@@ -41,14 +53,14 @@ public class ColumnDialog extends JDialog {
 
         this.add(jScrollPane, BorderLayout.CENTER);
         this.add(this.createButtonPanel(), BorderLayout.SOUTH);
-        this.setSize(600, 600);
+        this.setSize(800, 600);
         this.setVisible(true);
 
     }
 
     private JPanel createCheckBoxPanel(List<String> columns) {
         final JPanel panel = new JPanel();
-        panel.setLayout(new GridLayout(columns.size(), 3));
+        panel.setLayout(new GridLayout(columns.size(), 5));
 
         for (int i = 0; i < columns.size(); i++) {
             final JLabel columnNumber = new JLabel("Column " + (i + 1) + " (" + columns.get(i)
@@ -59,7 +71,7 @@ public class ColumnDialog extends JDialog {
                 @Override
                 public void actionPerformed(ActionEvent e) {
                     ColumnDialog.this.getFormattedColumnNumber(e, ColumnDialog.this.datesCopy,
-                            ColumnDialog.this.numbersCopy);
+                            ColumnDialog.this.numbersCopy, "A column cannot be a dates and a number");
                 }
             });
             final JCheckBox boxNumber = new JCheckBox(new AbstractAction("is number") {
@@ -68,9 +80,29 @@ public class ColumnDialog extends JDialog {
                 @Override
                 public void actionPerformed(ActionEvent e) {
                     ColumnDialog.this.getFormattedColumnNumber(e, ColumnDialog.this.numbersCopy,
-                            ColumnDialog.this.datesCopy);
+                            ColumnDialog.this.datesCopy, "A column cannot be a dates and a number");
+                }
+
+            });
+            final JCheckBox boxIgnored = new JCheckBox(new AbstractAction("ignore") {
+                private static final long serialVersionUID = 6230857212841375614L;
+
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    ColumnDialog.this.getFormattedColumnNumber(e, ColumnDialog.this.ignoredCopy,
+                            ColumnDialog.this.comparedCopy,
+                            "A column cannot be ignored and compared only");
                 }
+            });
+            final JCheckBox boxCompared = new JCheckBox(new AbstractAction("compare only") {
+                private static final long serialVersionUID = -4915473085630293547L;
 
+                @Override
+                public void actionPerformed(ActionEvent e) {
+                    ColumnDialog.this.getFormattedColumnNumber(e, ColumnDialog.this.comparedCopy,
+                            ColumnDialog.this.ignoredCopy,
+                            "A column cannot be ignored and compared only");
+                }
             });
 
             if (this.datesCopy.contains(i + 1)) {
@@ -81,12 +113,24 @@ public class ColumnDialog extends JDialog {
                 boxNumber.setSelected(true);
             }
 
+            if (this.ignoredCopy.contains(i + 1)) {
+                boxIgnored.setSelected(true);
+            }
+
+            if (this.comparedCopy.contains(i + 1)) {
+                boxCompared.setSelected(true);
+            }
+
             boxDate.setName(String.valueOf(i));
             boxNumber.setName(String.valueOf(i));
+            boxIgnored.setName(String.valueOf(i));
+            boxCompared.setName(String.valueOf(i));
 
             panel.add(columnNumber);
             panel.add(boxDate);
             panel.add(boxNumber);
+            panel.add(boxIgnored);
+            panel.add(boxCompared);
         }
 
         return panel;
@@ -105,6 +149,10 @@ public class ColumnDialog extends JDialog {
                 ColumnDialog.this.dates.addAll(ColumnDialog.this.datesCopy);
                 ColumnDialog.this.numbers.clear();
                 ColumnDialog.this.numbers.addAll(ColumnDialog.this.numbersCopy);
+                ColumnDialog.this.ignored.clear();
+                ColumnDialog.this.ignored.addAll(ColumnDialog.this.ignoredCopy);
+                ColumnDialog.this.compared.clear();
+                ColumnDialog.this.compared.addAll(ColumnDialog.this.comparedCopy);
                 ColumnDialog.this.dispose();
             }
         });
@@ -129,15 +177,15 @@ public class ColumnDialog extends JDialog {
         return buttonPanel;
     }
 
-    private void getFormattedColumnNumber(ActionEvent e, Set<Integer> dest, Set<Integer> other) {
+    private void getFormattedColumnNumber(ActionEvent e, Set<Integer> dest, Set<Integer> other,
+                                          String error) {
         final JCheckBox checkBox = (JCheckBox) e.getSource();
         final Integer columnNumber = Integer.parseInt(checkBox.getName()) + 1;
 
         if (checkBox.isSelected()) {
 
             if (other.contains(columnNumber)) {
-                JOptionPane.showMessageDialog(null,
-                        "Error:\nA column cannot be a dates and a number", "Error",
+                JOptionPane.showMessageDialog(null, "Error:\n" + error, "Error",
                         JOptionPane.ERROR_MESSAGE);
                 checkBox.setSelected(false);
             } else {
@@ -1,6 +1,8 @@
 package be.formatech.filecomparator.gui;
 
 import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.progress.Progress;
+import be.formatech.filecomparator.comparator.progress.ProgressListener;
 import org.apache.log4j.Logger;
 
 import javax.swing.*;
@@ -9,7 +11,10 @@ import java.util.List;
 
 /**
  * A task used to perform lengthy GUI-interacting comparison in a dedicated
- * thread.
+ * thread.<br>
+ * The files are compared in both directions, each direction counting for half
+ * of the progress. The progress stays under 100 until the task is done and
+ * its description is published as the "status" property.
  *
  * @author Sebastien Vandamme
  * @version $Id: CompareTask.java 162 2010-07-22 11:59:59Z g80195 $
@@ -17,6 +22,11 @@ import java.util.List;
 public class CompareTask extends SwingWorker<Void, Void> {
     private static final Logger LOGGER = Logger.getLogger(CompareTask.class);
 
+    /**
+     * The name of the property holding the description of the progress.
+     */
+    public static final String STATUS_PROPERTY = "status";
+
     /**
      * The location of the first file to compare.
      */
@@ -64,10 +74,12 @@ public class CompareTask extends SwingWorker<Void, Void> {
         this.result = new ArrayList<String>();
 
         try {
+            this.comparator.setProgressListener(new DirectionListener(0, "1/2"));
             this.result.add(this.comparator
                     .compare(this.firstFileLocation, this.secondFileLocation));
 
             if (!this.isCancelled()) {
+                this.comparator.setProgressListener(new DirectionListener(50, "2/2"));
                 this.result.add(this.comparator.compare(this.secondFileLocation,
                         this.firstFileLocation));
             }
@@ -76,6 +88,8 @@ public class CompareTask extends SwingWorker<Void, Void> {
             JOptionPane.showMessageDialog(null, "Error:\n " + e.getMessage(), "Error",
                     JOptionPane.ERROR_MESSAGE);
         } finally {
+            this.comparator.setProgressListener(null);
+
             if (!this.isCancelled()) {
                 this.setProgress(100);
             }
@@ -94,4 +108,28 @@ public class CompareTask extends SwingWorker<Void, Void> {
     public List<String> getResult() {
         return this.result;
     }
-}
\ No newline at end of file
+
+    /**
+     * Publishes the progress of the comparison in one direction.
+     */
+    private final class DirectionListener implements ProgressListener {
+        private final int offset;
+        private final String direction;
+
+        DirectionListener(int offset, String direction) {
+            this.offset = offset;
+            this.direction = direction;
+        }
+
+        @Override
+        public void progressChanged(Progress progress) {
+            if (CompareTask.this.isCancelled()) {
+                return;
+            }
+
+            CompareTask.this.setProgress(Math.min(99, this.offset + progress.getPercent() / 2));
+            CompareTask.this.firePropertyChange(STATUS_PROPERTY, null, "Comparing "
+                    + this.direction + " : " + progress.getDescription());
+        }
+    }
+}
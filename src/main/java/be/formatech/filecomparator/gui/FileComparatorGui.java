@@ -2,6 +2,8 @@ package be.formatech.filecomparator.gui;
 
 import be.formatech.filecomparator.comparator.Comparator;
 import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.plan.Strategy;
 import be.formatech.filecomparator.utils.ComparatorUtility;
 import be.formatech.filecomparator.utils.CompressUtility;
 import be.formatech.filecomparator.utils.ConfigUtility;
@@ -61,12 +63,16 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
     private final JCheckBox orderedColumn;
     private final JCheckBox multiFieldLines;
 
+    private final JComboBox<String> strategy;
+
     private CompareTask task;
 
     private Comparator comparator;
 
     private final Set<Integer> dates = new TreeSet<Integer>();
     private final Set<Integer> numbers = new TreeSet<Integer>();
+    private final Set<Integer> ignored = new TreeSet<Integer>();
+    private final Set<Integer> compared = new TreeSet<Integer>();
 
     public FileComparatorGui() {
         super(APPLICATION_NAME_AND_VERSION);
@@ -126,7 +132,8 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
                                 FileComparatorGui.this.firstFileToCompare.getText(),
                                 FileComparatorGui.this.separator.getText());
                         new ColumnDialog(FileComparatorGui.this, FileComparatorGui.this.dates,
-                                FileComparatorGui.this.numbers, columns);
+                                FileComparatorGui.this.numbers, FileComparatorGui.this.ignored,
+                                FileComparatorGui.this.compared, columns);
                     } catch (IOException ioe) {
                         LOGGER.error("Problem while trying to read the file", ioe);
                         JOptionPane.showMessageDialog(null,
@@ -139,6 +146,7 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
         });
 
         this.orderedColumn = new JCheckBox("Order matter");
+        this.strategy = new JComboBox<String>(getStrategyLabels());
         this.multiFieldLines = new JCheckBox(new AbstractAction(
                 "Line contains fields (enter separator)") {
             private static final long serialVersionUID = 548103558246481414L;
@@ -162,8 +170,11 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
                 FileComparatorGui.this.file2TextArea.setText(StringUtils.EMPTY);
                 FileComparatorGui.this.orderedColumn.setSelected(false);
                 FileComparatorGui.this.multiFieldLines.setSelected(false);
+                FileComparatorGui.this.strategy.setSelectedIndex(0);
                 FileComparatorGui.this.dates.clear();
                 FileComparatorGui.this.numbers.clear();
+                FileComparatorGui.this.ignored.clear();
+                FileComparatorGui.this.compared.clear();
             }
         });
 
@@ -219,7 +230,10 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
                     FileComparatorGui.this.comparator = ComparatorFactory.getInstance()
                             .getComparator(separatorString, FileComparatorGui.this.dates,
                                     FileComparatorGui.this.numbers,
-                                    FileComparatorGui.this.orderedColumn.isSelected());
+                                    FileComparatorGui.this.orderedColumn.isSelected(),
+                                    FileComparatorGui.this.getStrategy(), ColumnProjection.of(
+                                            FileComparatorGui.this.ignored,
+                                            FileComparatorGui.this.compared));
 
                     FileComparatorGui.this.task = new CompareTask(filename1, filename2,
                             FileComparatorGui.this.comparator);
@@ -405,9 +419,52 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
         parameterConstraints.gridy = 2;
         optionPanel.add(this.separator, parameterConstraints);
 
+        parameterConstraints.gridwidth = 1;
+        parameterConstraints.weightx = 0;
+        parameterConstraints.gridx = 0;
+        parameterConstraints.gridy = 3;
+        optionPanel.add(this.strategy, parameterConstraints);
+
         return optionPanel;
     }
 
+    /**
+     * Returns the labels of the strategy combo box : the automatic choice then
+     * the labels of the strategies.
+     */
+    private static String[] getStrategyLabels() {
+        final Strategy[] strategies = Strategy.values();
+        final String[] labels = new String[strategies.length + 1];
+
+        labels[0] = "Automatic strategy";
+
+        for (int i = 0; i < strategies.length; i++) {
+            labels[i + 1] = StringUtils.capitalize(strategies[i].getLabel());
+        }
+
+        return labels;
+    }
+
+    /**
+     * Returns the strategy selected in the combo box.
+     *
+     * @return the selected strategy or null for the automatic choice
+     */
+    private Strategy getStrategy() {
+        final int index = this.strategy.getSelectedIndex();
+
+        return index <= 0 ? null : Strategy.values()[index - 1];
+    }
+
+    /**
+     * Selects a strategy in the combo box.
+     *
+     * @param selected the strategy or null for the automatic choice
+     */
+    private void setStrategy(Strategy selected) {
+        this.strategy.setSelectedIndex(selected == null ? 0 : selected.ordinal() + 1);
+    }
+
     private JPanel createButtonPanel() {
         final JPanel buttonPanel = new JPanel();
         final GridBagLayout parameterGridBag = new GridBagLayout();
@@ -480,6 +537,15 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
                         .getSetAsString(FileComparatorGui.this.dates));
                 config.put(ConfigUtility.NUMBERS_CONFIG_KEY, ConfigUtility
                         .getSetAsString(FileComparatorGui.this.numbers));
+                config.put(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY, ConfigUtility
+                        .getSetAsString(FileComparatorGui.this.ignored));
+                config.put(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY, ConfigUtility
+                        .getSetAsString(FileComparatorGui.this.compared));
+
+                final Strategy selected = FileComparatorGui.this.getStrategy();
+
+                config.put(ConfigUtility.STRATEGY_CONFIG_KEY, selected == null ? Strategy.AUTOMATIC
+                        : selected.name());
 
                 try {
                     ConfigUtility.saveConfig(config, APPLICATION_NAME_AND_VERSION);
@@ -528,6 +594,20 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
                 FileComparatorGui.this.numbers.clear();
                 FileComparatorGui.this.numbers.addAll(ConfigUtility.getStringAsSet(config
                         .get(ConfigUtility.NUMBERS_CONFIG_KEY)));
+                FileComparatorGui.this.ignored.clear();
+                FileComparatorGui.this.ignored.addAll(ConfigUtility.getStringAsSet(config
+                        .get(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY)));
+                FileComparatorGui.this.compared.clear();
+                FileComparatorGui.this.compared.addAll(ConfigUtility.getStringAsSet(config
+                        .get(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY)));
+
+                try {
+                    FileComparatorGui.this.setStrategy(Strategy.fromName(config
+                            .get(ConfigUtility.STRATEGY_CONFIG_KEY)));
+                } catch (IllegalArgumentException iae) {
+                    LOGGER.error("Unknown strategy in the configuration", iae);
+                    FileComparatorGui.this.setStrategy(null);
+                }
             }
         });
 
@@ -543,7 +623,20 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
     }
 
     public void propertyChange(PropertyChangeEvent evt) {
-        if ("progress".equals(evt.getPropertyName()) && ((Integer) evt.getNewValue()) == 100) {
+        if (evt.getSource() != this.task) {
+            return;
+        }
+
+        if ("progress".equals(evt.getPropertyName()) && ((Integer) evt.getNewValue()) < 100) {
+            if (!this.task.isDone()) {
+                this.progressBar.setIndeterminate(false);
+                this.progressBar.setValue((Integer) evt.getNewValue());
+            }
+        } else if (CompareTask.STATUS_PROPERTY.equals(evt.getPropertyName())) {
+            if (!this.task.isDone()) {
+                this.progressBar.setString((String) evt.getNewValue());
+            }
+        } else if ("progress".equals(evt.getPropertyName()) && ((Integer) evt.getNewValue()) == 100) {
             LOGGER.info("Property changed");
             this.enableAllControls(true);
 
@@ -564,6 +657,7 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
         this.fileChooserSecondFile.setEnabled(enable);
         this.formattedColumn.setEnabled(enable);
         this.orderedColumn.setEnabled(enable);
+        this.strategy.setEnabled(enable);
         this.multiFieldLines.setEnabled(enable);
         this.separator.setEnabled(enable);
         this.compare.setEnabled(enable);
@@ -588,6 +682,7 @@ public class FileComparatorGui extends JFrame implements PropertyChangeListener
         this.fileChooserSecondFile.setToolTipText("Open filechooser to select second file");
         this.formattedColumn.setToolTipText("Mark columns as Date or Number");
         this.orderedColumn.setToolTipText("Must the lines in the two files be in the same order");
+        this.strategy.setToolTipText("How to execute the comparison, chosen from the size of the files by default");
         this.multiFieldLines
                 .setToolTipText("Does the file contain fields delimited by a separator");
         this.separator.setToolTipText("Enter the separator if needed");
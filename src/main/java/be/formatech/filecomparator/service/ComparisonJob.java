@@ -0,0 +1,535 @@
+package be.formatech.filecomparator.service;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.FileComparator;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.plan.StrategyPlanner;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import be.formatech.filecomparator.comparator.progress.Progress;
+import be.formatech.filecomparator.comparator.progress.ProgressListener;
+import be.formatech.filecomparator.utils.ConfigUtility;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.log4j.Logger;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A comparison of two files submitted to the ComparisonService.<br>
+ * The files are compared in both directions, like the BatchRunner does, with
+ * the settings of a profile as returned by ConfigUtility.loadConfig. The
+ * result of each direction is available as soon as it is compared, so that
+ * it can be streamed while the other direction is compared.<br>
+ * The heap used by the comparison is estimated when the job is created, so
+ * that the JobQueue can admit it against its memory budget.
+ *
+ * @version $Id$
+ * @see JobQueue
+ */
+public final class ComparisonJob implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(ComparisonJob.class);
+
+    /**
+     * The status of a job.
+     */
+    public static enum Status {
+        /**
+         * The job waits for a runner.
+         */
+        QUEUED,
+
+        /**
+         * The files are being compared.
+         */
+        RUNNING,
+
+        /**
+         * The files were compared in both directions.
+         */
+        DONE,
+
+        /**
+         * The job has been cancelled.
+         */
+        CANCELLED,
+
+        /**
+         * The files could not be compared.
+         */
+        FAILED
+    }
+
+    /**
+     * The id of the job.
+     */
+    private final long id;
+
+    /**
+     * The settings of the comparison.
+     */
+    private final Map<String, String> profile;
+
+    /**
+     * The estimated heap used by the comparison, in bytes.
+     */
+    private final long estimatedMemory;
+
+    /**
+     * The flag indicating if the job is small enough for the fast lane.
+     */
+    private final boolean fastLane;
+
+    /**
+     * The time the job was submitted, in milliseconds.
+     */
+    private final long submitted = System.currentTimeMillis();
+
+    /**
+     * The status of the job.
+     */
+    private volatile Status status = Status.QUEUED;
+
+    /**
+     * The time the comparison started, 0 if it has not started.
+     */
+    private volatile long started;
+
+    /**
+     * The time the job finished, 0 if it has not finished.
+     */
+    private volatile long finished;
+
+    /**
+     * The comparator comparing the files, null if the job is not running.
+     */
+    private volatile Comparator comparator;
+
+    /**
+     * The flag indicating if the job has been cancelled.
+     */
+    private volatile boolean cancelled;
+
+    /**
+     * The direction being compared, "1/2" or "2/2".
+     */
+    private volatile String direction = "";
+
+    /**
+     * The last progress of the comparison, null if none was reported.
+     */
+    private volatile Progress progress;
+
+    /**
+     * The result of the comparison of the first file with the second, null
+     * until it is compared.
+     */
+    private volatile String result1;
+
+    /**
+     * The result of the comparison of the second file with the first, null
+     * until it is compared.
+     */
+    private volatile String result2;
+
+    /**
+     * The error that stopped the job, null if there is none.
+     */
+    private volatile String error;
+
+    /**
+     * Initializes a newly created ComparisonJob object.
+     *
+     * @param id      the id of the job
+     * @param profile         the settings of the comparison, as returned by
+     *                        ConfigUtility.loadConfig
+     * @param estimatedMemory the estimated heap used by the comparison
+     * @param fastLane        the flag indicating if the job is small enough
+     *                        for the fast lane
+     */
+    ComparisonJob(long id, Map<String, String> profile, long estimatedMemory,
+                  boolean fastLane) {
+        super();
+
+        this.id = id;
+        this.profile = Collections.unmodifiableMap(new HashMap<String, String>(profile));
+        this.estimatedMemory = estimatedMemory;
+        this.fastLane = fastLane;
+    }
+
+    /**
+     * Estimates the heap used by the comparison of a profile, with the
+     * StrategyPlanner.
+     *
+     * @param profile the settings of the comparison
+     * @return the estimated heap, in bytes
+     */
+    static long estimateMemory(Map<String, String> profile) {
+        final String separator = profile.get(ConfigUtility.SEPARATOR_CONFIG_KEY);
+        final Set<Integer> dates = ConfigUtility.getStringAsSet(profile
+                .get(ConfigUtility.DATES_CONFIG_KEY));
+        final Set<Integer> numbers = ConfigUtility.getStringAsSet(profile
+                .get(ConfigUtility.NUMBERS_CONFIG_KEY));
+
+        return new StrategyPlanner(separator, dates, numbers, getProjection(profile))
+                .estimateMemory(profile.get(ConfigUtility.FIRST_FILE_CONFIG_KEY), profile
+                        .get(ConfigUtility.SECOND_FILE_CONFIG_KEY), isOrdered(profile),
+                        Strategy.fromName(profile.get(ConfigUtility.STRATEGY_CONFIG_KEY)));
+    }
+
+    private static boolean isOrdered(Map<String, String> profile) {
+        return Boolean.parseBoolean(StringUtils.trim(profile
+                .get(ConfigUtility.ORDERED_CONFIG_KEY)));
+    }
+
+    private static ColumnProjection getProjection(Map<String, String> profile) {
+        return ColumnProjection.of(
+                ConfigUtility.getStringAsSet(profile.get(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY)),
+                ConfigUtility.getStringAsSet(profile.get(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY)));
+    }
+
+    /**
+     * Compares the files in both directions, unless the job has been
+     * cancelled.
+     */
+    @Override
+    public void run() {
+        final String filename1 = this.getFirstFile();
+        final String filename2 = this.getSecondFile();
+
+        synchronized (this) {
+            if (this.cancelled) {
+                return;
+            }
+
+            this.started = System.currentTimeMillis();
+            this.status = Status.RUNNING;
+        }
+
+        try {
+            synchronized (this) {
+                this.comparator = ComparatorFactory.getInstance().getComparator(
+                        this.profile.get(ConfigUtility.SEPARATOR_CONFIG_KEY),
+                        ConfigUtility.getStringAsSet(this.profile.get(ConfigUtility.DATES_CONFIG_KEY)),
+                        ConfigUtility.getStringAsSet(this.profile.get(ConfigUtility.NUMBERS_CONFIG_KEY)),
+                        isOrdered(this.profile),
+                        Strategy.fromName(this.profile.get(ConfigUtility.STRATEGY_CONFIG_KEY)),
+                        getProjection(this.profile));
+
+                if (this.cancelled) {
+                    this.comparator.cancel();
+                }
+            }
+
+            LOGGER.info("Job " + this.id + " : comparing " + filename1 + " and " + filename2);
+
+            this.compare("1/2", filename1, filename2);
+
+            if (!this.cancelled) {
+                this.compare("2/2", filename2, filename1);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.error("Problem while running job " + this.id, e);
+            this.error = "Problem while comparing the files: " + e;
+        } finally {
+            this.finish();
+        }
+    }
+
+    /**
+     * Compares the files in one direction and keeps the result.
+     */
+    private void compare(String compared, String filename1, String filename2) {
+        this.direction = compared;
+        this.comparator.setProgressListener(new ProgressListener() {
+            @Override
+            public void progressChanged(Progress current) {
+                ComparisonJob.this.setProgress(current);
+            }
+        });
+
+        final String result = this.comparator.compare(filename1, filename2);
+
+        synchronized (this) {
+            if (FileComparator.CANCELLED.equals(result)) {
+                this.cancelled = true;
+            } else if (this.result1 == null) {
+                this.result1 = result;
+            } else {
+                this.result2 = result;
+            }
+
+            this.notifyAll();
+        }
+    }
+
+    private synchronized void setProgress(Progress current) {
+        this.progress = current;
+        this.notifyAll();
+    }
+
+    /**
+     * Records the end of the job and wakes up the threads waiting for it.
+     */
+    private synchronized void finish() {
+        if (this.cancelled) {
+            this.status = Status.CANCELLED;
+        } else if (this.error != null) {
+            this.status = Status.FAILED;
+        } else {
+            this.status = Status.DONE;
+        }
+
+        this.finished = System.currentTimeMillis();
+        this.comparator = null;
+        this.notifyAll();
+
+        LOGGER.info("Job " + this.id + " " + this.status + " in "
+                + (this.finished - this.submitted) + " ms");
+    }
+
+    /**
+     * Cancels the job. A running comparison stops at once.
+     *
+     * @return true if the job was cancelled, false if it had already
+     * finished
+     */
+    public synchronized boolean cancel() {
+        if (this.isFinished()) {
+            return false;
+        }
+
+        this.cancelled = true;
+
+        if (this.status == Status.QUEUED) {
+            // the job never started : the runner will skip it
+            this.finish();
+        } else if (this.comparator != null) {
+            this.comparator.cancel();
+        }
+
+        return true;
+    }
+
+    /**
+     * Waits until the job changes : a new progress, the result of a direction
+     * or the end of the job.
+     *
+     * @param timeout the maximum time to wait, in milliseconds
+     * @throws InterruptedException if the thread is interrupted
+     */
+    public synchronized void awaitChange(long timeout) throws InterruptedException {
+        if (!this.isFinished()) {
+            this.wait(timeout);
+        }
+    }
+
+    /**
+     * Returns the id of the job.
+     *
+     * @return the id of the job
+     */
+    public long getId() {
+        return this.id;
+    }
+
+    /**
+     * Returns the settings of the comparison.
+     *
+     * @return the settings, as returned by ConfigUtility.loadConfig
+     */
+    public Map<String, String> getProfile() {
+        return this.profile;
+    }
+
+    /**
+     * Returns the path of the first file.
+     *
+     * @return the path of the first file
+     */
+    public String getFirstFile() {
+        return this.profile.get(ConfigUtility.FIRST_FILE_CONFIG_KEY);
+    }
+
+    /**
+     * Returns the path of the second file.
+     *
+     * @return the path of the second file
+     */
+    public String getSecondFile() {
+        return this.profile.get(ConfigUtility.SECOND_FILE_CONFIG_KEY);
+    }
+
+    /**
+     * Returns the estimated heap used by the comparison.
+     *
+     * @return the estimated heap, in bytes
+     */
+    public long getEstimatedMemory() {
+        return this.estimatedMemory;
+    }
+
+    /**
+     * Checks if the job is small enough for the fast lane.
+     *
+     * @return true if the job runs in the fast lane
+     */
+    public boolean isFastLane() {
+        return this.fastLane;
+    }
+
+    /**
+     * Returns the status of the job.
+     *
+     * @return the status of the job
+     */
+    public Status getStatus() {
+        return this.status;
+    }
+
+    /**
+     * Checks if the job has finished, whatever its outcome.
+     *
+     * @return true if the job is done, cancelled or failed
+     */
+    public boolean isFinished() {
+        return this.finished != 0;
+    }
+
+    /**
+     * Returns the time the job was submitted.
+     *
+     * @return the time, in milliseconds
+     */
+    public long getSubmitted() {
+        return this.submitted;
+    }
+
+    /**
+     * Returns the time the job waited for a runner.
+     *
+     * @return the time, in milliseconds, up to now if the job is still queued
+     */
+    public long getWaitMillis() {
+        final long start = this.started;
+
+        if (start != 0) {
+            return start - this.submitted;
+        }
+
+        return (this.finished != 0 ? this.finished : System.currentTimeMillis())
+                - this.submitted;
+    }
+
+    /**
+     * Returns the time the files have been compared.
+     *
+     * @return the time, in milliseconds, up to now if the job is running
+     */
+    public long getRunMillis() {
+        final long start = this.started;
+
+        if (start == 0) {
+            return 0;
+        }
+
+        return (this.finished != 0 ? this.finished : System.currentTimeMillis()) - start;
+    }
+
+    /**
+     * Returns the direction being compared.
+     *
+     * @return "1/2", "2/2" or an empty String if the job has not started
+     */
+    public String getDirection() {
+        return this.direction;
+    }
+
+    /**
+     * Returns the last progress of the comparison.
+     *
+     * @return the progress or null if none was reported
+     */
+    public Progress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Returns the result of the comparison of the first file with the second.
+     *
+     * @return the difference and error messages or null until they are known
+     */
+    public String getResult1() {
+        return this.result1;
+    }
+
+    /**
+     * Returns the result of the comparison of the second file with the first.
+     *
+     * @return the difference and error messages or null until they are known
+     */
+    public String getResult2() {
+        return this.result2;
+    }
+
+    /**
+     * Returns the error that stopped the job.
+     *
+     * @return the error message or null if there is none
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * Checks if both files exactly match.
+     *
+     * @return true if the job is done and no difference was found
+     */
+    public boolean isIdentical() {
+        return this.status == Status.DONE && FileComparator.isMatch(this.result1)
+                && FileComparator.isMatch(this.result2);
+    }
+
+    /**
+     * Returns the status of the job, one "key: value" per line.
+     *
+     * @return the description of the job
+     */
+    public String getDescription() {
+        final StringBuilder description = new StringBuilder();
+        final Progress current = this.progress;
+
+        description.append("id: ").append(this.id).append('\n');
+        description.append("status: ").append(this.status).append('\n');
+        description.append("firstFile: ").append(this.getFirstFile()).append('\n');
+        description.append("secondFile: ").append(this.getSecondFile()).append('\n');
+        description.append("lane: ").append(this.fastLane ? "fast" : "regular").append('\n');
+        description.append("estimatedMemory: ").append(this.estimatedMemory).append('\n');
+        description.append("waitMillis: ").append(this.getWaitMillis()).append('\n');
+        description.append("runMillis: ").append(this.getRunMillis()).append('\n');
+
+        if (this.status == Status.RUNNING && current != null) {
+            description.append("progress: ").append(this.direction).append(' ')
+                    .append(current.getDescription()).append('\n');
+        }
+
+        if (this.status == Status.DONE) {
+            description.append("identical: ").append(this.isIdentical()).append('\n');
+        }
+
+        if (this.error != null) {
+            description.append("error: ").append(this.error).append('\n');
+        }
+
+        return description.toString();
+    }
+
+    @Override
+    public String toString() {
+        return this.id + " " + this.status + " " + this.getFirstFile() + " - "
+                + this.getSecondFile();
+    }
+}
@@ -0,0 +1,534 @@
+package be.formatech.filecomparator.service;
+
+import be.formatech.filecomparator.batch.BatchRunner;
+import be.formatech.filecomparator.comparator.FileComparator;
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.metrics.MetricsRegistry;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import be.formatech.filecomparator.comparator.progress.Progress;
+import be.formatech.filecomparator.utils.ConfigUtility;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the comparisons submitted over HTTP in one long-running JVM.<br>
+ * The comparisons are queued by a JobQueue, which admits them against a
+ * memory budget and runs the small ones in a fast lane, and share the warm
+ * JIT, the pool of the ComparisonExecutor and the ParsedFileCache, instead
+ * of starting a new JVM for each comparison. The service only listens on the loopback
+ * interface unless another address is given, and answers in plain text :
+ * <p/>
+ * <PRE>
+ * POST   /jobs?firstFile=a.csv&secondFile=b.csv&separator=;   queues a job
+ * GET    /jobs                                               lists the jobs
+ * GET    /jobs/{id}                                          status of a job
+ * GET    /jobs/{id}/differences                              streams the results
+ * POST   /jobs/{id}/cancel or DELETE /jobs/{id}              cancels a job
+ * GET    /metrics                                            queue, cache and metrics
+ * </PRE>
+ * <p/>
+ * A job takes the keys understood by ConfigUtility.loadConfig, with or
+ * without their leading dash, in the query or in a form-encoded body. The
+ * results of a job are streamed as soon as each direction is compared; while
+ * the job runs, its progress is written on lines starting with "# ".
+ *
+ * @version $Id$
+ * @see JobQueue, ComparisonJob
+ */
+public final class ComparisonService {
+    private static final Logger LOGGER = Logger.getLogger(ComparisonService.class);
+
+    /**
+     * The port listened to when none is given.
+     */
+    public static final int DEFAULT_PORT = 8642;
+
+    /**
+     * The option giving the port listened to.
+     */
+    public static final String PORT_OPTION = "-port";
+
+    /**
+     * The option giving the address listened to.
+     */
+    public static final String HOST_OPTION = "-host";
+
+    /**
+     * The time between two checks of a streamed job, in milliseconds.
+     */
+    private static final long POLL_INTERVAL = 500L;
+
+    private static final String TEXT = "text/plain; charset=UTF-8";
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * The queue of the jobs.
+     */
+    private final JobQueue queue;
+
+    /**
+     * The address listened to.
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The HTTP server, null if the service is not started.
+     */
+    private HttpServer server;
+
+    /**
+     * The threads answering the requests.
+     */
+    private ExecutorService executor;
+
+    /**
+     * Initializes a newly created ComparisonService object.
+     *
+     * @param address the address listened to
+     * @param queue   the queue of the jobs
+     */
+    public ComparisonService(InetSocketAddress address, JobQueue queue) {
+        super();
+
+        this.address = address;
+        this.queue = queue;
+    }
+
+    /**
+     * Starts a service and keeps it running until the JVM stops.
+     *
+     * @param args the options -port and -host
+     */
+    public static void main(String[] args) {
+        int port = DEFAULT_PORT;
+        InetAddress host = InetAddress.getLoopbackAddress();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + args[i]);
+                }
+
+                if (PORT_OPTION.equalsIgnoreCase(args[i])) {
+                    port = Integer.parseInt(args[++i]);
+                } else if (HOST_OPTION.equalsIgnoreCase(args[i])) {
+                    host = InetAddress.getByName(args[++i]);
+                } else {
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            System.exit(BatchRunner.EXIT_ERROR);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Usage: ComparisonService [" + PORT_OPTION + " <port>] ["
+                    + HOST_OPTION + " <address>]");
+            System.err.println("Error: " + e.getMessage());
+            System.exit(BatchRunner.EXIT_ERROR);
+        }
+
+        if (System.getProperty(MetricsRegistry.METRICS_PROPERTY) == null) {
+            MetricsRegistry.getInstance().setEnabled(true);
+        }
+
+        final ComparisonService service = new ComparisonService(new InetSocketAddress(host,
+                port), new JobQueue());
+
+        try {
+            service.start();
+        } catch (IOException e) {
+            LOGGER.error("Problem while starting the service", e);
+            System.err.println("Problem while starting the service: " + e.getMessage());
+            System.exit(BatchRunner.EXIT_ERROR);
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                service.stop();
+            }
+        });
+    }
+
+    /**
+     * Starts listening and running the jobs.
+     *
+     * @throws IOException if the address cannot be listened to
+     */
+    public synchronized void start() throws IOException {
+        if (this.server != null) {
+            return;
+        }
+
+        final AtomicInteger count = new AtomicInteger();
+
+        this.server = HttpServer.create(this.address, 0);
+        this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                final Thread thread = new Thread(runnable, "comparison-http-"
+                        + count.incrementAndGet());
+
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+        this.server.setExecutor(this.executor);
+        this.server.createContext("/jobs", new JobsHandler());
+        this.server.createContext("/metrics", new MetricsHandler());
+        this.queue.start();
+        this.server.start();
+
+        LOGGER.info("Comparison service listening on " + this.server.getAddress());
+    }
+
+    /**
+     * Stops listening and cancels the jobs that are not finished.
+     */
+    public synchronized void stop() {
+        if (this.server == null) {
+            return;
+        }
+
+        this.server.stop(0);
+        this.executor.shutdownNow();
+        this.queue.stop();
+        this.server = null;
+
+        LOGGER.info("Comparison service stopped");
+    }
+
+    /**
+     * Returns the address listened to.
+     *
+     * @return the address, with the actual port if the service is started
+     */
+    public synchronized InetSocketAddress getAddress() {
+        return this.server == null ? this.address : this.server.getAddress();
+    }
+
+    /**
+     * Returns the queue of the jobs.
+     *
+     * @return the queue of the jobs
+     */
+    public JobQueue getQueue() {
+        return this.queue;
+    }
+
+    /**
+     * Reads the settings of a new job from the parameters of a request.
+     *
+     * @return the profile, as returned by ConfigUtility.loadConfig
+     * @throws IllegalArgumentException if a parameter is unknown or the
+     *                                  profile is invalid
+     */
+    static Map<String, String> readProfile(Map<String, String> parameters) {
+        final Map<String, String> profile = new HashMap<String, String>();
+
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            final String key = getConfigKey(parameter.getKey());
+
+            if (key == null) {
+                throw new IllegalArgumentException("Unknown parameter " + parameter.getKey());
+            }
+
+            profile.put(key, parameter.getValue());
+        }
+
+        final String filename1 = profile.get(ConfigUtility.FIRST_FILE_CONFIG_KEY);
+        final String filename2 = profile.get(ConfigUtility.SECOND_FILE_CONFIG_KEY);
+        final String error = BatchRunner.checkProfile(filename1, filename2, profile
+                .get(ConfigUtility.SEPARATOR_CONFIG_KEY));
+
+        if (error != null) {
+            throw new IllegalArgumentException(error);
+        }
+
+        if (new File(filename1).isDirectory()) {
+            throw new IllegalArgumentException("Two files must be specified");
+        }
+
+        try {
+            Strategy.fromName(profile.get(ConfigUtility.STRATEGY_CONFIG_KEY));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown strategy "
+                    + profile.get(ConfigUtility.STRATEGY_CONFIG_KEY));
+        }
+
+        return profile;
+    }
+
+    private static String getConfigKey(String name) {
+        for (String key : BatchRunner.CONFIG_KEYS) {
+            if (key.equalsIgnoreCase(name) || key.substring(1).equalsIgnoreCase(name)) {
+                return key;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Returns the parameters of a request, from its query and its
+     * form-encoded body.
+     */
+    private static Map<String, String> readParameters(HttpExchange exchange)
+            throws IOException {
+        final Map<String, String> parameters = new HashMap<String, String>();
+
+        parseParameters(exchange.getRequestURI().getRawQuery(), parameters);
+
+        if ("POST".equals(exchange.getRequestMethod())) {
+            parseParameters(IOUtils.toString(exchange.getRequestBody(), UTF8), parameters);
+        }
+
+        return parameters;
+    }
+
+    private static void parseParameters(String encoded, Map<String, String> parameters)
+            throws UnsupportedEncodingException {
+        if (encoded == null || encoded.trim().isEmpty()) {
+            return;
+        }
+
+        for (String parameter : encoded.trim().split("&")) {
+            final int equals = parameter.indexOf('=');
+
+            if (equals < 0) {
+                parameters.put(URLDecoder.decode(parameter, "UTF-8"), "");
+            } else {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals), "UTF-8"),
+                        URLDecoder.decode(parameter.substring(equals + 1), "UTF-8"));
+            }
+        }
+    }
+
+    /**
+     * Sends a whole answer.
+     */
+    private static void send(HttpExchange exchange, int code, String text) throws IOException {
+        final byte[] bytes = text.getBytes(UTF8);
+
+        exchange.getResponseHeaders().set("Content-Type", TEXT);
+        exchange.sendResponseHeaders(code, bytes.length);
+
+        final OutputStream body = exchange.getResponseBody();
+
+        try {
+            body.write(bytes);
+        } finally {
+            body.close();
+        }
+    }
+
+    /**
+     * Streams the results of a job as soon as they are known, with the
+     * progress of the job while it runs.
+     */
+    private static void stream(HttpExchange exchange, ComparisonJob job) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", TEXT);
+        exchange.sendResponseHeaders(200, 0);
+
+        final Writer out = new OutputStreamWriter(exchange.getResponseBody(), UTF8);
+        boolean result1Sent = false;
+        boolean result2Sent = false;
+        Progress sent = null;
+
+        try {
+            while (true) {
+                // read before the results, so that the results of a finished
+                // job are all sent
+                final boolean finished = job.isFinished();
+
+                if (!result1Sent && job.getResult1() != null) {
+                    out.write(job.getFirstFile() + " compared with " + job.getSecondFile()
+                            + " :\n" + job.getResult1());
+                    result1Sent = true;
+                }
+
+                if (!result2Sent && job.getResult2() != null) {
+                    out.write("\n" + job.getSecondFile() + " compared with "
+                            + job.getFirstFile() + " :\n" + job.getResult2());
+                    result2Sent = true;
+                }
+
+                if (finished) {
+                    break;
+                }
+
+                final Progress progress = job.getProgress();
+
+                if (progress != null && progress != sent) {
+                    out.write("# " + job.getDirection() + " " + progress.getDescription()
+                            + "\n");
+                    sent = progress;
+                }
+
+                out.flush();
+                job.awaitChange(POLL_INTERVAL);
+            }
+
+            if (job.getStatus() == ComparisonJob.Status.CANCELLED) {
+                out.write(FileComparator.CANCELLED + "\n");
+            } else if (job.getStatus() == ComparisonJob.Status.FAILED) {
+                out.write(job.getError() + "\n");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Answers the requests on the jobs.
+     */
+    private final class JobsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                this.dispatch(exchange);
+            } catch (IllegalArgumentException e) {
+                send(exchange, 400, "Error: " + e.getMessage() + "\n");
+            } catch (RuntimeException e) {
+                LOGGER.error("Problem while answering " + exchange.getRequestURI(), e);
+                send(exchange, 500, "Error: " + e + "\n");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void dispatch(HttpExchange exchange) throws IOException {
+            final String method = exchange.getRequestMethod();
+            final String[] path = exchange.getRequestURI().getPath().replaceAll("/+$", "")
+                    .split("/");
+
+            // "", "jobs", then the id and the action
+            if (path.length == 2) {
+                if ("POST".equals(method)) {
+                    final ComparisonJob job = ComparisonService.this.queue.submit(readProfile(
+                            readParameters(exchange)));
+
+                    exchange.getResponseHeaders().set("Location", "/jobs/" + job.getId());
+                    send(exchange, 202, job.getDescription());
+                } else if ("GET".equals(method)) {
+                    final StringBuilder jobs = new StringBuilder();
+
+                    for (ComparisonJob job : ComparisonService.this.queue.getJobs()) {
+                        jobs.append(job).append('\n');
+                    }
+
+                    send(exchange, 200, jobs.toString());
+                } else {
+                    send(exchange, 405, "Error: Method not allowed\n");
+                }
+
+                return;
+            }
+
+            final ComparisonJob job;
+
+            try {
+                job = path.length <= 4 ? ComparisonService.this.queue.getJob(Long
+                        .parseLong(path[2])) : null;
+            } catch (NumberFormatException e) {
+                send(exchange, 404, "Error: Unknown job " + path[2] + "\n");
+                return;
+            }
+
+            if (job == null) {
+                send(exchange, 404, "Error: Unknown job " + path[2] + "\n");
+            } else if (path.length == 3 && "GET".equals(method)) {
+                send(exchange, 200, job.getDescription());
+            } else if ((path.length == 3 && "DELETE".equals(method))
+                    || (path.length == 4 && "cancel".equals(path[3]) && "POST".equals(method))) {
+                if (ComparisonService.this.queue.cancel(job.getId())) {
+                    send(exchange, 200, job.getDescription());
+                } else {
+                    send(exchange, 409, "Error: Job " + job.getId() + " already finished\n");
+                }
+            } else if (path.length == 4 && "differences".equals(path[3]) && "GET".equals(method)) {
+                stream(exchange, job);
+            } else {
+                send(exchange, 404, "Error: Unknown request\n");
+            }
+        }
+    }
+
+    /**
+     * Answers the requests on the metrics of the service.
+     */
+    private final class MetricsHandler implements HttpHandler {
+
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if (!"GET".equals(exchange.getRequestMethod())) {
+                    send(exchange, 405, "Error: Method not allowed\n");
+                    return;
+                }
+
+                final JobQueue jobs = ComparisonService.this.queue;
+                final ParsedFileCache cache = ParsedFileCache.getInstance();
+                final MetricsRegistry registry = MetricsRegistry.getInstance();
+                final StringBuilder metrics = new StringBuilder();
+
+                metrics.append("runners: ").append(jobs.getRunnerCount()).append('\n');
+                metrics.append("queuedJobs: ").append(jobs.getQueuedCount()).append('\n');
+                metrics.append("runningJobs: ").append(jobs.getRunningCount()).append('\n');
+                metrics.append("memoryReserved: ").append(jobs.getReservedMemory()).append('/')
+                        .append(jobs.getMemoryBudget()).append('\n');
+
+                for (boolean fast : new boolean[]{true, false}) {
+                    final String lane = fast ? "fastLane" : "regularLane";
+
+                    metrics.append(lane).append("Queued: ").append(jobs.getQueuedCount(fast))
+                            .append('\n');
+                    metrics.append(lane).append("OldestWaitMillis: ")
+                            .append(jobs.getOldestWaitMillis(fast)).append('\n');
+                    metrics.append(lane).append("AverageWaitMillis: ")
+                            .append(jobs.getAverageWaitMillis(fast)).append('\n');
+                    metrics.append(lane).append("MaximumWaitMillis: ")
+                            .append(jobs.getMaximumWaitMillis(fast)).append('\n');
+                }
+
+                metrics.append("cachedFiles: ").append(cache.size()).append('\n');
+                metrics.append("cacheSize: ").append(cache.getCurrentSize()).append('/')
+                        .append(cache.getMaximumSize()).append('\n');
+                metrics.append("comparisons: ").append(registry.getComparisonCount())
+                        .append('\n');
+                metrics.append("cacheHits: ").append(registry.getCacheHits()).append('\n');
+                metrics.append("cacheMisses: ").append(registry.getCacheMisses()).append('\n');
+                metrics.append(registry.getSummary());
+
+                send(exchange, 200, metrics.toString());
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
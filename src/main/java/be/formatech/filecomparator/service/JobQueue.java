@@ -0,0 +1,557 @@
+package be.formatech.filecomparator.service;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The queue of the jobs of the ComparisonService.<br>
+ * The heap used by each job is estimated from its files and strategy when it
+ * is submitted, and the jobs are admitted against a memory budget, so that
+ * the jobs run at the same time do not exhaust the heap. The jobs estimated
+ * under SMALL_JOB_MEMORY go to the fast lane, which has its own runner and a
+ * part of the budget of its own : they are not held up by the big jobs. The
+ * other jobs are admitted in the order they were submitted : a job waiting
+ * for memory is not overtaken, and a job over the whole budget runs alone.<br>
+ * The comparisons parse their files on the shared pool of the
+ * ComparisonExecutor, and find the files compared by the previous jobs in the
+ * ParsedFileCache. The finished jobs are kept, up to MAXIMUM_FINISHED_JOBS,
+ * so that their results can still be read.
+ *
+ * @version $Id$
+ * @see ComparisonJob
+ */
+public final class JobQueue {
+    private static final Logger LOGGER = Logger.getLogger(JobQueue.class);
+
+    /**
+     * The system property giving the number of jobs run at the same time.
+     */
+    public static final String RUNNERS_PROPERTY = "filecomparator.service.runners";
+
+    /**
+     * The number of jobs run at the same time when the property is not set.
+     */
+    public static final int DEFAULT_RUNNERS = 2;
+
+    /**
+     * The system property giving the memory budget of the jobs, in megabytes.
+     */
+    public static final String MEMORY_BUDGET_PROPERTY = "filecomparator.service.memoryBudget";
+
+    /**
+     * The part of the maximum heap used as memory budget when the property is
+     * not set.
+     */
+    public static final double MEMORY_BUDGET_RATIO = 0.5;
+
+    /**
+     * The estimated heap, in bytes, under which a job goes to the fast lane.
+     */
+    public static final long SMALL_JOB_MEMORY = 32L * 1024 * 1024;
+
+    /**
+     * The number of finished jobs kept.
+     */
+    public static final int MAXIMUM_FINISHED_JOBS = 100;
+
+    /**
+     * The small jobs waiting for a runner, in the order they were submitted.
+     */
+    private final LinkedList<ComparisonJob> fastLane = new LinkedList<ComparisonJob>();
+
+    /**
+     * The other jobs waiting for a runner, in the order they were submitted.
+     */
+    private final LinkedList<ComparisonJob> regularLane = new LinkedList<ComparisonJob>();
+
+    /**
+     * All the jobs kept, by id, in the order they were submitted.
+     */
+    private final Map<Long, ComparisonJob> jobs = new LinkedHashMap<Long, ComparisonJob>();
+
+    /**
+     * The threads running the jobs.
+     */
+    private final List<Thread> runners = new ArrayList<Thread>();
+
+    /**
+     * The number of jobs run at the same time, besides the fast lane runner.
+     */
+    private final int runnerCount;
+
+    /**
+     * The memory budget of all the jobs, in bytes.
+     */
+    private final long memoryBudget;
+
+    /**
+     * The memory budget of the jobs run by the regular runners : the budget
+     * less the part kept for the fast lane runner.
+     */
+    private final long regularBudget;
+
+    /**
+     * The flag indicating if the runners must stop.
+     */
+    private boolean stopped;
+
+    /**
+     * The id of the last submitted job.
+     */
+    private long lastId;
+
+    /**
+     * The number of jobs being run.
+     */
+    private int running;
+
+    /**
+     * The number of jobs being run by the regular runners.
+     */
+    private int regularRunning;
+
+    /**
+     * The estimated heap of the jobs being run by the regular runners, in
+     * bytes.
+     */
+    private long reservedMemory;
+
+    /**
+     * The number of jobs started from each lane, fast lane first.
+     */
+    private final long[] startedCounts = new long[2];
+
+    /**
+     * The total time the jobs started from each lane waited, in milliseconds.
+     */
+    private final long[] totalWaitMillis = new long[2];
+
+    /**
+     * The longest time a job started from each lane waited, in milliseconds.
+     */
+    private final long[] maximumWaitMillis = new long[2];
+
+    /**
+     * Initializes a newly created JobQueue object, running as many jobs at the
+     * same time as given by RUNNERS_PROPERTY within the memory budget given by
+     * MEMORY_BUDGET_PROPERTY.
+     */
+    public JobQueue() {
+        this(Integer.getInteger(RUNNERS_PROPERTY, DEFAULT_RUNNERS), getDefaultMemoryBudget());
+    }
+
+    /**
+     * Initializes a newly created JobQueue object.
+     *
+     * @param runnerCount  the number of jobs run at the same time, besides the
+     *                     fast lane runner
+     * @param memoryBudget the memory budget of all the jobs, in bytes
+     * @throws IllegalArgumentException if the number is not positive or if the
+     *                                  budget does not hold a small job
+     */
+    public JobQueue(int runnerCount, long memoryBudget) {
+        super();
+
+        if (runnerCount < 1) {
+            throw new IllegalArgumentException("At least one runner is needed: " + runnerCount);
+        }
+
+        if (memoryBudget < 2 * SMALL_JOB_MEMORY) {
+            throw new IllegalArgumentException("The memory budget is too small: " + memoryBudget);
+        }
+
+        this.runnerCount = runnerCount;
+        this.memoryBudget = memoryBudget;
+        this.regularBudget = memoryBudget - SMALL_JOB_MEMORY;
+    }
+
+    private static long getDefaultMemoryBudget() {
+        final Long megabytes = Long.getLong(MEMORY_BUDGET_PROPERTY);
+
+        if (megabytes != null) {
+            return megabytes * 1024 * 1024;
+        }
+
+        return (long) (Runtime.getRuntime().maxMemory() * MEMORY_BUDGET_RATIO);
+    }
+
+    /**
+     * Starts the runners.
+     */
+    public synchronized void start() {
+        if (!this.runners.isEmpty()) {
+            return;
+        }
+
+        this.stopped = false;
+
+        for (int i = 0; i <= this.runnerCount; i++) {
+            final boolean fast = i == this.runnerCount;
+            final Thread runner = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    JobQueue.this.runJobs(fast);
+                }
+            }, fast ? "comparison-job-fast" : "comparison-job-" + (i + 1));
+
+            runner.setDaemon(true);
+            runner.start();
+            this.runners.add(runner);
+        }
+
+        LOGGER.info("Started " + this.runnerCount + " job runner(s) and a fast lane runner"
+                + " within a memory budget of " + (this.memoryBudget >> 20) + " MB");
+    }
+
+    /**
+     * Stops the runners and cancels the jobs that are not finished.
+     */
+    public void stop() {
+        final List<Thread> stopped;
+
+        synchronized (this) {
+            stopped = new ArrayList<Thread>(this.runners);
+            this.runners.clear();
+
+            for (ComparisonJob job : this.jobs.values()) {
+                job.cancel();
+            }
+
+            this.fastLane.clear();
+            this.regularLane.clear();
+            this.stopped = true;
+            this.notifyAll();
+        }
+
+        for (Thread runner : stopped) {
+            runner.interrupt();
+        }
+    }
+
+    /**
+     * Runs the jobs of the queue until the queue is stopped.
+     *
+     * @param fast the flag indicating if the runner only runs the fast lane
+     */
+    private void runJobs(boolean fast) {
+        while (true) {
+            ComparisonJob job;
+
+            synchronized (this) {
+                while ((job = this.take(fast)) == null) {
+                    if (this.stopped) {
+                        return;
+                    }
+
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+
+            try {
+                job.run();
+            } finally {
+                this.release(job, fast);
+            }
+
+            this.removeFinishedJobs();
+        }
+    }
+
+    /**
+     * Takes the next job a runner may start and reserves its memory.
+     *
+     * @param fast the flag indicating if the runner only runs the fast lane
+     * @return the job or null if none may be started yet
+     */
+    synchronized ComparisonJob take(boolean fast) {
+        final ComparisonJob job = this.admit(fast);
+
+        if (job == null) {
+            return null;
+        }
+
+        this.running++;
+
+        if (!fast) {
+            this.regularRunning++;
+            this.reservedMemory += job.getEstimatedMemory();
+        }
+
+        final int lane = job.isFastLane() ? 0 : 1;
+        final long wait = System.currentTimeMillis() - job.getSubmitted();
+
+        this.startedCounts[lane]++;
+        this.totalWaitMillis[lane] += wait;
+        this.maximumWaitMillis[lane] = Math.max(this.maximumWaitMillis[lane], wait);
+
+        return job;
+    }
+
+    /**
+     * Releases the memory of a job that was run and wakes up the runners.
+     *
+     * @param job  the job, as returned by take
+     * @param fast the flag given to take
+     */
+    synchronized void release(ComparisonJob job, boolean fast) {
+        this.running--;
+
+        if (!fast) {
+            this.regularRunning--;
+            this.reservedMemory -= job.getEstimatedMemory();
+        }
+
+        this.notifyAll();
+    }
+
+    /**
+     * Returns the next job a runner may start.<br>
+     * The fast lane runner takes the small jobs one at a time, within the
+     * part of the budget kept for it. The regular runners, up to runnerCount
+     * at the same time, take the oldest job at the
+     * head of the two lanes if its estimated heap fits in the rest of the
+     * budget, or if it is a big job and no other one is running : a big job
+     * at the head of the regular lane that does not fit holds the regular
+     * runners until enough memory is released, and the small jobs submitted
+     * meanwhile are left to the fast lane runner.
+     *
+     * @param fast the flag indicating if the runner only runs the fast lane
+     * @return the job or null if none may be started yet
+     */
+    private ComparisonJob admit(boolean fast) {
+        if (this.stopped) {
+            return null;
+        }
+
+        final ComparisonJob small = this.fastLane.peek();
+
+        if (fast) {
+            return small != null && this.running == this.regularRunning ? this.fastLane
+                    .poll() : null;
+        }
+
+        if (this.regularRunning >= this.runnerCount) {
+            return null;
+        }
+
+        final ComparisonJob big = this.regularLane.peek();
+
+        if (big != null && (small == null || big.getId() < small.getId())) {
+            if (this.regularRunning == 0
+                    || this.reservedMemory + big.getEstimatedMemory() <= this.regularBudget) {
+                return this.regularLane.poll();
+            }
+
+            return null;
+        }
+
+        if (small != null && this.reservedMemory + small.getEstimatedMemory() <= this.regularBudget) {
+            return this.fastLane.poll();
+        }
+
+        return null;
+    }
+
+    /**
+     * Queues a new job.
+     *
+     * @param profile the settings of the comparison, as returned by
+     *                ConfigUtility.loadConfig
+     * @return the job
+     */
+    public ComparisonJob submit(Map<String, String> profile) {
+        return this.submit(profile, ComparisonJob.estimateMemory(profile));
+    }
+
+    /**
+     * Queues a new job whose heap is already estimated.
+     *
+     * @param profile         the settings of the comparison
+     * @param estimatedMemory the estimated heap used by the comparison, in
+     *                        bytes
+     * @return the job
+     */
+    ComparisonJob submit(Map<String, String> profile, long estimatedMemory) {
+        final boolean fast = estimatedMemory <= SMALL_JOB_MEMORY;
+
+        synchronized (this) {
+            final ComparisonJob job = new ComparisonJob(++this.lastId, profile,
+                    estimatedMemory, fast);
+            final LinkedList<ComparisonJob> lane = fast ? this.fastLane : this.regularLane;
+
+            this.jobs.put(job.getId(), job);
+            lane.add(job);
+            this.notifyAll();
+
+            LOGGER.info("Job " + job.getId() + " (" + (estimatedMemory >> 20) + " MB) queued in the "
+                    + (fast ? "fast" : "regular") + " lane behind " + (lane.size() - 1) + " job(s)");
+
+            return job;
+        }
+    }
+
+    /**
+     * Cancels a job. A queued job is removed from the queue, a running job
+     * stops at once.
+     *
+     * @param id the id of the job
+     * @return true if the job was cancelled, false if it had already finished
+     * @throws IllegalArgumentException if there is no job with this id
+     */
+    public synchronized boolean cancel(long id) {
+        final ComparisonJob job = this.getJob(id);
+
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown job " + id);
+        }
+
+        if (this.fastLane.remove(job) || this.regularLane.remove(job)) {
+            this.notifyAll();
+        }
+
+        return job.cancel();
+    }
+
+    /**
+     * Returns a job.
+     *
+     * @param id the id of the job
+     * @return the job or null if there is no job with this id
+     */
+    public synchronized ComparisonJob getJob(long id) {
+        return this.jobs.get(id);
+    }
+
+    /**
+     * Returns all the jobs kept, in the order they were submitted.
+     *
+     * @return the jobs
+     */
+    public synchronized List<ComparisonJob> getJobs() {
+        return new ArrayList<ComparisonJob>(this.jobs.values());
+    }
+
+    /**
+     * Returns the number of jobs waiting for a runner.
+     *
+     * @return the number of queued jobs
+     */
+    public synchronized int getQueuedCount() {
+        return this.fastLane.size() + this.regularLane.size();
+    }
+
+    /**
+     * Returns the number of jobs waiting in a lane.
+     *
+     * @param fast the flag indicating if the fast lane is counted
+     * @return the number of queued jobs
+     */
+    public synchronized int getQueuedCount(boolean fast) {
+        return (fast ? this.fastLane : this.regularLane).size();
+    }
+
+    /**
+     * Returns the time the oldest job of a lane has been waiting.
+     *
+     * @param fast the flag indicating if the fast lane is looked at
+     * @return the time, in milliseconds, or 0 if the lane is empty
+     */
+    public synchronized long getOldestWaitMillis(boolean fast) {
+        final ComparisonJob oldest = (fast ? this.fastLane : this.regularLane).peek();
+
+        return oldest != null ? oldest.getWaitMillis() : 0;
+    }
+
+    /**
+     * Returns the average time the jobs started from a lane waited.
+     *
+     * @param fast the flag indicating if the fast lane is looked at
+     * @return the time, in milliseconds, or 0 if no job was started
+     */
+    public synchronized long getAverageWaitMillis(boolean fast) {
+        final int lane = fast ? 0 : 1;
+
+        return this.startedCounts[lane] != 0
+                ? this.totalWaitMillis[lane] / this.startedCounts[lane] : 0;
+    }
+
+    /**
+     * Returns the longest time a job started from a lane waited.
+     *
+     * @param fast the flag indicating if the fast lane is looked at
+     * @return the time, in milliseconds
+     */
+    public synchronized long getMaximumWaitMillis(boolean fast) {
+        return this.maximumWaitMillis[fast ? 0 : 1];
+    }
+
+    /**
+     * Returns the estimated heap of the jobs being run by the regular
+     * runners.
+     *
+     * @return the reserved memory, in bytes
+     */
+    public synchronized long getReservedMemory() {
+        return this.reservedMemory;
+    }
+
+    /**
+     * Returns the memory budget of all the jobs.
+     *
+     * @return the budget, in bytes
+     */
+    public long getMemoryBudget() {
+        return this.memoryBudget;
+    }
+
+    /**
+     * Returns the number of jobs being run.
+     *
+     * @return the number of running jobs
+     */
+    public synchronized int getRunningCount() {
+        return this.running;
+    }
+
+    /**
+     * Returns the number of jobs run at the same time, besides the fast lane
+     * runner.
+     *
+     * @return the number of runners
+     */
+    public int getRunnerCount() {
+        return this.runnerCount;
+    }
+
+    /**
+     * Forgets the oldest finished jobs beyond MAXIMUM_FINISHED_JOBS.
+     */
+    private synchronized void removeFinishedJobs() {
+        int finished = 0;
+
+        for (ComparisonJob job : this.jobs.values()) {
+            if (job.isFinished()) {
+                finished++;
+            }
+        }
+
+        final Iterator<ComparisonJob> iterator = this.jobs.values().iterator();
+
+        while (finished > MAXIMUM_FINISHED_JOBS && iterator.hasNext()) {
+            if (iterator.next().isFinished()) {
+                iterator.remove();
+                finished--;
+            }
+        }
+    }
+}
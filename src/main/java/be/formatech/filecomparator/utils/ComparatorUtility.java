@@ -1,15 +1,27 @@
 package be.formatech.filecomparator.utils;
 
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
 import be.formatech.filecomparator.comparator.element.Line;
-import org.apache.commons.collections15.bidimap.TreeBidiMap;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import be.formatech.filecomparator.comparator.events.ComparisonEvents;
+import be.formatech.filecomparator.comparator.events.ParseChunkEvent;
+import be.formatech.filecomparator.comparator.metrics.ComparisonMetrics;
+import be.formatech.filecomparator.comparator.metrics.Phase;
+import be.formatech.filecomparator.comparator.metrics.PhaseTimer;
+import be.formatech.filecomparator.comparator.progress.ProgressTracker;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.lang3.time.DateUtils;
 import org.apache.log4j.Logger;
 
 import java.io.BufferedReader;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
 import java.text.ParseException;
 import java.util.*;
 
@@ -23,9 +35,10 @@ public final class ComparatorUtility {
     private static final Logger LOGGER = Logger.getLogger(ComparatorUtility.class);
 
     /**
-     * The flag indicating if the parsing of files has been cancelled.
+     * The number of lines read, then normalized, then indexed together by
+     * parseFile.
      */
-    private static boolean cancel;
+    private static final int PARSE_BATCH = 1024;
 
     /**
      * ComparatorUtility should not normally be instantiated.
@@ -65,53 +78,222 @@ public final class ComparatorUtility {
     }
 
     /**
-     * Parses a file and put each line of the file as a Line in a map.
+     * Computes a 64 bits fingerprint of a String.<br>
+     * Two equal Strings always have the same fingerprint, two different Strings
+     * have the same fingerprint with a negligible probability.
+     *
+     * @param value the String from which compute the fingerprint
+     * @return the fingerprint of the String
+     */
+    public static long fingerprint(String value) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < value.length(); i++) {
+            hash ^= value.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Parses a file and put each line of the file as a Line in a LineTable.
      *
      * @param filename  the path of the file to parse
      * @param separator the field separator
      * @param dates     the Set identifying the date fields of the file
      * @param numbers   the Set identifying the number fields of the file
-     * @return the Lines of the file contained in a Map
+     * @return the Lines of the file contained in a LineTable
      * @throws IOException
      * @throws ParseException
      */
-    public static Map<Integer, Line> parseFile(final String filename, final String separator,
+    public static LineTable parseFile(final String filename, final String separator,
                                                final Set<Integer> dates, final Set<Integer> numbers) throws IOException,
             ParseException {
+        return parseFile(filename, separator, dates, numbers, CancellationToken.NONE);
+    }
+
+    /**
+     * Parses a file and put each line of the file as a Line in a LineTable.
+     * The parsing stops and returns an empty LineTable as soon as the token
+     * is cancelled.
+     *
+     * @param filename  the path of the file to parse
+     * @param separator the field separator
+     * @param dates     the Set identifying the date fields of the file
+     * @param numbers   the Set identifying the number fields of the file
+     * @param token     the cancellation token of the comparison
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static LineTable parseFile(final String filename, final String separator,
+                                               final Set<Integer> dates, final Set<Integer> numbers,
+                                               final CancellationToken token) throws IOException, ParseException {
+        return parseFile(filename, separator, dates, numbers, 0, 1, token);
+    }
+
+    /**
+     * Parses a file from a given position and put each line of the file as a
+     * Line in a LineTable.
+     *
+     * @param filename        the path of the file to parse
+     * @param separator       the field separator
+     * @param dates           the Set identifying the date fields of the file
+     * @param numbers         the Set identifying the number fields of the file
+     * @param offset          the position of the first line to parse in the file
+     * @param firstLineNumber the number of the first line to parse
+     * @param token           the cancellation token of the comparison
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static LineTable parseFile(final String filename, final String separator,
+                                               final Set<Integer> dates, final Set<Integer> numbers, final long offset,
+                                               final int firstLineNumber, final CancellationToken token) throws IOException,
+            ParseException {
+        return parseFile(filename, separator, dates, numbers, offset, firstLineNumber, token,
+                ComparisonMetrics.DISABLED, ProgressTracker.NONE);
+    }
+
+    /**
+     * Parses a file from a given position and put each line of the file as a
+     * Line in a LineTable.<br>
+     * The lines are read, normalized and indexed by batches of PARSE_BATCH
+     * lines, so that each phase is measured once per batch. A ParseChunkEvent
+     * is recorded for each batch and the bytes read are added to the progress
+     * after each batch.
+     *
+     * @param filename        the path of the file to parse
+     * @param separator       the field separator
+     * @param dates           the Set identifying the date fields of the file
+     * @param numbers         the Set identifying the number fields of the file
+     * @param offset          the position of the first line to parse in the file
+     * @param firstLineNumber the number of the first line to parse
+     * @param token           the cancellation token of the comparison
+     * @param metrics         the metrics of the comparison
+     * @param progress        the progress of the comparison
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException
+     * @throws ParseException
+     */
+    public static LineTable parseFile(final String filename, final String separator,
+                                               final Set<Integer> dates, final Set<Integer> numbers, final long offset,
+                                               final int firstLineNumber, final CancellationToken token,
+                                               final ComparisonMetrics metrics, final ProgressTracker progress)
+            throws IOException, ParseException {
+        return parseFile(filename, separator, dates, numbers, ColumnProjection.ALL, offset,
+                firstLineNumber, token, metrics, progress);
+    }
+
+    /**
+     * Parses a file from a given position and put each line of the file as a
+     * Line in a map, skipping the fields of the columns that are not compared.
+     *
+     * @param filename        the path of the file to parse
+     * @param separator       the field separator
+     * @param dates           the Set identifying the date fields of the file
+     * @param numbers         the Set identifying the number fields of the file
+     * @param projection      the columns taking part in the comparison
+     * @param offset          the position of the first line to parse in the file
+     * @param firstLineNumber the number of the first line to parse
+     * @param token           the cancellation token of the comparison
+     * @param metrics         the metrics of the comparison
+     * @param progress        the progress of the comparison
+     * @return the Lines of the file contained in a LineTable
+     * @throws IOException
+     * @throws ParseException
+     * @see #parseFile(String, String, Set, Set, long, int, CancellationToken, ComparisonMetrics, ProgressTracker)
+     */
+    public static LineTable parseFile(final String filename, final String separator,
+                                               final Set<Integer> dates, final Set<Integer> numbers,
+                                               final ColumnProjection projection, final long offset,
+                                               final int firstLineNumber, final CancellationToken token,
+                                               final ComparisonMetrics metrics, final ProgressTracker progress)
+            throws IOException, ParseException {
         LOGGER.info("Parsing file " + filename);
-        final Map<Integer, Line> result = new TreeBidiMap<Integer, Line>();
-        setCancel(false);
+        final LineTable result = new LineTable();
 
-        FileReader in = null;
+        Reader in = null;
         BufferedReader br = null;
 
         try {
             if (!StringUtils.isEmpty(filename) && !StringUtils.isBlank(filename)
                     && !StringUtils.isEmpty(separator)) {
-                in = new FileReader(filename);
+                final FileInputStream stream = new FileInputStream(filename);
+                in = new InputStreamReader(stream);
+                stream.getChannel().position(offset);
                 br = new BufferedReader(in);
-                String line;
-                int lineNumber = 1;
+                final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(separator,
+                        dates, numbers, projection);
+                final String[] lines = new String[PARSE_BATCH];
+                final Line[] values = new Line[PARSE_BATCH];
+                final PhaseTimer timer = metrics.startTimer(Phase.READ);
+                long position = offset;
+                int lineNumber = firstLineNumber;
+                int count;
+
+                try {
+                    do {
+                        final ParseChunkEvent event = new ParseChunkEvent();
+
+                        event.begin();
+                        count = 0;
+
+                        while (count < PARSE_BATCH && (lines[count] = br.readLine()) != null) {
+                            count++;
+                        }
 
-                while ((line = br.readLine()) != null) {
-                    if (isCancelled()) {
-                        LOGGER.info("Parsing was cancelled");
-                        return new TreeBidiMap<Integer, Line>();
-                    }
+                        timer.switchTo(Phase.NORMALIZE);
 
-                    final Line value = new Line(line, separator, dates, numbers);
+                        for (int i = 0; i < count; i++) {
+                            if (token.isCancelled()) {
+                                LOGGER.info("Parsing was cancelled");
+                                return new LineTable();
+                            }
 
-                    while (result.containsValue(value)) {
-                        if (isCancelled()) {
-                            LOGGER.info("Parsing was cancelled");
-                            return new TreeBidiMap<Integer, Line>();
+                            values[i] = new Line(lines[i], dictionaries, 1);
                         }
 
-                        value.setOccurenceNumber(value.getOccurenceNumber() + 1);
-                    }
+                        timer.switchTo(Phase.INDEX);
+
+                        for (int i = 0; i < count; i++) {
+                            result.numberOccurence(values[i]);
+                            result.put(lineNumber++, values[i]);
+                        }
+
+                        timer.switchTo(Phase.READ);
+
+                        if (progress.isEnabled()) {
+                            final long read = stream.getChannel().position();
+
+                            progress.addBytesRead(read - position);
+                            position = read;
+                        }
 
-                    result.put(lineNumber++, value);
+                        if (count > 0 && event.shouldCommit()) {
+                            event.jobId = ComparisonEvents.getJobId();
+                            event.file = filename;
+                            event.firstLine = lineNumber - count;
+                            event.lines = count;
+                            event.commit();
+                        }
+                    } while (count == PARSE_BATCH);
+                } finally {
+                    timer.stop();
                 }
+
+                final int parsed = lineNumber - firstLineNumber;
+
+                metrics.addLines(Phase.READ, parsed);
+                metrics.addLines(Phase.NORMALIZE, parsed);
+                metrics.addLines(Phase.INDEX, parsed);
+                metrics.addBytes(Phase.READ, stream.getChannel().size() - offset);
             }
         } finally {
             if (in != null) {
@@ -188,6 +370,27 @@ public final class ComparatorUtility {
                 && NumberUtils.isNumber(ComparatorUtility.deleteAllWhitespace(token2));
     }
 
+    /**
+     * Checks if two fields are equal, equal as double if both are numbers or
+     * equal as Date if both are dates.
+     *
+     * @param token1 first String
+     * @param token2 second String
+     * @return true if both fields are equivalent, false otherwise
+     */
+    public static boolean fieldsAreEquivalent(String token1, String token2) {
+        if (token1.equals(token2)) {
+            return true;
+        }
+
+        if (ComparatorUtility.bothTokenNumber(token1, token2)) {
+            return ComparatorUtility.numbersAreEqual(token1, token2);
+        }
+
+        return ComparatorUtility.bothTokenDate(token1, token2)
+                && ComparatorUtility.datesAreEqual(token1, token2);
+    }
+
     /**
      * Checks if two Strings are equals as double.
      *
@@ -247,23 +450,4 @@ public final class ComparatorUtility {
 
         return true;
     }
-
-    /**
-     * Checks if the parsing has been cancelled.
-     *
-     * @return true if the parsing has been cancelled, false otherwise
-     * @see ComparatorUtility.parseFile
-     */
-    public static synchronized boolean isCancelled() {
-        return cancel;
-    }
-
-    /**
-     * Cancels the parsing.
-     *
-     * @see ComparatorUtility.parseFile
-     */
-    public static synchronized void setCancel(boolean cancel) {
-        ComparatorUtility.cancel = cancel;
-    }
-}
\ No newline at end of file
+}
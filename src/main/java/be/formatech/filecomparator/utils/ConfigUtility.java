@@ -64,6 +64,24 @@ public final class ConfigUtility {
 	 */
 	public static final String NUMBERS_CONFIG_KEY = "-numbers";
 
+	/**
+	 * The key to identify the strategy executing the comparisons in the
+	 * configuration file : -strategy
+	 */
+	public static final String STRATEGY_CONFIG_KEY = "-strategy";
+
+	/**
+	 * The key to identify the ignored columns in the configuration file :
+	 * -ignoredColumns
+	 */
+	public static final String IGNORED_COLUMNS_CONFIG_KEY = "-ignoredColumns";
+
+	/**
+	 * The key to identify the only compared columns in the configuration file
+	 * : -comparedColumns
+	 */
+	public static final String COMPARED_COLUMNS_CONFIG_KEY = "-comparedColumns";
+
 	/**
 	 * ConfigUtility should not normally be instantiated.
 	 */
@@ -139,6 +157,18 @@ public final class ConfigUtility {
 					config.put(NUMBERS_CONFIG_KEY, StringUtils.substring(line, StringUtils.indexOf(
 							line, NUMBERS_CONFIG_KEY)
 							+ StringUtils.length(NUMBERS_CONFIG_KEY) + 1));
+				} else if (StringUtils.startsWithIgnoreCase(line, STRATEGY_CONFIG_KEY)) {
+					config.put(STRATEGY_CONFIG_KEY, StringUtils.substring(line, StringUtils
+							.indexOf(line, STRATEGY_CONFIG_KEY)
+							+ StringUtils.length(STRATEGY_CONFIG_KEY) + 1));
+				} else if (StringUtils.startsWithIgnoreCase(line, IGNORED_COLUMNS_CONFIG_KEY)) {
+					config.put(IGNORED_COLUMNS_CONFIG_KEY, StringUtils.substring(line, StringUtils
+							.indexOf(line, IGNORED_COLUMNS_CONFIG_KEY)
+							+ StringUtils.length(IGNORED_COLUMNS_CONFIG_KEY) + 1));
+				} else if (StringUtils.startsWithIgnoreCase(line, COMPARED_COLUMNS_CONFIG_KEY)) {
+					config.put(COMPARED_COLUMNS_CONFIG_KEY, StringUtils.substring(line,
+							StringUtils.indexOf(line, COMPARED_COLUMNS_CONFIG_KEY)
+									+ StringUtils.length(COMPARED_COLUMNS_CONFIG_KEY) + 1));
 				}
 			}
 		} finally {
@@ -235,6 +265,24 @@ public final class ConfigUtility {
 						+ config.get(NUMBERS_CONFIG_KEY));
 				bufferedWriter.newLine();
 
+				if (config.containsKey(STRATEGY_CONFIG_KEY)) {
+					bufferedWriter.write(STRATEGY_CONFIG_KEY + WHITESPACE
+							+ config.get(STRATEGY_CONFIG_KEY));
+					bufferedWriter.newLine();
+				}
+
+				if (config.containsKey(IGNORED_COLUMNS_CONFIG_KEY)) {
+					bufferedWriter.write(IGNORED_COLUMNS_CONFIG_KEY + WHITESPACE
+							+ config.get(IGNORED_COLUMNS_CONFIG_KEY));
+					bufferedWriter.newLine();
+				}
+
+				if (config.containsKey(COMPARED_COLUMNS_CONFIG_KEY)) {
+					bufferedWriter.write(COMPARED_COLUMNS_CONFIG_KEY + WHITESPACE
+							+ config.get(COMPARED_COLUMNS_CONFIG_KEY));
+					bufferedWriter.newLine();
+				}
+
 				bufferedWriter.flush();
 
 				return true;
@@ -0,0 +1,214 @@
+package be.formatech.filecomparator.utils;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Utilities used to compare the content of files through memory-mapped
+ * windows, without decoding them.
+ *
+ * @version $Id$
+ */
+public final class MappedFileUtility {
+    private static final Logger LOGGER = Logger.getLogger(MappedFileUtility.class);
+
+    /**
+     * The value returned by mismatch when both files are identical.
+     */
+    public static final long IDENTICAL = -1L;
+
+    /**
+     * The size of the windows mapped in memory : 64 MB.
+     */
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * MappedFileUtility should not normally be instantiated.
+     */
+    private MappedFileUtility() {
+
+    }
+
+    /**
+     * Finds the position of the first byte that differs between two files.<br>
+     * If one file is a prefix of the other, the position returned is the size
+     * of the smallest file.
+     *
+     * @param filename1 the path of the first file
+     * @param filename2 the path of the second file
+     * @return the position of the first byte that differs or IDENTICAL if both
+     * files have the same size and the same content
+     * @throws IOException if an I/O error occurs
+     */
+    public static long mismatch(String filename1, String filename2) throws IOException {
+        final RandomAccessFile file1 = new RandomAccessFile(filename1, "r");
+
+        try {
+            final RandomAccessFile file2 = new RandomAccessFile(filename2, "r");
+
+            try {
+                final FileChannel channel1 = file1.getChannel();
+                final FileChannel channel2 = file2.getChannel();
+                final long size = Math.min(channel1.size(), channel2.size());
+
+                for (long position = 0; position < size; position += WINDOW_SIZE) {
+                    final long windowSize = Math.min(WINDOW_SIZE, size - position);
+                    final MappedByteBuffer window1 = channel1.map(FileChannel.MapMode.READ_ONLY,
+                            position, windowSize);
+                    final MappedByteBuffer window2 = channel2.map(FileChannel.MapMode.READ_ONLY,
+                            position, windowSize);
+                    final int index = mismatch(window1, window2, (int) windowSize);
+
+                    if (index >= 0) {
+                        return position + index;
+                    }
+                }
+
+                if (channel1.size() != channel2.size()) {
+                    return size;
+                }
+            } finally {
+                file2.close();
+            }
+        } finally {
+            file1.close();
+        }
+
+        LOGGER.info("Files " + filename1 + " and " + filename2 + " are identical");
+
+        return IDENTICAL;
+    }
+
+    /**
+     * Finds the index of the first byte that differs between two windows,
+     * comparing them 8 bytes at a time.
+     *
+     * @return the index of the first byte that differs or -1
+     */
+    private static int mismatch(MappedByteBuffer window1, MappedByteBuffer window2, int length) {
+        int i = 0;
+
+        for (; i <= length - 8; i += 8) {
+            final long difference = window1.getLong(i) ^ window2.getLong(i);
+
+            if (difference != 0) {
+                // the buffers are big-endian, the first byte is the most
+                // significant one
+                return i + Long.numberOfLeadingZeros(difference) / 8;
+            }
+        }
+
+        for (; i < length; i++) {
+            if (window1.get(i) != window2.get(i)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Finds the beginning of the line containing a position of a file.
+     *
+     * @param filename the path of the file
+     * @param position a position in the file
+     * @return the position and the number of the line containing the position
+     * @throws IOException if an I/O error occurs
+     */
+    public static LineStart findLineStart(String filename, long position) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(filename, "r");
+
+        try {
+            final FileChannel channel = file.getChannel();
+            final long start = findLineFeedBefore(file, Math.min(position, channel.size())) + 1;
+
+            int lineNumber = 1;
+            byte previous = 0;
+
+            for (long windowPosition = 0; windowPosition < start; windowPosition += WINDOW_SIZE) {
+                final long windowSize = Math.min(WINDOW_SIZE, start - windowPosition);
+                final MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY,
+                        windowPosition, windowSize);
+
+                for (int i = 0; i < windowSize; i++) {
+                    final byte b = window.get(i);
+
+                    if (b == '\r' || (b == '\n' && previous != '\r')) {
+                        lineNumber++;
+                    }
+
+                    previous = b;
+                }
+            }
+
+            return new LineStart(start, lineNumber);
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Finds the last line feed before a position of a file. A line terminated
+     * by a carriage return alone could be followed by a line feed in another
+     * file, so only line feeds are considered.
+     *
+     * @return the position of the last line feed or -1
+     */
+    private static long findLineFeedBefore(RandomAccessFile file, long position)
+            throws IOException {
+        final byte[] buffer = new byte[8192];
+        long end = position;
+
+        while (end > 0) {
+            final int length = (int) Math.min(buffer.length, end);
+
+            file.seek(end - length);
+            file.readFully(buffer, 0, length);
+
+            for (int i = length - 1; i >= 0; i--) {
+                if (buffer[i] == '\n') {
+                    return end - length + i;
+                }
+            }
+
+            end -= length;
+        }
+
+        return -1;
+    }
+
+    /**
+     * The beginning of a line in a file.
+     */
+    public static final class LineStart {
+        private final long offset;
+        private final int lineNumber;
+
+        LineStart(long offset, int lineNumber) {
+            this.offset = offset;
+            this.lineNumber = lineNumber;
+        }
+
+        /**
+         * Returns the position of the first byte of the line.
+         *
+         * @return the position of the line
+         */
+        public long getOffset() {
+            return this.offset;
+        }
+
+        /**
+         * Returns the number of the line.
+         *
+         * @return the number of the line
+         */
+        public int getLineNumber() {
+            return this.lineNumber;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package be.formatech.filecomparator.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Reads the lines of a stream as bytes and keeps the position of each line in
+ * the stream.<br>
+ * Like BufferedReader.readLine, a line is considered to be terminated by any
+ * one of a line feed ('\n'), a carriage return ('\r'), or a carriage return
+ * followed immediately by a line feed.
+ *
+ * @version $Id$
+ */
+public class OffsetLineReader implements Closeable {
+
+    /**
+     * The size of the buffer used to read the stream.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The stream to read.
+     */
+    private final InputStream in;
+
+    /**
+     * The bytes read from the stream and not consumed yet.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * The position of the next byte to consume in the buffer.
+     */
+    private int position;
+
+    /**
+     * The number of valid bytes in the buffer.
+     */
+    private int limit;
+
+    /**
+     * The position in the stream of the next byte to consume.
+     */
+    private long streamPosition;
+
+    /**
+     * The flag indicating if the previous line was terminated by a carriage
+     * return.
+     */
+    private boolean pendingCarriageReturn;
+
+    /**
+     * The bytes of the current line, without the line terminator.
+     */
+    private byte[] line = new byte[256];
+
+    /**
+     * The number of bytes of the current line.
+     */
+    private int length;
+
+    /**
+     * The position of the current line in the stream.
+     */
+    private long offset;
+
+    /**
+     * Initializes a newly created OffsetLineReader object.
+     *
+     * @param in             the stream to read
+     * @param streamPosition the position in the file of the first byte of the
+     *                       stream
+     */
+    public OffsetLineReader(InputStream in, long streamPosition) {
+        super();
+
+        this.in = in;
+        this.streamPosition = streamPosition;
+    }
+
+    /**
+     * Reads the next line.
+     *
+     * @return true if a line was read, false if the end of the stream has been
+     * reached
+     * @throws IOException if an I/O error occurs
+     */
+    public boolean readLine() throws IOException {
+        this.length = 0;
+        this.offset = this.streamPosition;
+        boolean read = false;
+
+        while (true) {
+            if (this.position == this.limit) {
+                this.limit = this.in.read(this.buffer);
+                this.position = 0;
+
+                if (this.limit <= 0) {
+                    this.limit = 0;
+                    return read;
+                }
+            }
+
+            final byte b = this.buffer[this.position++];
+            this.streamPosition++;
+
+            if (this.pendingCarriageReturn) {
+                this.pendingCarriageReturn = false;
+
+                if (b == '\n') {
+                    this.offset = this.streamPosition;
+                    continue;
+                }
+            }
+
+            if (b == '\n' || b == '\r') {
+                this.pendingCarriageReturn = b == '\r';
+                return true;
+            }
+
+            if (this.length == this.line.length) {
+                this.line = Arrays.copyOf(this.line, this.length * 2);
+            }
+
+            this.line[this.length++] = b;
+            read = true;
+        }
+    }
+
+    /**
+     * Returns the bytes of the current line. Only the first getLength() bytes
+     * are part of the line.
+     *
+     * @return the bytes of the current line
+     */
+    public byte[] getBytes() {
+        return this.line;
+    }
+
+    /**
+     * Returns the number of bytes of the current line, without the line
+     * terminator.
+     *
+     * @return the number of bytes of the current line
+     */
+    public int getLength() {
+        return this.length;
+    }
+
+    /**
+     * Returns the position of the first byte of the current line in the file.
+     *
+     * @return the position of the current line
+     */
+    public long getOffset() {
+        return this.offset;
+    }
+
+    /**
+     * Returns the position of the next line in the file.
+     *
+     * @return the position of the next line
+     */
+    public long getNextOffset() {
+        return this.streamPosition;
+    }
+
+    /**
+     * Returns the current line as a String.
+     *
+     * @param charset the charset used to decode the line
+     * @return the current line
+     */
+    public String getLine(Charset charset) {
+        return new String(this.line, 0, this.length, charset);
+    }
+
+    /**
+     * Computes a 64 bits hash of the bytes of the current line.
+     *
+     * @return the hash of the current line
+     */
+    public long hashLine() {
+        long hash = 0xcbf29ce484222325L;
+
+        for (int i = 0; i < this.length; i++) {
+            hash ^= this.line[i] & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    /**
+     * Closes the stream.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void close() throws IOException {
+        this.in.close();
+    }
+}
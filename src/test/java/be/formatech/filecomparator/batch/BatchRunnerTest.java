@@ -0,0 +1,149 @@
+package be.formatech.filecomparator.batch;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The exit code of the batch must tell whether the files match, differ or
+ * could not be compared, the worst profile giving the exit code.
+ */
+public class BatchRunnerTest {
+    private static final String CONTENT = "a;1;x\nb;2;y\nc;3;z\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    private String file;
+
+    private String copy;
+
+    private String changed;
+
+    @Before
+    public void setUp() throws Exception {
+        this.file = this.write("file.csv", CONTENT);
+        this.copy = this.write("copy.csv", CONTENT);
+        this.changed = this.write("changed.csv", CONTENT.replace("2;y", "2;Y"));
+    }
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testIdenticalFiles() throws Exception {
+        assertEquals(BatchRunner.EXIT_IDENTICAL, this.run(this.profile(this.file, this.copy)));
+        assertTrue(this.getOutput(), this.getOutput().contains("Files exactly match"));
+    }
+
+    @Test
+    public void testDifferences() throws Exception {
+        assertEquals(BatchRunner.EXIT_DIFFERENCES, this.run(this.profile(this.file, this.copy),
+                this.profile(this.file, this.changed)));
+        assertTrue(this.getOutput(), this.getOutput().contains("==== Profile 2 : " + this.file
+                + " - " + this.changed));
+        assertTrue(this.getOutput(), this.getOutput().contains("1 difference(s) found"));
+    }
+
+    @Test
+    public void testDirectoryDifferences() throws Exception {
+        final File directory1 = this.folder.newFolder("first");
+        final File directory2 = this.folder.newFolder("second");
+
+        assertTrue(new File(this.file).renameTo(new File(directory1, "file.csv")));
+        assertTrue(new File(this.changed).renameTo(new File(directory2, "file.csv")));
+
+        assertEquals(BatchRunner.EXIT_DIFFERENCES, this.run(this.profile(directory1.getPath(),
+                directory2.getPath())));
+        assertTrue(this.getOutput(), this.getOutput().contains("1 different file(s)"));
+    }
+
+    @Test
+    public void testMissingFile() throws Exception {
+        final String missing = new File(this.folder.getRoot(), "missing.csv").getPath();
+
+        assertEquals(BatchRunner.EXIT_ERROR, this.run(this.profile(this.file, missing)));
+        assertTrue(this.getOutput(), this.getOutput().contains("Error: File " + missing
+                + " doesn't seem to exist"));
+    }
+
+    @Test
+    public void testErrorAndDifferences() throws Exception {
+        // an error wins over the differences of the other profiles
+        assertEquals(BatchRunner.EXIT_ERROR, this.run(this.profile(this.file, this.changed),
+                this.profile(this.file, this.copy, "-strategy", "unknown"),
+                this.profile(this.file, this.copy)));
+        assertTrue(this.getOutput(), this.getOutput().contains("1 difference(s) found"));
+        assertTrue(this.getOutput(), this.getOutput().contains("Error: Unknown strategy"));
+    }
+
+    private int run(String[]... profiles) throws Exception {
+        final List<Map<String, String>> parsed = BatchRunner.parseArguments(concat(profiles));
+
+        assertEquals(profiles.length, parsed.size());
+
+        return new BatchRunner(new PrintStream(this.out, true)).run(parsed);
+    }
+
+    private String getOutput() {
+        return this.out.toString();
+    }
+
+    private String[] profile(String filename1, String filename2, String... options) {
+        final String[] profile = new String[6 + options.length];
+
+        profile[0] = "-firstFile";
+        profile[1] = filename1;
+        profile[2] = "-secondFile";
+        profile[3] = filename2;
+        profile[4] = "-separator";
+        profile[5] = ";";
+        System.arraycopy(options, 0, profile, 6, options.length);
+
+        return profile;
+    }
+
+    private static String[] concat(String[][] profiles) {
+        int length = 0;
+
+        for (String[] profile : profiles) {
+            length += profile.length;
+        }
+
+        final String[] result = new String[length];
+        int index = 0;
+
+        for (String[] profile : profiles) {
+            System.arraycopy(profile, 0, result, index, profile.length);
+            index += profile.length;
+        }
+
+        return result;
+    }
+
+    private String write(String name, String content) throws Exception {
+        final File created = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(created);
+
+        writer.print(content);
+        writer.close();
+        return created.getPath();
+    }
+}
@@ -0,0 +1,175 @@
+package be.formatech.filecomparator.comparator;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.progress.Progress;
+import be.formatech.filecomparator.comparator.progress.ProgressListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentComparisonTest {
+    private static final String CANCELLED = "Comparison cancelled by the user";
+
+    private static final int JOBS = 48;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testConcurrentComparisons() throws Exception {
+        final List<String[]> pairs = new ArrayList<String[]>();
+
+        pairs.add(this.createPair("small", 200, 3, 1));
+        pairs.add(this.createPair("medium", 5000, 10, 2));
+        pairs.add(this.createPair("identical", 3000, 0, 3));
+        pairs.add(this.createPair("large", 30000, 5, 4));
+
+        final List<String> expected = new ArrayList<String>();
+
+        for (int i = 0; i < JOBS; i++) {
+            final String[] pair = pairs.get(i % pairs.size());
+            expected.add(newComparator(i).compare(pair[0], pair[1]));
+        }
+
+        ParsedFileCache.getInstance().clear();
+
+        final ExecutorService pool = Executors.newFixedThreadPool(16);
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Future<String>> results = new ArrayList<Future<String>>();
+        final List<Comparator> comparators = new ArrayList<Comparator>();
+        final List<CountDownLatch> running = new ArrayList<CountDownLatch>();
+
+        try {
+            for (int i = 0; i < JOBS; i++) {
+                final String[] pair = pairs.get(i % pairs.size());
+                final Comparator comparator = newComparator(i);
+                final CountDownLatch started = new CountDownLatch(1);
+
+                // the first progress tells that the comparison is running
+                comparator.setProgressListener(new ProgressListener() {
+                    @Override
+                    public void progressChanged(Progress progress) {
+                        started.countDown();
+                    }
+                });
+
+                comparators.add(comparator);
+                running.add(started);
+                results.add(pool.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        start.await();
+
+                        try {
+                            return comparator.compare(pair[0], pair[1]);
+                        } finally {
+                            started.countDown();
+                        }
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            // every third job is cancelled while the others keep running
+            for (int i = 0; i < JOBS; i += 3) {
+                assertTrue(running.get(i).await(5, TimeUnit.MINUTES));
+                comparators.get(i).cancel();
+            }
+
+            for (int i = 0; i < JOBS; i++) {
+                final String result = results.get(i).get(5, TimeUnit.MINUTES);
+
+                if (i % 3 == 0) {
+                    assertTrue("Job " + i + " returned " + result, CANCELLED.equals(result)
+                            || expected.get(i).equals(result));
+                } else {
+                    assertEquals("Job " + i, expected.get(i), result);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testSerializedComparator() throws Exception {
+        final String[] pair = this.createPair("serialized", 3000, 5, 5);
+        final FileComparator comparator = (FileComparator) newComparator(0);
+
+        comparator.setProjection(ColumnProjection.of(Collections.singleton(2), null));
+
+        final String expected = comparator.compare(pair[0], pair[1]);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final ObjectOutputStream out = new ObjectOutputStream(bytes);
+
+        out.writeObject(comparator);
+        out.close();
+
+        final ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes
+                .toByteArray()));
+        final Comparator copy = (Comparator) in.readObject();
+
+        in.close();
+        ParsedFileCache.getInstance().clear();
+
+        assertEquals(expected, copy.compare(pair[0], pair[1]));
+    }
+
+    private static Comparator newComparator(int job) {
+        return ComparatorFactory.getInstance().getComparator(";", new TreeSet<Integer>(),
+                new TreeSet<Integer>(), job % 2 == 1);
+    }
+
+    private String[] createPair(String name, int lines, int differences, long seed)
+            throws Exception {
+        final Random random = new Random(seed);
+        final File file1 = this.folder.newFile(name + "1.txt");
+        final File file2 = this.folder.newFile(name + "2.txt");
+        final PrintWriter writer1 = new PrintWriter(file1);
+        final PrintWriter writer2 = new PrintWriter(file2);
+
+        try {
+            for (int i = 0; i < lines; i++) {
+                final String line = "ID" + i + ";" + random.nextInt(1000) + ";"
+                        + (1 + random.nextInt(28)) + "/0" + (1 + random.nextInt(9)) + "/20"
+                        + (10 + random.nextInt(10)) + ";some text value " + random.nextInt(1000);
+
+                writer1.println(line);
+
+                if (i % (lines / Math.max(1, differences)) == 7 && differences > 0) {
+                    writer2.println(line + "X");
+                } else {
+                    writer2.println(line);
+                }
+            }
+        } finally {
+            writer1.close();
+            writer2.close();
+        }
+
+        return new String[]{file1.getPath(), file2.getPath()};
+    }
+}
@@ -0,0 +1,152 @@
+package be.formatech.filecomparator.comparator;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A line that has no counterpart left in the other file must be reported,
+ * in both directions, by every strategy of an unordered comparison.
+ */
+public class MissingLinesTest {
+    private static final String STRATEGY = "\nStrategy : ";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testInsertedLine() throws Exception {
+        final List<String> lines = createLines(50);
+        final List<String> inserted = new ArrayList<String>(lines);
+
+        inserted.add(25, "EXTRA;0;inserted");
+
+        final String longer = this.write("inserted1.txt", inserted);
+        final String shorter = this.write("inserted2.txt", lines);
+
+        this.assertMissing(longer, shorter, "Line 26 : Not present in file 2\n");
+        this.assertMissing(shorter, longer, "Line 26 : Not present in file 1\n");
+    }
+
+    @Test
+    public void testDuplicatedLine() throws Exception {
+        final List<String> lines = createLines(50);
+        final List<String> duplicated = new ArrayList<String>(lines);
+
+        duplicated.add(10, lines.get(9));
+
+        final String longer = this.write("duplicated1.txt", duplicated);
+        final String shorter = this.write("duplicated2.txt", lines);
+
+        // the second occurence of the line is the one left
+        this.assertMissing(longer, shorter, "Line 11 : Not present in file 2\n");
+        this.assertMissing(shorter, longer, "Line 11 : Not present in file 1\n");
+    }
+
+    @Test
+    public void testInsertedAndEditedLines() throws Exception {
+        final List<String> lines = createLines(50);
+        final List<String> edited = new ArrayList<String>(lines);
+
+        // the edited line is near its line of the second file, the inserted
+        // line comes after it and finds no line left in the second file
+        edited.set(40, "ID40;40;value 41");
+        edited.add(45, "EXTRA;0;inserted");
+
+        final String filename1 = this.write("edited1.txt", edited);
+        final String filename2 = this.write("edited2.txt", lines);
+
+        for (Strategy strategy : unorderedStrategies()) {
+            final String result = compare(filename1, filename2, strategy);
+
+            assertTrue(label(strategy) + result, result.contains(
+                    "Line 46 : Not present in file 2\n"));
+            assertTrue(label(strategy) + result, result.contains("Line 41, field 3 : value 41"));
+            assertTrue(label(strategy) + result, result.contains("\n2 difference(s) found\n"));
+        }
+    }
+
+    /**
+     * Checks that every strategy reports the missing line as the only
+     * difference.
+     */
+    private void assertMissing(String filename1, String filename2, String expected) {
+        for (Strategy strategy : unorderedStrategies()) {
+            final String result = compare(filename1, filename2, strategy);
+
+            assertEquals(label(strategy), expected + "\n1 difference(s) found\n", result);
+        }
+    }
+
+    private static List<Strategy> unorderedStrategies() {
+        final List<Strategy> strategies = new ArrayList<Strategy>();
+
+        // the planned strategy
+        strategies.add(null);
+
+        for (Strategy strategy : Strategy.values()) {
+            if (strategy != Strategy.IDENTICAL && strategy != Strategy.KEY_JOIN) {
+                strategies.add(strategy);
+            }
+        }
+
+        return strategies;
+    }
+
+    private static String label(Strategy strategy) {
+        return strategy == null ? "planned" : strategy.getLabel();
+    }
+
+    /**
+     * Compares the files and returns the differences, without the strategy.
+     */
+    private static String compare(String filename1, String filename2, Strategy strategy) {
+        final FileComparator comparator = (FileComparator) ComparatorFactory.getInstance()
+                .getComparator(";", null, null, false);
+
+        comparator.setStrategy(strategy);
+
+        final String result = comparator.compare(filename1, filename2);
+        final int end = result.indexOf(STRATEGY);
+
+        return end < 0 ? result : result.substring(0, end);
+    }
+
+    private static List<String> createLines(int count) {
+        final List<String> lines = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            lines.add("ID" + i + ";" + i + ";value " + i);
+        }
+
+        return lines;
+    }
+
+    private String write(String name, List<String> lines) throws Exception {
+        final File file = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(file);
+
+        for (String line : lines) {
+            writer.println(line);
+        }
+
+        writer.close();
+        return file.getPath();
+    }
+}
@@ -0,0 +1,278 @@
+package be.formatech.filecomparator.comparator;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import be.formatech.filecomparator.comparator.snapshot.FingerprintSnapshot;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.PrintWriter;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every strategy but IDENTICAL, that only gives the first byte that differs,
+ * and KEY_JOIN, that pairs the lines by their first field, must give the
+ * expected differences for the same files : the ones of the edited line, the
+ * deleted line, the inserted line and the moved block of lines.
+ */
+public class StrategyConsistencyTest {
+    private static final String STRATEGY = "\nStrategy : ";
+
+    private static final String INSERTED = "NEW;1;name2;01/01/2013;3.0;some text value 4";
+
+    private static final String LIMIT = "There is more than 1000 differences";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testUnorderedStrategies() throws Exception {
+        final String[] pair = this.createPair("small", 3000, 1);
+
+        this.assertSameDifferences(pair, false);
+    }
+
+    @Test
+    public void testUnorderedStrategiesOnBigFiles() throws Exception {
+        final String[] pair = this.createPair("big", 30000, 2);
+
+        assertTrue(new File(pair[0]).length() > 1024 * 1024);
+        this.assertSameDifferences(pair, false);
+    }
+
+    @Test
+    public void testOrderedStrategies() throws Exception {
+        final String[] pair = this.createPair("ordered", 3000, 3);
+
+        this.assertSameDifferences(pair, true);
+    }
+
+    @Test
+    public void testCachedFiles() throws Exception {
+        final String[] pair = this.createPair("cached", 3000, 4);
+        final String expected = this.compare(pair, false, Strategy.EXTERNAL_SORT);
+
+        for (String filename : pair) {
+            ParsedFileCache.getInstance().getOrParse(filename, ";", dates(), numbers(),
+                    new CancellationToken());
+        }
+
+        assertEquals(expected, this.compare(pair, false, Strategy.IN_MEMORY_HASH));
+    }
+
+    @Test
+    public void testSnapshots() throws Exception {
+        final String[] pair = this.createPair("snapshot", 3000, 5);
+        final String expected = this.compare(pair, false, Strategy.EXTERNAL_SORT);
+
+        FingerprintSnapshot.save(pair[0], ";", dates(), numbers());
+        assertEquals(expected, this.compare(pair, false, Strategy.IN_MEMORY_HASH));
+
+        FingerprintSnapshot.save(pair[1], ";", dates(), numbers());
+        assertEquals(expected, this.compare(pair, false, Strategy.IN_MEMORY_HASH));
+    }
+
+    private void assertSameDifferences(String[] pair, boolean ordered) throws Exception {
+        final String expected = this.compare(pair, ordered, Strategy.IN_MEMORY_HASH);
+
+        assertExpectedDifferences(pair, ordered, expected);
+        assertEquals(expected, this.compare(pair, ordered, null));
+
+        for (Strategy strategy : Strategy.values()) {
+            if (strategy != Strategy.IDENTICAL && strategy != Strategy.KEY_JOIN) {
+                assertEquals(strategy.getLabel(), expected, this.compare(pair, ordered,
+                        strategy));
+            }
+        }
+    }
+
+    /**
+     * Checks the lines and fields of the differences, worked out from the
+     * files without comparing them.<br>
+     * Without order, the moved block is found elsewhere, the edited line is
+     * compared with its edited copy and the deleted line, having no line
+     * left, with the inserted line. With order, the lines are compared at the
+     * same place, up to the limit of differences.
+     */
+    private static void assertExpectedDifferences(String[] pair, boolean ordered,
+                                                  String result) throws Exception {
+        final List<String> lines1 = read(pair[0]);
+        final List<String> lines2 = read(pair[1]);
+        final List<String> expected = new ArrayList<String>();
+
+        if (ordered) {
+            for (int i = 0; i < lines1.size() && expected.size() <= FileComparator
+                    .MAXIMUM_DIFFERENCES; i++) {
+                addDifferentFields(expected, i + 1, lines1.get(i), lines2.get(i));
+            }
+
+            assertEquals(expected.size() > FileComparator.MAXIMUM_DIFFERENCES, result
+                    .contains(LIMIT));
+        } else {
+            final int size = lines1.size();
+            final String edited = lines1.get(size / 4);
+            final int editedNumber = lines2.indexOf(edited.replace(";name", ";nome")) + 1;
+            final int insertedNumber = lines2.indexOf(INSERTED) + 1;
+            final String name = edited.split(";")[2];
+
+            assertTrue(result, result.contains("Line " + editedNumber + ", field 3 : " + name
+                    + " "));
+            assertTrue(result, result.contains(name.replace("name", "nome") + "\n"));
+
+            addDifferentFields(expected, editedNumber, edited, lines2.get(editedNumber - 1));
+            addDifferentFields(expected, insertedNumber, lines1.get(size / 2), INSERTED);
+            assertTrue(result, result.contains("\n" + expected.size() + " difference(s) found"));
+        }
+
+        assertEquals(expected, getDifferentFields(result));
+    }
+
+    /**
+     * Adds the fields that differ between two lines, the dates and the
+     * numbers being written the same way in both files.
+     */
+    private static void addDifferentFields(List<String> differences, int lineNumber,
+                                           String line1, String line2) {
+        final String[] fields1 = line1.split(";");
+        final String[] fields2 = line2.split(";");
+
+        for (int i = 0; i < fields1.length; i++) {
+            final boolean different = numbers().contains(i + 1) ? new BigDecimal(fields1[i])
+                    .compareTo(new BigDecimal(fields2[i])) != 0 : !fields1[i].equals(fields2[i]);
+
+            if (different) {
+                differences.add("Line " + lineNumber + ", field " + (i + 1));
+            }
+        }
+    }
+
+    /**
+     * Returns the line and field of each difference of a result.
+     */
+    private static List<String> getDifferentFields(String result) {
+        final List<String> differences = new ArrayList<String>();
+
+        for (String line : result.split("\n")) {
+            if (line.startsWith("Line ")) {
+                differences.add(line.substring(0, line.indexOf(" : ")));
+            }
+        }
+
+        return differences;
+    }
+
+    private static List<String> read(String filename) throws Exception {
+        final BufferedReader reader = new BufferedReader(new FileReader(filename));
+        final List<String> lines = new ArrayList<String>();
+
+        try {
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return lines;
+    }
+
+    /**
+     * Compares the files and returns the differences, without the strategy.
+     */
+    private String compare(String[] pair, boolean ordered, Strategy strategy) {
+        final FileComparator comparator = (FileComparator) ComparatorFactory.getInstance()
+                .getComparator(";", dates(), numbers(), ordered);
+
+        comparator.setStrategy(strategy);
+
+        final String result = comparator.compare(pair[0], pair[1]);
+        final int end = result.indexOf(STRATEGY);
+
+        return end < 0 ? result : result.substring(0, end);
+    }
+
+    private static Set<Integer> dates() {
+        final Set<Integer> dates = new TreeSet<Integer>();
+
+        dates.add(4);
+        return dates;
+    }
+
+    private static Set<Integer> numbers() {
+        final Set<Integer> numbers = new TreeSet<Integer>();
+
+        numbers.add(5);
+        return numbers;
+    }
+
+    /**
+     * Writes two files whose last two thirds copy lines of the first third,
+     * the second file having an edited line, a deleted line, an inserted line
+     * and a moved block of lines.
+     */
+    private String[] createPair(String name, int lines, long seed) throws Exception {
+        final Random random = new Random(seed);
+        final List<String> content = new ArrayList<String>();
+
+        for (int i = 0; i < lines; i++) {
+            if (i > lines / 3) {
+                content.add(content.get(random.nextInt(lines / 3)));
+            } else {
+                content.add("ID" + i + ";" + random.nextInt(1000) + ";name" + random.nextInt(50)
+                        + ";" + (1 + random.nextInt(28)) + "/03/2013;" + random.nextInt(100000)
+                        + "." + random.nextInt(100) + ";some text value " + random.nextInt(1000));
+            }
+        }
+
+        final File file1 = this.folder.newFile(name + "1.txt");
+        final File file2 = this.folder.newFile(name + "2.txt");
+        final PrintWriter writer1 = new PrintWriter(file1);
+        final PrintWriter writer2 = new PrintWriter(file2);
+        final List<String> moved = content.subList(lines / 10, lines / 10 + 100);
+
+        try {
+            for (int i = 0; i < lines; i++) {
+                writer1.println(content.get(i));
+
+                if (i == lines / 4) {
+                    writer2.println(content.get(i).replace(";name", ";nome"));
+                } else if (i != lines / 2 && (i < lines / 10 || i >= lines / 10 + 100)) {
+                    writer2.println(content.get(i));
+                }
+
+                if (i == 3 * lines / 4) {
+                    writer2.println(INSERTED);
+                }
+            }
+
+            for (String line : moved) {
+                writer2.println(line);
+            }
+        } finally {
+            writer1.close();
+            writer2.close();
+        }
+
+        return new String[]{file1.getPath(), file2.getPath()};
+    }
+}
@@ -0,0 +1,92 @@
+package be.formatech.filecomparator.comparator.block;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A BlockedBloomFilter must find every fingerprint added to it and only a few
+ * of the other ones.
+ */
+public class BlockedBloomFilterTest {
+
+    @Test
+    public void testNoFalseNegative() {
+        final Random random = new Random(1);
+
+        for (int size : new int[] {0, 1, 50, 1000, 100000}) {
+            final long[] fingerprints = new long[size];
+            final BlockedBloomFilter filter = new BlockedBloomFilter(size);
+
+            for (int i = 0; i < size; i++) {
+                fingerprints[i] = random.nextLong();
+                filter.add(fingerprints[i]);
+            }
+
+            for (long fingerprint : fingerprints) {
+                assertTrue(size + " fingerprint(s)", filter.mightContain(fingerprint));
+            }
+        }
+    }
+
+    @Test
+    public void testCloseFingerprints() {
+        // fingerprints that only differ by their high or low bits
+        final BlockedBloomFilter filter = new BlockedBloomFilter(2000);
+
+        for (long i = 0; i < 1000; i++) {
+            filter.add(i);
+            filter.add(i << 40);
+        }
+
+        for (long i = 0; i < 1000; i++) {
+            assertTrue(filter.mightContain(i));
+            assertTrue(filter.mightContain(i << 40));
+        }
+    }
+
+    @Test
+    public void testFalsePositiveRate() {
+        final Random random = new Random(2);
+        final Set<Long> added = new HashSet<Long>();
+        final BlockedBloomFilter filter = new BlockedBloomFilter(10000);
+
+        while (added.size() < 10000) {
+            final long fingerprint = random.nextLong();
+
+            added.add(fingerprint);
+            filter.add(fingerprint);
+        }
+
+        int falsePositives = 0;
+        int tried = 0;
+
+        while (tried < 100000) {
+            final long fingerprint = random.nextLong();
+
+            if (!added.contains(fingerprint)) {
+                tried++;
+
+                if (filter.mightContain(fingerprint)) {
+                    falsePositives++;
+                }
+            }
+        }
+
+        // about 2% are expected
+        assertTrue(falsePositives + " false positive(s)", falsePositives < tried / 20);
+    }
+
+    @Test
+    public void testEmptyFilter() {
+        final BlockedBloomFilter filter = new BlockedBloomFilter(0);
+
+        assertFalse(filter.mightContain(0));
+        assertFalse(filter.mightContain(42));
+    }
+}
@@ -0,0 +1,198 @@
+package be.formatech.filecomparator.comparator.block;
+
+import be.formatech.filecomparator.comparator.Comparator;
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.element.ColumnDictionaries;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.Line;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The BloomReducer must keep exactly the lines that have no identical line in
+ * the other file, with their numbers in the whole file, whether the identical
+ * blocks were skipped or not.
+ */
+public class BloomReducerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAllBlocks() throws Exception {
+        final List<String> lines1 = createLines(5000, 1);
+        final List<String> lines2 = edit(lines1);
+        final String filename1 = this.write("all1.csv", lines1);
+        final String filename2 = this.write("all2.csv", lines2);
+        final BloomReducer reducer = reducer();
+
+        reducer.reduce(filename1, BlockChecksums.compute(filename1).getBlocks(), filename2,
+                BlockChecksums.compute(filename2).getBlocks());
+
+        assertReduced(lines1, lines2, reducer.getFirstFileLines());
+        assertReduced(lines2, lines1, reducer.getSecondFileLines());
+        assertEquals(lines1.size() - reducer.getFirstFileLines().size(), reducer
+                .getMatchedLines());
+    }
+
+    @Test
+    public void testBlocksThatDiffer() throws Exception {
+        final List<String> lines1 = createLines(20000, 2);
+        final List<String> lines2 = edit(lines1);
+        final String filename1 = this.write("differ1.csv", lines1);
+        final String filename2 = this.write("differ2.csv", lines2);
+        final IdenticalBlocks identical = IdenticalBlocks.match(BlockChecksums
+                .compute(filename1), BlockChecksums.compute(filename2));
+        final BloomReducer reducer = reducer();
+
+        assertTrue(identical.getSkippedLines() > lines1.size() / 2);
+
+        reducer.reduce(filename1, identical.getFirstDifferent(), filename2, identical
+                .getSecondDifferent());
+
+        assertReduced(lines1, lines2, reducer.getFirstFileLines());
+        assertReduced(lines2, lines1, reducer.getSecondFileLines());
+        assertEquals(lines1.size() - reducer.getFirstFileLines().size(), identical
+                .getSkippedLines() + reducer.getMatchedLines());
+    }
+
+    @Test
+    public void testDuplicateLines() throws Exception {
+        final List<String> lines1 = new ArrayList<String>();
+        final List<String> lines2 = new ArrayList<String>();
+
+        for (int i = 0; i < 300; i++) {
+            lines1.add("dup;" + (i % 7));
+            lines2.add("dup;" + (i % 5));
+        }
+
+        final String filename1 = this.write("dup1.csv", lines1);
+        final String filename2 = this.write("dup2.csv", lines2);
+        final BloomReducer reducer = reducer();
+
+        reducer.reduce(filename1, BlockChecksums.compute(filename1).getBlocks(), filename2,
+                BlockChecksums.compute(filename2).getBlocks());
+
+        assertReduced(lines1, lines2, reducer.getFirstFileLines());
+        assertReduced(lines2, lines1, reducer.getSecondFileLines());
+    }
+
+    /**
+     * Checks that each Line kept is the line of the file at its number and
+     * that the Lines kept are the lines having no identical line left in the
+     * other file.
+     */
+    private static void assertReduced(List<String> lines, List<String> others,
+                                      LineTable reduced) {
+        final Map<String, Integer> expected = count(lines);
+
+        for (Map.Entry<String, Integer> entry : count(others).entrySet()) {
+            final Integer count = expected.get(entry.getKey());
+
+            if (count != null) {
+                expected.put(entry.getKey(), count - entry.getValue());
+            }
+        }
+
+        final Map<String, Integer> actual = new HashMap<String, Integer>();
+
+        for (Map.Entry<Integer, Line> entry : reduced.entrySet()) {
+            final String line = entry.getValue().getLine();
+
+            assertEquals("line " + entry.getKey(), lines.get(entry.getKey() - 1), line);
+            actual.put(line, actual.containsKey(line) ? actual.get(line) + 1 : 1);
+        }
+
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            final Integer count = actual.get(entry.getKey());
+
+            assertEquals(entry.getKey(), Math.max(entry.getValue(), 0), count == null ? 0
+                    : count.intValue());
+        }
+
+        assertTrue(expected.keySet().containsAll(actual.keySet()));
+    }
+
+    private static Map<String, Integer> count(List<String> lines) {
+        final Map<String, Integer> counts = new HashMap<String, Integer>();
+
+        for (String line : lines) {
+            counts.put(line, counts.containsKey(line) ? counts.get(line) + 1 : 1);
+        }
+
+        return counts;
+    }
+
+    private static BloomReducer reducer() {
+        final Comparator comparator = ComparatorFactory.getInstance().getComparator(";", null,
+                null, false);
+
+        return new BloomReducer(comparator, ColumnDictionaries.forSettings(";", null, null,
+                ColumnProjection.ALL));
+    }
+
+    /**
+     * Returns lines of which about one in ten is a copy of a previous one.
+     */
+    private static List<String> createLines(int count, long seed) {
+        final Random random = new Random(seed);
+        final List<String> lines = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && random.nextInt(10) == 0) {
+                lines.add(lines.get(random.nextInt(i)));
+            } else {
+                lines.add(i + ";" + random.nextInt(1000) + ";value " + random.nextInt());
+            }
+        }
+
+        return lines;
+    }
+
+    /**
+     * Returns the lines with an edited line, a deleted line, an inserted
+     * line, a copied line and a moved block of lines.
+     */
+    private static List<String> edit(List<String> lines) {
+        final List<String> edited = new ArrayList<String>(lines);
+        final int size = lines.size();
+
+        edited.set(size / 5, edited.get(size / 5) + "x");
+        edited.remove(size / 4);
+        edited.add(size / 3, "inserted;0;line");
+        edited.add(size / 2, lines.get(10));
+
+        final List<String> moved = new ArrayList<String>(edited.subList(size / 2 + 100,
+                size / 2 + 200));
+
+        edited.subList(size / 2 + 100, size / 2 + 200).clear();
+        edited.addAll(size / 10, moved);
+
+        return edited;
+    }
+
+    private String write(String name, List<String> lines) throws Exception {
+        final File file = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(file);
+
+        for (String line : lines) {
+            writer.println(line);
+        }
+
+        writer.close();
+        return file.getPath();
+    }
+}
@@ -0,0 +1,204 @@
+package be.formatech.filecomparator.comparator.cache;
+
+import be.formatech.filecomparator.comparator.CancellationToken;
+import be.formatech.filecomparator.comparator.element.ColumnProjection;
+import be.formatech.filecomparator.comparator.element.LineTable;
+import be.formatech.filecomparator.comparator.metrics.ComparisonMetrics;
+import be.formatech.filecomparator.comparator.progress.ProgressTracker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The cache must stay under its maximum size, must not give the Lines of a
+ * file that changed and must parse a file once for the comparisons asking
+ * for it at the same time.
+ */
+public class ParsedFileCacheTest {
+    private static final String SEPARATOR = ";";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ParsedFileCache cache = ParsedFileCache.getInstance();
+
+    private long maximumSize;
+
+    @Before
+    public void setUp() {
+        this.maximumSize = this.cache.getMaximumSize();
+        this.cache.clear();
+    }
+
+    @After
+    public void tearDown() {
+        this.cache.clear();
+        this.cache.setMaximumSize(this.maximumSize);
+    }
+
+    @Test
+    public void testEvictionBySize() throws Exception {
+        final String filename1 = this.createFile("evicted1.csv", 1000, "a");
+        final String filename2 = this.createFile("evicted2.csv", 1000, "b");
+        final String filename3 = this.createFile("evicted3.csv", 1000, "c");
+
+        this.parse(filename1);
+
+        final long fileSize = this.cache.getCurrentSize();
+
+        assertTrue(fileSize > 0);
+
+        // room for two files of the same size
+        this.cache.setMaximumSize(fileSize * 5 / 2);
+        this.parse(filename2);
+        // the first file becomes the most recently used
+        this.parse(filename1);
+        this.parse(filename3);
+
+        assertEquals(2, this.cache.size());
+        assertTrue(this.cache.isCached(filename1, SEPARATOR, null, null));
+        assertFalse(this.cache.isCached(filename2, SEPARATOR, null, null));
+        assertTrue(this.cache.isCached(filename3, SEPARATOR, null, null));
+        assertTrue(this.cache.getCurrentSize() <= this.cache.getMaximumSize());
+
+        // a smaller maximum size evicts the least recently used file
+        this.cache.setMaximumSize(fileSize * 3 / 2);
+
+        assertEquals(1, this.cache.size());
+        assertTrue(this.cache.isCached(filename3, SEPARATOR, null, null));
+        assertEquals(fileSize, this.cache.getCurrentSize());
+
+        this.cache.setMaximumSize(0);
+
+        assertEquals(0, this.cache.size());
+        assertEquals(0, this.cache.getCurrentSize());
+    }
+
+    @Test
+    public void testTooBigFile() throws Exception {
+        final String filename = this.createFile("big.csv", 1000, "a");
+
+        this.cache.setMaximumSize(1000);
+
+        assertEquals(1000, this.parse(filename).size());
+        assertEquals(0, this.cache.size());
+        assertEquals(0, this.cache.getCurrentSize());
+    }
+
+    @Test
+    public void testInvalidationOnLengthChange() throws Exception {
+        final String filename = this.createFile("length.csv", 100, "a");
+        final File file = new File(filename);
+        final LineTable lines = this.parse(filename);
+
+        assertSame(lines, this.parse(filename));
+
+        final long lastModified = file.lastModified();
+
+        this.writeFile(file, 101, "a");
+        // only the length of the file tells that it changed
+        assertTrue(file.setLastModified(lastModified));
+
+        assertFalse(this.cache.isCached(filename, SEPARATOR, null, null));
+
+        final LineTable changed = this.parse(filename);
+
+        assertNotSame(lines, changed);
+        assertEquals(101, changed.size());
+    }
+
+    @Test
+    public void testInvalidationOnModificationTimeChange() throws Exception {
+        final String filename = this.createFile("modified.csv", 100, "a");
+        final File file = new File(filename);
+        final LineTable lines = this.parse(filename);
+
+        // same length, other content
+        this.writeFile(file, 100, "b");
+        assertTrue(file.setLastModified(file.lastModified() + 10000));
+
+        assertFalse(this.cache.isCached(filename, SEPARATOR, null, null));
+
+        final LineTable changed = this.parse(filename);
+
+        assertNotSame(lines, changed);
+        assertEquals("b0;0;value b0", changed.get(1).getLine());
+    }
+
+    @Test
+    public void testSingleParsing() throws Exception {
+        final String filename = this.createFile("shared.csv", 100000, "a");
+        final ComparisonMetrics metrics = new ComparisonMetrics();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        final List<Future<LineTable>> results = new ArrayList<Future<LineTable>>();
+
+        try {
+            for (int i = 0; i < 4; i++) {
+                results.add(executor.submit(new Callable<LineTable>() {
+                    @Override
+                    public LineTable call() throws Exception {
+                        start.await();
+                        return ParsedFileCacheTest.this.cache.getOrParse(filename, SEPARATOR,
+                                null, null, ColumnProjection.ALL, new CancellationToken(),
+                                metrics, ProgressTracker.NONE);
+                    }
+                }));
+            }
+
+            start.countDown();
+
+            final LineTable lines = results.get(0).get();
+
+            assertEquals(100000, lines.size());
+
+            for (Future<LineTable> result : results) {
+                assertSame(lines, result.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(1, metrics.getCacheMisses());
+        assertEquals(3, metrics.getCacheHits());
+    }
+
+    private LineTable parse(String filename) throws Exception {
+        return this.cache.getOrParse(filename, SEPARATOR, null, null, new CancellationToken());
+    }
+
+    private String createFile(String name, int count, String prefix) throws Exception {
+        final File file = this.folder.newFile(name);
+
+        this.writeFile(file, count, prefix);
+        return file.getPath();
+    }
+
+    private void writeFile(File file, int count, String prefix) throws Exception {
+        final PrintWriter writer = new PrintWriter(file);
+
+        for (int i = 0; i < count; i++) {
+            writer.println(prefix + i + SEPARATOR + i + SEPARATOR + "value " + prefix + i);
+        }
+
+        writer.close();
+    }
+}
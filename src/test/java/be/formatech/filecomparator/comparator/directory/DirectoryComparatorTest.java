@@ -0,0 +1,128 @@
+package be.formatech.filecomparator.comparator.directory;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The files of two directory trees must be paired by their relative path, and
+ * a file present in only one directory must be reported as missing in the
+ * other one.
+ */
+public class DirectoryComparatorTest {
+    private static final String CONTENT = "a;1;x\nb;2;y\nc;3;z\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testMissingFiles() throws Exception {
+        final File directory1 = this.folder.newFolder("first");
+        final File directory2 = this.folder.newFolder("second");
+
+        write(new File(directory1, "same.csv"), CONTENT);
+        write(new File(directory2, "same.csv"), CONTENT);
+        write(new File(directory1, "changed.csv"), CONTENT);
+        write(new File(directory2, "changed.csv"), CONTENT.replace("2;y", "2;Y"));
+        write(new File(directory1, "sub/nested.csv"), CONTENT);
+        write(new File(directory2, "sub/nested.csv"), CONTENT);
+        write(new File(directory1, "first-only.csv"), CONTENT);
+        write(new File(directory2, "sub/second-only.csv"), CONTENT);
+
+        final DirectoryComparison comparison = new DirectoryComparator(";", null, null, false)
+                .compare(directory1.getPath(), directory2.getPath());
+
+        assertEquals(5, comparison.getPairs().size());
+        assertFalse(comparison.isIdentical());
+
+        final List<FilePair> missingInSecond = comparison.getPairs(
+                FilePair.Status.MISSING_IN_SECOND);
+
+        assertEquals(1, missingInSecond.size());
+        assertEquals("first-only.csv", missingInSecond.get(0).getKey());
+        assertNull(missingInSecond.get(0).getSecondFile());
+        assertNull(missingInSecond.get(0).getFirstResult());
+
+        final List<FilePair> missingInFirst = comparison.getPairs(
+                FilePair.Status.MISSING_IN_FIRST);
+
+        assertEquals(1, missingInFirst.size());
+        assertEquals("sub/second-only.csv", missingInFirst.get(0).getKey());
+        assertNull(missingInFirst.get(0).getFirstFile());
+
+        final List<FilePair> different = comparison.getPairs(FilePair.Status.DIFFERENT);
+
+        assertEquals(1, different.size());
+        assertEquals("changed.csv", different.get(0).getKey());
+        assertTrue(different.get(0).getFirstResult(), different.get(0).getFirstResult()
+                .contains("Line 2, field 3 : y"));
+
+        final List<FilePair> identical = comparison.getPairs(FilePair.Status.IDENTICAL);
+
+        assertEquals(2, identical.size());
+        assertEquals("same.csv", identical.get(0).getKey());
+        assertEquals("sub/nested.csv", identical.get(1).getKey());
+
+        final String summary = comparison.getSummary();
+
+        assertTrue(summary, summary.contains("\n1 file(s) missing in " + directory2.getPath()
+                + "\n  first-only.csv\n"));
+        assertTrue(summary, summary.contains("\n1 file(s) missing in " + directory1.getPath()
+                + "\n  sub/second-only.csv\n"));
+    }
+
+    @Test
+    public void testPairingPattern() throws Exception {
+        final File directory1 = this.folder.newFolder("yesterday");
+        final File directory2 = this.folder.newFolder("today");
+
+        write(new File(directory1, "accounts_20140102.csv"), CONTENT);
+        write(new File(directory2, "accounts_20140103.csv"), CONTENT);
+        write(new File(directory1, "clients_20140102.csv"), CONTENT);
+
+        final DirectoryComparator comparator = new DirectoryComparator(";", null, null, true);
+
+        comparator.setPairingPattern(Pattern.compile("(.*)_\\d{8}(\\.csv)"));
+
+        final DirectoryComparison comparison = comparator.compare(directory1.getPath(),
+                directory2.getPath());
+
+        assertEquals(2, comparison.getPairs().size());
+        assertEquals("accounts.csv", comparison.getPairs(FilePair.Status.IDENTICAL).get(0)
+                .getKey());
+        assertEquals("clients.csv", comparison.getPairs(FilePair.Status.MISSING_IN_SECOND)
+                .get(0).getKey());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingDirectory() throws Exception {
+        new DirectoryComparator(";", null, null, false).compare(this.folder.getRoot().getPath(),
+                new File(this.folder.getRoot(), "missing").getPath());
+    }
+
+    private static void write(File file, String content) throws Exception {
+        file.getParentFile().mkdirs();
+
+        final PrintWriter writer = new PrintWriter(file);
+
+        writer.print(content);
+        writer.close();
+    }
+}
@@ -0,0 +1,108 @@
+package be.formatech.filecomparator.comparator.element;
+
+import be.formatech.filecomparator.utils.ComparatorUtility;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The values parsed by the dictionaries must be equivalent exactly when
+ * ComparatorUtility.fieldsAreEquivalent says so.
+ */
+public class ColumnDictionariesTest {
+
+    /**
+     * Equal numbers written differently.
+     */
+    private static final String[] NUMBERS = {"1.5", "1.50", "01.5", "1 000", "1000", "1000.0",
+            "1e3", "-2", "-2.0", "0", "0.0", "-0"};
+
+    /**
+     * The same dates in the formats of DateUtility, and other dates.
+     */
+    private static final String[] DATES = {"24/03/2013", "2013-03-24", "24-03-2013",
+            "20130324", "24/03/2013 10:15:00", "25/03/2013", "2013-03-25"};
+
+    /**
+     * Tokens that are both a number and a date, and the numbers and dates
+     * they may be compared with.
+     */
+    private static final String[] NUMBERS_AND_DATES = {"20130324", "20130324.0", "20130325",
+            "24/03/2013", "2013-03-25", "20 130 324"};
+
+    private static final String[] TEXTS = {"abc", "ABC", "", " ", "1,5", "N/A"};
+
+    @Test
+    public void testNumbers() {
+        assertSameEquivalences(NUMBERS);
+        assertTrue(areEquivalent("1.50", "1.5"));
+        assertTrue(areEquivalent("1 000", "1000"));
+        assertFalse(areEquivalent("1.5", "1.05"));
+    }
+
+    @Test
+    public void testDates() {
+        assertSameEquivalences(DATES);
+        assertTrue(areEquivalent("24/03/2013", "24-03-2013"));
+        assertTrue(areEquivalent("24-03-2013", "20130324"));
+        assertFalse(areEquivalent("24/03/2013", "25/03/2013"));
+    }
+
+    @Test
+    public void testNumbersAndDates() {
+        assertSameEquivalences(NUMBERS_AND_DATES);
+        assertTrue(areEquivalent("20130324", "20130324.0"));
+        assertFalse(areEquivalent("20130324", "20130325"));
+    }
+
+    @Test
+    public void testAllTokens() {
+        final String[] tokens = new String[NUMBERS.length + DATES.length
+                + NUMBERS_AND_DATES.length + TEXTS.length];
+        int index = 0;
+
+        for (String[] group : new String[][]{NUMBERS, DATES, NUMBERS_AND_DATES, TEXTS}) {
+            System.arraycopy(group, 0, tokens, index, group.length);
+            index += group.length;
+        }
+
+        assertSameEquivalences(tokens);
+    }
+
+    @Test
+    public void testCodes() {
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(";", null, null);
+        final int code = dictionaries.encode(0, "1.5");
+
+        assertEquals(code, dictionaries.encode(0, "1.5"));
+        assertNotEquals(code, dictionaries.encode(0, "1.50"));
+        assertEquals("1.5", dictionaries.decode(0, code));
+        assertEquals(2, dictionaries.size(0));
+        // the columns have their own dictionaries
+        assertEquals(0, dictionaries.size(1));
+    }
+
+    /**
+     * Checks every pair of tokens, in both orders, encoded in the same
+     * column.
+     */
+    private static void assertSameEquivalences(String[] tokens) {
+        for (String token1 : tokens) {
+            for (String token2 : tokens) {
+                assertEquals("\"" + token1 + "\" and \"" + token2 + "\"",
+                        ComparatorUtility.fieldsAreEquivalent(token1, token2),
+                        areEquivalent(token1, token2));
+            }
+        }
+    }
+
+    private static boolean areEquivalent(String token1, String token2) {
+        final ColumnDictionaries dictionaries = ColumnDictionaries.forSettings(";", null, null);
+
+        return dictionaries.areEquivalent(0, dictionaries.encode(0, token1),
+                dictionaries.encode(0, token2));
+    }
+}
@@ -0,0 +1,123 @@
+package be.formatech.filecomparator.comparator.element;
+
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A difference in a skipped column must not be reported, a difference in a
+ * compared column must be, whatever the strategy of the comparison.
+ */
+public class ColumnProjectionTest {
+    private static final String IGNORED_DIFFERENCE = "Line 11, field 4 : note 10 ";
+
+    private static final String COMPARED_DIFFERENCE = "Line 21, field 2 : 20 ";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String filename1;
+
+    private String filename2;
+
+    @Before
+    public void setUp() throws Exception {
+        final List<String> lines1 = new ArrayList<String>();
+        final List<String> lines2 = new ArrayList<String>();
+
+        for (int i = 0; i < 30; i++) {
+            lines1.add("ID" + i + ";" + i + ";value " + i + ";note " + i);
+            lines2.add(lines1.get(i));
+        }
+
+        lines2.set(10, "ID10;10;value 10;note X");
+        lines2.set(20, "ID20;99;value 20;note 20");
+
+        this.filename1 = this.write("projection1.txt", lines1);
+        this.filename2 = this.write("projection2.txt", lines2);
+    }
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testAllColumns() {
+        for (String result : this.compareAll(ColumnProjection.ALL)) {
+            assertTrue(result, result.contains(IGNORED_DIFFERENCE));
+            assertTrue(result, result.contains(COMPARED_DIFFERENCE));
+            assertTrue(result, result.contains("\n2 difference(s) found\n"));
+        }
+    }
+
+    @Test
+    public void testIgnoredColumn() {
+        final ColumnProjection projection = ColumnProjection.of(Collections.singleton(4), null);
+
+        for (String result : this.compareAll(projection)) {
+            assertFalse(result, result.contains("field 4"));
+            assertTrue(result, result.contains(COMPARED_DIFFERENCE));
+            assertTrue(result, result.contains("\n1 difference(s) found\n"));
+        }
+    }
+
+    @Test
+    public void testComparedColumn() {
+        final ColumnProjection projection = ColumnProjection.of(null, Collections.singleton(4));
+
+        for (String result : this.compareAll(projection)) {
+            assertTrue(result, result.contains(IGNORED_DIFFERENCE));
+            assertFalse(result, result.contains("field 2"));
+            assertTrue(result, result.contains("\n1 difference(s) found\n"));
+        }
+    }
+
+    /**
+     * Compares the files in order, and without order with each strategy.
+     */
+    private List<String> compareAll(ColumnProjection projection) {
+        final List<String> results = new ArrayList<String>();
+        final ComparatorFactory factory = ComparatorFactory.getInstance();
+
+        results.add(factory.getComparator(";", null, null, true, null, projection).compare(
+                this.filename1, this.filename2));
+        results.add(factory.getComparator(";", null, null, false, null, projection).compare(
+                this.filename1, this.filename2));
+
+        for (Strategy strategy : Strategy.values()) {
+            if (strategy != Strategy.IDENTICAL && strategy != Strategy.KEY_JOIN) {
+                results.add(factory.getComparator(";", null, null, false, strategy, projection)
+                        .compare(this.filename1, this.filename2));
+            }
+        }
+
+        return results;
+    }
+
+    private String write(String name, List<String> lines) throws Exception {
+        final File file = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(file);
+
+        for (String line : lines) {
+            writer.println(line);
+        }
+
+        writer.close();
+        return file.getPath();
+    }
+}
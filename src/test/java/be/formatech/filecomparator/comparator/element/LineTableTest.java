@@ -0,0 +1,263 @@
+package be.formatech.filecomparator.comparator.element;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A LineTable must behave like the sorted Map of Lines it replaces, whether
+ * the line numbers follow each other or not.
+ */
+public class LineTableTest {
+
+    @Test
+    public void testDenseLines() throws Exception {
+        final LineTable table = new LineTable();
+
+        // more Lines than the initial capacity, to grow the arrays and the index
+        for (int i = 5; i < 3005; i++) {
+            table.put(i, line("line;" + i));
+        }
+
+        assertEquals(3000, table.size());
+        assertNull(table.get(4));
+        assertNull(table.get(3005));
+        assertNull(table.get("5"));
+        assertEquals("line;5", table.get(5).getLine());
+        assertEquals("line;3004", table.get(3004).getLine());
+        assertTrue(table.containsKey(1000));
+        assertEquals(Integer.valueOf(2000), table.getKey(line("line;2000")));
+        assertNull(table.getKey(line("line;1")));
+
+        int expected = 5;
+
+        for (Map.Entry<Integer, Line> entry : table.entrySet()) {
+            assertEquals(Integer.valueOf(expected), entry.getKey());
+            assertEquals("line;" + expected, entry.getValue().getLine());
+            expected++;
+        }
+
+        assertEquals(3005, expected);
+    }
+
+    @Test
+    public void testSparseLines() throws Exception {
+        final LineTable table = new LineTable();
+
+        table.put(1, line("a"));
+        table.put(2, line("b"));
+        table.put(7, line("c"));
+        table.put(8, line("d"));
+        table.put(20, line("e"));
+
+        assertEquals(5, table.size());
+        assertEquals("b", table.get(2).getLine());
+        assertEquals("c", table.get(7).getLine());
+        assertEquals("e", table.get(20).getLine());
+        assertNull(table.get(3));
+        assertNull(table.get(19));
+        assertNull(table.get(21));
+        assertEquals(Integer.valueOf(8), table.getKey(line("d")));
+        assertEquals(Arrays.asList(1, 2, 7, 8, 20), new ArrayList<Integer>(table.keySet()));
+    }
+
+    @Test
+    public void testLinesPutInOrder() throws Exception {
+        final LineTable table = new LineTable();
+
+        table.put(3, line("a"));
+
+        try {
+            table.put(3, line("b"));
+            fail("A Line cannot be put twice");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        try {
+            table.put(2, line("b"));
+            fail("A Line cannot be put before the last one");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testOccurenceNumbers() throws Exception {
+        final LineTable table = new LineTable();
+
+        for (int i = 1; i <= 10; i++) {
+            final Line line = line(i % 3 == 0 ? "other" : "same");
+
+            table.numberOccurence(line);
+            table.put(i, line);
+        }
+
+        // "same" is on the lines 1, 2, 4, 5, 7, 8 and 10
+        assertEquals(1, table.get(1).getOccurenceNumber());
+        assertEquals(2, table.get(2).getOccurenceNumber());
+        assertEquals(1, table.get(3).getOccurenceNumber());
+        assertEquals(3, table.get(4).getOccurenceNumber());
+        assertEquals(7, table.get(10).getOccurenceNumber());
+        assertEquals(3, table.get(9).getOccurenceNumber());
+
+        assertEquals(Integer.valueOf(5), table.getKey(line("same", 4)));
+        assertEquals(Integer.valueOf(6), table.getKey(line("other", 2)));
+        assertNull(table.getKey(line("same", 8)));
+
+        // consumed Lines are still counted, so that the numbers stay unique
+        table.consume(10);
+
+        final Line next = line("same");
+
+        table.numberOccurence(next);
+        assertEquals(8, next.getOccurenceNumber());
+    }
+
+    @Test
+    public void testConsumeAndLookup() throws Exception {
+        final LineTable table = table(1, 2, 3, 4);
+
+        assertTrue(table.consume(2));
+        assertFalse(table.consume(2));
+        assertFalse(table.consume(5));
+
+        assertEquals(3, table.size());
+        assertNull(table.get(2));
+        assertFalse(table.containsKey(2));
+        assertFalse(table.containsValue(line("line;2")));
+        assertNull(table.getKey(line("line;2")));
+        assertTrue(table.containsValue(line("line;3")));
+        assertEquals(Arrays.asList(1, 3, 4), new ArrayList<Integer>(table.keySet()));
+
+        assertEquals("line;3", table.remove(3).getLine());
+        assertNull(table.remove(3));
+
+        final Iterator<Map.Entry<Integer, Line>> iterator = table.entrySet().iterator();
+
+        assertEquals(Integer.valueOf(1), iterator.next().getKey());
+        iterator.remove();
+
+        try {
+            iterator.remove();
+            fail("A Line cannot be consumed twice");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(Integer.valueOf(4), iterator.next().getKey());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, table.size());
+
+        table.clear();
+        assertTrue(table.isEmpty());
+        assertNull(table.get(4));
+    }
+
+    @Test
+    public void testCopyOf() throws Exception {
+        final LineTable table = table(1, 2, 3, 10);
+
+        table.consume(2);
+        table.setReadOnly();
+
+        final LineTable copy = LineTable.copyOf(table);
+
+        assertFalse(copy.isReadOnly());
+        assertEquals(Arrays.asList(1, 3, 10), new ArrayList<Integer>(copy.keySet()));
+
+        assertTrue(copy.consume(3));
+        copy.put(11, line("line;11"));
+
+        assertEquals(3, table.size());
+        assertEquals("line;3", table.get(3).getLine());
+        assertNull(table.get(11));
+        assertEquals(Arrays.asList(1, 10, 11), new ArrayList<Integer>(copy.keySet()));
+
+        final Map<Integer, Line> map = new HashMap<Integer, Line>();
+
+        map.put(30, line("c"));
+        map.put(10, line("a"));
+        map.put(20, line("b"));
+
+        final LineTable fromMap = LineTable.copyOf(map);
+
+        assertEquals(Arrays.asList(10, 20, 30), new ArrayList<Integer>(fromMap.keySet()));
+        assertSame(map.get(20), fromMap.get(20));
+    }
+
+    @Test
+    public void testReadOnly() throws Exception {
+        final LineTable table = table(1, 2);
+
+        table.setReadOnly();
+        assertTrue(table.isReadOnly());
+
+        try {
+            table.put(3, line("line;3"));
+            fail("A read-only table cannot be filled");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        try {
+            table.consume(1);
+            fail("A read-only table cannot be consumed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        try {
+            table.clear();
+            fail("A read-only table cannot be cleared");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        final Iterator<Map.Entry<Integer, Line>> iterator = table.entrySet().iterator();
+
+        iterator.next();
+
+        try {
+            iterator.remove();
+            fail("A read-only table cannot be consumed");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+
+        assertEquals(2, table.size());
+        assertEquals("line;1", table.get(1).getLine());
+        assertEquals(Integer.valueOf(2), table.getKey(line("line;2")));
+    }
+
+    private static LineTable table(int... lineNumbers) throws Exception {
+        final LineTable table = new LineTable();
+
+        for (int lineNumber : lineNumbers) {
+            table.put(lineNumber, line("line;" + lineNumber));
+        }
+
+        return table;
+    }
+
+    private static Line line(String content) throws Exception {
+        return line(content, 1);
+    }
+
+    private static Line line(String content, int occurence) throws Exception {
+        return new Line(content, ";", occurence, null, null);
+    }
+}
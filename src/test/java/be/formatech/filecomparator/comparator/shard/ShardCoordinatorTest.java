@@ -0,0 +1,151 @@
+package be.formatech.filecomparator.comparator.shard;
+
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The results of the shards compared by the worker JVMs, once merged, must be
+ * the results of one comparison of the whole files.
+ */
+public class ShardCoordinatorTest {
+    private static final String STRATEGY = "\nStrategy : ";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testOrdered() throws Exception {
+        final List<String> lines1 = createLines(300);
+        final List<String> lines2 = new ArrayList<String>(lines1);
+
+        // in order, the deleted and inserted lines shift the following lines
+        lines2.set(20, "ID20;21;value 20");
+        lines2.remove(100);
+        lines2.add(200, "EXTRA;0;inserted");
+        lines2.set(250, "ID250;250;value X");
+
+        this.assertSameResults(lines1, lines2, true);
+    }
+
+    @Test
+    public void testUnordered() throws Exception {
+        final List<String> lines1 = createLines(300);
+        final List<String> lines2 = new ArrayList<String>(lines1);
+
+        // the changed lines are paired with the lines of their key, in their
+        // shard as in the whole file
+        for (int i = 7; i < lines2.size(); i += 40) {
+            lines2.set(i, "ID" + i + ";" + (i + 1) + ";value " + i);
+        }
+
+        Collections.shuffle(lines2, new Random(42L));
+
+        this.assertSameResults(lines1, lines2, false);
+    }
+
+    @Test
+    public void testIdentical() throws Exception {
+        final List<String> lines = createLines(100);
+        final String filename1 = this.write("identical1.csv", lines);
+        final String filename2 = this.write("identical2.csv", lines);
+        final ShardedComparison comparison = new ShardCoordinator(";", null, null, false, 2)
+                .compare(filename1, filename2);
+
+        assertTrue(comparison.getSummary(), comparison.isIdentical());
+        assertFalse(comparison.isError());
+    }
+
+    /**
+     * Compares the files in shards on two workers and checks the results of
+     * both directions against the results of the FileComparator.
+     */
+    private void assertSameResults(List<String> lines1, List<String> lines2, boolean ordered)
+            throws Exception {
+        final String filename1 = this.write("shard1.csv", lines1);
+        final String filename2 = this.write("shard2.csv", lines2);
+        final ShardCoordinator coordinator = new ShardCoordinator(";", null, null, ordered, 2);
+
+        coordinator.setShards(4);
+
+        final ShardedComparison comparison = coordinator.compare(filename1, filename2);
+
+        assertFalse(comparison.getSummary(), comparison.isError());
+        assertFalse(comparison.getSummary(), comparison.isIdentical());
+        assertEquals(compare(filename1, filename2, ordered), sort(comparison.getResult1(),
+                ordered));
+        assertEquals(compare(filename2, filename1, ordered), sort(comparison.getResult2(),
+                ordered));
+    }
+
+    /**
+     * Compares the whole files and returns the differences, without the
+     * strategy.
+     */
+    private static String compare(String filename1, String filename2, boolean ordered) {
+        final String result = ComparatorFactory.getInstance().getComparator(";", null, null,
+                ordered).compare(filename1, filename2);
+        final int end = result.indexOf(STRATEGY);
+
+        return sort(end < 0 ? result : result.substring(0, end), ordered);
+    }
+
+    /**
+     * Sorts the lines of a result when the order of the lines doesn't
+     * matter : the messages of the shards are merged by line number, those of
+     * one comparison come in the order of the first file.
+     */
+    private static String sort(String result, boolean ordered) {
+        if (ordered) {
+            return result;
+        }
+
+        final List<String> lines = new ArrayList<String>(Arrays.asList(result.split("\n")));
+
+        Collections.sort(lines);
+
+        return lines.toString();
+    }
+
+    private static List<String> createLines(int count) {
+        final List<String> lines = new ArrayList<String>();
+
+        for (int i = 0; i < count; i++) {
+            lines.add("ID" + i + ";" + i + ";value " + i);
+        }
+
+        return lines;
+    }
+
+    private String write(String name, List<String> lines) throws Exception {
+        final File file = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(file);
+
+        for (String line : lines) {
+            writer.println(line);
+        }
+
+        writer.close();
+        return file.getPath();
+    }
+}
@@ -0,0 +1,142 @@
+package be.formatech.filecomparator.comparator.snapshot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A snapshot must give back the lines of its file and must not be used once
+ * the file or the settings changed.
+ */
+public class FingerprintSnapshotTest {
+    private static final String[] LINES = {"a;1;x", "b;2;y", "a;1;x", "c;3;z", "a;1;x"};
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndOpen() throws Exception {
+        final String filename = this.createFile("saved.csv");
+
+        assertEquals(LINES.length, FingerprintSnapshot.save(filename, ";", null, numbers()));
+
+        final FingerprintSnapshot snapshot = FingerprintSnapshot.open(filename, ";", null,
+                numbers());
+
+        assertNotNull(snapshot);
+
+        try {
+            assertEquals(LINES.length, snapshot.getLineCount());
+
+            for (int i = 0; i < LINES.length; i++) {
+                assertEquals(LINES[i], snapshot.getLine(i + 1).getLine());
+            }
+
+            assertEquals(1, snapshot.getOccurenceNumber(1));
+            assertEquals(2, snapshot.getOccurenceNumber(3));
+            assertEquals(3, snapshot.getOccurenceNumber(5));
+            assertEquals(1, snapshot.getOccurenceNumber(4));
+            assertEquals(snapshot.getFingerprint(1), snapshot.getFingerprint(5));
+            assertEquals(3, snapshot.getLine(5).getOccurenceNumber());
+            assertTrue(snapshot.getFingerprint(1) != snapshot.getFingerprint(2));
+        } finally {
+            snapshot.close();
+        }
+    }
+
+    @Test
+    public void testStaleSize() throws Exception {
+        final String filename = this.createFile("size.csv");
+        final long lastModified = new File(filename).lastModified();
+
+        FingerprintSnapshot.save(filename, ";", null, numbers());
+
+        final PrintWriter writer = new PrintWriter(new FileWriter(filename, true));
+
+        writer.println("d;4;w");
+        writer.close();
+        assertTrue(new File(filename).setLastModified(lastModified));
+
+        assertNull(FingerprintSnapshot.open(filename, ";", null, numbers()));
+    }
+
+    @Test
+    public void testStaleLastModified() throws Exception {
+        final String filename = this.createFile("modified.csv");
+
+        FingerprintSnapshot.save(filename, ";", null, numbers());
+        assertTrue(new File(filename).setLastModified(new File(filename).lastModified() - 60000));
+
+        assertNull(FingerprintSnapshot.open(filename, ";", null, numbers()));
+    }
+
+    @Test
+    public void testOtherSettings() throws Exception {
+        final String filename = this.createFile("settings.csv");
+
+        FingerprintSnapshot.save(filename, ";", null, numbers());
+
+        assertNull(FingerprintSnapshot.open(filename, ",", null, numbers()));
+        assertNull(FingerprintSnapshot.open(filename, ";", null, null));
+        assertNull(FingerprintSnapshot.open(filename, ";", numbers(), numbers()));
+        assertNull(FingerprintSnapshot.open(filename, ";", null, Collections.singleton(3)));
+    }
+
+    @Test
+    public void testNotASnapshot() throws Exception {
+        final String filename = this.createFile("other.csv");
+        final String location = this.createFile("other.csv.fcsnap");
+
+        assertNull(FingerprintSnapshot.open(filename, ";", numbers(), null, location));
+    }
+
+    @Test
+    public void testRefresh() throws Exception {
+        final String filename = this.createFile("refreshed.csv");
+
+        assertTrue(FingerprintSnapshot.refresh(filename, ";", null, numbers()));
+        assertFalse(FingerprintSnapshot.refresh(filename, ";", null, numbers()));
+        assertTrue(FingerprintSnapshot.refresh(filename, ",", null, numbers()));
+
+        assertTrue(new File(filename).setLastModified(new File(filename).lastModified() - 60000));
+        assertTrue(FingerprintSnapshot.refresh(filename, ",", null, numbers()));
+
+        final FingerprintSnapshot snapshot = FingerprintSnapshot.open(filename, ",", null,
+                numbers());
+
+        assertNotNull(snapshot);
+        snapshot.close();
+    }
+
+    private static Set<Integer> numbers() {
+        final Set<Integer> numbers = new TreeSet<Integer>();
+
+        numbers.add(2);
+        return numbers;
+    }
+
+    private String createFile(String name) throws Exception {
+        final File file = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(file);
+
+        for (String line : LINES) {
+            writer.println(line);
+        }
+
+        writer.close();
+        return file.getPath();
+    }
+}
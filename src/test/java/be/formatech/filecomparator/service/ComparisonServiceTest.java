@@ -0,0 +1,150 @@
+package be.formatech.filecomparator.service;
+
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * A job submitted over HTTP must be queued, run and polled until its results
+ * can be read.
+ */
+public class ComparisonServiceTest {
+    private static final String CONTENT = "a;1;x\nb;2;y\nc;3;z\n";
+
+    /**
+     * The maximum time given to a job to finish, in milliseconds.
+     */
+    private static final long TIMEOUT = 30000L;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ComparisonService service;
+
+    private String filename1;
+
+    private String filename2;
+
+    @Before
+    public void setUp() throws Exception {
+        this.filename1 = this.write("first.csv", CONTENT);
+        this.filename2 = this.write("second.csv", CONTENT.replace("2;y", "2;Y"));
+        this.service = new ComparisonService(new InetSocketAddress(InetAddress
+                .getLoopbackAddress(), 0), new JobQueue(2, 4 * JobQueue.SMALL_JOB_MEMORY));
+        this.service.start();
+    }
+
+    @After
+    public void tearDown() {
+        this.service.stop();
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testSubmitAndPoll() throws Exception {
+        final HttpURLConnection submit = this.open("/jobs?firstFile="
+                + URLEncoder.encode(this.filename1, "UTF-8") + "&secondFile="
+                + URLEncoder.encode(this.filename2, "UTF-8") + "&separator=%3B", "POST");
+
+        assertEquals(202, submit.getResponseCode());
+
+        final String location = submit.getHeaderField("Location");
+        final String submitted = read(submit);
+
+        assertTrue(location, location.matches("/jobs/\\d+"));
+        assertTrue(submitted, submitted.startsWith("id: " + location.substring(6) + "\n"));
+
+        final long end = System.currentTimeMillis() + TIMEOUT;
+        String status = submitted;
+
+        while (!status.contains("status: DONE\n")) {
+            if (System.currentTimeMillis() > end) {
+                fail("The job is not finished: " + status);
+            }
+
+            Thread.sleep(100);
+
+            final HttpURLConnection poll = this.open(location, "GET");
+
+            assertEquals(200, poll.getResponseCode());
+            status = read(poll);
+        }
+
+        assertTrue(status, status.contains("identical: false\n"));
+
+        final HttpURLConnection differences = this.open(location + "/differences", "GET");
+
+        assertEquals(200, differences.getResponseCode());
+
+        final String results = read(differences);
+
+        assertTrue(results, results.contains(this.filename1 + " compared with " + this.filename2
+                + " :\nLine 2, field 3 : y"));
+        assertTrue(results, results.contains(this.filename2 + " compared with " + this.filename1
+                + " :\nLine 2, field 3 : Y"));
+
+        final HttpURLConnection jobs = this.open("/jobs", "GET");
+
+        assertEquals(200, jobs.getResponseCode());
+        assertTrue(read(jobs).contains(location.substring(6) + " DONE " + this.filename1));
+    }
+
+    @Test
+    public void testInvalidRequests() throws Exception {
+        final String missing = new File(this.folder.getRoot(), "missing.csv").getPath();
+        final HttpURLConnection submit = this.open("/jobs?firstFile="
+                + URLEncoder.encode(this.filename1, "UTF-8") + "&secondFile="
+                + URLEncoder.encode(missing, "UTF-8") + "&separator=%3B", "POST");
+
+        assertEquals(400, submit.getResponseCode());
+        assertEquals(404, this.open("/jobs/12345", "GET").getResponseCode());
+        assertEquals(404, this.open("/jobs/unknown", "GET").getResponseCode());
+        assertEquals(405, this.open("/jobs", "PUT").getResponseCode());
+    }
+
+    private HttpURLConnection open(String path, String method) throws Exception {
+        final InetSocketAddress address = this.service.getAddress();
+        final HttpURLConnection connection = (HttpURLConnection) new URL("http", address
+                .getAddress().getHostAddress(), address.getPort(), path).openConnection();
+
+        connection.setRequestMethod(method);
+
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws Exception {
+        final InputStream in = connection.getInputStream();
+
+        try {
+            return IOUtils.toString(in, "UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private String write(String name, String content) throws Exception {
+        final File file = this.folder.newFile(name);
+        final PrintWriter writer = new PrintWriter(file);
+
+        writer.print(content);
+        writer.close();
+        return file.getPath();
+    }
+}
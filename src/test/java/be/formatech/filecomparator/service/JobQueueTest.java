@@ -0,0 +1,162 @@
+package be.formatech.filecomparator.service;
+
+import be.formatech.filecomparator.utils.ConfigUtility;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * The JobQueue must admit the jobs in the order they were submitted, within
+ * its memory budget. The runners are played by the test, with jobs of fixed
+ * estimates that are never run.
+ */
+public class JobQueueTest {
+    private static final long MB = 1024 * 1024;
+
+    /**
+     * The memory budget : the fast lane keeps SMALL_JOB_MEMORY of it, the
+     * regular runners get the rest.
+     */
+    private static final long BUDGET = 4 * JobQueue.SMALL_JOB_MEMORY;
+
+    private static final long REGULAR_BUDGET = BUDGET - JobQueue.SMALL_JOB_MEMORY;
+
+    @Test
+    public void testBigJobNotOvertaken() {
+        final JobQueue queue = new JobQueue(2, BUDGET);
+        final ComparisonJob first = submit(queue, 64 * MB);
+        final ComparisonJob second = submit(queue, 64 * MB);
+        final ComparisonJob small = submit(queue, 8 * MB);
+        final ComparisonJob third = submit(queue, 16 * MB);
+
+        assertFalse(second.isFastLane());
+        assertTrue(small.isFastLane());
+
+        assertSame(first, queue.take(false));
+
+        // the second job doesn't fit : neither the small job nor the third
+        // one may overtake it on a regular runner
+        assertNull(queue.take(false));
+
+        // the small job still goes through the fast lane
+        assertSame(small, queue.take(true));
+        queue.release(small, true);
+
+        queue.release(first, false);
+        assertSame(second, queue.take(false));
+        assertSame(third, queue.take(false));
+        assertEquals(80 * MB, queue.getReservedMemory());
+        assertEquals(0, queue.getQueuedCount());
+    }
+
+    @Test
+    public void testOverBudgetJobRunsAlone() {
+        final JobQueue queue = new JobQueue(2, BUDGET);
+        final ComparisonJob before = submit(queue, 16 * MB);
+        final ComparisonJob huge = submit(queue, 2 * BUDGET);
+        final ComparisonJob after = submit(queue, 16 * MB);
+
+        assertSame(before, queue.take(false));
+
+        // the huge job waits for the regular runners to be idle
+        assertNull(queue.take(false));
+
+        queue.release(before, false);
+        assertSame(huge, queue.take(false));
+        assertEquals(1, queue.getRunningCount());
+
+        // nothing runs next to it on a regular runner
+        assertNull(queue.take(false));
+
+        queue.release(huge, false);
+        assertSame(after, queue.take(false));
+    }
+
+    @Test
+    public void testFastLaneWithinItsBudget() {
+        final JobQueue queue = new JobQueue(2, BUDGET);
+        final ComparisonJob[] small = new ComparisonJob[4];
+
+        for (int i = 0; i < small.length; i++) {
+            small[i] = submit(queue, JobQueue.SMALL_JOB_MEMORY);
+            assertTrue(small[i].isFastLane());
+        }
+
+        // the fast lane runs one job at a time
+        assertSame(small[0], queue.take(true));
+        assertNull(queue.take(true));
+
+        // the regular runners take the other small jobs within their budget
+        assertSame(small[1], queue.take(false));
+        assertSame(small[2], queue.take(false));
+        assertNull(queue.take(false));
+        assertTrue(queue.getReservedMemory() <= REGULAR_BUDGET);
+
+        queue.release(small[0], true);
+        assertSame(small[3], queue.take(true));
+        assertEquals(3, queue.getRunningCount());
+    }
+
+    @Test
+    public void testBigJobNextToFastLane() {
+        final JobQueue queue = new JobQueue(2, BUDGET);
+        final ComparisonJob small = submit(queue, 8 * MB);
+        final ComparisonJob big = submit(queue, REGULAR_BUDGET);
+        final ComparisonJob other = submit(queue, 8 * MB);
+
+        assertSame(small, queue.take(true));
+
+        // the part of the budget of the fast lane is kept for it
+        assertSame(big, queue.take(false));
+        assertEquals(REGULAR_BUDGET, queue.getReservedMemory());
+        assertNull(queue.take(false));
+
+        queue.release(small, true);
+        assertSame(other, queue.take(true));
+    }
+
+    @Test
+    public void testCancelQueuedJob() {
+        final JobQueue queue = new JobQueue(1, BUDGET);
+        final ComparisonJob running = submit(queue, 64 * MB);
+        final ComparisonJob cancelled = submit(queue, 64 * MB);
+        final ComparisonJob last = submit(queue, 64 * MB);
+
+        assertSame(running, queue.take(false));
+
+        assertTrue(queue.cancel(cancelled.getId()));
+        assertEquals(ComparisonJob.Status.CANCELLED, cancelled.getStatus());
+        assertTrue(cancelled.isFinished());
+        assertEquals(1, queue.getQueuedCount());
+        assertFalse(queue.cancel(cancelled.getId()));
+
+        queue.release(running, false);
+        assertSame(last, queue.take(false));
+        assertNull(queue.take(false));
+
+        try {
+            queue.cancel(42);
+            fail("There is no job 42");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static ComparisonJob submit(JobQueue queue, long estimatedMemory) {
+        final Map<String, String> profile = new HashMap<String, String>();
+
+        profile.put(ConfigUtility.FIRST_FILE_CONFIG_KEY, "first.csv");
+        profile.put(ConfigUtility.SECOND_FILE_CONFIG_KEY, "second.csv");
+        profile.put(ConfigUtility.SEPARATOR_CONFIG_KEY, ";");
+
+        return queue.submit(profile, estimatedMemory);
+    }
+}
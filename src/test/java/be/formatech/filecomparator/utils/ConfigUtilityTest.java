@@ -0,0 +1,78 @@
+package be.formatech.filecomparator.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A saved configuration must be loaded back with the same values.
+ */
+public class ConfigUtilityTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSaveAndLoadColumns() throws Exception {
+        final Map<String, String> config = createConfig();
+
+        config.put(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY,
+                ConfigUtility.getSetAsString(new TreeSet<Integer>(Arrays.asList(5, 3))));
+        config.put(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY,
+                ConfigUtility.getSetAsString(new TreeSet<Integer>(Arrays.asList(1, 2, 3))));
+
+        final Map<String, String> loaded = this.saveAndLoad(config);
+
+        assertEquals(config, loaded);
+        assertEquals("[3,5]", loaded.get(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY));
+        assertEquals(new TreeSet<Integer>(Arrays.asList(3, 5)), ConfigUtility
+                .getStringAsSet(loaded.get(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY)));
+        assertEquals(new TreeSet<Integer>(Arrays.asList(1, 2, 3)), ConfigUtility
+                .getStringAsSet(loaded.get(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY)));
+    }
+
+    @Test
+    public void testSaveAndLoadNoColumns() throws Exception {
+        final Map<String, String> config = createConfig();
+
+        config.put(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY, ConfigUtility.getSetAsString(null));
+
+        final Map<String, String> loaded = this.saveAndLoad(config);
+
+        assertEquals(config, loaded);
+        assertFalse(loaded.containsKey(ConfigUtility.IGNORED_COLUMNS_CONFIG_KEY));
+        assertTrue(ConfigUtility.getStringAsSet(
+                loaded.get(ConfigUtility.COMPARED_COLUMNS_CONFIG_KEY)).isEmpty());
+    }
+
+    private Map<String, String> saveAndLoad(Map<String, String> config) throws Exception {
+        final String fileLocation = new File(this.folder.getRoot(), "test.config").getPath();
+
+        assertTrue(ConfigUtility.saveConfig(config, "test", fileLocation));
+
+        return ConfigUtility.loadConfig(fileLocation);
+    }
+
+    private static Map<String, String> createConfig() {
+        final Map<String, String> config = new HashMap<String, String>();
+
+        config.put(ConfigUtility.FIRST_FILE_CONFIG_KEY, "first.csv");
+        config.put(ConfigUtility.SECOND_FILE_CONFIG_KEY, "second.csv");
+        config.put(ConfigUtility.SEPARATOR_CONFIG_KEY, ";");
+        config.put(ConfigUtility.ORDERED_CONFIG_KEY, "false");
+        config.put(ConfigUtility.DATES_CONFIG_KEY, "[4]");
+        config.put(ConfigUtility.NUMBERS_CONFIG_KEY, "[2]");
+
+        return config;
+    }
+}
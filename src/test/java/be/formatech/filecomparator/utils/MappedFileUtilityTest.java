@@ -0,0 +1,124 @@
+package be.formatech.filecomparator.utils;
+
+import be.formatech.filecomparator.comparator.ComparatorFactory;
+import be.formatech.filecomparator.comparator.FileComparator;
+import be.formatech.filecomparator.comparator.cache.ParsedFileCache;
+import be.formatech.filecomparator.comparator.plan.Strategy;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The comparison of the bytes of two files must find their first difference,
+ * and identical files must be reported as matching without being parsed.
+ */
+public class MappedFileUtilityTest {
+    private static final String CONTENT = "a;1;x\nb;2;y\nc;3;z\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @After
+    public void clearCache() {
+        ParsedFileCache.getInstance().clear();
+    }
+
+    @Test
+    public void testIdenticalFiles() throws Exception {
+        final String filename1 = this.createFile("identical1.csv", CONTENT);
+        final String filename2 = this.createFile("identical2.csv", CONTENT);
+
+        assertEquals(MappedFileUtility.IDENTICAL, MappedFileUtility.mismatch(filename1,
+                filename2));
+        assertEquals(MappedFileUtility.IDENTICAL, MappedFileUtility.mismatch(filename1,
+                filename1));
+        assertEquals(MappedFileUtility.IDENTICAL, MappedFileUtility.mismatch(this.createFile(
+                "empty1.csv", ""), this.createFile("empty2.csv", "")));
+    }
+
+    @Test
+    public void testDifferentFiles() throws Exception {
+        final String filename1 = this.createFile("different1.csv", CONTENT);
+        final String filename2 = this.createFile("different2.csv", CONTENT.replace("2;y", "2;Y"));
+
+        assertEquals(CONTENT.indexOf('y'), MappedFileUtility.mismatch(filename1, filename2));
+        assertEquals(CONTENT.indexOf('y'), MappedFileUtility.mismatch(filename2, filename1));
+    }
+
+    @Test
+    public void testPrefix() throws Exception {
+        final String filename1 = this.createFile("prefix1.csv", CONTENT);
+        final String filename2 = this.createFile("prefix2.csv", CONTENT + "d;4;w\n");
+
+        assertEquals(CONTENT.length(), MappedFileUtility.mismatch(filename1, filename2));
+        assertEquals(CONTENT.length(), MappedFileUtility.mismatch(filename2, filename1));
+        assertEquals(0, MappedFileUtility.mismatch(this.createFile("empty.csv", ""), filename1));
+    }
+
+    @Test
+    public void testFindLineStart() throws Exception {
+        final String filename = this.createFile("lines.csv", CONTENT);
+        final MappedFileUtility.LineStart start = MappedFileUtility.findLineStart(filename,
+                CONTENT.indexOf('y'));
+
+        assertEquals(CONTENT.indexOf('b'), start.getOffset());
+        assertEquals(2, start.getLineNumber());
+
+        final MappedFileUtility.LineStart first = MappedFileUtility.findLineStart(filename, 2);
+
+        assertEquals(0, first.getOffset());
+        assertEquals(1, first.getLineNumber());
+    }
+
+    @Test
+    public void testIdenticalStrategy() throws Exception {
+        final String filename1 = this.createFile("strategy1.csv", CONTENT);
+        final String filename2 = this.createFile("strategy2.csv", CONTENT);
+        final String filename3 = this.createFile("strategy3.csv", CONTENT.replace("2;y", "2;Y"));
+
+        // identical files match whatever the strategy, without being parsed
+        for (boolean ordered : new boolean[]{false, true}) {
+            final FileComparator comparator = (FileComparator) ComparatorFactory.getInstance()
+                    .getComparator(";", null, null, ordered);
+
+            final String match = comparator.compare(filename1, filename2);
+
+            assertTrue(match, match.startsWith(FileComparator.FILES_MATCH));
+            assertEquals(Strategy.IDENTICAL, comparator.getPlan().getStrategy());
+
+            final String result = comparator.compare(filename1, filename3);
+
+            assertFalse(result, result.startsWith(FileComparator.FILES_MATCH));
+            assertTrue(result, result.contains("Line 2, field 3 : y"));
+        }
+
+        // the byte comparison only tells where the files differ
+        final FileComparator comparator = (FileComparator) ComparatorFactory.getInstance()
+                .getComparator(";", null, null, false, Strategy.IDENTICAL, null);
+
+        assertTrue(comparator.compare(filename1, filename2).startsWith(
+                FileComparator.FILES_MATCH));
+
+        final String result = comparator.compare(filename1, filename3);
+
+        assertTrue(result, result.startsWith("Files differ from byte " + CONTENT.indexOf('y')
+                + "\n"));
+    }
+
+    private String createFile(String name, String content) throws Exception {
+        final File file = this.folder.newFile(name);
+        final FileOutputStream out = new FileOutputStream(file);
+
+        out.write(content.getBytes("US-ASCII"));
+        out.close();
+        return file.getPath();
+    }
+}